@@ -2,6 +2,7 @@ package com.jivesoftware.os.amza.api;
 
 import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.scan.ScanCursor;
 import com.jivesoftware.os.amza.api.stream.ClientUpdates;
 import com.jivesoftware.os.amza.api.stream.KeyValueStream;
 import com.jivesoftware.os.amza.api.stream.KeyValueTimestampStream;
@@ -10,7 +11,9 @@ import com.jivesoftware.os.amza.api.stream.PrefixedKeyRanges;
 import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
 import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
 import com.jivesoftware.os.amza.api.take.Highwaters;
+import com.jivesoftware.os.amza.api.take.TakeFilter;
 import com.jivesoftware.os.amza.api.take.TakeResult;
+import com.jivesoftware.os.amza.api.take.TakeResultStream;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +42,16 @@ public interface PartitionClient {
         long abandonSolutionAfterNMillis,
         Optional<List<String>> solutionLog) throws Exception;
 
+    /**
+     * Loads a large batch of updates, ideally sorted by key, straight into partition storage when the partition has nothing pending in its
+     * delta, otherwise the updates are committed as usual. Replicas pick up the loaded rows through the normal take.
+     */
+    void bulkLoad(Consistency consistency, byte[] prefix,
+        ClientUpdates updates,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception;
+
     long getApproximateCount(Consistency consistency,
         long additionalSolverAfterNMillis,
         long abandonLeaderSolutionAfterNMillis,
@@ -107,6 +120,27 @@ public interface PartitionClient {
         long abandonSolutionAfterNMillis,
         Optional<List<String>> solutionLog) throws Exception;
 
+    /**
+     * Scans a single bounded page of the given ranges. Pages are served by a single replica, so consistencies which merge replicas are not supported.
+     *
+     * @param ranges    the ranges (from key/prefix is nullable and inclusive, to key/prefix is nullable and exclusive)
+     * @param cursor    nullable cursor returned by the previous page, or null to start at the first range
+     * @param pageSize  max rows per page, zero or less for no limit
+     * @param pageBytes max key and value bytes per page, zero or less for no limit
+     * @return the cursor to resume from, or null when the ranges have been exhausted
+     */
+    ScanCursor scanPage(Consistency consistency,
+        PrefixedKeyRanges ranges,
+        ScanCursor cursor,
+        int pageSize,
+        long pageBytes,
+        boolean hydrateValues,
+        KeyValueTimestampStream scan,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception;
+
     TakeResult takeFromTransactionId(List<RingMember> membersInOrder,
         Map<RingMember, Long> memberTxIds,
         int limit,
@@ -117,6 +151,20 @@ public interface PartitionClient {
         Optional<List<String>> solutionLog) throws
         Exception;
 
+    /**
+     * Like {@link #takeFromTransactionId} but the serving node only streams rows accepted by the filter. Rejected rows still advance the
+     * returned lastTxId and count toward the limit, and their number is reported by {@link TakeResult#filtered}.
+     */
+    TakeResult takeFromTransactionId(List<RingMember> membersInOrder,
+        Map<RingMember, Long> memberTxIds,
+        int limit,
+        TakeFilter filter,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception;
+
     TakeResult takePrefixFromTransactionId(List<RingMember> membersInOrder,
         byte[] prefix,
         Map<RingMember, Long> memberTxIds,
@@ -127,4 +175,23 @@ public interface PartitionClient {
         long abandonSolutionAfterNMillis,
         Optional<List<String>> solutionLog) throws Exception;
 
+    /**
+     * Follows the partition from the given transaction ids over a single long-lived stream, pushing rows as they are committed instead of
+     * polling {@link #takeFromTransactionId}. Each batch holds at most limit rows, and the take result of every batch is passed to the
+     * cursor stream so it can be persisted and the subscription resumed from {@link TakeResult#lastTxId}. While idle an empty batch is
+     * delivered every heartbeat interval. The subscription ends when the row stream stops or the cursor stream returns false, and the
+     * final take result is returned. A null filter streams every row.
+     */
+    TakeResult subscribe(List<RingMember> membersInOrder,
+        Map<RingMember, Long> memberTxIds,
+        int limit,
+        TakeFilter filter,
+        long heartbeatIntervalMillis,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        TakeResultStream cursors,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception;
+
 }
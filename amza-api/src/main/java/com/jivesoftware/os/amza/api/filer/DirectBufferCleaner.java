@@ -1,4 +1,4 @@
-package com.jivesoftware.os.amza.service.filer;
+package com.jivesoftware.os.amza.api.filer;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
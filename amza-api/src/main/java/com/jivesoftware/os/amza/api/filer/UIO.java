@@ -107,6 +107,24 @@ public class UIO {
         _filer.write(longBuffer, 0, 8);
     }
 
+    /**
+     * Writes an unsigned LEB128 varint, 1 to 10 bytes.
+     */
+    public static void writeVarLong(IAppendOnly _filer, long v, String fieldName) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            _filer.write((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        _filer.write((byte) v);
+    }
+
+    /**
+     * Writes a zig-zag encoded varint so small negative values stay small.
+     */
+    public static void writeZigZagVarLong(IAppendOnly _filer, long v, String fieldName) throws IOException {
+        writeVarLong(_filer, (v << 1) ^ (v >> 63), fieldName);
+    }
+
     /**
      *
      * @param _filer
@@ -337,6 +355,33 @@ public class UIO {
         return v;
     }
 
+    public static long readVarLong(IReadable _filer, String fieldName) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = _filer.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("Malformed varint for " + fieldName);
+    }
+
+    public static long readZigZagVarLong(IReadable _filer, String fieldName) throws IOException {
+        long v = readVarLong(_filer, fieldName);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public static void read(IReadable _filer, byte[] array, int offset, int length) throws IOException {
+        int read = _filer.read(array, offset, length);
+        if (read != length) {
+            throw new IOException("Failed to fully. Only had " + read + " needed " + length);
+        }
+    }
+
     public static boolean bytesBoolean(byte[] bytes, int _offset) {
         if (bytes == null) {
             return false;
@@ -38,6 +38,21 @@ public class PartitionProperties {
     public Map<String, String> indexProperties;
     public int updatesBetweenLeaps = -1;
     public int maxLeaps = -1;
+    /**
+     * Rows whose timestamp is older than this are moved out of the WAL into compressed archive segments when the partition compacts.
+     * Zero keeps every row in the WAL.
+     */
+    public long archiveTimestampAgeInMillis = 0;
+    public long archiveTimestampIntervalMillis = 0;
+    /**
+     * When true the delta keeps only its hash index and a log of new keys, sorting them in bulk when a scan or merge needs order, instead of
+     * paying for an ordered skip list on every write. Suits partitions that are rarely range scanned. Applied when the delta is next merged.
+     */
+    public boolean lazyOrderedDelta = false;
+    /**
+     * Null is the same as {@link PerformanceProfile#standard}.
+     */
+    public PerformanceProfile performanceProfile;
 
     public PartitionProperties() {
     }
@@ -89,12 +104,28 @@ public class PartitionProperties {
 
     @JsonIgnore
     public PartitionProperties copy() {
-        return new PartitionProperties(durability, tombstoneTimestampAgeInMillis, tombstoneTimestampIntervalMillis, tombstoneVersionAgeInMillis,
-            tombstoneVersionIntervalMillis, ttlTimestampAgeInMillis, ttlTimestampIntervalMillis, ttlVersionAgeInMillis, ttlVersionIntervalMillis,
+        PartitionProperties copy = new PartitionProperties(durability, tombstoneTimestampAgeInMillis, tombstoneTimestampIntervalMillis,
+            tombstoneVersionAgeInMillis, tombstoneVersionIntervalMillis, ttlTimestampAgeInMillis, ttlTimestampIntervalMillis, ttlVersionAgeInMillis,
+            ttlVersionIntervalMillis,
             forceCompactionOnStartup, consistency, requireConsistency, replicated, disabled, rowType, indexClassName, maxValueSizeInIndex,
             indexProperties == null ? null : Maps.newHashMap(indexProperties),
             updatesBetweenLeaps,
             maxLeaps);
+        copy.archiveTimestampAgeInMillis = archiveTimestampAgeInMillis;
+        copy.archiveTimestampIntervalMillis = archiveTimestampIntervalMillis;
+        copy.lazyOrderedDelta = lazyOrderedDelta;
+        copy.performanceProfile = performanceProfile;
+        return copy;
+    }
+
+    @JsonIgnore
+    public PerformanceProfile resolvePerformanceProfile() {
+        return performanceProfile != null ? performanceProfile : PerformanceProfile.standard;
+    }
+
+    @JsonIgnore
+    public boolean resolveLazyOrderedDelta() {
+        return lazyOrderedDelta || resolvePerformanceProfile().lazyOrderedDelta;
     }
 
     @Override
@@ -165,6 +196,18 @@ public class PartitionProperties {
         if (indexClassName != null ? !indexClassName.equals(that.indexClassName) : that.indexClassName != null) {
             return false;
         }
+        if (archiveTimestampAgeInMillis != that.archiveTimestampAgeInMillis) {
+            return false;
+        }
+        if (archiveTimestampIntervalMillis != that.archiveTimestampIntervalMillis) {
+            return false;
+        }
+        if (lazyOrderedDelta != that.lazyOrderedDelta) {
+            return false;
+        }
+        if (performanceProfile != that.performanceProfile) {
+            return false;
+        }
         return indexProperties != null ? indexProperties.equals(that.indexProperties) : that.indexProperties == null;
 
     }
@@ -197,6 +240,10 @@ public class PartitionProperties {
             + ", indexProperties=" + indexProperties
             + ", updatesBetweenLeaps=" + updatesBetweenLeaps
             + ", maxLeaps=" + maxLeaps
+            + ", archiveTimestampAgeInMillis=" + archiveTimestampAgeInMillis
+            + ", archiveTimestampIntervalMillis=" + archiveTimestampIntervalMillis
+            + ", lazyOrderedDelta=" + lazyOrderedDelta
+            + ", performanceProfile=" + performanceProfile
             + '}';
     }
 }
@@ -0,0 +1,105 @@
+package com.jivesoftware.os.amza.api.partition;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Approximate shape of the rows a partition has taken, summarized from streaming sketches. Every distribution is reported at the same
+ * {@link #quantiles}, so {@code keySizes[i]} is the key size at {@code quantiles[i]}.
+ */
+public class PartitionStatistics {
+
+    /**
+     * Rows sketched, including rows which were later overwritten or removed.
+     */
+    public final long rows;
+    /**
+     * Estimated number of distinct non null prefixes.
+     */
+    public final long distinctPrefixes;
+    public final double[] quantiles;
+    /**
+     * Key sizes in bytes, excluding the prefix.
+     */
+    public final long[] keySizes;
+    /**
+     * Value sizes in bytes of rows which are not tombstones.
+     */
+    public final long[] valueSizes;
+    /**
+     * How far each row's value timestamp trails {@link #newestTimestamp}, in the partition's timestamp units. {@code rowAges[i]} is the age
+     * which a {@code quantiles[i]} fraction of rows are younger than.
+     */
+    public final long[] rowAges;
+    public final long newestTimestamp;
+    /**
+     * The most written prefixes, heaviest first, weighted towards recent writes.
+     */
+    public final List<HotPrefix> hotPrefixes;
+
+    @JsonCreator
+    public PartitionStatistics(@JsonProperty("rows") long rows,
+        @JsonProperty("distinctPrefixes") long distinctPrefixes,
+        @JsonProperty("quantiles") double[] quantiles,
+        @JsonProperty("keySizes") long[] keySizes,
+        @JsonProperty("valueSizes") long[] valueSizes,
+        @JsonProperty("rowAges") long[] rowAges,
+        @JsonProperty("newestTimestamp") long newestTimestamp,
+        @JsonProperty("hotPrefixes") List<HotPrefix> hotPrefixes) {
+        this.rows = rows;
+        this.distinctPrefixes = distinctPrefixes;
+        this.quantiles = quantiles;
+        this.keySizes = keySizes;
+        this.valueSizes = valueSizes;
+        this.rowAges = rowAges;
+        this.newestTimestamp = newestTimestamp;
+        this.hotPrefixes = hotPrefixes;
+    }
+
+    public static class HotPrefix {
+
+        public final byte[] prefix;
+        /**
+         * Upper bound on the decayed writes to this prefix.
+         */
+        public final long writes;
+        /**
+         * How much of {@link #writes} may belong to other prefixes.
+         */
+        public final long error;
+
+        @JsonCreator
+        public HotPrefix(@JsonProperty("prefix") byte[] prefix,
+            @JsonProperty("writes") long writes,
+            @JsonProperty("error") long error) {
+            this.prefix = prefix;
+            this.writes = writes;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return "HotPrefix{"
+                + "prefix=" + Arrays.toString(prefix)
+                + ", writes=" + writes
+                + ", error=" + error
+                + '}';
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionStatistics{"
+            + "rows=" + rows
+            + ", distinctPrefixes=" + distinctPrefixes
+            + ", quantiles=" + Arrays.toString(quantiles)
+            + ", keySizes=" + Arrays.toString(keySizes)
+            + ", valueSizes=" + Arrays.toString(valueSizes)
+            + ", rowAges=" + Arrays.toString(rowAges)
+            + ", newestTimestamp=" + newestTimestamp
+            + ", hotPrefixes=" + hotPrefixes
+            + '}';
+    }
+}
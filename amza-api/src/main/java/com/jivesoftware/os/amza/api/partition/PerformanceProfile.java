@@ -0,0 +1,73 @@
+package com.jivesoftware.os.amza.api.partition;
+
+/**
+ * Named bundles of the storage tuning knobs, so different workloads can share a cluster. Assigned per partition through
+ * {@link PartitionProperties#performanceProfile} and picked up again whenever the properties are updated.
+ */
+public enum PerformanceProfile {
+
+    /**
+     * The long standing defaults.
+     */
+    standard(1024, 1024, 11, 1_000, 1_000L, false),
+    /**
+     * Sustained ingest. The delta skips its ordered index, grows its transaction log in large steps, writes partition highwaters less often and
+     * retries a full delta sooner.
+     */
+    write_heavy(1024, 1024, 1_024, 10_000, 100L, true),
+    /**
+     * Many small, mostly idle partitions. Keeps the per partition footprint down and caps how many callers a single partition admits at once.
+     */
+    tiny(16, 16, 2, 1_000, 1_000L, true);
+
+    /**
+     * Upper bound on any concurrency knob, which is also the number of permits an exclusive operation has to drain.
+     */
+    public static final int MAX_CONCURRENCY = 1024;
+
+    /**
+     * Reads and writes a partition's WAL storage admits at once before callers queue.
+     */
+    public final int walConcurrency;
+    /**
+     * Reads and writes a partition's WAL file admits at once before callers queue.
+     */
+    public final int walTxConcurrency;
+    /**
+     * Initial capacity of the delta's transaction log.
+     */
+    public final int deltaTxIdCapacity;
+    /**
+     * Delta updates between partition highwater rows.
+     */
+    public final int deltaUpdatesBetweenHighwaters;
+    /**
+     * Longest pause between commit retries while the delta is over capacity.
+     */
+    public final long deltaFullRetryMillis;
+    /**
+     * Whether the delta sorts lazily instead of keeping an ordered index, see {@link PartitionProperties#lazyOrderedDelta}.
+     */
+    public final boolean lazyOrderedDelta;
+
+    PerformanceProfile(int walConcurrency,
+        int walTxConcurrency,
+        int deltaTxIdCapacity,
+        int deltaUpdatesBetweenHighwaters,
+        long deltaFullRetryMillis,
+        boolean lazyOrderedDelta) {
+        this.walConcurrency = walConcurrency;
+        this.walTxConcurrency = walTxConcurrency;
+        this.deltaTxIdCapacity = deltaTxIdCapacity;
+        this.deltaUpdatesBetweenHighwaters = deltaUpdatesBetweenHighwaters;
+        this.deltaFullRetryMillis = deltaFullRetryMillis;
+        this.lazyOrderedDelta = lazyOrderedDelta;
+    }
+
+    /**
+     * @return the permits each operation takes so that at most {@code concurrency} operations hold a {@link #MAX_CONCURRENCY} permit semaphore
+     */
+    public static int permitsPerOperation(int concurrency) {
+        return MAX_CONCURRENCY / Math.max(1, Math.min(MAX_CONCURRENCY, concurrency));
+    }
+}
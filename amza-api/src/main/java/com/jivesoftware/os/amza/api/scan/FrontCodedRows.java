@@ -0,0 +1,167 @@
+package com.jivesoftware.os.amza.api.scan;
+
+import com.jivesoftware.os.amza.api.filer.IAppendOnly;
+import com.jivesoftware.os.amza.api.filer.IReadable;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import java.io.IOException;
+
+/**
+ * Row encoding for scan responses which exploits the sorted order of a range. Prefixes are only written when they change, keys only
+ * write the suffix they do not share with the previous key, and timestamps and versions are written as zig-zag varint deltas.
+ * <p>
+ * Writer and reader state must be reset at the start of every range.
+ */
+public class FrontCodedRows {
+
+    public static final byte VERSION = 1;
+
+    private static final int TOMBSTONED = 1;
+    private static final int SAME_PREFIX = 1 << 1;
+    private static final int NULL_PREFIX = 1 << 2;
+    private static final int NULL_VALUE = 1 << 3;
+
+    private FrontCodedRows() {
+    }
+
+    public static class Writer {
+
+        private final boolean hydrateValues;
+
+        private byte[] lastPrefix;
+        private byte[] lastKey;
+        private long lastTimestamp;
+        private long lastVersion;
+
+        public Writer(boolean hydrateValues) {
+            this.hydrateValues = hydrateValues;
+            reset();
+        }
+
+        public final void reset() {
+            lastPrefix = null;
+            lastKey = null;
+            lastTimestamp = 0;
+            lastVersion = 0;
+        }
+
+        public void write(IAppendOnly out,
+            byte[] prefix,
+            byte[] key,
+            byte[] value,
+            long timestamp,
+            boolean tombstoned,
+            long version) throws IOException {
+
+            boolean samePrefix = lastKey != null && equals(lastPrefix, prefix);
+            int flags = (tombstoned ? TOMBSTONED : 0)
+                | (samePrefix ? SAME_PREFIX : 0)
+                | (prefix == null ? NULL_PREFIX : 0)
+                | (hydrateValues && value == null ? NULL_VALUE : 0);
+            UIO.writeByte(out, (byte) flags, "flags");
+            if (!samePrefix && prefix != null) {
+                UIO.writeVarLong(out, prefix.length, "prefixLength");
+                out.write(prefix, 0, prefix.length);
+            }
+
+            int shared = samePrefix ? sharedLength(lastKey, key) : 0;
+            UIO.writeVarLong(out, shared, "sharedKeyLength");
+            UIO.writeVarLong(out, key.length - shared, "keySuffixLength");
+            out.write(key, shared, key.length - shared);
+
+            if (hydrateValues && value != null) {
+                UIO.writeVarLong(out, value.length, "valueLength");
+                out.write(value, 0, value.length);
+            }
+            UIO.writeZigZagVarLong(out, timestamp - lastTimestamp, "timestampDelta");
+            UIO.writeZigZagVarLong(out, version - lastVersion, "versionDelta");
+
+            lastPrefix = prefix;
+            lastKey = key;
+            lastTimestamp = timestamp;
+            lastVersion = version;
+        }
+
+        private static boolean equals(byte[] a, byte[] b) {
+            if (a == b) {
+                return true;
+            } else if (a == null || b == null || a.length != b.length) {
+                return false;
+            }
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] != b[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int sharedLength(byte[] a, byte[] b) {
+            int max = Math.min(a.length, b.length);
+            int i = 0;
+            while (i < max && a[i] == b[i]) {
+                i++;
+            }
+            return i;
+        }
+    }
+
+    /**
+     * Decodes rows in place; each read allocates only the arrays handed back to the caller.
+     */
+    public static class Reader {
+
+        private final boolean hydrateValues;
+
+        public byte[] prefix;
+        public byte[] key;
+        public byte[] value;
+        public long timestamp;
+        public boolean tombstoned;
+        public long version;
+
+        public Reader(boolean hydrateValues) {
+            this.hydrateValues = hydrateValues;
+            reset();
+        }
+
+        public final void reset() {
+            prefix = null;
+            key = null;
+            value = null;
+            timestamp = 0;
+            tombstoned = false;
+            version = 0;
+        }
+
+        public void read(IReadable in) throws IOException {
+            int flags = UIO.readByte(in, "flags") & 0xFF;
+            tombstoned = (flags & TOMBSTONED) != 0;
+            if ((flags & SAME_PREFIX) == 0) {
+                if ((flags & NULL_PREFIX) != 0) {
+                    prefix = null;
+                } else {
+                    prefix = new byte[(int) UIO.readVarLong(in, "prefixLength")];
+                    UIO.read(in, prefix, 0, prefix.length);
+                }
+            }
+
+            int shared = (int) UIO.readVarLong(in, "sharedKeyLength");
+            int suffix = (int) UIO.readVarLong(in, "keySuffixLength");
+            byte[] nextKey = new byte[shared + suffix];
+            if (shared > 0) {
+                System.arraycopy(key, 0, nextKey, 0, shared);
+            }
+            UIO.read(in, nextKey, shared, suffix);
+            key = nextKey;
+
+            if (hydrateValues && (flags & NULL_VALUE) == 0) {
+                value = new byte[(int) UIO.readVarLong(in, "valueLength")];
+                UIO.read(in, value, 0, value.length);
+            } else {
+                value = null;
+            }
+            timestamp += UIO.readZigZagVarLong(in, "timestampDelta");
+            version += UIO.readZigZagVarLong(in, "versionDelta");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.jivesoftware.os.amza.api.scan;
+
+import com.jivesoftware.os.amza.api.filer.HeapFiler;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import java.io.IOException;
+
+/**
+ * Opaque continuation point for a paged scan. A cursor is self contained so any replica can serve the next page.
+ */
+public class ScanCursor {
+
+    private static final byte VERSION = 0;
+
+    public final int rangeIndex;
+    public final byte[] prefix;
+    public final byte[] key;
+    public final long highestTxId;
+
+    /**
+     * @param rangeIndex  index of the range the last streamed row belongs to
+     * @param prefix      nullable prefix of the last streamed row
+     * @param key         key of the last streamed row
+     * @param highestTxId highest txId of the serving node when the first page was scanned, or -1 if unknown
+     */
+    public ScanCursor(int rangeIndex, byte[] prefix, byte[] key, long highestTxId) {
+        this.rangeIndex = rangeIndex;
+        this.prefix = prefix;
+        this.key = key;
+        this.highestTxId = highestTxId;
+    }
+
+    /**
+     * @return the smallest key which sorts strictly after the last streamed key, suitable as an inclusive from key
+     */
+    public byte[] resumeKey() {
+        byte[] resume = new byte[key.length + 1];
+        System.arraycopy(key, 0, resume, 0, key.length);
+        return resume;
+    }
+
+    public byte[] toBytes() throws IOException {
+        HeapFiler filer = new HeapFiler(1 + 4 + 4 + (prefix != null ? prefix.length : 0) + 4 + key.length + 8);
+        byte[] intLongBuffer = new byte[8];
+        UIO.writeByte(filer, VERSION, "version");
+        UIO.writeInt(filer, rangeIndex, "rangeIndex", intLongBuffer);
+        UIO.writeByteArray(filer, prefix, "prefix", intLongBuffer);
+        UIO.writeByteArray(filer, key, "key", intLongBuffer);
+        UIO.writeLong(filer, highestTxId, "highestTxId", intLongBuffer);
+        return filer.copyUsedBytes();
+    }
+
+    public static ScanCursor fromBytes(byte[] bytes) throws IOException {
+        if (bytes == null) {
+            return null;
+        }
+        HeapFiler filer = HeapFiler.fromBytes(bytes, bytes.length);
+        byte[] intLongBuffer = new byte[8];
+        byte version = UIO.readByte(filer, "version");
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported scan cursor version:" + version);
+        }
+        return new ScanCursor(UIO.readInt(filer, "rangeIndex", intLongBuffer),
+            UIO.readByteArray(filer, "prefix", intLongBuffer),
+            UIO.readByteArray(filer, "key", intLongBuffer),
+            UIO.readLong(filer, "highestTxId", intLongBuffer));
+    }
+
+    @Override
+    public String toString() {
+        return "ScanCursor{"
+            + "rangeIndex=" + rangeIndex
+            + ", highestTxId=" + highestTxId
+            + '}';
+    }
+}
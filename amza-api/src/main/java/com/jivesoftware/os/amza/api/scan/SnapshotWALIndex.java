@@ -0,0 +1,17 @@
+package com.jivesoftware.os.amza.api.scan;
+
+/**
+ * A WAL index which may have been loaded from a point in time snapshot and therefore only needs the WAL tail replayed.
+ */
+public interface SnapshotWALIndex extends CompactableWALIndex {
+
+    /**
+     * @return the highest txId covered by the snapshot this index was loaded from, or -1 if it was not loaded from a snapshot
+     */
+    long getSnapshotTxId();
+
+    /**
+     * Drops everything loaded from the snapshot, along with the snapshot itself, so the index can be rebuilt from the WAL.
+     */
+    void discardSnapshot() throws Exception;
+}
@@ -10,7 +10,10 @@ public enum RowType {
     system((byte) -1, true, false),
     highwater((byte) 0, false, false),
     primary((byte) 1, false, true),
-    snappy_primary((byte) 2, false, true);
+    snappy_primary((byte) 2, false, true),
+    dictionary_primary((byte) 3, false, true),
+    // only ever streamed to a taker ahead of the rows which need it, never written to a WAL
+    compression_dictionary((byte) 4, true, false);
 
     public static final long COMPACTION_HINTS_KEY = 0;
     public static final long COMMIT_KEY = 1;
@@ -0,0 +1,108 @@
+package com.jivesoftware.os.amza.api.take;
+
+import com.jivesoftware.os.amza.api.filer.IAppendOnly;
+import com.jivesoftware.os.amza.api.filer.IReadable;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Row predicate evaluated by the node serving a take so rows which would be discarded by the taker are never serialized. Timestamp and
+ * version bounds are exclusive and -1 leaves a bound open. A row passes the prefix allowlist if its prefix, or its key when it has no
+ * prefix, starts with any of the given prefixes. An empty allowlist passes every row.
+ */
+public class TakeFilter {
+
+    private static final byte VERSION = 0;
+
+    public final long minTimestamp;
+    public final long maxTimestamp;
+    public final long minVersion;
+    public final long maxVersion;
+    public final List<byte[]> prefixes;
+
+    public TakeFilter(long minTimestamp, long maxTimestamp, long minVersion, long maxVersion, List<byte[]> prefixes) {
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        this.minVersion = minVersion;
+        this.maxVersion = maxVersion;
+        this.prefixes = prefixes == null ? Collections.emptyList() : prefixes;
+    }
+
+    public boolean isEmpty() {
+        return minTimestamp == -1 && maxTimestamp == -1 && minVersion == -1 && maxVersion == -1 && prefixes.isEmpty();
+    }
+
+    public boolean accept(byte[] prefix, byte[] key, long timestamp, long version) {
+        if (minTimestamp != -1 && timestamp <= minTimestamp
+            || maxTimestamp != -1 && timestamp >= maxTimestamp
+            || minVersion != -1 && version <= minVersion
+            || maxVersion != -1 && version >= maxVersion) {
+            return false;
+        }
+        if (prefixes.isEmpty()) {
+            return true;
+        }
+        byte[] match = prefix != null ? prefix : key;
+        for (byte[] allowed : prefixes) {
+            if (startsWith(match, allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        if (bytes == null || bytes.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void write(IAppendOnly out, byte[] lengthBuffer) throws IOException {
+        UIO.writeByte(out, VERSION, "version");
+        UIO.writeLong(out, minTimestamp, "minTimestamp", lengthBuffer);
+        UIO.writeLong(out, maxTimestamp, "maxTimestamp", lengthBuffer);
+        UIO.writeLong(out, minVersion, "minVersion", lengthBuffer);
+        UIO.writeLong(out, maxVersion, "maxVersion", lengthBuffer);
+        UIO.writeInt(out, prefixes.size(), "prefixCount", lengthBuffer);
+        for (byte[] prefix : prefixes) {
+            UIO.writeByteArray(out, prefix, "prefix", lengthBuffer);
+        }
+    }
+
+    public static TakeFilter read(IReadable in, byte[] lengthBuffer) throws IOException {
+        byte version = UIO.readByte(in, "version");
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported take filter version:" + version);
+        }
+        long minTimestamp = UIO.readLong(in, "minTimestamp", lengthBuffer);
+        long maxTimestamp = UIO.readLong(in, "maxTimestamp", lengthBuffer);
+        long minVersion = UIO.readLong(in, "minVersion", lengthBuffer);
+        long maxVersion = UIO.readLong(in, "maxVersion", lengthBuffer);
+        int prefixCount = UIO.readInt(in, "prefixCount", lengthBuffer);
+        byte[][] prefixes = new byte[prefixCount][];
+        for (int i = 0; i < prefixCount; i++) {
+            prefixes[i] = UIO.readByteArray(in, "prefix", lengthBuffer);
+        }
+        return new TakeFilter(minTimestamp, maxTimestamp, minVersion, maxVersion, Arrays.asList(prefixes));
+    }
+
+    @Override
+    public String toString() {
+        return "TakeFilter{"
+            + "minTimestamp=" + minTimestamp
+            + ", maxTimestamp=" + maxTimestamp
+            + ", minVersion=" + minVersion
+            + ", maxVersion=" + maxVersion
+            + ", prefixes=" + prefixes.size()
+            + '}';
+    }
+}
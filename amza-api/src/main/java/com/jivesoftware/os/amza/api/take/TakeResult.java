@@ -12,11 +12,20 @@ public class TakeResult {
     public final RingMember tookFrom;
     public final long lastTxId;
     public final WALHighwater tookToEnd;
+    public final long filtered;
 
     public TakeResult(RingMember tookFrom, long lastTxId, WALHighwater tookToEnd) {
+        this(tookFrom, lastTxId, tookToEnd, 0);
+    }
+
+    /**
+     * @param filtered the number of rows a {@link TakeFilter} kept from being streamed
+     */
+    public TakeResult(RingMember tookFrom, long lastTxId, WALHighwater tookToEnd, long filtered) {
         this.tookFrom = tookFrom;
         this.lastTxId = lastTxId;
         this.tookToEnd = tookToEnd;
+        this.filtered = filtered;
     }
 
 }
@@ -0,0 +1,12 @@
+package com.jivesoftware.os.amza.api.take;
+
+/**
+ * Receives the cursor of a subscription after every batch it delivers, including the empty batches sent while the partition is idle.
+ */
+public interface TakeResultStream {
+
+    /**
+     * @return false to end the subscription
+     */
+    boolean stream(TakeResult takeResult) throws Exception;
+}
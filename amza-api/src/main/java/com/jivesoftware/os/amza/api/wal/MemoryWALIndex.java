@@ -18,6 +18,7 @@ package com.jivesoftware.os.amza.api.wal;
 import com.google.common.primitives.UnsignedBytes;
 import com.jivesoftware.os.amza.api.CompareTimestampVersions;
 import com.jivesoftware.os.amza.api.scan.CompactionWALIndex;
+import com.jivesoftware.os.amza.api.scan.SnapshotWALIndex;
 import com.jivesoftware.os.amza.api.stream.KeyContainedStream;
 import com.jivesoftware.os.amza.api.stream.KeyValuePointerStream;
 import com.jivesoftware.os.amza.api.stream.KeyValues;
@@ -28,27 +29,241 @@ import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
 import com.jivesoftware.os.amza.api.stream.WALKeyPointerStream;
 import com.jivesoftware.os.amza.api.stream.WALKeyPointers;
 import com.jivesoftware.os.amza.api.stream.WALMergeKeyPointerStream;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
-public class MemoryWALIndex implements WALIndex {
+public class MemoryWALIndex implements WALIndex, SnapshotWALIndex {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private static final int SNAPSHOT_VERSION = 1;
 
     private final String providerName;
     private final int maxValueSizeInIndex;
     private volatile int currentStripe;
 
+    private final File[] snapshotDirectories;
+    private final String snapshotName;
+    private final Object snapshotLock = new Object();
+    private final AtomicLong highestTxId = new AtomicLong(-1);
+    private volatile long snapshotTxId = -1;
+    private volatile long lastSnapshotTxId = -1;
+    private volatile long lastSnapshotTimestamp = 0;
+
     private final ConcurrentSkipListMap<byte[], WALPointer> index = new ConcurrentSkipListMap<>(KeyUtil::compare);
     private final ConcurrentSkipListMap<byte[], ConcurrentSkipListMap<Long, ConcurrentLinkedQueue<Long>>> prefixFpIndex = new ConcurrentSkipListMap<>(
         UnsignedBytes.lexicographicalComparator());
 
     public MemoryWALIndex(String providerName, int maxValueSizeInIndex, int currentStripe) {
+        this(providerName, maxValueSizeInIndex, currentStripe, null, null);
+    }
+
+    /**
+     * @param snapshotDirectories nullable, snapshots are written to the directory for the current stripe
+     * @param snapshotName        file name of the snapshot within a snapshot directory
+     */
+    public MemoryWALIndex(String providerName, int maxValueSizeInIndex, int currentStripe, File[] snapshotDirectories, String snapshotName) {
         this.providerName = providerName;
         this.maxValueSizeInIndex = maxValueSizeInIndex;
         this.currentStripe = currentStripe;
+        this.snapshotDirectories = snapshotDirectories;
+        this.snapshotName = snapshotName;
+    }
+
+    private File snapshotFile(int stripe) {
+        if (snapshotDirectories == null || snapshotDirectories.length == 0) {
+            return null;
+        }
+        return new File(snapshotDirectories[stripe % snapshotDirectories.length], snapshotName);
+    }
+
+    public long getLastSnapshotTimestamp() {
+        return lastSnapshotTimestamp;
+    }
+
+    @Override
+    public long getSnapshotTxId() {
+        return snapshotTxId;
+    }
+
+    /**
+     * Writes a sorted dump of the index to a temporary file and atomically moves it over the previous snapshot, so a crash at any point
+     * leaves either the old or the new snapshot intact. Does nothing if nothing was merged since the last snapshot.
+     *
+     * @return true if a snapshot was written
+     */
+    public boolean snapshot(boolean fsync) throws Exception {
+        synchronized (snapshotLock) {
+            File file = snapshotFile(currentStripe);
+            long txId = highestTxId.get();
+            if (file == null || txId == -1 || txId == lastSnapshotTxId) {
+                return false;
+            }
+            File dir = file.getParentFile();
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Failed to create snapshot directory " + dir);
+            }
+            File tmp = new File(dir, snapshotName + ".tmp");
+            long entries = 0;
+            try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                CRC32 crc = new CRC32();
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fos, crc), 64 * 1024));
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(txId);
+                for (Entry<byte[], WALPointer> e : index.entrySet()) {
+                    WALPointer pointer = e.getValue();
+                    out.writeBoolean(true);
+                    writeBytes(out, e.getKey());
+                    out.writeLong(pointer.getFp());
+                    out.writeLong(pointer.getTimestampId());
+                    out.writeBoolean(pointer.getTombstoned());
+                    out.writeLong(pointer.getVersion());
+                    out.writeBoolean(pointer.getHasValue());
+                    writeBytes(out, pointer.getValue());
+                    entries++;
+                }
+                out.writeBoolean(false);
+                for (Entry<byte[], ConcurrentSkipListMap<Long, ConcurrentLinkedQueue<Long>>> e : prefixFpIndex.entrySet()) {
+                    for (Entry<Long, ConcurrentLinkedQueue<Long>> txFps : e.getValue().entrySet()) {
+                        for (Long fp : txFps.getValue()) {
+                            out.writeBoolean(true);
+                            writeBytes(out, e.getKey());
+                            out.writeLong(txFps.getKey());
+                            out.writeLong(fp);
+                        }
+                    }
+                }
+                out.writeBoolean(false);
+                out.flush();
+                out.writeLong(crc.getValue());
+                out.flush();
+                if (fsync) {
+                    fos.getFD().sync();
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastSnapshotTxId = txId;
+            lastSnapshotTimestamp = System.currentTimeMillis();
+            LOG.inc("memoryIndex>snapshot>written");
+            LOG.inc("memoryIndex>snapshot>entries", entries);
+            return true;
+        }
+    }
+
+    /**
+     * Loads the snapshot for the current stripe if there is one. A missing, partial or corrupt snapshot leaves the index empty.
+     *
+     * @return the highest txId covered by the loaded snapshot, or -1
+     */
+    public long loadSnapshot() throws Exception {
+        synchronized (snapshotLock) {
+            File file = snapshotFile(currentStripe);
+            if (file == null || !file.exists()) {
+                return -1;
+            }
+            try (FileInputStream fis = new FileInputStream(file)) {
+                CRC32 crc = new CRC32();
+                DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(fis, 64 * 1024), crc));
+                int version = in.readInt();
+                if (version != SNAPSHOT_VERSION) {
+                    LOG.warn("Ignoring snapshot {} with unsupported version {}", file, version);
+                    return -1;
+                }
+                long txId = in.readLong();
+                while (in.readBoolean()) {
+                    byte[] key = readBytes(in);
+                    long fp = in.readLong();
+                    long timestamp = in.readLong();
+                    boolean tombstoned = in.readBoolean();
+                    long valueVersion = in.readLong();
+                    boolean hasValue = in.readBoolean();
+                    byte[] value = readBytes(in);
+                    index.put(key, new WALPointer(fp, timestamp, tombstoned, valueVersion, hasValue, value));
+                }
+                while (in.readBoolean()) {
+                    byte[] prefix = readBytes(in);
+                    long prefixTxId = in.readLong();
+                    long fp = in.readLong();
+                    prefixFpIndex.computeIfAbsent(prefix, bytes -> new ConcurrentSkipListMap<>())
+                        .computeIfAbsent(prefixTxId, _txId -> new ConcurrentLinkedQueue<>())
+                        .add(fp);
+                }
+                long expectedCrc = crc.getValue();
+                if (in.readLong() != expectedCrc) {
+                    LOG.warn("Ignoring snapshot {} which failed its checksum", file);
+                    index.clear();
+                    prefixFpIndex.clear();
+                    return -1;
+                }
+                snapshotTxId = txId;
+                lastSnapshotTxId = txId;
+                highestTxId.accumulateAndGet(txId, Math::max);
+                LOG.inc("memoryIndex>snapshot>loaded");
+                return txId;
+            } catch (IOException x) {
+                LOG.warn("Ignoring unreadable snapshot {}", new Object[] { file }, x);
+                index.clear();
+                prefixFpIndex.clear();
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public void discardSnapshot() throws Exception {
+        synchronized (snapshotLock) {
+            index.clear();
+            prefixFpIndex.clear();
+            deleteSnapshot();
+        }
+    }
+
+    private void deleteSnapshot() throws IOException {
+        File file = snapshotFile(currentStripe);
+        if (file != null) {
+            Files.deleteIfExists(file.toPath());
+        }
+        snapshotTxId = -1;
+        lastSnapshotTxId = -1;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
     }
 
     @Override
@@ -143,7 +358,8 @@ public class MemoryWALIndex implements WALIndex {
             if (KeyUtil.compare(from, to) <= 0) {
                 return index.subMap(from, to);
             } else {
-                return index.subMap(from, to).descendingMap();
+                // descending, from inclusive and to exclusive
+                return index.descendingMap().subMap(from, true, to, false);
             }
         } else if (from != null) {
             return index.tailMap(from, true);
@@ -283,8 +499,11 @@ public class MemoryWALIndex implements WALIndex {
         if (prefix != null) {
             ConcurrentSkipListMap<Long, ConcurrentLinkedQueue<Long>> prefixMap = prefixFpIndex.computeIfAbsent(prefix, bytes -> new ConcurrentSkipListMap<>());
             ConcurrentLinkedQueue<Long> queue = prefixMap.computeIfAbsent(txId, _txId -> new ConcurrentLinkedQueue<>());
-            queue.add(fp);
+            if (txId > snapshotTxId || !queue.contains(fp)) {
+                queue.add(fp);
+            }
         }
+        highestTxId.accumulateAndGet(txId, Math::max);
         if (stream != null) {
             return stream.stream(mode[0], txId, prefix, key, compute.getTimestampId(), compute.getTombstoned(), compute.getVersion(), compute.getFp());
         } else {
@@ -305,14 +524,19 @@ public class MemoryWALIndex implements WALIndex {
 
             @Override
             public void commit(boolean fsync, Callable<Void> commit) throws Exception {
-                index.clear();
-                prefixFpIndex.clear();
-                if (commit != null) {
-                    commit.call();
+                synchronized (snapshotLock) {
+                    // compaction rewrites every fp, so the snapshot must not outlive the old WAL
+                    deleteSnapshot();
+                    index.clear();
+                    prefixFpIndex.clear();
+                    if (commit != null) {
+                        commit.call();
+                    }
+                    index.putAll(rowsIndex.index);
+                    prefixFpIndex.putAll(rowsIndex.prefixFpIndex);
+                    highestTxId.accumulateAndGet(rowsIndex.highestTxId.get(), Math::max);
+                    currentStripe = compactionStripe;
                 }
-                index.putAll(rowsIndex.index);
-                prefixFpIndex.putAll(rowsIndex.prefixFpIndex);
-                currentStripe = compactionStripe;
             }
 
             @Override
@@ -329,5 +553,8 @@ public class MemoryWALIndex implements WALIndex {
     @Override
     public void delete() throws Exception {
         index.clear();
+        synchronized (snapshotLock) {
+            deleteSnapshot();
+        }
     }
 }
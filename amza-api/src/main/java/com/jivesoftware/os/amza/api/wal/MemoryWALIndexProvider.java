@@ -1,6 +1,8 @@
 package com.jivesoftware.os.amza.api.wal;
 
 import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import java.io.File;
+import java.nio.file.Files;
 
 /**
  *
@@ -8,10 +10,24 @@ import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
  */
 public class MemoryWALIndexProvider implements WALIndexProvider<MemoryWALIndex> {
 
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
     private final String name;
+    private final File[] snapshotDirectories;
+    private final long snapshotIntervalMillis;
 
     public MemoryWALIndexProvider(String name) {
+        this(name, null, 0);
+    }
+
+    /**
+     * @param snapshotDirectories    nullable, one directory per working index directory, used to persist index snapshots across restarts
+     * @param snapshotIntervalMillis minimum time between snapshots of a single index
+     */
+    public MemoryWALIndexProvider(String name, File[] snapshotDirectories, long snapshotIntervalMillis) {
         this.name = name;
+        this.snapshotDirectories = snapshotDirectories;
+        this.snapshotIntervalMillis = snapshotIntervalMillis;
     }
 
     @Override
@@ -21,15 +37,36 @@ public class MemoryWALIndexProvider implements WALIndexProvider<MemoryWALIndex>
 
     @Override
     public MemoryWALIndex createIndex(VersionedPartitionName versionedPartitionName, int maxValueSizeInIndex, int stripe) throws Exception {
-        return new MemoryWALIndex(name, maxValueSizeInIndex, stripe);
+        if (snapshotDirectories == null) {
+            return new MemoryWALIndex(name, maxValueSizeInIndex, stripe);
+        }
+        MemoryWALIndex index = new MemoryWALIndex(name, maxValueSizeInIndex, stripe, snapshotDirectories, snapshotName(versionedPartitionName));
+        index.loadSnapshot();
+        return index;
     }
 
     @Override
     public void deleteIndex(VersionedPartitionName versionedPartitionName, int stripe) throws Exception {
+        if (snapshotDirectories != null) {
+            Files.deleteIfExists(new File(snapshotDirectories[stripe % snapshotDirectories.length], snapshotName(versionedPartitionName)).toPath());
+        }
     }
 
     @Override
     public void flush(Iterable<MemoryWALIndex> indexes, boolean fsync) throws Exception {
+        if (snapshotDirectories == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (MemoryWALIndex index : indexes) {
+            if (now - index.getLastSnapshotTimestamp() >= snapshotIntervalMillis) {
+                index.snapshot(fsync);
+            }
+        }
+    }
+
+    private static String snapshotName(VersionedPartitionName versionedPartitionName) throws Exception {
+        return versionedPartitionName.toBase64() + SNAPSHOT_SUFFIX;
     }
 
     @Override
@@ -15,6 +15,7 @@
  */
 package com.jivesoftware.os.amza.api.wal;
 
+import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.stream.FpKeyValueStream;
 import com.jivesoftware.os.amza.api.stream.RowType;
 import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
@@ -24,6 +25,29 @@ public interface PrimaryRowMarshaller {
 
     byte[] toRow(RowType rowType, byte[] key, byte[] value, long timestamp, boolean tombstoned, long version) throws Exception;
 
+    /**
+     * Row types which compress against a per partition dictionary need to know which partition the row belongs to.
+     */
+    byte[] toRow(PartitionName partitionName,
+        RowType rowType,
+        byte[] key,
+        byte[] value,
+        long timestamp,
+        boolean tombstoned,
+        long version) throws Exception;
+
+    /**
+     * Same as the composed key variant but composes the prefix and key directly into the row.
+     */
+    byte[] toRow(PartitionName partitionName,
+        RowType rowType,
+        byte[] prefix,
+        byte[] key,
+        byte[] value,
+        long timestamp,
+        boolean tombstoned,
+        long version) throws Exception;
+
     int maximumSizeInBytes(RowType rowType, int pkSizeInBytes, int valueSizeInBytes);
 
     interface FpRows {
@@ -48,6 +72,8 @@ public interface PrimaryRowMarshaller {
 
     byte[] convert(RowType fromType, byte[] row, RowType toType) throws Exception;
 
+    byte[] convert(PartitionName partitionName, RowType fromType, byte[] row, RowType toType) throws Exception;
+
     boolean fromRows(FpRows fpRows, FpKeyValueStream fpKeyValueStream) throws Exception;
 
     boolean fromRows(TxFpRows txFpRows, TxKeyValueStream txKeyValueStream) throws Exception;
@@ -1,6 +1,7 @@
 package com.jivesoftware.os.amza.api.wal;
 
 import com.jivesoftware.os.amza.api.IoStats;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.api.scan.CompactableWALIndex;
 import com.jivesoftware.os.amza.api.stream.RowType;
@@ -12,6 +13,11 @@ import java.util.concurrent.Callable;
  */
 public interface WALTx {
 
+    /**
+     * Caps how many reads and writes run at once. Safe to change while in use, operations already admitted keep the share they took.
+     */
+    void setConcurrency(int concurrency);
+
     <R> R tx(Tx<R> write) throws Exception;
 
     <R> R readFromTransactionId(long sinceTransactionId, WALReadWithOffset<R> readWithOffset) throws Exception;
@@ -31,19 +37,42 @@ public interface WALTx {
 
     void delete(File baseKey) throws Exception;
 
+    void close() throws Exception;
+
     <I extends CompactableWALIndex> Compacted<I> compact(IoStats ioStats,
         WALCompactionStats compactionStats,
         File fromBaseKey,
         File toBaseKey,
+        PartitionName partitionName,
         RowType compactToRowType,
         long tombstoneTimestampId,
         long tombstoneVersion,
         long ttlTimestampId,
         long ttlVersion,
         long disposalVersion,
+        long archiveTimestampId,
+        Archiver archiver,
         I rowIndex,
         int stripe) throws Exception;
 
+    /**
+     * Receives the surviving rows which compaction moves out of the WAL because they are older than the archive timestamp. Everything
+     * archived must be durable once flush returns, because the compacted WAL which no longer holds those rows is swapped in right after.
+     */
+    interface Archiver {
+
+        void archive(long txId,
+            RowType rowType,
+            byte[] prefix,
+            byte[] key,
+            long valueTimestamp,
+            boolean valueTombstoned,
+            long valueVersion,
+            byte[] row) throws Exception;
+
+        void flush() throws Exception;
+    }
+
     interface EndOfMerge {
 
         byte[] endOfMerge(byte[] raw,
@@ -84,6 +113,7 @@ public interface WALTx {
         public final long tombstoneCount;
         public final long ttlCount;
         public final long disposalCount;
+        public final long archiveCount;
 
         public final long oldestTimestamp;
         public final long oldestVersion;
@@ -100,6 +130,7 @@ public interface WALTx {
             long tombstoneCount,
             long ttlCount,
             long disposalCount,
+            long archiveCount,
             long oldestTimestamp,
             long oldestVersion,
             long oldestTombstonedTimestamp,
@@ -113,6 +144,7 @@ public interface WALTx {
             this.tombstoneCount = tombstoneCount;
             this.ttlCount = ttlCount;
             this.disposalCount = disposalCount;
+            this.archiveCount = archiveCount;
             this.oldestTimestamp = oldestTimestamp;
             this.oldestVersion = oldestVersion;
             this.oldestTombstonedTimestamp = oldestTombstonedTimestamp;
@@ -131,6 +163,7 @@ public interface WALTx {
                 + ", tombstoneCount=" + tombstoneCount
                 + ", ttlCount=" + ttlCount
                 + ", disposalCount=" + disposalCount
+                + ", archiveCount=" + archiveCount
                 + ", duration=" + duration
                 + '}';
         }
@@ -0,0 +1,30 @@
+package com.jivesoftware.os.amza.api;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100_000; i++) {
+            histogram.record(i);
+        }
+
+        Assert.assertEquals(histogram.count(), 100_000);
+        Assert.assertEquals(histogram.max(), 100_000);
+        Assert.assertEquals(histogram.mean(), 50_000.5, 0.001);
+        assertWithin(histogram.percentile(50), 50_000);
+        assertWithin(histogram.percentile(99), 99_000);
+        assertWithin(histogram.percentile(99.9), 99_900);
+        Assert.assertEquals(histogram.percentile(100), 100_000);
+    }
+
+    private static void assertWithin(long actual, long expected) {
+        Assert.assertEquals(actual, expected, expected / 50d, "actual:" + actual + " expected:" + expected);
+    }
+}
@@ -0,0 +1,43 @@
+package com.jivesoftware.os.amza.api.partition;
+
+import java.util.concurrent.Semaphore;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class PerformanceProfileTest {
+
+    @Test
+    public void testPermitsPerOperation() throws Exception {
+        Assert.assertEquals(PerformanceProfile.permitsPerOperation(PerformanceProfile.MAX_CONCURRENCY), 1);
+        Assert.assertEquals(PerformanceProfile.permitsPerOperation(Integer.MAX_VALUE), 1);
+        Assert.assertEquals(PerformanceProfile.permitsPerOperation(0), PerformanceProfile.MAX_CONCURRENCY);
+
+        // a tiny partition admits 16 operations and then queues the 17th
+        Semaphore semaphore = new Semaphore(PerformanceProfile.MAX_CONCURRENCY, true);
+        int permits = PerformanceProfile.permitsPerOperation(PerformanceProfile.tiny.walConcurrency);
+        for (int i = 0; i < PerformanceProfile.tiny.walConcurrency; i++) {
+            Assert.assertTrue(semaphore.tryAcquire(permits));
+        }
+        Assert.assertFalse(semaphore.tryAcquire(permits));
+        semaphore.release(permits * PerformanceProfile.tiny.walConcurrency);
+        Assert.assertTrue(semaphore.tryAcquire(PerformanceProfile.MAX_CONCURRENCY));
+    }
+
+    @Test
+    public void testResolve() throws Exception {
+        PartitionProperties properties = new PartitionProperties();
+        Assert.assertEquals(properties.resolvePerformanceProfile(), PerformanceProfile.standard);
+        Assert.assertFalse(properties.resolveLazyOrderedDelta());
+
+        properties.performanceProfile = PerformanceProfile.write_heavy;
+        Assert.assertTrue(properties.resolveLazyOrderedDelta());
+
+        PartitionProperties copy = properties.copy();
+        Assert.assertEquals(copy, properties);
+        copy.performanceProfile = PerformanceProfile.tiny;
+        Assert.assertFalse(copy.equals(properties));
+    }
+}
@@ -0,0 +1,51 @@
+package com.jivesoftware.os.amza.api.scan;
+
+import com.jivesoftware.os.amza.api.filer.HeapFiler;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class FrontCodedRowsTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[][] prefixes = { null, null, "a".getBytes(), "a".getBytes(), "b".getBytes() };
+        byte[][] keys = { "apple".getBytes(), "applesauce".getBytes(), "app".getBytes(), "banana".getBytes(), new byte[0] };
+        byte[][] values = { "1".getBytes(), null, new byte[0], "4".getBytes(), "5".getBytes() };
+        long[] timestamps = { 1_000L, 999L, Long.MAX_VALUE, -1L, 0L };
+        boolean[] tombstones = { false, true, false, false, true };
+        long[] versions = { 5L, 6L, Long.MIN_VALUE, 7L, 8L };
+
+        HeapFiler filer = new HeapFiler(1024);
+        FrontCodedRows.Writer writer = new FrontCodedRows.Writer(true);
+        for (int i = 0; i < keys.length; i++) {
+            writer.write(filer, prefixes[i], keys[i], values[i], timestamps[i], tombstones[i], versions[i]);
+        }
+
+        HeapFiler in = HeapFiler.fromBytes(filer.copyUsedBytes(), (int) filer.length());
+        FrontCodedRows.Reader reader = new FrontCodedRows.Reader(true);
+        for (int i = 0; i < keys.length; i++) {
+            reader.read(in);
+            Assert.assertEquals(reader.prefix, prefixes[i]);
+            Assert.assertEquals(reader.key, keys[i]);
+            Assert.assertEquals(reader.value, values[i]);
+            Assert.assertEquals(reader.timestamp, timestamps[i]);
+            Assert.assertEquals(reader.tombstoned, tombstones[i]);
+            Assert.assertEquals(reader.version, versions[i]);
+        }
+        Assert.assertEquals(in.getFilePointer(), filer.length());
+    }
+
+    @Test
+    public void testSharedKeysAreSmaller() throws Exception {
+        HeapFiler filer = new HeapFiler(1024);
+        FrontCodedRows.Writer writer = new FrontCodedRows.Writer(false);
+        for (int i = 0; i < 100; i++) {
+            writer.write(filer, "tenant".getBytes(), String.format("some-long-shared-key-%05d", i).getBytes(), null, 1_000L + i, false, 2_000L + i);
+        }
+        // plain encoding is at least 4 + 6 + 4 + 26 + 8 + 1 + 8 bytes per row
+        Assert.assertTrue(filer.length() < 100 * 20, "length:" + filer.length());
+    }
+}
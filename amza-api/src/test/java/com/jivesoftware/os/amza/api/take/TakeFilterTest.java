@@ -0,0 +1,50 @@
+package com.jivesoftware.os.amza.api.take;
+
+import com.jivesoftware.os.amza.api.filer.HeapFiler;
+import java.util.Arrays;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class TakeFilterTest {
+
+    @Test
+    public void testBounds() throws Exception {
+        TakeFilter filter = new TakeFilter(10, 20, -1, 5, null);
+        Assert.assertFalse(filter.isEmpty());
+        Assert.assertFalse(filter.accept(null, "a".getBytes(), 10, 1));
+        Assert.assertTrue(filter.accept(null, "a".getBytes(), 11, 1));
+        Assert.assertTrue(filter.accept(null, "a".getBytes(), 19, 4));
+        Assert.assertFalse(filter.accept(null, "a".getBytes(), 20, 1));
+        Assert.assertFalse(filter.accept(null, "a".getBytes(), 15, 5));
+        Assert.assertTrue(new TakeFilter(-1, -1, -1, -1, null).isEmpty());
+    }
+
+    @Test
+    public void testPrefixes() throws Exception {
+        TakeFilter filter = new TakeFilter(-1, -1, -1, -1, Arrays.asList("user".getBytes(), "doc".getBytes()));
+        Assert.assertTrue(filter.accept("user:1".getBytes(), "key".getBytes(), 0, 0));
+        Assert.assertTrue(filter.accept(null, "document:1".getBytes(), 0, 0));
+        Assert.assertFalse(filter.accept("us".getBytes(), "user:1".getBytes(), 0, 0));
+        Assert.assertFalse(filter.accept(null, "blog:1".getBytes(), 0, 0));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        TakeFilter filter = new TakeFilter(1, 2, 3, 4, Arrays.asList("a".getBytes(), "bc".getBytes()));
+        HeapFiler filer = new HeapFiler(128);
+        byte[] lengthBuffer = new byte[8];
+        filter.write(filer, lengthBuffer);
+        filer.seek(0);
+        TakeFilter read = TakeFilter.read(filer, lengthBuffer);
+        Assert.assertEquals(read.minTimestamp, 1);
+        Assert.assertEquals(read.maxTimestamp, 2);
+        Assert.assertEquals(read.minVersion, 3);
+        Assert.assertEquals(read.maxVersion, 4);
+        Assert.assertEquals(read.prefixes.size(), 2);
+        Assert.assertEquals(read.prefixes.get(0), "a".getBytes());
+        Assert.assertEquals(read.prefixes.get(1), "bc".getBytes());
+    }
+}
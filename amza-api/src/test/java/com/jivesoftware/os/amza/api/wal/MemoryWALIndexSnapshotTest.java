@@ -0,0 +1,75 @@
+package com.jivesoftware.os.amza.api.wal;
+
+import com.google.common.io.Files;
+import java.io.File;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class MemoryWALIndexSnapshotTest {
+
+    @Test
+    public void testSnapshotRoundTrip() throws Exception {
+        File[] dirs = { Files.createTempDir() };
+        MemoryWALIndex index = new MemoryWALIndex("memory", 8, 0, dirs, "test.snapshot");
+        Assert.assertFalse(index.snapshot(true), "Nothing merged yet");
+
+        index.merge(stream -> {
+            for (int i = 0; i < 100; i++) {
+                byte[] prefix = (i % 2 == 0) ? "p".getBytes() : null;
+                if (!stream.stream(i, prefix, ("key" + i).getBytes(), new byte[] { (byte) i }, 1_000L + i, i % 10 == 0, 2_000L + i, 10L * i)) {
+                    return false;
+                }
+            }
+            return true;
+        }, null);
+        Assert.assertTrue(index.snapshot(true));
+        Assert.assertFalse(index.snapshot(true), "Nothing merged since the last snapshot");
+
+        MemoryWALIndex loaded = new MemoryWALIndex("memory", 8, 0, dirs, "test.snapshot");
+        Assert.assertEquals(loaded.loadSnapshot(), 99L);
+        Assert.assertEquals(loaded.getSnapshotTxId(), 99L);
+        for (int i = 0; i < 100; i++) {
+            int expected = i;
+            byte[] prefix = (i % 2 == 0) ? "p".getBytes() : null;
+            loaded.getPointer(prefix, ("key" + i).getBytes(), (p, k, timestamp, tombstoned, version, fp, hasValue, value) -> {
+                Assert.assertEquals(timestamp, 1_000L + expected);
+                Assert.assertEquals(tombstoned, expected % 10 == 0);
+                Assert.assertEquals(version, 2_000L + expected);
+                Assert.assertEquals(fp, 10L * expected);
+                Assert.assertTrue(hasValue);
+                Assert.assertEquals(value, new byte[] { (byte) expected });
+                return true;
+            });
+        }
+        int[] prefixed = { 0 };
+        loaded.takePrefixUpdatesSince("p".getBytes(), -1, (txId, fp, hasValue, value) -> {
+            prefixed[0]++;
+            return true;
+        });
+        Assert.assertEquals(prefixed[0], 50);
+
+        loaded.discardSnapshot();
+        Assert.assertFalse(loaded.exists());
+        Assert.assertEquals(new MemoryWALIndex("memory", 8, 0, dirs, "test.snapshot").loadSnapshot(), -1L);
+    }
+
+    @Test
+    public void testCorruptSnapshotIsIgnored() throws Exception {
+        File[] dirs = { Files.createTempDir() };
+        MemoryWALIndex index = new MemoryWALIndex("memory", 8, 0, dirs, "test.snapshot");
+        index.merge(stream -> stream.stream(1L, null, "key".getBytes(), null, 1L, false, 1L, 0L), null);
+        Assert.assertTrue(index.snapshot(false));
+
+        File file = new File(dirs[0], "test.snapshot");
+        byte[] bytes = Files.toByteArray(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(bytes, file);
+
+        MemoryWALIndex loaded = new MemoryWALIndex("memory", 8, 0, dirs, "test.snapshot");
+        Assert.assertEquals(loaded.loadSnapshot(), -1L);
+        Assert.assertFalse(loaded.exists());
+    }
+}
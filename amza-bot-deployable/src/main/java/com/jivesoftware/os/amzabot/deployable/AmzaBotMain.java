@@ -13,9 +13,12 @@ import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotCoalmineConfig;
 import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotCoalmineService;
 import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotRandomOpConfig;
 import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotRandomOpService;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkloadConfig;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkloadService;
 import com.jivesoftware.os.amzabot.deployable.endpoint.AmzaBotCoalmineEndpoints;
 import com.jivesoftware.os.amzabot.deployable.endpoint.AmzaBotEndpoints;
 import com.jivesoftware.os.amzabot.deployable.endpoint.AmzaBotRandomOpEndpoints;
+import com.jivesoftware.os.amzabot.deployable.endpoint.AmzaBotWorkloadEndpoints;
 import com.jivesoftware.os.amzabot.deployable.ui.amzabot.AmzaBotUIEndpoints;
 import com.jivesoftware.os.amzabot.deployable.ui.amzabot.AmzaBotUIInitializer;
 import com.jivesoftware.os.amzabot.deployable.ui.amzabot.AmzaBotUIInitializer.AmzaBotUIServiceConfig;
@@ -115,6 +118,7 @@ public class AmzaBotMain {
             AmzaBotConfig amzaBotConfig = configBinder.bind(AmzaBotConfig.class);
             AmzaBotCoalmineConfig amzaBotCoalmineConfig = configBinder.bind(AmzaBotCoalmineConfig.class);
             AmzaBotRandomOpConfig amzaBotRandomOpConfig = configBinder.bind(AmzaBotRandomOpConfig.class);
+            AmzaBotWorkloadConfig amzaBotWorkloadConfig = configBinder.bind(AmzaBotWorkloadConfig.class);
 
             TailAtScaleStrategy tailAtScaleStrategy = new TailAtScaleStrategy(
                 deployable.newBoundedExecutor(1024, "tas"),
@@ -172,10 +176,18 @@ public class AmzaBotMain {
                 amzaKeyClearingHousePool);
             amzaBotCoalmineService.start();
 
+            AmzaBotWorkloadService amzaBotWorkloadService = new AmzaBotWorkloadService(
+                amzaBotConfig,
+                amzaBotWorkloadConfig,
+                amzaClientProvider,
+                new OrderIdProviderImpl(new ConstantWriterIdProvider(instanceConfig.getInstanceName())),
+                objectMapper);
+            amzaBotWorkloadService.start();
+
             String cacheToken = String.valueOf(System.currentTimeMillis());
             AmzaBotUIServiceConfig amzabotUIServiceConfig = deployable.config(AmzaBotUIServiceConfig.class);
             AmzaBotUIService amzabotUIService = new AmzaBotUIInitializer()
-                .initialize(cacheToken, amzabotUIServiceConfig);
+                .initialize(cacheToken, amzabotUIServiceConfig, amzaBotWorkloadService);
 
             UiServiceConfig uiServiceConfig = deployable.config(UiServiceConfig.class);
             UiService uiService = new UiServiceInitializer().initialize(cacheToken, uiServiceConfig);
@@ -189,10 +201,12 @@ public class AmzaBotMain {
             deployable.addInjectables(AmzaBotService.class, amzaBotService);
             deployable.addInjectables(AmzaBotRandomOpService.class, amzaBotRandomOpService);
             deployable.addInjectables(AmzaBotCoalmineService.class, amzaBotCoalmineService);
+            deployable.addInjectables(AmzaBotWorkloadService.class, amzaBotWorkloadService);
 
             deployable.addEndpoints(AmzaBotEndpoints.class);
             deployable.addEndpoints(AmzaBotRandomOpEndpoints.class);
             deployable.addEndpoints(AmzaBotCoalmineEndpoints.class);
+            deployable.addEndpoints(AmzaBotWorkloadEndpoints.class);
 
             deployable.addEndpoints(AmzaBotUIEndpoints.class);
             deployable.addInjectables(AmzaBotUIService.class, amzabotUIService);
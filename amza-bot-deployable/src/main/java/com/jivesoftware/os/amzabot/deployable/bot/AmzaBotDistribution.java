@@ -0,0 +1,11 @@
+package com.jivesoftware.os.amzabot.deployable.bot;
+
+import java.util.Random;
+
+/**
+ * Picks key indexes and value sizes for a workload, see {@link AmzaBotDistributions}.
+ */
+public interface AmzaBotDistribution {
+
+    long next(Random random);
+}
@@ -0,0 +1,112 @@
+package com.jivesoftware.os.amzabot.deployable.bot;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Distributions for picking key indexes and value sizes. Zipfian picks follow the generator from Gray et al., "Quickly Generating
+ * Billion-Record Synthetic Databases", as popularized by YCSB.
+ */
+public class AmzaBotDistributions {
+
+    private AmzaBotDistributions() {
+    }
+
+    public static AmzaBotDistribution constant(long value) {
+        return random -> value;
+    }
+
+    /**
+     * @return picks in [min, max]
+     */
+    public static AmzaBotDistribution uniform(long min, long max) {
+        long range = max - min + 1;
+        return random -> min + (long) (random.nextDouble() * range);
+    }
+
+    /**
+     * @return picks in [min, max], favoring min
+     */
+    public static AmzaBotDistribution zipfian(long min, long max, double theta) {
+        Zipfian zipfian = new Zipfian(max - min + 1, theta);
+        return random -> min + zipfian.next(random);
+    }
+
+    /**
+     * @return picks in [0, count) where popular items are scattered across the range instead of clustered at its start
+     */
+    public static AmzaBotDistribution scrambledZipfian(long count, double theta) {
+        Zipfian zipfian = new Zipfian(count, theta);
+        return random -> Math.floorMod(fnv64(zipfian.next(random)), count);
+    }
+
+    /**
+     * @return picks in [0, count) where hotOpnFraction of picks land in the first hotSetFraction of the range
+     */
+    public static AmzaBotDistribution hotspot(long count, double hotSetFraction, double hotOpnFraction) {
+        long hot = Math.max(1, Math.min(count, (long) (count * hotSetFraction)));
+        return random -> {
+            if (hot == count || random.nextDouble() < hotOpnFraction) {
+                return (long) (random.nextDouble() * hot);
+            }
+            return hot + (long) (random.nextDouble() * (count - hot));
+        };
+    }
+
+    /**
+     * @return picks in [0, latest] favoring the most recently inserted index
+     */
+    public static AmzaBotDistribution latest(AtomicLong latest, long count, double theta) {
+        Zipfian zipfian = new Zipfian(count, theta);
+        return random -> Math.max(0, latest.get() - zipfian.next(random));
+    }
+
+    static long fnv64(long value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < 8; i++) {
+            hash ^= value & 0xFF;
+            hash *= 0x100000001B3L;
+            value >>>= 8;
+        }
+        return hash;
+    }
+
+    static class Zipfian {
+
+        private final long count;
+        private final double theta;
+        private final double zetan;
+        private final double alpha;
+        private final double eta;
+        private final double halfPowTheta;
+
+        Zipfian(long count, double theta) {
+            this.count = count;
+            this.theta = theta;
+            this.zetan = zeta(count, theta);
+            this.alpha = 1.0 / (1.0 - theta);
+            this.eta = (1 - Math.pow(2.0 / count, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+            this.halfPowTheta = Math.pow(0.5, theta);
+        }
+
+        long next(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            if (uz < 1.0) {
+                return 0;
+            }
+            if (uz < 1.0 + halfPowTheta) {
+                return Math.min(1, count - 1);
+            }
+            return Math.min(count - 1, (long) (count * Math.pow(eta * u - eta + 1, alpha)));
+        }
+
+        private static double zeta(long count, double theta) {
+            double sum = 0;
+            for (long i = 1; i <= count; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+    }
+}
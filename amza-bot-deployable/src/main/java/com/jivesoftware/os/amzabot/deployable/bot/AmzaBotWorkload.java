@@ -0,0 +1,338 @@
+package com.jivesoftware.os.amzabot.deployable.bot;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jivesoftware.os.amza.api.LatencyHistogram;
+import com.jivesoftware.os.amza.api.PartitionClient;
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.stream.TxKeyValueStream.TxResult;
+import com.jivesoftware.os.amza.api.take.TakeResult;
+import com.jivesoftware.os.amzabot.deployable.AmzaBotConfig;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkloadResult.Latency;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkloadResult.OpResult;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a YCSB style mix of reads, writes, scans and takes against a single partition.
+ *
+ * When a target rate is configured the workload runs open loop: every thread works through a fixed schedule of intended start times
+ * and an operation which falls behind its schedule is sent immediately rather than dropped. Response latency is measured from the
+ * intended start, so a stalled server is charged for every operation that queued up behind the stall instead of hiding it
+ * (coordinated omission). With no target rate the threads run closed loop and both latencies are the same.
+ */
+public class AmzaBotWorkload {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private static final int PRELOAD_BATCH_SIZE = 1_000;
+
+    enum Op {
+        read, write, scan, take
+    }
+
+    private final AmzaBotWorkloadConfig config;
+    private final AmzaBotConfig amzaBotConfig;
+    private final PartitionClient partitionClient;
+    private final OrderIdProvider orderIdProvider;
+    private final Consistency consistency;
+
+    private final int[] opWeights = new int[Op.values().length];
+    private final int totalWeight;
+    private final boolean insertOnWrite;
+    private final AtomicLong latestKey;
+    private final AmzaBotDistribution keyDistribution;
+    private final AmzaBotDistribution valueSizeDistribution;
+
+    private final LatencyHistogram[] serviceLatency = new LatencyHistogram[Op.values().length];
+    private final LatencyHistogram[] responseLatency = new LatencyHistogram[Op.values().length];
+    private final LongAdder[] errors = new LongAdder[Op.values().length];
+    private final Map<RingMember, Long> takeCursor = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile long measureFromNanos;
+    private volatile long measureToNanos;
+
+    public AmzaBotWorkload(AmzaBotWorkloadConfig config,
+        AmzaBotConfig amzaBotConfig,
+        PartitionClient partitionClient,
+        OrderIdProvider orderIdProvider) {
+        this.config = config;
+        this.amzaBotConfig = amzaBotConfig;
+        this.partitionClient = partitionClient;
+        this.orderIdProvider = orderIdProvider;
+        this.consistency = Consistency.valueOf(config.getConsistency());
+
+        opWeights[Op.read.ordinal()] = Math.max(0, config.getReadWeight());
+        opWeights[Op.write.ordinal()] = Math.max(0, config.getWriteWeight());
+        opWeights[Op.scan.ordinal()] = Math.max(0, config.getScanWeight());
+        opWeights[Op.take.ordinal()] = Math.max(0, config.getTakeWeight());
+        int total = 0;
+        for (int weight : opWeights) {
+            total += weight;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Workload needs at least one operation with a positive weight");
+        }
+        this.totalWeight = total;
+
+        long keyCount = Math.max(1, config.getKeyCount());
+        this.latestKey = new AtomicLong(keyCount - 1);
+        String keys = config.getKeyDistribution();
+        this.insertOnWrite = "latest".equals(keys);
+        if ("uniform".equals(keys)) {
+            keyDistribution = AmzaBotDistributions.uniform(0, keyCount - 1);
+        } else if ("zipfian".equals(keys)) {
+            keyDistribution = AmzaBotDistributions.scrambledZipfian(keyCount, config.getZipfianTheta());
+        } else if ("hotspot".equals(keys)) {
+            keyDistribution = AmzaBotDistributions.hotspot(keyCount, config.getHotSetFraction(), config.getHotOpnFraction());
+        } else if ("latest".equals(keys)) {
+            keyDistribution = AmzaBotDistributions.latest(latestKey, keyCount, config.getZipfianTheta());
+        } else {
+            throw new IllegalArgumentException("Unsupported key distribution: " + keys);
+        }
+
+        int minSize = Math.max(0, config.getValueSizeMin());
+        int maxSize = Math.max(minSize, config.getValueSizeMax());
+        String sizes = config.getValueSizeDistribution();
+        if ("constant".equals(sizes)) {
+            valueSizeDistribution = AmzaBotDistributions.constant(maxSize);
+        } else if ("uniform".equals(sizes)) {
+            valueSizeDistribution = AmzaBotDistributions.uniform(minSize, maxSize);
+        } else if ("zipfian".equals(sizes)) {
+            valueSizeDistribution = AmzaBotDistributions.zipfian(minSize, maxSize, config.getZipfianTheta());
+        } else {
+            throw new IllegalArgumentException("Unsupported value size distribution: " + sizes);
+        }
+
+        for (int i = 0; i < serviceLatency.length; i++) {
+            serviceLatency[i] = new LatencyHistogram();
+            responseLatency[i] = new LatencyHistogram();
+            errors[i] = new LongAdder();
+        }
+    }
+
+    public void preload() throws Exception {
+        long keyCount = Math.max(1, config.getKeyCount());
+        Random random = new Random();
+        LOG.info("Preloading {} workload keys", keyCount);
+        for (long from = 0; from < keyCount; from += PRELOAD_BATCH_SIZE) {
+            long batchFrom = from;
+            long batchTo = Math.min(keyCount, from + PRELOAD_BATCH_SIZE);
+            partitionClient.commit(consistency,
+                null,
+                commitKeyValueStream -> {
+                    for (long i = batchFrom; i < batchTo; i++) {
+                        if (!commitKeyValueStream.commit(key(i), value(random), orderIdProvider.nextId(), false)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                },
+                amzaBotConfig.getAdditionalSolverAfterNMillis(),
+                amzaBotConfig.getAbandonSolutionAfterNMillis(),
+                Optional.empty());
+        }
+    }
+
+    /**
+     * Runs the workload until the configured duration has elapsed or {@link #stop()} is called.
+     */
+    public void run() throws Exception {
+        int threads = Math.max(1, config.getThreads());
+        long intervalNanos = config.getTargetOpsPerSecond() > 0 ? TimeUnit.SECONDS.toNanos(threads) / config.getTargetOpsPerSecond() : 0;
+        long startNanos = System.nanoTime();
+        long endNanos = config.getDurationSeconds() > 0 ? startNanos + TimeUnit.SECONDS.toNanos(config.getDurationSeconds()) : Long.MAX_VALUE;
+        measureFromNanos = startNanos + TimeUnit.SECONDS.toNanos(Math.max(0, config.getWarmupSeconds()));
+        measureToNanos = 0;
+        running.set(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setNameFormat("amzabot-workload-%d").build());
+        try {
+            List<Future<?>> futures = Lists.newArrayListWithCapacity(threads);
+            for (int i = 0; i < threads; i++) {
+                // stagger the threads so the schedule is spread evenly across each interval
+                long firstNanos = startNanos + intervalNanos * i / threads;
+                futures.add(executor.submit(() -> {
+                    worker(firstNanos, intervalNanos, endNanos);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            running.set(false);
+            measureToNanos = System.nanoTime();
+            executor.shutdownNow();
+        }
+    }
+
+    public void stop() {
+        running.set(false);
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    private void worker(long firstNanos, long intervalNanos, long endNanos) {
+        Random random = new Random();
+        long intendedNanos = firstNanos;
+        while (running.get()) {
+            if (intervalNanos > 0) {
+                long now = System.nanoTime();
+                if (intendedNanos > now) {
+                    LockSupport.parkNanos(intendedNanos - now);
+                    continue;
+                }
+            } else {
+                intendedNanos = System.nanoTime();
+            }
+            if (intendedNanos >= endNanos) {
+                break;
+            }
+
+            Op op = pickOp(random);
+            long startNanos = System.nanoTime();
+            boolean failed = false;
+            try {
+                execute(op, random);
+            } catch (Exception x) {
+                failed = true;
+                LOG.warn("Workload {} failed: {}", op, x.getMessage());
+            }
+            long doneNanos = System.nanoTime();
+
+            if (intendedNanos >= measureFromNanos) {
+                if (failed) {
+                    errors[op.ordinal()].increment();
+                } else {
+                    serviceLatency[op.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(doneNanos - startNanos));
+                    responseLatency[op.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(doneNanos - intendedNanos));
+                }
+            }
+            intendedNanos += intervalNanos;
+        }
+    }
+
+    Op pickOp(Random random) {
+        int pick = random.nextInt(totalWeight);
+        for (Op op : Op.values()) {
+            pick -= opWeights[op.ordinal()];
+            if (pick < 0) {
+                return op;
+            }
+        }
+        throw new IllegalStateException("Weights changed under the workload");
+    }
+
+    private void execute(Op op, Random random) throws Exception {
+        if (op == Op.read) {
+            byte[] key = key(keyDistribution.next(random));
+            partitionClient.get(consistency,
+                null,
+                keyStream -> keyStream.stream(key),
+                (prefix, streamKey, value, timestamp, version) -> true,
+                amzaBotConfig.getAdditionalSolverAfterNMillis(),
+                amzaBotConfig.getAbandonLeaderSolutionAfterNMillis(),
+                amzaBotConfig.getAbandonSolutionAfterNMillis(),
+                Optional.empty());
+        } else if (op == Op.write) {
+            byte[] key = key(insertOnWrite ? latestKey.incrementAndGet() : keyDistribution.next(random));
+            byte[] value = value(random);
+            partitionClient.commit(consistency,
+                null,
+                commitKeyValueStream -> commitKeyValueStream.commit(key, value, orderIdProvider.nextId(), false),
+                amzaBotConfig.getAdditionalSolverAfterNMillis(),
+                amzaBotConfig.getAbandonSolutionAfterNMillis(),
+                Optional.empty());
+        } else if (op == Op.scan) {
+            byte[] fromKey = key(keyDistribution.next(random));
+            int[] remaining = { Math.max(1, config.getScanLength()) };
+            partitionClient.scan(consistency,
+                false,
+                stream -> stream.stream(null, fromKey, null, null),
+                (prefix, key, value, timestamp, version) -> --remaining[0] > 0,
+                amzaBotConfig.getAdditionalSolverAfterNMillis(),
+                amzaBotConfig.getAbandonLeaderSolutionAfterNMillis(),
+                amzaBotConfig.getAbandonSolutionAfterNMillis(),
+                Optional.empty());
+        } else {
+            int[] remaining = { Math.max(1, config.getScanLength()) };
+            TakeResult takeResult = partitionClient.takeFromTransactionId(null,
+                takeCursor,
+                remaining[0],
+                highwater -> {
+                },
+                (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> --remaining[0] > 0 ? TxResult.MORE : TxResult.ACCEPT_AND_STOP,
+                amzaBotConfig.getAdditionalSolverAfterNMillis(),
+                amzaBotConfig.getAbandonSolutionAfterNMillis(),
+                Optional.empty());
+            if (takeResult.tookToEnd != null) {
+                // start over so every take keeps reading rows instead of idling at the tail
+                takeCursor.clear();
+            } else if (takeResult.tookFrom != null) {
+                takeCursor.merge(takeResult.tookFrom, takeResult.lastTxId, Math::max);
+            }
+        }
+    }
+
+    public AmzaBotWorkloadResult result() {
+        long toNanos = running.get() || measureToNanos == 0 ? System.nanoTime() : measureToNanos;
+        long elapsedNanos = Math.max(0, toNanos - measureFromNanos);
+        double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+
+        List<OpResult> ops = Lists.newArrayList();
+        long total = 0;
+        for (Op op : Op.values()) {
+            if (opWeights[op.ordinal()] == 0) {
+                continue;
+            }
+            long count = serviceLatency[op.ordinal()].count();
+            total += count;
+            ops.add(new OpResult(op.name(),
+                count,
+                errors[op.ordinal()].sum(),
+                seconds > 0 ? count / seconds : 0,
+                Latency.of(serviceLatency[op.ordinal()]),
+                Latency.of(responseLatency[op.ordinal()])));
+        }
+        return new AmzaBotWorkloadResult(config.getKeyDistribution(),
+            config.getValueSizeDistribution(),
+            config.getConsistency(),
+            config.getThreads(),
+            config.getTargetOpsPerSecond(),
+            running.get(),
+            TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+            seconds > 0 ? total / seconds : 0,
+            ops);
+    }
+
+    static byte[] key(long index) {
+        return String.format("%019d", index).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] value(Random random) {
+        byte[] value = new byte[(int) valueSizeDistribution.next(random)];
+        random.nextBytes(value);
+        return value;
+    }
+}
@@ -0,0 +1,108 @@
+package com.jivesoftware.os.amzabot.deployable.bot;
+
+import org.merlin.config.Config;
+import org.merlin.config.defaults.BooleanDefault;
+import org.merlin.config.defaults.DoubleDefault;
+import org.merlin.config.defaults.IntDefault;
+import org.merlin.config.defaults.LongDefault;
+import org.merlin.config.defaults.StringDefault;
+
+public interface AmzaBotWorkloadConfig extends Config {
+
+    @BooleanDefault(false)
+    boolean getEnabled();
+    void setEnabled(boolean value);
+
+    // relative weights of the operation mix
+    @IntDefault(50)
+    int getReadWeight();
+    void setReadWeight(int value);
+
+    @IntDefault(50)
+    int getWriteWeight();
+    void setWriteWeight(int value);
+
+    @IntDefault(0)
+    int getScanWeight();
+    void setScanWeight(int value);
+
+    @IntDefault(0)
+    int getTakeWeight();
+    void setTakeWeight(int value);
+
+    @LongDefault(100_000L)
+    long getKeyCount();
+    void setKeyCount(long value);
+
+    @BooleanDefault(true)
+    boolean getPreload();
+    void setPreload(boolean value);
+
+    // uniform, zipfian, hotspot or latest
+    @StringDefault("zipfian")
+    String getKeyDistribution();
+    void setKeyDistribution(String value);
+
+    @DoubleDefault(0.99)
+    double getZipfianTheta();
+    void setZipfianTheta(double value);
+
+    @DoubleDefault(0.2)
+    double getHotSetFraction();
+    void setHotSetFraction(double value);
+
+    @DoubleDefault(0.8)
+    double getHotOpnFraction();
+    void setHotOpnFraction(double value);
+
+    // constant, uniform or zipfian
+    @StringDefault("uniform")
+    String getValueSizeDistribution();
+    void setValueSizeDistribution(String value);
+
+    @IntDefault(100)
+    int getValueSizeMin();
+    void setValueSizeMin(int value);
+
+    @IntDefault(1_000)
+    int getValueSizeMax();
+    void setValueSizeMax(int value);
+
+    @IntDefault(100)
+    int getScanLength();
+    void setScanLength(int value);
+
+    @StringDefault("fsync_async")
+    String getDurability();
+    void setDurability(String value);
+
+    @StringDefault("leader_quorum")
+    String getConsistency();
+    void setConsistency(String value);
+
+    @IntDefault(3)
+    int getRingSize();
+    void setRingSize(int value);
+
+    @IntDefault(8)
+    int getThreads();
+    void setThreads(int value);
+
+    // 0 runs closed loop, as fast as the threads can go
+    @IntDefault(1_000)
+    int getTargetOpsPerSecond();
+    void setTargetOpsPerSecond(int value);
+
+    @IntDefault(300)
+    int getDurationSeconds();
+    void setDurationSeconds(int value);
+
+    @IntDefault(30)
+    int getWarmupSeconds();
+    void setWarmupSeconds(int value);
+
+    @StringDefault("")
+    String getResultFile();
+    void setResultFile(String value);
+
+}
@@ -0,0 +1,103 @@
+package com.jivesoftware.os.amzabot.deployable.bot;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.jivesoftware.os.amza.api.LatencyHistogram;
+import java.util.List;
+
+/**
+ * A snapshot of a workload run. Latencies are in microseconds, service latency is measured from when an operation was actually sent
+ * while response latency is measured from when it was scheduled to be sent, so it includes the time spent waiting behind slow operations.
+ */
+public class AmzaBotWorkloadResult {
+
+    public final String keyDistribution;
+    public final String valueSizeDistribution;
+    public final String consistency;
+    public final int threads;
+    public final int targetOpsPerSecond;
+    public final boolean running;
+    public final long elapsedMillis;
+    public final double opsPerSecond;
+    public final List<OpResult> ops;
+
+    @JsonCreator
+    public AmzaBotWorkloadResult(@JsonProperty("keyDistribution") String keyDistribution,
+        @JsonProperty("valueSizeDistribution") String valueSizeDistribution,
+        @JsonProperty("consistency") String consistency,
+        @JsonProperty("threads") int threads,
+        @JsonProperty("targetOpsPerSecond") int targetOpsPerSecond,
+        @JsonProperty("running") boolean running,
+        @JsonProperty("elapsedMillis") long elapsedMillis,
+        @JsonProperty("opsPerSecond") double opsPerSecond,
+        @JsonProperty("ops") List<OpResult> ops) {
+        this.keyDistribution = keyDistribution;
+        this.valueSizeDistribution = valueSizeDistribution;
+        this.consistency = consistency;
+        this.threads = threads;
+        this.targetOpsPerSecond = targetOpsPerSecond;
+        this.running = running;
+        this.elapsedMillis = elapsedMillis;
+        this.opsPerSecond = opsPerSecond;
+        this.ops = ops;
+    }
+
+    public static class OpResult {
+
+        public final String op;
+        public final long count;
+        public final long errors;
+        public final double opsPerSecond;
+        public final Latency service;
+        public final Latency response;
+
+        @JsonCreator
+        public OpResult(@JsonProperty("op") String op,
+            @JsonProperty("count") long count,
+            @JsonProperty("errors") long errors,
+            @JsonProperty("opsPerSecond") double opsPerSecond,
+            @JsonProperty("service") Latency service,
+            @JsonProperty("response") Latency response) {
+            this.op = op;
+            this.count = count;
+            this.errors = errors;
+            this.opsPerSecond = opsPerSecond;
+            this.service = service;
+            this.response = response;
+        }
+    }
+
+    public static class Latency {
+
+        public final double mean;
+        public final long p50;
+        public final long p90;
+        public final long p99;
+        public final long p999;
+        public final long max;
+
+        @JsonCreator
+        public Latency(@JsonProperty("mean") double mean,
+            @JsonProperty("p50") long p50,
+            @JsonProperty("p90") long p90,
+            @JsonProperty("p99") long p99,
+            @JsonProperty("p999") long p999,
+            @JsonProperty("max") long max) {
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        static Latency of(LatencyHistogram histogram) {
+            return new Latency(histogram.mean(),
+                histogram.percentile(50),
+                histogram.percentile(90),
+                histogram.percentile(99),
+                histogram.percentile(99.9),
+                histogram.max());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.jivesoftware.os.amzabot.deployable.bot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jivesoftware.os.amza.api.PartitionClient;
+import com.jivesoftware.os.amza.api.PartitionClientProvider;
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import com.jivesoftware.os.amza.api.partition.Durability;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amzabot.deployable.AmzaBotConfig;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs one {@link AmzaBotWorkload} at a time against whichever cluster the partition client provider talks to, and keeps the result of
+ * the last completed run around for the UI, the endpoints and the optional result file.
+ */
+public class AmzaBotWorkloadService {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final AmzaBotConfig amzaBotConfig;
+    private final AmzaBotWorkloadConfig config;
+    private final PartitionClientProvider partitionClientProvider;
+    private final OrderIdProvider orderIdProvider;
+    private final ObjectMapper mapper;
+
+    private final ExecutorService processor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("amzabot-workload-runner-%d").build());
+
+    private volatile AmzaBotWorkload current;
+    private volatile AmzaBotWorkloadResult last;
+
+    public AmzaBotWorkloadService(AmzaBotConfig amzaBotConfig,
+        AmzaBotWorkloadConfig config,
+        PartitionClientProvider partitionClientProvider,
+        OrderIdProvider orderIdProvider,
+        ObjectMapper mapper) {
+        this.amzaBotConfig = amzaBotConfig;
+        this.config = config;
+        this.partitionClientProvider = partitionClientProvider;
+        this.orderIdProvider = orderIdProvider;
+        this.mapper = mapper;
+    }
+
+    public AmzaBotWorkloadConfig getConfig() {
+        return config;
+    }
+
+    public void start() {
+        if (!config.getEnabled()) {
+            LOG.warn("Not starting workload; not enabled.");
+            return;
+        }
+
+        try {
+            startWorkload();
+        } catch (Exception e) {
+            LOG.error("Error occurred starting workload.", e);
+        }
+    }
+
+    /**
+     * @return false if a workload is already running
+     */
+    public synchronized boolean startWorkload() throws Exception {
+        if (current != null && current.isRunning()) {
+            return false;
+        }
+
+        LOG.info("Workload mix: {} reads, {} writes, {} scans, {} takes",
+            config.getReadWeight(), config.getWriteWeight(), config.getScanWeight(), config.getTakeWeight());
+        LOG.info("Key distribution: {} over {} keys", config.getKeyDistribution(), config.getKeyCount());
+        LOG.info("Value size distribution: {} [{}, {}]", config.getValueSizeDistribution(), config.getValueSizeMin(), config.getValueSizeMax());
+        LOG.info("Target: {} ops/sec across {} threads for {}s", config.getTargetOpsPerSecond(), config.getThreads(), config.getDurationSeconds());
+
+        AmzaBotWorkload workload = new AmzaBotWorkload(config, amzaBotConfig, partitionClient(), orderIdProvider);
+        current = workload;
+        processor.submit(() -> {
+            try {
+                if (config.getPreload()) {
+                    workload.preload();
+                }
+                workload.run();
+            } catch (Exception e) {
+                LOG.error("Error occurred running workload.", e);
+            } finally {
+                last = workload.result();
+                writeResult(last);
+            }
+            return null;
+        });
+        return true;
+    }
+
+    public void stopWorkload() {
+        AmzaBotWorkload workload = current;
+        if (workload != null) {
+            workload.stop();
+        }
+    }
+
+    /**
+     * @return the progress of the running workload, or the result of the last run, or null if nothing has run yet
+     */
+    public AmzaBotWorkloadResult getResult() {
+        AmzaBotWorkload workload = current;
+        if (workload != null && workload.isRunning()) {
+            return workload.result();
+        }
+        return last;
+    }
+
+    public void stop() {
+        stopWorkload();
+        processor.shutdownNow();
+    }
+
+    private PartitionClient partitionClient() throws Exception {
+        PartitionProperties partitionProperties = new PartitionProperties(
+            Durability.valueOf(config.getDurability()),
+            0,
+            0,
+            0,
+            0,
+            0,
+            0,
+            0,
+            0,
+            false,
+            Consistency.valueOf(config.getConsistency()),
+            true,
+            true,
+            false,
+            RowType.snappy_primary,
+            "lab",
+            -1,
+            null,
+            -1,
+            -1);
+
+        PartitionName partitionName = new PartitionName(false,
+            ("amzabot").getBytes(StandardCharsets.UTF_8),
+            ("amzabot-workload-" + UUID.randomUUID().toString()).getBytes(StandardCharsets.UTF_8));
+
+        return partitionClientProvider.getPartition(partitionName, config.getRingSize(), partitionProperties);
+    }
+
+    private void writeResult(AmzaBotWorkloadResult result) {
+        String resultFile = config.getResultFile();
+        if (resultFile == null || resultFile.isEmpty()) {
+            return;
+        }
+        try {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(new File(resultFile), result);
+            LOG.info("Wrote workload result to {}", resultFile);
+        } catch (Exception e) {
+            LOG.error("Error occurred writing workload result to {}", new Object[] { resultFile }, e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.jivesoftware.os.amzabot.deployable.endpoint;
+
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkloadResult;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkloadService;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import io.swagger.annotations.Api;
+import javax.inject.Singleton;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+@Api(value = "Amza Bot Workload")
+@Singleton
+@Path("/api/amzabot/v1")
+public class AmzaBotWorkloadEndpoints {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private final AmzaBotWorkloadService service;
+
+    public AmzaBotWorkloadEndpoints(@Context AmzaBotWorkloadService service) {
+        this.service = service;
+    }
+
+    @GET
+    @Path("/workload")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getWorkload() {
+        AmzaBotWorkloadResult result = service.getResult();
+        if (result == null) {
+            return Response.noContent().build();
+        }
+        return Response.ok(result, MediaType.APPLICATION_JSON).build();
+    }
+
+    @POST
+    @Path("/workload/start")
+    public Response startWorkload() {
+        try {
+            if (service.startWorkload()) {
+                return Response.accepted().build();
+            }
+            return Response.status(Response.Status.CONFLICT).build();
+        } catch (Exception e) {
+            LOG.error("Error occurred starting workload.", e);
+            return Response.serverError().build();
+        }
+    }
+
+    @POST
+    @Path("/workload/stop")
+    public Response stopWorkload() {
+        service.stopWorkload();
+        return Response.accepted().build();
+    }
+
+}
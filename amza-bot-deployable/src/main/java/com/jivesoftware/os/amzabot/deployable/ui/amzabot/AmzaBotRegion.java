@@ -1,11 +1,17 @@
 package com.jivesoftware.os.amzabot.deployable.ui.amzabot;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.jivesoftware.os.amzabot.deployable.AmzaBotService;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkloadResult;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkloadResult.Latency;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkloadResult.OpResult;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkloadService;
 import com.jivesoftware.os.amzabot.deployable.ui.SoyRenderer;
 import com.jivesoftware.os.amzabot.deployable.ui.UiPageRegion;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.List;
 import java.util.Map;
 
 // soy.dive.page.main
@@ -15,12 +21,15 @@ public class AmzaBotRegion implements UiPageRegion<AmzaBotInput> {
 
     private final String mainTemplate;
     private final SoyRenderer renderer;
+    private final AmzaBotWorkloadService workloadService;
 
     public AmzaBotRegion(String mainTemplate,
-        SoyRenderer renderer) {
+        SoyRenderer renderer,
+        AmzaBotWorkloadService workloadService) {
 
         this.mainTemplate = mainTemplate;
         this.renderer = renderer;
+        this.workloadService = workloadService;
     }
 
     @Override
@@ -28,6 +37,11 @@ public class AmzaBotRegion implements UiPageRegion<AmzaBotInput> {
         Map<String, Object> data = Maps.newHashMap();
         try {
             data.put("key", input.key);
+
+            AmzaBotWorkloadResult result = workloadService.getResult();
+            if (result != null) {
+                data.put("workload", workload(result));
+            }
         } catch (Exception x) {
             data.put("message", x.getMessage());
             LOG.error("Failure.", x);
@@ -36,6 +50,43 @@ public class AmzaBotRegion implements UiPageRegion<AmzaBotInput> {
         return renderer.render(mainTemplate, data);
     }
 
+    private Map<String, Object> workload(AmzaBotWorkloadResult result) {
+        List<Map<String, Object>> ops = Lists.newArrayList();
+        for (OpResult op : result.ops) {
+            Map<String, Object> row = Maps.newHashMap();
+            row.put("op", op.op);
+            row.put("count", String.valueOf(op.count));
+            row.put("errors", String.valueOf(op.errors));
+            row.put("opsPerSecond", String.format("%.1f", op.opsPerSecond));
+            row.put("service", latency(op.service));
+            row.put("response", latency(op.response));
+            ops.add(row);
+        }
+
+        Map<String, Object> workload = Maps.newHashMap();
+        workload.put("running", result.running);
+        workload.put("keyDistribution", result.keyDistribution);
+        workload.put("valueSizeDistribution", result.valueSizeDistribution);
+        workload.put("consistency", result.consistency);
+        workload.put("threads", String.valueOf(result.threads));
+        workload.put("targetOpsPerSecond", String.valueOf(result.targetOpsPerSecond));
+        workload.put("elapsedMillis", String.valueOf(result.elapsedMillis));
+        workload.put("opsPerSecond", String.format("%.1f", result.opsPerSecond));
+        workload.put("ops", ops);
+        return workload;
+    }
+
+    private Map<String, Object> latency(Latency latency) {
+        Map<String, Object> map = Maps.newHashMap();
+        map.put("mean", String.format("%.1f", latency.mean));
+        map.put("p50", String.valueOf(latency.p50));
+        map.put("p90", String.valueOf(latency.p90));
+        map.put("p99", String.valueOf(latency.p99));
+        map.put("p999", String.valueOf(latency.p999));
+        map.put("max", String.valueOf(latency.max));
+        return map;
+    }
+
     @Override
     public String getTitle(AmzaBotInput input) {
         return "AmzaBot";
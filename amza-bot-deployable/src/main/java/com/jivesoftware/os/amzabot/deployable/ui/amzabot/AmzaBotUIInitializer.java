@@ -2,6 +2,7 @@ package com.jivesoftware.os.amzabot.deployable.ui.amzabot;
 
 import com.google.template.soy.SoyFileSet;
 import com.google.template.soy.tofu.SoyTofu;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkloadService;
 import com.jivesoftware.os.amzabot.deployable.ui.SoyDataUtils;
 import com.jivesoftware.os.amzabot.deployable.ui.SoyRenderer;
 import com.jivesoftware.os.amzabot.deployable.ui.health.UiChromeRegion;
@@ -24,7 +25,8 @@ public class AmzaBotUIInitializer {
     }
 
     public AmzaBotUIService initialize(String cacheToken,
-        AmzaBotUIServiceConfig config) {
+        AmzaBotUIServiceConfig config,
+        AmzaBotWorkloadService workloadService) {
 
         File soyPath = new File(System.getProperty("user.dir"), config.getPathToSoyResources());
         SoyFileSet.Builder soyFileSetBuilder = new SoyFileSet.Builder();
@@ -35,7 +37,7 @@ public class AmzaBotUIInitializer {
         SoyTofu tofu = sfs.compileToTofu();
         SoyRenderer renderer = new SoyRenderer(tofu, new SoyDataUtils());
 
-        AmzaBotRegion contentRegion = new AmzaBotRegion("soy.content.page.main", renderer);
+        AmzaBotRegion contentRegion = new AmzaBotRegion("soy.content.page.main", renderer, workloadService);
 
         UiHeaderRegion headerRegion = new UiHeaderRegion("soy.ui.chrome.headerRegion", renderer);
         return new AmzaBotUIService(
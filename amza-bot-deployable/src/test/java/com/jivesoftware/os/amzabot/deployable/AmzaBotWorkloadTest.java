@@ -0,0 +1,94 @@
+package com.jivesoftware.os.amzabot.deployable;
+
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.wal.KeyUtil;
+import com.jivesoftware.os.amza.client.test.InMemoryPartitionClient;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotDistribution;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotDistributions;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkload;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkloadConfig;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkloadResult;
+import com.jivesoftware.os.amzabot.deployable.bot.AmzaBotWorkloadResult.OpResult;
+import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.merlin.config.BindInterfaceToConfiguration;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class AmzaBotWorkloadTest {
+
+    @Test
+    public void testKeyDistributions() {
+        Random random = new Random(1234);
+        int samples = 100_000;
+
+        AmzaBotDistribution zipfian = AmzaBotDistributions.scrambledZipfian(1_000, 0.99);
+        int[] counts = new int[1_000];
+        for (int i = 0; i < samples; i++) {
+            long next = zipfian.next(random);
+            Assert.assertTrue(next >= 0 && next < 1_000);
+            counts[(int) next]++;
+        }
+        int hottest = 0;
+        for (int count : counts) {
+            hottest = Math.max(hottest, count);
+        }
+        // uniform picks would put about 100 on every key
+        Assert.assertTrue(hottest > samples / 20, "hottest:" + hottest);
+
+        AmzaBotDistribution hotspot = AmzaBotDistributions.hotspot(1_000, 0.2, 0.8);
+        int hot = 0;
+        for (int i = 0; i < samples; i++) {
+            long next = hotspot.next(random);
+            Assert.assertTrue(next >= 0 && next < 1_000);
+            if (next < 200) {
+                hot++;
+            }
+        }
+        Assert.assertEquals(hot / (double) samples, 0.8, 0.01);
+    }
+
+    @Test
+    public void testWorkload() throws Exception {
+        OrderIdProvider orderIdProvider = new OrderIdProviderImpl(new ConstantWriterIdProvider(1));
+        InMemoryPartitionClient partitionClient = new InMemoryPartitionClient(new RingMember("member1"),
+            new ConcurrentSkipListMap<>(),
+            new ConcurrentSkipListMap<>(KeyUtil.lexicographicalComparator()),
+            orderIdProvider);
+
+        AmzaBotWorkloadConfig config = BindInterfaceToConfiguration.bindDefault(AmzaBotWorkloadConfig.class);
+        config.setReadWeight(1);
+        config.setWriteWeight(1);
+        config.setScanWeight(1);
+        config.setTakeWeight(1);
+        config.setKeyCount(1_000);
+        config.setScanLength(10);
+        config.setThreads(2);
+        config.setTargetOpsPerSecond(2_000);
+        config.setDurationSeconds(1);
+        config.setWarmupSeconds(0);
+
+        AmzaBotWorkload workload = new AmzaBotWorkload(config,
+            BindInterfaceToConfiguration.bindDefault(AmzaBotConfig.class),
+            partitionClient,
+            orderIdProvider);
+        workload.preload();
+        workload.run();
+
+        AmzaBotWorkloadResult result = workload.result();
+        Assert.assertFalse(result.running);
+        Assert.assertEquals(result.ops.size(), 4);
+        long total = 0;
+        for (OpResult op : result.ops) {
+            Assert.assertTrue(op.count > 0, op.op);
+            Assert.assertEquals(op.errors, 0, op.op);
+            Assert.assertTrue(op.response.p99 >= op.service.p50, op.op);
+            total += op.count;
+        }
+        // open loop at 2000 ops/sec for a second
+        Assert.assertTrue(total > 1_000 && total <= 2_000, "total:" + total);
+    }
+}
@@ -8,6 +8,8 @@ import com.jivesoftware.os.amza.api.filer.UIO;
 import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.scan.FrontCodedRows;
+import com.jivesoftware.os.amza.api.scan.ScanCursor;
 import com.jivesoftware.os.amza.api.stream.ClientUpdates;
 import com.jivesoftware.os.amza.api.stream.KeyValueStream;
 import com.jivesoftware.os.amza.api.stream.KeyValueTimestampStream;
@@ -18,7 +20,9 @@ import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
 import com.jivesoftware.os.amza.api.stream.TxKeyValueStream.TxResult;
 import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
 import com.jivesoftware.os.amza.api.take.Highwaters;
+import com.jivesoftware.os.amza.api.take.TakeFilter;
 import com.jivesoftware.os.amza.api.take.TakeResult;
+import com.jivesoftware.os.amza.api.take.TakeResultStream;
 import com.jivesoftware.os.amza.api.wal.WALHighwater;
 import com.jivesoftware.os.amza.api.wal.WALHighwater.RingMemberHighwater;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
@@ -45,6 +49,7 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
     private final long awaitLeaderElectionForNMillis;
     private final long debugClientCount;
     private final long debugClientCountInterval;
+    private final boolean frontCodedScans;
 
     private volatile long lastDebugClientTime = 0;
 
@@ -54,6 +59,16 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
         long awaitLeaderElectionForNMillis,
         long debugClientCount,
         long debugClientCountInterval) throws IOException {
+        this(partitionName, partitionCallRouter, remotePartitionCaller, awaitLeaderElectionForNMillis, debugClientCount, debugClientCountInterval, false);
+    }
+
+    public AmzaPartitionClient(PartitionName partitionName,
+        AmzaClientCallRouter<C, E> partitionCallRouter,
+        RemotePartitionCaller<C, E> remotePartitionCaller,
+        long awaitLeaderElectionForNMillis,
+        long debugClientCount,
+        long debugClientCountInterval,
+        boolean frontCodedScans) throws IOException {
 
         this.partitionName = partitionName;
         this.partitionCallRouter = partitionCallRouter;
@@ -61,6 +76,7 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
         this.awaitLeaderElectionForNMillis = awaitLeaderElectionForNMillis;
         this.debugClientCount = debugClientCount;
         this.debugClientCountInterval = debugClientCountInterval;
+        this.frontCodedScans = frontCodedScans;
     }
 
     @Override
@@ -81,6 +97,24 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
             abandonSolutionAfterNMillis);
     }
 
+    @Override
+    public void bulkLoad(Consistency consistency,
+        byte[] prefix,
+        ClientUpdates updates,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+
+        partitionCallRouter.write(solutionLog.orElse(null), partitionName, consistency, "bulkLoad",
+            (leader, ringMember, client) -> {
+                return remotePartitionCaller.bulkLoad(leader, ringMember, client, consistency, prefix, updates, abandonSolutionAfterNMillis);
+            },
+            answer -> true,
+            awaitLeaderElectionForNMillis,
+            additionalSolverAfterNMillis,
+            abandonSolutionAfterNMillis);
+    }
+
     @Override
     public long getApproximateCount(Consistency consistency,
         long additionalSolverAfterNMillis,
@@ -344,19 +378,12 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
         long abandonSolutionAfterNMillis,
         Optional<List<String>> solutionLog) throws Exception {
 
-        boolean merge;
-        if (consistency == Consistency.leader_plus_one
-            || consistency == Consistency.leader_quorum
-            || consistency == Consistency.quorum
-            || consistency == Consistency.write_one_read_all) {
-            merge = true;
-        } else {
-            merge = false;
-        }
+        boolean merge = requiresMerge(consistency);
+        boolean frontCoded = frontCodedScans && filter == null;
         byte[] intLongBuffer = new byte[8];
 
         PartitionCall<C, CloseableStreamResponse, E> partitionCall = (leader, ringMember, client) -> {
-            return remotePartitionCaller.scan(leader, ringMember, client, consistency, compressed, ranges, filter, hydrateValues);
+            return remotePartitionCaller.scan(leader, ringMember, client, consistency, compressed, ranges, filter, hydrateValues, frontCoded);
         };
 
         KeyValueStream keyValueStream = (prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
@@ -374,13 +401,26 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
                         debugStreamResponse(streamResponse);
                         InputStream answerInputStream = streamResponse.getInputStream();
                         InputStream inputStream = compressed ? new SnappyInputStream(new BufferedInputStream(answerInputStream, 8192)) : answerInputStream;
-                        return new FilerInputStream(inputStream);
+                        FilerInputStream fis = new FilerInputStream(inputStream);
+                        if (frontCoded) {
+                            byte encoding = UIO.readByte(fis, "encoding");
+                            if (encoding != FrontCodedRows.VERSION) {
+                                throw new IllegalStateException("Unsupported scan encoding:" + encoding);
+                            }
+                        }
+                        return fis;
                     } catch (IOException e) {
                         throw new RuntimeException(e);
                     }
                 }));
                 int size = streams.size();
                 if (merge && size > 1) {
+                    FrontCodedRows.Reader[] readers = new FrontCodedRows.Reader[size];
+                    if (frontCoded) {
+                        for (int i = 0; i < size; i++) {
+                            readers[i] = new FrontCodedRows.Reader(hydrateValues);
+                        }
+                    }
                     while (true) {
                         int eosRange = 0;
                         for (int i = 0; i < size; i++) {
@@ -388,6 +428,9 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
                             if (UIO.readBoolean(fis, "eosRange")) {
                                 eosRange++;
                             }
+                            if (readers[i] != null) {
+                                readers[i].reset();
+                            }
                         }
                         if (eosRange == size) {
                             break;
@@ -403,7 +446,11 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
                                 if (quorumScan.used(i) && !eos[i]) {
                                     FilerInputStream fis = streams.get(i);
                                     eos[i] = UIO.readBoolean(fis, "eos");
-                                    if (!eos[i]) {
+                                    if (!eos[i] && readers[i] != null) {
+                                        FrontCodedRows.Reader reader = readers[i];
+                                        reader.read(fis);
+                                        quorumScan.fill(i, reader.prefix, reader.key, reader.value, reader.timestamp, reader.tombstoned, reader.version);
+                                    } else if (!eos[i]) {
                                         quorumScan.fill(i, UIO.readByteArray(fis, "prefix", intLongBuffer),
                                             UIO.readByteArray(fis, "key", intLongBuffer),
                                             hydrateValues ? UIO.readByteArray(fis, "value", intLongBuffer) : null,
@@ -430,6 +477,19 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
                     LOG.debug("Merged {}", answers.size());
                     return true;
 
+                } else if (size == 1 && frontCoded) {
+                    FilerInputStream fis = streams.get(0);
+                    FrontCodedRows.Reader reader = new FrontCodedRows.Reader(hydrateValues);
+                    while (!UIO.readBoolean(fis, "eosRange")) {
+                        reader.reset();
+                        while (!UIO.readBoolean(fis, "eos")) {
+                            reader.read(fis);
+                            if (!reader.tombstoned && !stream.stream(reader.prefix, reader.key, reader.value, reader.timestamp, reader.version)) {
+                                return false;
+                            }
+                        }
+                    }
+                    return true;
                 } else if (size == 1) {
                     FilerInputStream fis = streams.get(0);
                     while (!UIO.readBoolean(fis, "eosRange")) {
@@ -459,6 +519,64 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
             abandonSolutionAfterNMillis);
     }
 
+    private static boolean requiresMerge(Consistency consistency) {
+        return consistency == Consistency.leader_plus_one
+            || consistency == Consistency.leader_quorum
+            || consistency == Consistency.quorum
+            || consistency == Consistency.write_one_read_all;
+    }
+
+    @Override
+    public ScanCursor scanPage(Consistency consistency,
+        PrefixedKeyRanges ranges,
+        ScanCursor cursor,
+        int pageSize,
+        long pageBytes,
+        boolean hydrateValues,
+        KeyValueTimestampStream stream,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+
+        if (requiresMerge(consistency)) {
+            throw new IllegalArgumentException("Paged scans do not support consistency:" + consistency.name());
+        }
+        byte[] intLongBuffer = new byte[8];
+        return partitionCallRouter.read(solutionLog.orElse(null), partitionName, consistency, "scanPage",
+            (leader, ringMember, client) -> {
+                return remotePartitionCaller.scanPage(leader, ringMember, client, consistency, ranges, cursor, pageSize, pageBytes, hydrateValues);
+            },
+            (answers) -> {
+                if (answers.isEmpty()) {
+                    throw new RuntimeException("Failed to scanPage.");
+                }
+                CloseableStreamResponse streamResponse = answers.get(0).getAnswer();
+                debugStreamResponse(streamResponse);
+                FilerInputStream fis = new FilerInputStream(streamResponse.getInputStream());
+                long highestTxId = UIO.readLong(fis, "highestTxId", intLongBuffer);
+                while (!UIO.readBoolean(fis, "eosRange")) {
+                    int rangeIndex = UIO.readInt(fis, "rangeIndex", intLongBuffer);
+                    while (!UIO.readBoolean(fis, "eos")) {
+                        byte[] prefix = UIO.readByteArray(fis, "prefix", intLongBuffer);
+                        byte[] key = UIO.readByteArray(fis, "key", intLongBuffer);
+                        byte[] value = hydrateValues ? UIO.readByteArray(fis, "value", intLongBuffer) : null;
+                        long timestamp = UIO.readLong(fis, "timestamp", intLongBuffer);
+                        boolean tombstoned = UIO.readBoolean(fis, "tombstone");
+                        long version = UIO.readLong(fis, "version", intLongBuffer);
+                        if (!tombstoned && !stream.stream(prefix, key, value, timestamp, version)) {
+                            return new ScanCursor(rangeIndex, prefix, key, highestTxId);
+                        }
+                    }
+                }
+                return ScanCursor.fromBytes(UIO.readByteArray(fis, "cursor", intLongBuffer));
+            },
+            awaitLeaderElectionForNMillis,
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis);
+    }
+
     @Override
     public TakeResult takeFromTransactionId(List<RingMember> membersInOrder,
         Map<RingMember, Long> membersTxId,
@@ -484,7 +602,40 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
                 if (streams.isEmpty()) {
                     throw new RuntimeException("Failed to takeFromTransactionId.");
                 }
-                return take(streams.get(0), highwaters, stream, intLongBuffer);
+                return take(streams.get(0), false, null, highwaters, stream, intLongBuffer);
+            },
+            awaitLeaderElectionForNMillis,
+            additionalSolverAfterNMillis,
+            abandonSolutionAfterNMillis);
+    }
+
+    @Override
+    public TakeResult takeFromTransactionId(List<RingMember> membersInOrder,
+        Map<RingMember, Long> membersTxId,
+        int limit,
+        TakeFilter filter,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+
+        byte[] intLongBuffer = new byte[8];
+        return partitionCallRouter.take(solutionLog.orElse(null), partitionName, membersInOrder, "takeFromTransactionIdFiltered",
+            (leader, ringMember, client) -> {
+                return remotePartitionCaller.takeFromTransactionIdFiltered(leader, ringMember, client, membersTxId, limit, filter);
+            },
+            (answers) -> {
+                if (answers.isEmpty()) {
+                    throw new RuntimeException("Failed to takeFromTransactionIdFiltered.");
+                }
+                CloseableStreamResponse streamResponse = answers.get(0).getAnswer();
+                debugStreamResponse(streamResponse);
+                FilerInputStream fis = new FilerInputStream(streamResponse.getInputStream());
+                if (streamResponse instanceof UnfilteredStreamResponse) {
+                    return take(fis, false, filter, highwaters, stream, intLongBuffer);
+                }
+                return take(fis, true, null, highwaters, stream, intLongBuffer);
             },
             awaitLeaderElectionForNMillis,
             additionalSolverAfterNMillis,
@@ -516,15 +667,94 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
                 if (streams.isEmpty()) {
                     throw new RuntimeException("Failed to takePrefixFromTransactionId.");
                 }
-                return take(streams.get(0), highwaters, stream, intLongBuffer);
+                return take(streams.get(0), false, null, highwaters, stream, intLongBuffer);
+            },
+            awaitLeaderElectionForNMillis,
+            additionalSolverAfterNMillis,
+            abandonSolutionAfterNMillis);
+    }
+
+    @Override
+    public TakeResult subscribe(List<RingMember> membersInOrder,
+        Map<RingMember, Long> membersTxId,
+        int limit,
+        TakeFilter filter,
+        long heartbeatIntervalMillis,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        TakeResultStream cursors,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        byte[] intLongBuffer = new byte[8];
+        return partitionCallRouter.take(solutionLog.orElse(null), partitionName, membersInOrder, "subscribe",
+            (leader, ringMember, client) -> {
+                return remotePartitionCaller.subscribe(leader, ringMember, client, membersTxId, limit, filter, heartbeatIntervalMillis);
+            },
+            (answers) -> {
+                if (answers.isEmpty()) {
+                    throw new RuntimeException("Failed to subscribe.");
+                }
+                CloseableStreamResponse streamResponse = answers.get(0).getAnswer();
+                debugStreamResponse(streamResponse);
+                FilerInputStream fis = new FilerInputStream(streamResponse.getInputStream());
+
+                boolean[] stopped = { false };
+                long[] acceptedTxId = { -1 };
+                TxKeyValueStream stoppable = (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                    TxResult result = stream.stream(rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion);
+                    if (!stopped[0]) {
+                        if (result.isAccepted()) {
+                            acceptedTxId[0] = Math.max(acceptedTxId[0], rowTxId);
+                        }
+                        stopped[0] = !result.wantsMore();
+                    }
+                    return result;
+                };
+
+                TakeResult cursor = null;
+                try {
+                    while (!UIO.readBoolean(fis, "eos")) {
+                        TakeResult takeResult = take(fis, filter != null, null, highwaters, stoppable, intLongBuffer);
+                        if (stopped[0]) {
+                            // the batch may have been read past the last accepted row, so resume from that row instead of the batch
+                            long fromTxId = cursor != null ? cursor.lastTxId : membersTxId.getOrDefault(takeResult.tookFrom, -1L);
+                            return new TakeResult(takeResult.tookFrom, Math.max(fromTxId, acceptedTxId[0]), null);
+                        }
+                        // each batch is a complete take, which the node closes with an eos of its own
+                        UIO.readBoolean(fis, "eos");
+                        if (cursor != null && takeResult.lastTxId < cursor.lastTxId) {
+                            // an idle batch has no rows to move the cursor, so it must not move it back either
+                            takeResult = new TakeResult(takeResult.tookFrom, cursor.lastTxId, takeResult.tookToEnd, takeResult.filtered);
+                        }
+                        cursor = takeResult;
+                        if (!cursors.stream(takeResult)) {
+                            return takeResult;
+                        }
+                    }
+                    return cursor;
+                } finally {
+                    // the server never ends a subscription on its own, so the connection cannot be returned to the pool
+                    streamResponse.abort();
+                }
             },
             awaitLeaderElectionForNMillis,
             additionalSolverAfterNMillis,
             abandonSolutionAfterNMillis);
     }
 
-    private TakeResult take(FilerInputStream fis, Highwaters highwaters, TxKeyValueStream stream, byte[] intLongBuffer) throws Exception {
+    /**
+     * @param serverFiltered whether the serving node applied a filter and so trails the take with the number of rows it filtered
+     * @param clientFilter   a filter to apply to rows as they arrive because the serving node could not, or null
+     */
+    private TakeResult take(FilerInputStream fis,
+        boolean serverFiltered,
+        TakeFilter clientFilter,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        byte[] intLongBuffer) throws Exception {
         long maxTxId = -1;
+        long clientFiltered = 0;
         byte[] ringMemberBytes = UIO.readByteArray(fis, "ringMember", intLongBuffer);
         RingMember ringMember = new RingMember(ringMemberBytes);
         TxResult done = null;
@@ -540,25 +770,24 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
                     return new TakeResult(ringMember, maxTxId, null);
                 }
 
+                byte[] prefix = UIO.readByteArray(fis, "prefix", intLongBuffer);
+                byte[] key = UIO.readByteArray(fis, "key", intLongBuffer);
+                byte[] value = UIO.readByteArray(fis, "value", intLongBuffer);
+                long valueTimestamp = UIO.readLong(fis, "timestampId", intLongBuffer);
+                boolean valueTombstoned = UIO.readBoolean(fis, "tombstoned");
+                long valueVersion = UIO.readLong(fis, "version", intLongBuffer);
+                if (clientFilter != null && !clientFilter.accept(prefix, key, valueTimestamp, valueVersion)) {
+                    clientFiltered++;
+                    continue;
+                }
+
                 if (done != null) {
                     if (done.isAccepted()) {
                         // ignore result; lastTxId is unchanged
-                        stream.stream(rowTxId,
-                            UIO.readByteArray(fis, "prefix", intLongBuffer),
-                            UIO.readByteArray(fis, "key", intLongBuffer),
-                            UIO.readByteArray(fis, "value", intLongBuffer),
-                            UIO.readLong(fis, "timestampId", intLongBuffer),
-                            UIO.readBoolean(fis, "tombstoned"),
-                            UIO.readLong(fis, "version", intLongBuffer));
+                        stream.stream(rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion);
                     }
                 } else {
-                    TxResult result = stream.stream(rowTxId,
-                        UIO.readByteArray(fis, "prefix", intLongBuffer),
-                        UIO.readByteArray(fis, "key", intLongBuffer),
-                        UIO.readByteArray(fis, "value", intLongBuffer),
-                        UIO.readLong(fis, "timestampId", intLongBuffer),
-                        UIO.readBoolean(fis, "tombstoned"),
-                        UIO.readLong(fis, "version", intLongBuffer));
+                    TxResult result = stream.stream(rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion);
                     if (result.isAccepted()) {
                         maxTxId = Math.max(maxTxId, rowTxId);
                     }
@@ -577,9 +806,10 @@ public class AmzaPartitionClient<C, E extends Throwable> implements PartitionCli
 
         ringMemberBytes = UIO.readByteArray(fis, "ringMember", intLongBuffer);
         ringMember = new RingMember(ringMemberBytes);
-        return new TakeResult(ringMember,
-            UIO.readLong(fis, "lastTxId", intLongBuffer),
-            readHighwaters(fis, intLongBuffer));
+        long lastTxId = UIO.readLong(fis, "lastTxId", intLongBuffer);
+        WALHighwater tookToEnd = readHighwaters(fis, intLongBuffer);
+        long filtered = clientFiltered + (serverFiltered ? UIO.readLong(fis, "filtered", intLongBuffer) : 0);
+        return new TakeResult(ringMember, lastTxId, tookToEnd, filtered);
     }
 
     private WALHighwater readHighwaters(FilerInputStream inputStream, byte[] intLongBuffer) throws Exception {
@@ -10,6 +10,19 @@ import com.jivesoftware.os.routing.bird.shared.HttpClientException;
  */
 public class HttpPartitionClientFactory implements PartitionClientFactory<HttpClient, HttpClientException> {
 
+    private final boolean frontCodedScans;
+
+    public HttpPartitionClientFactory() {
+        this(false);
+    }
+
+    /**
+     * @param frontCodedScans request front coded scan responses, requires every node in the cluster to serve the multiScanFrontCoded endpoints
+     */
+    public HttpPartitionClientFactory(boolean frontCodedScans) {
+        this.frontCodedScans = frontCodedScans;
+    }
+
     @Override
     public PartitionClient create(PartitionName partitionName,
         AmzaClientCallRouter<HttpClient, HttpClientException> partitionCallRouter,
@@ -19,7 +32,7 @@ public class HttpPartitionClientFactory implements PartitionClientFactory<HttpCl
 
         HttpRemotePartitionCaller remotePartitionCaller = new HttpRemotePartitionCaller(partitionCallRouter, partitionName);
         return new AmzaPartitionClient<>(partitionName, partitionCallRouter, remotePartitionCaller, awaitLeaderElectionForNMillis,
-            debugClientCount, debugClientCountInterval);
+            debugClientCount, debugClientCountInterval, frontCodedScans);
     }
 
 }
@@ -9,10 +9,12 @@ import com.jivesoftware.os.amza.api.filer.UIO;
 import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.scan.ScanCursor;
 import com.jivesoftware.os.amza.api.stream.ClientUpdates;
 import com.jivesoftware.os.amza.api.stream.OffsetUnprefixedWALKeys;
 import com.jivesoftware.os.amza.api.stream.PrefixedKeyRanges;
 import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
+import com.jivesoftware.os.amza.api.take.TakeFilter;
 import com.jivesoftware.os.amza.client.http.exceptions.LeaderElectionInProgressException;
 import com.jivesoftware.os.amza.client.http.exceptions.NoLongerTheLeaderException;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
@@ -59,10 +61,32 @@ public class HttpRemotePartitionCaller implements RemotePartitionCaller<HttpClie
         byte[] prefix,
         ClientUpdates updates,
         long abandonSolutionAfterNMillis) throws HttpClientException {
+        return commit("commit", leader, ringMember, client, consistency, prefix, updates, abandonSolutionAfterNMillis);
+    }
+
+    @Override
+    public PartitionResponse<NoOpCloseable> bulkLoad(RingMember leader,
+        RingMember ringMember,
+        HttpClient client,
+        Consistency consistency,
+        byte[] prefix,
+        ClientUpdates updates,
+        long abandonSolutionAfterNMillis) throws HttpClientException {
+        return commit("bulkLoad", leader, ringMember, client, consistency, prefix, updates, abandonSolutionAfterNMillis);
+    }
+
+    private PartitionResponse<NoOpCloseable> commit(String endpoint,
+        RingMember leader,
+        RingMember ringMember,
+        HttpClient client,
+        Consistency consistency,
+        byte[] prefix,
+        ClientUpdates updates,
+        long abandonSolutionAfterNMillis) throws HttpClientException {
 
         byte[] lengthBuffer = new byte[8];
         boolean checkLeader = ringMember.equals(leader);
-        HttpResponse got = client.postStreamableRequest("/amza/v1/commit/" + base64PartitionName + "/" + consistency.name() + "/" + checkLeader,
+        HttpResponse got = client.postStreamableRequest("/amza/v1/" + endpoint + "/" + base64PartitionName + "/" + consistency.name() + "/" + checkLeader,
             (out) -> {
                 try {
 
@@ -179,13 +203,16 @@ public class HttpRemotePartitionCaller implements RemotePartitionCaller<HttpClie
         boolean compressed,
         PrefixedKeyRanges ranges,
         KeyValueFilter filter,
-        boolean hydrateValues) throws HttpClientException {
+        boolean hydrateValues,
+        boolean frontCoded) throws HttpClientException {
 
         byte[] intLongBuffer = new byte[8];
 
         String pathPrefix =  (filter != null && compressed) ? "/amza/v1/multiScanFilteredCompressed/"
+            : (frontCoded && compressed) ? "/amza/v1/multiScanFrontCodedCompressed/"
             : compressed ? "/amza/v1/multiScanCompressed/"
             : filter != null ? "/amza/v1/multiScanFiltered/"
+            : frontCoded ? "/amza/v1/multiScanFrontCoded/"
             : "/amza/v1/multiScan/";
         HttpStreamResponse got = client.streamingPostStreamableRequest(
             pathPrefix + base64PartitionName + "/" + consistency.name() + "/" + ringMember.equals(leader) + "/" + hydrateValues,
@@ -234,6 +261,46 @@ public class HttpRemotePartitionCaller implements RemotePartitionCaller<HttpClie
         return new PartitionResponse<>(new CloseableHttpStreamResponse(got), got.getStatusCode() >= 200 && got.getStatusCode() < 300);
     }
 
+    @Override
+    public PartitionResponse<CloseableStreamResponse> scanPage(RingMember leader,
+        RingMember ringMember,
+        HttpClient client,
+        Consistency consistency,
+        PrefixedKeyRanges ranges,
+        ScanCursor cursor,
+        int pageSize,
+        long pageBytes,
+        boolean hydrateValues) throws HttpClientException {
+
+        byte[] intLongBuffer = new byte[8];
+        HttpStreamResponse got = client.streamingPostStreamableRequest(
+            "/amza/v1/scanPage/" + base64PartitionName + "/" + consistency.name() + "/" + ringMember.equals(leader) + "/" + hydrateValues
+                + "/" + pageSize + "/" + pageBytes,
+            (out) -> {
+                try {
+                    FilerOutputStream fos = new FilerOutputStream(out);
+                    UIO.writeByteArray(fos, cursor != null ? cursor.toBytes() : null, "cursor", intLongBuffer);
+                    ranges.consume((fromPrefix, fromKey, toPrefix, toKey) -> {
+                        UIO.writeByte(fos, (byte) 1, "eos");
+                        UIO.writeByteArray(fos, fromPrefix, "fromPrefix", intLongBuffer);
+                        UIO.writeByteArray(fos, fromKey, "fromKey", intLongBuffer);
+                        UIO.writeByteArray(fos, toPrefix, "toPrefix", intLongBuffer);
+                        UIO.writeByteArray(fos, toKey, "toKey", intLongBuffer);
+                        return true;
+                    });
+                    UIO.writeByte(fos, (byte) 0, "eos");
+                } catch (Exception x) {
+                    throw new RuntimeException("Failed while paging ranges.", x);
+                } finally {
+                    out.close();
+                }
+            }, null);
+
+        CloseableHttpStreamResponse closeableHttpStreamResponse = new CloseableHttpStreamResponse(got);
+        handleLeaderStatusCodes(consistency, got.getStatusCode(), got.getStatusReasonPhrase(), closeableHttpStreamResponse);
+        return new PartitionResponse<>(closeableHttpStreamResponse, got.getStatusCode() >= 200 && got.getStatusCode() < 300);
+    }
+
     @Override
     public PartitionResponse<CloseableStreamResponse> takeFromTransactionId(RingMember leader,
         RingMember ringMember,
@@ -256,6 +323,41 @@ public class HttpRemotePartitionCaller implements RemotePartitionCaller<HttpClie
         return new PartitionResponse<>(new CloseableHttpStreamResponse(got), got.getStatusCode() >= 200 && got.getStatusCode() < 300);
     }
 
+    @Override
+    public PartitionResponse<CloseableStreamResponse> takeFromTransactionIdFiltered(RingMember leader,
+        RingMember ringMember,
+        HttpClient client,
+        Map<RingMember, Long> membersTxId,
+        int limit,
+        TakeFilter filter) throws HttpClientException {
+
+        long transactionId = membersTxId.getOrDefault(ringMember, -1L);
+        HttpStreamResponse got = client.streamingPostStreamableRequest(
+            "/amza/v1/takeFromTransactionIdFiltered/" + base64PartitionName + '/' + limit,
+            (out) -> {
+                try {
+                    byte[] intLongBuffer = new byte[8];
+                    FilerOutputStream fos = new FilerOutputStream(out);
+                    UIO.writeLong(fos, transactionId, "transactionId", intLongBuffer);
+                    filter.write(fos, intLongBuffer);
+                } finally {
+                    out.close();
+                }
+            }, null);
+
+        if (got.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+            // the node predates filtered takes, so take everything and let the taker filter
+            try {
+                got.close();
+            } catch (Exception e) {
+                LOG.warn("Failed to close {}", got);
+            }
+            PartitionResponse<CloseableStreamResponse> unfiltered = takeFromTransactionId(leader, ringMember, client, membersTxId, limit);
+            return new PartitionResponse<>(new UnfilteredStreamResponse(unfiltered.response), unfiltered.responseComplete);
+        }
+        return new PartitionResponse<>(new CloseableHttpStreamResponse(got), got.getStatusCode() >= 200 && got.getStatusCode() < 300);
+    }
+
     @Override
     public PartitionResponse<CloseableStreamResponse> takePrefixFromTransactionId(RingMember leader,
         RingMember ringMember,
@@ -282,6 +384,36 @@ public class HttpRemotePartitionCaller implements RemotePartitionCaller<HttpClie
         return new PartitionResponse<>(new CloseableHttpStreamResponse(got), got.getStatusCode() >= 200 && got.getStatusCode() < 300);
     }
 
+    @Override
+    public PartitionResponse<CloseableStreamResponse> subscribe(RingMember leader,
+        RingMember ringMember,
+        HttpClient client,
+        Map<RingMember, Long> membersTxId,
+        int limit,
+        TakeFilter filter,
+        long heartbeatIntervalMillis) throws HttpClientException {
+
+        long transactionId = membersTxId.getOrDefault(ringMember, -1L);
+        HttpStreamResponse got = client.streamingPostStreamableRequest(
+            "/amza/v1/subscribe/" + base64PartitionName + '/' + limit,
+            (out) -> {
+                try {
+                    byte[] intLongBuffer = new byte[8];
+                    FilerOutputStream fos = new FilerOutputStream(out);
+                    UIO.writeLong(fos, transactionId, "transactionId", intLongBuffer);
+                    UIO.writeByte(fos, filter != null ? (byte) 1 : (byte) 0, "hasFilter");
+                    if (filter != null) {
+                        filter.write(fos, intLongBuffer);
+                    }
+                    UIO.writeLong(fos, heartbeatIntervalMillis, "heartbeatIntervalMillis", intLongBuffer);
+                } finally {
+                    out.close();
+                }
+            }, null);
+
+        return new PartitionResponse<>(new CloseableHttpStreamResponse(got), got.getStatusCode() >= 200 && got.getStatusCode() < 300);
+    }
+
     private void handleLeaderStatusCodes(Consistency consistency, int statusCode, String statusReasonPhrase, Closeable closeable) {
         if (statusCode == HttpStatus.SC_BAD_REQUEST) {
             try {
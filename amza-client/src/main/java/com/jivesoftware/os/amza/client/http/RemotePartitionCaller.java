@@ -3,10 +3,12 @@ package com.jivesoftware.os.amza.client.http;
 import com.jivesoftware.os.amza.api.PartitionClient.KeyValueFilter;
 import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.scan.ScanCursor;
 import com.jivesoftware.os.amza.api.stream.ClientUpdates;
 import com.jivesoftware.os.amza.api.stream.OffsetUnprefixedWALKeys;
 import com.jivesoftware.os.amza.api.stream.PrefixedKeyRanges;
 import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
+import com.jivesoftware.os.amza.api.take.TakeFilter;
 import java.util.Map;
 
 /**
@@ -22,6 +24,14 @@ public interface RemotePartitionCaller<C, E extends Throwable> {
         ClientUpdates updates,
         long abandonSolutionAfterNMillis) throws E;
 
+    PartitionResponse<NoOpCloseable> bulkLoad(RingMember leader,
+        RingMember ringMember,
+        C client,
+        Consistency consistency,
+        byte[] prefix,
+        ClientUpdates updates,
+        long abandonSolutionAfterNMillis) throws E;
+
     PartitionResponse<CloseableStreamResponse> get(RingMember leader,
         RingMember ringMember,
         C client,
@@ -43,6 +53,17 @@ public interface RemotePartitionCaller<C, E extends Throwable> {
         boolean compressed,
         PrefixedKeyRanges ranges,
         KeyValueFilter filter,
+        boolean hydrateValues,
+        boolean frontCoded) throws E;
+
+    PartitionResponse<CloseableStreamResponse> scanPage(RingMember leader,
+        RingMember ringMember,
+        C client,
+        Consistency consistency,
+        PrefixedKeyRanges ranges,
+        ScanCursor cursor,
+        int pageSize,
+        long pageBytes,
         boolean hydrateValues) throws E;
 
     PartitionResponse<CloseableStreamResponse> takeFromTransactionId(RingMember leader,
@@ -51,6 +72,21 @@ public interface RemotePartitionCaller<C, E extends Throwable> {
         Map<RingMember, Long> membersTxId,
         int limit) throws E;
 
+    PartitionResponse<CloseableStreamResponse> subscribe(RingMember leader,
+        RingMember ringMember,
+        C client,
+        Map<RingMember, Long> membersTxId,
+        int limit,
+        TakeFilter filter,
+        long heartbeatIntervalMillis) throws E;
+
+    PartitionResponse<CloseableStreamResponse> takeFromTransactionIdFiltered(RingMember leader,
+        RingMember ringMember,
+        C client,
+        Map<RingMember, Long> membersTxId,
+        int limit,
+        TakeFilter filter) throws E;
+
     PartitionResponse<CloseableStreamResponse> takePrefixFromTransactionId(RingMember leader,
         RingMember ringMember,
         C client,
@@ -0,0 +1,42 @@
+package com.jivesoftware.os.amza.client.http;
+
+import java.io.InputStream;
+
+/**
+ * An unfiltered take answering a filtered one, from a node which predates filtered takes. The taker applies the filter itself.
+ */
+public class UnfilteredStreamResponse implements CloseableStreamResponse {
+
+    private final CloseableStreamResponse response;
+
+    public UnfilteredStreamResponse(CloseableStreamResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    public void abort() throws Exception {
+        response.abort();
+    }
+
+    @Override
+    public void close() throws Exception {
+        response.close();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return response.getInputStream();
+    }
+
+    @Override
+    public long getActiveCount() {
+        return response.getActiveCount();
+    }
+
+    @Override
+    public String toString() {
+        return "UnfilteredStreamResponse{" +
+            "response=" + response +
+            '}';
+    }
+}
@@ -3,6 +3,7 @@ package com.jivesoftware.os.amza.client.test;
 import com.jivesoftware.os.amza.api.PartitionClient;
 import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.scan.ScanCursor;
 import com.jivesoftware.os.amza.api.stream.ClientUpdates;
 import com.jivesoftware.os.amza.api.stream.KeyValueStream;
 import com.jivesoftware.os.amza.api.stream.KeyValueTimestampStream;
@@ -13,12 +14,15 @@ import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
 import com.jivesoftware.os.amza.api.stream.TxKeyValueStream.TxResult;
 import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
 import com.jivesoftware.os.amza.api.take.Highwaters;
+import com.jivesoftware.os.amza.api.take.TakeFilter;
 import com.jivesoftware.os.amza.api.take.TakeResult;
+import com.jivesoftware.os.amza.api.take.TakeResultStream;
 import com.jivesoftware.os.amza.api.wal.WALHighwater;
 import com.jivesoftware.os.amza.api.wal.WALHighwater.RingMemberHighwater;
 import com.jivesoftware.os.amza.api.wal.WALKey;
 import com.jivesoftware.os.amza.api.wal.WALValue;
 import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +54,16 @@ public class InMemoryPartitionClient implements PartitionClient {
         this.orderIdProvider = orderIdProvider;
     }
 
+    @Override
+    public void bulkLoad(Consistency consistency,
+        byte[] prefix,
+        ClientUpdates updates,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        commit(consistency, prefix, updates, additionalSolverAfterNMillis, abandonSolutionAfterNMillis, solutionLog);
+    }
+
     @Override
     public void commit(Consistency consistency,
         byte[] prefix,
@@ -218,17 +232,7 @@ public class InMemoryPartitionClient implements PartitionClient {
             return scan.stream(prefix, key, value, valueTimestamp, valueVersion);
         };
         return ranges.consume((fromPrefix, fromKey, toPrefix, toKey) -> {
-            Set<Map.Entry<byte[], WALValue>> entries;
-            if (fromKey == null && toKey == null) {
-                entries = index.entrySet();
-            } else if (fromKey == null) {
-                entries = index.headMap(WALKey.compose(toPrefix, toKey), false).entrySet();
-            } else if (toKey == null) {
-                entries = index.tailMap(WALKey.compose(fromPrefix, fromKey), true).entrySet();
-            } else {
-                entries = index.subMap(WALKey.compose(fromPrefix, fromKey), true, WALKey.compose(toPrefix, toKey), false).entrySet();
-            }
-            for (Map.Entry<byte[], WALValue> entry : entries) {
+            for (Map.Entry<byte[], WALValue> entry : rangeEntries(fromPrefix, fromKey, toPrefix, toKey)) {
                 byte[] rawKey = entry.getKey();
                 byte[] prefix = WALKey.rawKeyPrefix(rawKey);
                 byte[] key = WALKey.rawKeyKey(rawKey);
@@ -248,6 +252,68 @@ public class InMemoryPartitionClient implements PartitionClient {
         });
     }
 
+    private Set<Map.Entry<byte[], WALValue>> rangeEntries(byte[] fromPrefix, byte[] fromKey, byte[] toPrefix, byte[] toKey) {
+        if (fromKey == null && toKey == null) {
+            return index.entrySet();
+        } else if (fromKey == null) {
+            return index.headMap(WALKey.compose(toPrefix, toKey), false).entrySet();
+        } else if (toKey == null) {
+            return index.tailMap(WALKey.compose(fromPrefix, fromKey), true).entrySet();
+        } else {
+            return index.subMap(WALKey.compose(fromPrefix, fromKey), true, WALKey.compose(toPrefix, toKey), false).entrySet();
+        }
+    }
+
+    @Override
+    public ScanCursor scanPage(Consistency consistency,
+        PrefixedKeyRanges ranges,
+        ScanCursor cursor,
+        int pageSize,
+        long pageBytes,
+        boolean hydrateValues,
+        KeyValueTimestampStream scan,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+
+        List<byte[][]> rangeList = new ArrayList<>();
+        ranges.consume((fromPrefix, fromKey, toPrefix, toKey) -> {
+            rangeList.add(new byte[][] { fromPrefix, fromKey, toPrefix, toKey });
+            return true;
+        });
+        if (cursor != null && (cursor.rangeIndex < 0 || cursor.rangeIndex >= rangeList.size())) {
+            throw new IllegalArgumentException("Cursor range index is out of bounds:" + cursor.rangeIndex);
+        }
+
+        long highestTxId = cursor != null ? cursor.highestTxId : txProvider.get();
+        long count = 0;
+        long bytes = 0;
+        for (int i = cursor != null ? cursor.rangeIndex : 0; i < rangeList.size(); i++) {
+            byte[][] range = rangeList.get(i);
+            Set<Map.Entry<byte[], WALValue>> entries = (cursor != null && i == cursor.rangeIndex)
+                ? rangeEntries(cursor.prefix, cursor.resumeKey(), range[2], range[3])
+                : rangeEntries(range[0], range[1], range[2], range[3]);
+            for (Map.Entry<byte[], WALValue> entry : entries) {
+                byte[] rawKey = entry.getKey();
+                byte[] prefix = WALKey.rawKeyPrefix(rawKey);
+                byte[] key = WALKey.rawKeyKey(rawKey);
+                WALValue value = entry.getValue();
+                byte[] v = hydrateValues ? value.getValue() : null;
+                if (value.getTimestampId() != -1 && !value.getTombstoned()
+                    && !scan.stream(prefix, key, v, value.getTimestampId(), value.getVersion())) {
+                    return new ScanCursor(i, prefix, key, highestTxId);
+                }
+                count++;
+                bytes += (prefix != null ? prefix.length : 0) + key.length + (v != null ? v.length : 0);
+                if ((pageSize > 0 && count >= pageSize) || (pageBytes > 0 && bytes >= pageBytes)) {
+                    return new ScanCursor(i, prefix, key, highestTxId);
+                }
+            }
+        }
+        return null;
+    }
+
     @Override
     public TakeResult takeFromTransactionId(List<RingMember> membersInOrder,
         Map<RingMember, Long> memberTxIds,
@@ -257,14 +323,40 @@ public class InMemoryPartitionClient implements PartitionClient {
         long additionalSolverAfterNMillis,
         long abandonSolutionAfterNMillis,
         Optional<List<String>> solutionLog) throws Exception {
+        return takeFromTransactionId(membersInOrder, memberTxIds, limit, null, highwaters, stream, additionalSolverAfterNMillis,
+            abandonSolutionAfterNMillis, solutionLog);
+    }
+
+    @Override
+    public TakeResult takeFromTransactionId(List<RingMember> membersInOrder,
+        Map<RingMember, Long> memberTxIds,
+        int limit,
+        TakeFilter filter,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
         Long fromTxId = memberTxIds != null ? memberTxIds.getOrDefault(ringMember, 0L) : 0L;
         ConcurrentNavigableMap<Long, Tx> take = transactions.tailMap(fromTxId, false);
         long lastTxId = -1;
+        long filtered = 0;
+        int taken = 0;
         boolean tookToEnd = true;
         for (Tx tx : take.values()) {
+            if (limit > 0 && taken >= limit) {
+                tookToEnd = false;
+                break;
+            }
+            if (filter != null && !filter.accept(tx.prefix, tx.key, tx.valueTimestamp, 0L)) {
+                lastTxId = tx.txId;
+                filtered++;
+                continue;
+            }
             TxResult result = stream.stream(tx.txId, tx.prefix, tx.key, tx.value, tx.valueTimestamp, tx.valueTombstoned, 0L);
             if (result.isAccepted()) {
                 lastTxId = tx.txId;
+                taken++;
             }
             if (!result.wantsMore()) {
                 tookToEnd = false;
@@ -274,7 +366,8 @@ public class InMemoryPartitionClient implements PartitionClient {
 
         return new TakeResult(ringMember,
             lastTxId,
-            tookToEnd ? new WALHighwater(Collections.singletonList(new RingMemberHighwater(ringMember, transactions.lastKey()))) : null);
+            tookToEnd ? new WALHighwater(Collections.singletonList(new RingMemberHighwater(ringMember, transactions.lastKey()))) : null,
+            filtered);
     }
 
     @Override
@@ -290,6 +383,37 @@ public class InMemoryPartitionClient implements PartitionClient {
         throw new UnsupportedOperationException("Not yet");
     }
 
+    @Override
+    public TakeResult subscribe(List<RingMember> membersInOrder,
+        Map<RingMember, Long> memberTxIds,
+        int limit,
+        TakeFilter filter,
+        long heartbeatIntervalMillis,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        TakeResultStream cursors,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        long fromTxId = memberTxIds != null ? memberTxIds.getOrDefault(ringMember, 0L) : 0L;
+        while (true) {
+            boolean[] stopped = { false };
+            TakeResult takeResult = takeFromTransactionId(membersInOrder, Collections.singletonMap(ringMember, fromTxId), limit, filter, highwaters,
+                (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                    TxResult result = stream.stream(rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion);
+                    stopped[0] |= !result.wantsMore();
+                    return result;
+                },
+                additionalSolverAfterNMillis, abandonSolutionAfterNMillis, solutionLog);
+            fromTxId = Math.max(fromTxId, takeResult.lastTxId);
+            TakeResult cursor = new TakeResult(takeResult.tookFrom, fromTxId, takeResult.tookToEnd, takeResult.filtered);
+            if (stopped[0] || !cursors.stream(cursor)) {
+                return cursor;
+            }
+            Thread.sleep(heartbeatIntervalMillis);
+        }
+    }
+
     @Override
     public long getApproximateCount(Consistency consistency,
         long additionalSolverAfterNMillis,
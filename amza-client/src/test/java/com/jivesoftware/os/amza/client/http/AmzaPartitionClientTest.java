@@ -1,5 +1,7 @@
 package com.jivesoftware.os.amza.client.http;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.jivesoftware.os.amza.api.PartitionClient.KeyValueFilter;
 import com.jivesoftware.os.amza.api.filer.FilerOutputStream;
@@ -9,18 +11,25 @@ import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.api.ring.RingMemberAndHost;
+import com.jivesoftware.os.amza.api.scan.ScanCursor;
 import com.jivesoftware.os.amza.api.stream.ClientUpdates;
 import com.jivesoftware.os.amza.api.stream.OffsetUnprefixedWALKeys;
 import com.jivesoftware.os.amza.api.stream.PrefixedKeyRanges;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.api.stream.TxKeyValueStream.TxResult;
 import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
+import com.jivesoftware.os.amza.api.take.TakeFilter;
+import com.jivesoftware.os.amza.api.take.TakeResult;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.xerial.snappy.SnappyOutputStream;
 
@@ -73,6 +82,184 @@ public class AmzaPartitionClientTest {
             Optional.<List<String>>empty());
     }
 
+    @Test
+    public void testScanPage() throws Exception {
+        byte[] partitionNameBytes = "abc".getBytes();
+        PartitionName partitionName = new PartitionName(false, partitionNameBytes, partitionNameBytes);
+        AmzaClientCallRouter<TestClient, Exception> router = new AmzaClientCallRouter<>(MoreExecutors.sameThreadExecutor(), new TestPartitionHostsProvider(3),
+            new TestRingHostClientProvider());
+        AmzaPartitionClient<TestClient, Exception> client = new AmzaPartitionClient<>(partitionName, router, new TestRemotePartitionCaller(),
+            10_000L, -1, -1);
+
+        int[] count = { 0 };
+        ScanCursor cursor = client.scanPage(Consistency.leader,
+            stream -> stream.stream(null, null, null, null),
+            null,
+            10,
+            -1,
+            true,
+            (prefix, key, value, timestamp, version) -> {
+                count[0]++;
+                return true;
+            },
+            1_000L,
+            10_000L,
+            30_000L,
+            Optional.<List<String>>empty());
+        Assert.assertEquals(count[0], 10);
+        Assert.assertNotNull(cursor);
+        Assert.assertEquals(cursor.rangeIndex, 0);
+        Assert.assertEquals(cursor.key, UIO.intBytes(9));
+        Assert.assertEquals(cursor.highestTxId, 1234L);
+
+        count[0] = 0;
+        cursor = client.scanPage(Consistency.leader,
+            stream -> stream.stream(null, null, null, null),
+            null,
+            10,
+            -1,
+            true,
+            (prefix, key, value, timestamp, version) -> {
+                count[0]++;
+                return count[0] < 4;
+            },
+            1_000L,
+            10_000L,
+            30_000L,
+            Optional.<List<String>>empty());
+        Assert.assertEquals(count[0], 4);
+        Assert.assertNotNull(cursor);
+        Assert.assertEquals(cursor.key, UIO.intBytes(3));
+    }
+
+    @Test
+    public void testFilteredTakeFromUnfilteredNode() throws Exception {
+        byte[] partitionNameBytes = "abc".getBytes();
+        PartitionName partitionName = new PartitionName(false, partitionNameBytes, partitionNameBytes);
+        AmzaClientCallRouter<TestClient, Exception> router = new AmzaClientCallRouter<>(MoreExecutors.sameThreadExecutor(), new TestPartitionHostsProvider(3),
+            new TestRingHostClientProvider());
+        AmzaPartitionClient<TestClient, Exception> client = new AmzaPartitionClient<>(partitionName, router, new TestRemotePartitionCaller(),
+            10_000L, -1, -1);
+
+        // the node streams every row, so the client drops rows at or below the minimum timestamp itself
+        List<Long> timestamps = Lists.newArrayList();
+        TakeResult takeResult = client.takeFromTransactionId(null,
+            Maps.newHashMap(),
+            10,
+            new TakeFilter(1_004, -1, -1, -1, null),
+            highwater -> {
+            },
+            (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                timestamps.add(valueTimestamp);
+                return TxResult.MORE;
+            },
+            10_000L,
+            30_000L,
+            Optional.empty());
+        Assert.assertEquals(timestamps.toString(), "[1005, 1006, 1007, 1008, 1009]");
+        Assert.assertEquals(takeResult.lastTxId, 9L);
+        Assert.assertEquals(takeResult.filtered, 5L);
+    }
+
+    @Test
+    public void testSubscribe() throws Exception {
+        byte[] partitionNameBytes = "abc".getBytes();
+        PartitionName partitionName = new PartitionName(false, partitionNameBytes, partitionNameBytes);
+        AmzaClientCallRouter<TestClient, Exception> router = new AmzaClientCallRouter<>(MoreExecutors.sameThreadExecutor(), new TestPartitionHostsProvider(3),
+            new TestRingHostClientProvider());
+        TestRemotePartitionCaller caller = new TestRemotePartitionCaller();
+        AmzaPartitionClient<TestClient, Exception> client = new AmzaPartitionClient<>(partitionName, router, caller, 10_000L, -1, -1);
+
+        List<Long> rowTxIds = Lists.newArrayList();
+        List<Long> cursorTxIds = Lists.newArrayList();
+        List<Boolean> cursorsToEnd = Lists.newArrayList();
+        TakeResult takeResult = client.subscribe(null,
+            Maps.newHashMap(),
+            10,
+            null,
+            1_000L,
+            highwater -> {
+            },
+            (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                Assert.assertEquals(UIO.bytesLong(key), rowTxId);
+                Assert.assertEquals(valueTimestamp, 1_000 + rowTxId);
+                rowTxIds.add(rowTxId);
+                return TxResult.MORE;
+            },
+            cursor -> {
+                cursorTxIds.add(cursor.lastTxId);
+                cursorsToEnd.add(cursor.tookToEnd != null);
+                return true;
+            },
+            10_000L,
+            30_000L,
+            Optional.empty());
+
+        Assert.assertEquals(caller.subscribedFrom, Arrays.asList(-1L));
+        Assert.assertEquals(rowTxIds.size(), 25);
+        for (int i = 0; i < 25; i++) {
+            Assert.assertEquals(rowTxIds.get(i).longValue(), i + 1);
+        }
+        // three batches bounded by the limit, then two idle heartbeats which leave the cursor where it was
+        Assert.assertEquals(cursorTxIds, Arrays.asList(10L, 20L, 25L, 25L, 25L));
+        Assert.assertEquals(cursorsToEnd, Arrays.asList(false, false, true, true, true));
+        Assert.assertEquals(takeResult.lastTxId, 25L);
+    }
+
+    @Test
+    public void testSubscribeResumesFromWhereItStopped() throws Exception {
+        byte[] partitionNameBytes = "abc".getBytes();
+        PartitionName partitionName = new PartitionName(false, partitionNameBytes, partitionNameBytes);
+        AmzaClientCallRouter<TestClient, Exception> router = new AmzaClientCallRouter<>(MoreExecutors.sameThreadExecutor(), new TestPartitionHostsProvider(3),
+            new TestRingHostClientProvider());
+        TestRemotePartitionCaller caller = new TestRemotePartitionCaller();
+        AmzaPartitionClient<TestClient, Exception> client = new AmzaPartitionClient<>(partitionName, router, caller, 10_000L, -1, -1);
+
+        // stops part way through the second batch, so only the first batch is handed to the cursor stream
+        List<Long> cursorTxIds = Lists.newArrayList();
+        TakeResult stopped = client.subscribe(null,
+            Maps.newHashMap(),
+            10,
+            null,
+            1_000L,
+            highwater -> {
+            },
+            (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                return rowTxId == 14 ? TxResult.ACCEPT_AND_STOP : TxResult.MORE;
+            },
+            cursor -> cursorTxIds.add(cursor.lastTxId),
+            10_000L,
+            30_000L,
+            Optional.empty());
+        Assert.assertEquals(cursorTxIds, Arrays.asList(10L));
+        Assert.assertEquals(stopped.lastTxId, 14L);
+        Assert.assertNull(stopped.tookToEnd);
+
+        // resuming from the returned cursor picks up with the row after the last accepted one
+        List<Long> rowTxIds = Lists.newArrayList();
+        TakeResult resumed = client.subscribe(Collections.singletonList(stopped.tookFrom),
+            Collections.singletonMap(stopped.tookFrom, stopped.lastTxId),
+            10,
+            null,
+            1_000L,
+            highwater -> {
+            },
+            (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                rowTxIds.add(rowTxId);
+                return TxResult.MORE;
+            },
+            cursor -> true,
+            10_000L,
+            30_000L,
+            Optional.empty());
+        Assert.assertEquals(caller.subscribedFrom, Arrays.asList(-1L, 14L));
+        Assert.assertEquals(rowTxIds.size(), 11);
+        for (int i = 0; i < 11; i++) {
+            Assert.assertEquals(rowTxIds.get(i).longValue(), 15 + i);
+        }
+        Assert.assertEquals(resumed.lastTxId, 25L);
+    }
+
     private class TestClient {
 
     }
@@ -92,6 +279,10 @@ public class AmzaPartitionClientTest {
 
     private class TestRemotePartitionCaller implements RemotePartitionCaller<TestClient, Exception> {
 
+        private static final long SUBSCRIBE_LAST_TX_ID = 25;
+
+        private final List<Long> subscribedFrom = Lists.newArrayList();
+
         @Override
         public PartitionResponse<NoOpCloseable> commit(RingMember leader,
             RingMember ringMember,
@@ -103,6 +294,17 @@ public class AmzaPartitionClientTest {
             throw new UnsupportedOperationException("blah");
         }
 
+        @Override
+        public PartitionResponse<NoOpCloseable> bulkLoad(RingMember leader,
+            RingMember ringMember,
+            TestClient client,
+            Consistency consistency,
+            byte[] prefix,
+            ClientUpdates updates,
+            long abandonSolutionAfterNMillis) throws Exception {
+            throw new UnsupportedOperationException("blah");
+        }
+
         @Override
         public PartitionResponse<CloseableStreamResponse> get(RingMember leader,
             RingMember ringMember,
@@ -131,7 +333,8 @@ public class AmzaPartitionClientTest {
             boolean compressed,
             PrefixedKeyRanges ranges,
             KeyValueFilter filter,
-            boolean hydrateValues) throws Exception {
+            boolean hydrateValues,
+            boolean frontCoded) throws Exception {
 
             ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
             FilerOutputStream out = new FilerOutputStream(compressed ? new BufferedOutputStream(new SnappyOutputStream(bytesOut), 8192) : bytesOut);
@@ -181,6 +384,61 @@ public class AmzaPartitionClientTest {
             out.flush(false);
         }
 
+        @Override
+        public PartitionResponse<CloseableStreamResponse> scanPage(RingMember leader,
+            RingMember ringMember,
+            TestClient client,
+            Consistency consistency,
+            PrefixedKeyRanges ranges,
+            ScanCursor cursor,
+            int pageSize,
+            long pageBytes,
+            boolean hydrateValues) throws Exception {
+
+            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+            FilerOutputStream out = new FilerOutputStream(bytesOut);
+            byte[] intLongBuffer = new byte[8];
+            UIO.writeLong(out, 1234L, "highestTxId", intLongBuffer);
+            UIO.writeByte(out, (byte) 0, "eosRange");
+            UIO.writeInt(out, 0, "rangeIndex", intLongBuffer);
+            for (int i = 0; i < pageSize; i++) {
+                UIO.writeByte(out, (byte) 0, "eos");
+                UIO.writeByteArray(out, null, "prefix", intLongBuffer);
+                UIO.writeByteArray(out, UIO.intBytes(i), "key", intLongBuffer);
+                if (hydrateValues) {
+                    UIO.writeByteArray(out, UIO.intBytes(-i), "value", intLongBuffer);
+                }
+                UIO.writeLong(out, 1_000 + i, "timestamp", intLongBuffer);
+                UIO.writeByte(out, (byte) 0, "tombstoned");
+                UIO.writeLong(out, 2_000 + i, "version", intLongBuffer);
+            }
+            UIO.writeByte(out, (byte) 1, "eos");
+            UIO.writeByte(out, (byte) 1, "eosRange");
+            UIO.writeByteArray(out, new ScanCursor(0, null, UIO.intBytes(pageSize - 1), 1234L).toBytes(), "cursor", intLongBuffer);
+            out.close();
+            ByteArrayInputStream inputStream = new ByteArrayInputStream(bytesOut.toByteArray());
+
+            return new PartitionResponse<>(new CloseableStreamResponse() {
+                @Override
+                public InputStream getInputStream() {
+                    return inputStream;
+                }
+
+                @Override
+                public long getActiveCount() {
+                    return 0;
+                }
+
+                @Override
+                public void abort() throws Exception {
+                }
+
+                @Override
+                public void close() throws Exception {
+                }
+            }, true);
+        }
+
         @Override
         public PartitionResponse<CloseableStreamResponse> takeFromTransactionId(RingMember leader,
             RingMember ringMember,
@@ -190,6 +448,137 @@ public class AmzaPartitionClientTest {
             throw new UnsupportedOperationException("blah");
         }
 
+        @Override
+        public PartitionResponse<CloseableStreamResponse> subscribe(RingMember leader,
+            RingMember ringMember,
+            TestClient client,
+            Map<RingMember, Long> membersTxId,
+            int limit,
+            TakeFilter filter,
+            long heartbeatIntervalMillis) throws Exception {
+
+            long fromTxId = membersTxId.getOrDefault(ringMember, -1L);
+            subscribedFrom.add(fromTxId);
+
+            // batches are written as the node writes them, each a whole take followed by the eos which closes it
+            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+            FilerOutputStream out = new FilerOutputStream(bytesOut);
+            byte[] intLongBuffer = new byte[8];
+            // the client reads members back as its ring knows them, and the test ring has no version byte
+            byte[] ringMemberBytes = ringMember.leakBytes();
+            long txId = Math.max(fromTxId, 0);
+            int idle = 0;
+            while (idle < 2) {
+                UIO.writeByte(out, (byte) 0, "eos");
+                UIO.writeByteArray(out, ringMemberBytes, "ringMember", intLongBuffer);
+                long lastTxId = -1;
+                for (long rowTxId = txId + 1; rowTxId <= SUBSCRIBE_LAST_TX_ID && rowTxId - txId <= limit; rowTxId++) {
+                    UIO.writeByte(out, (byte) 0, "eos");
+                    UIO.writeByte(out, RowType.primary.toByte(), "type");
+                    UIO.writeLong(out, rowTxId, "rowTxId", intLongBuffer);
+                    UIO.writeByteArray(out, null, "prefix", intLongBuffer);
+                    UIO.writeByteArray(out, UIO.longBytes(rowTxId), "key", intLongBuffer);
+                    UIO.writeByteArray(out, UIO.longBytes(-rowTxId), "value", intLongBuffer);
+                    UIO.writeLong(out, 1_000 + rowTxId, "timestamp", intLongBuffer);
+                    UIO.writeByte(out, (byte) 0, "tombstoned");
+                    UIO.writeLong(out, 2_000 + rowTxId, "version", intLongBuffer);
+                    lastTxId = rowTxId;
+                }
+                UIO.writeByte(out, (byte) 1, "eos");
+                UIO.writeByteArray(out, ringMemberBytes, "ringMember", intLongBuffer);
+                // an idle batch has no rows to report a txId from
+                UIO.writeLong(out, lastTxId, "lastTxId", intLongBuffer);
+                txId = Math.max(txId, lastTxId);
+                if (txId == SUBSCRIBE_LAST_TX_ID) {
+                    UIO.writeInt(out, 1, "length", intLongBuffer);
+                    UIO.writeByteArray(out, ringMemberBytes, "ringMember", intLongBuffer);
+                    UIO.writeLong(out, SUBSCRIBE_LAST_TX_ID, "txId", intLongBuffer);
+                } else {
+                    UIO.writeInt(out, 0, "length", intLongBuffer);
+                }
+                UIO.writeByte(out, (byte) 1, "eos");
+                if (lastTxId == -1) {
+                    idle++;
+                }
+            }
+            // a node streams until the subscriber goes away, so only the fake ever ends a subscription
+            UIO.writeByte(out, (byte) 1, "eos");
+            out.close();
+            ByteArrayInputStream inputStream = new ByteArrayInputStream(bytesOut.toByteArray());
+
+            return new PartitionResponse<>(new CloseableStreamResponse() {
+                @Override
+                public InputStream getInputStream() {
+                    return inputStream;
+                }
+
+                @Override
+                public long getActiveCount() {
+                    return 0;
+                }
+
+                @Override
+                public void abort() throws Exception {
+                }
+
+                @Override
+                public void close() throws Exception {
+                }
+            }, true);
+        }
+
+        @Override
+        public PartitionResponse<CloseableStreamResponse> takeFromTransactionIdFiltered(RingMember leader,
+            RingMember ringMember,
+            TestClient client,
+            Map<RingMember, Long> membersTxId,
+            int limit,
+            TakeFilter filter) throws Exception {
+
+            // answers as a node which predates filtered takes would, with an unfiltered take
+            ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+            FilerOutputStream out = new FilerOutputStream(bytesOut);
+            byte[] intLongBuffer = new byte[8];
+            UIO.writeByteArray(out, ringMember.toBytes(), "ringMember", intLongBuffer);
+            for (int i = 0; i < limit; i++) {
+                UIO.writeByte(out, (byte) 0, "eos");
+                UIO.writeByte(out, RowType.primary.toByte(), "type");
+                UIO.writeLong(out, i, "rowTxId", intLongBuffer);
+                UIO.writeByteArray(out, null, "prefix", intLongBuffer);
+                UIO.writeByteArray(out, UIO.intBytes(i), "key", intLongBuffer);
+                UIO.writeByteArray(out, UIO.intBytes(-i), "value", intLongBuffer);
+                UIO.writeLong(out, 1_000 + i, "timestamp", intLongBuffer);
+                UIO.writeByte(out, (byte) 0, "tombstoned");
+                UIO.writeLong(out, 2_000 + i, "version", intLongBuffer);
+            }
+            UIO.writeByte(out, (byte) 1, "eos");
+            UIO.writeByteArray(out, ringMember.toBytes(), "ringMember", intLongBuffer);
+            UIO.writeLong(out, limit - 1, "lastTxId", intLongBuffer);
+            UIO.writeInt(out, 0, "length", intLongBuffer);
+            out.close();
+            ByteArrayInputStream inputStream = new ByteArrayInputStream(bytesOut.toByteArray());
+
+            return new PartitionResponse<>(new UnfilteredStreamResponse(new CloseableStreamResponse() {
+                @Override
+                public InputStream getInputStream() {
+                    return inputStream;
+                }
+
+                @Override
+                public long getActiveCount() {
+                    return 0;
+                }
+
+                @Override
+                public void abort() throws Exception {
+                }
+
+                @Override
+                public void close() throws Exception {
+                }
+            }), true);
+        }
+
         @Override
         public PartitionResponse<CloseableStreamResponse> takePrefixFromTransactionId(RingMember leader,
             RingMember ringMember,
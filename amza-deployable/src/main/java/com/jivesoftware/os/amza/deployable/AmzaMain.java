@@ -115,7 +115,13 @@ public class AmzaMain {
             final AmzaServiceInitializer.AmzaServiceConfig amzaServiceConfig = new AmzaServiceInitializer.AmzaServiceConfig();
             amzaServiceConfig.checkIfCompactionIsNeededIntervalInMillis = amzaConfig.getCheckIfCompactionIsNeededIntervalInMillis();
             amzaServiceConfig.numberOfTakerThreads = amzaConfig.getNumberOfTakerThreads();
+            amzaServiceConfig.numberOfBulkTakerThreads = amzaConfig.getNumberOfBulkTakerThreads();
             amzaServiceConfig.workingDirectories = workingDirs;
+            String archiveDirs = amzaConfig.getArchiveDirs();
+            if (archiveDirs != null && !archiveDirs.trim().isEmpty()) {
+                amzaServiceConfig.archiveDirectories = archiveDirs.split(",");
+            }
+            amzaServiceConfig.archiveMaxSegments = amzaConfig.getArchiveMaxSegments();
             amzaServiceConfig.asyncFsyncIntervalMillis = amzaConfig.getAsyncFsyncIntervalMillis();
             amzaServiceConfig.useMemMap = amzaConfig.getUseMemMap();
             amzaServiceConfig.systemReadyInitConcurrencyLevel = amzaConfig.getSystemReadyInitConcurrencyLevel();
@@ -123,6 +129,7 @@ public class AmzaMain {
             amzaServiceConfig.takeSlowThresholdInMillis = amzaConfig.getTakeSlowThresholdInMillis();
             amzaServiceConfig.takeReofferMaxElectionsPerHeartbeat = amzaConfig.getTakeReofferMaxElectionsPerHeartbeat();
             amzaServiceConfig.takeCyaIntervalInMillis = amzaConfig.getTakeCyaIntervalInMillis();
+            amzaServiceConfig.takeFullSweepIntervalInMillis = amzaConfig.getTakeFullSweepIntervalInMillis();
             amzaServiceConfig.maxUpdatesBeforeDeltaStripeCompaction = amzaConfig.getMaxUpdatesBeforeDeltaStripeCompaction();
             amzaServiceConfig.tombstoneCompactionFactor = amzaConfig.getTombstoneCompactionFactor();
             amzaServiceConfig.rebalanceIfImbalanceGreaterThanNBytes = amzaConfig.getRebalanceIfImbalanceGreaterThanNBytes();
@@ -132,8 +139,18 @@ public class AmzaMain {
             amzaServiceConfig.hangupAvailableRowsAfterUnresponsiveMillis = amzaConfig.getHangupAvailableRowsAfterUnresponsiveMillis();
             amzaServiceConfig.pongIntervalMillis = amzaConfig.getPongIntervalMillis();
             amzaServiceConfig.rowsTakerLimit = amzaConfig.getRowsTakerLimit();
+            amzaServiceConfig.takeSnapshotLagInMillis = amzaConfig.getTakeSnapshotLagInMillis();
+            amzaServiceConfig.replicationNodeBytesPerSecond = amzaConfig.getReplicationNodeBytesPerSecond();
+            amzaServiceConfig.replicationPeerBytesPerSecond = amzaConfig.getReplicationPeerBytesPerSecond();
+            amzaServiceConfig.replicationMinBulkFactor = amzaConfig.getReplicationMinBulkFactor();
+            amzaServiceConfig.watcherThreads = amzaConfig.getWatcherThreads();
+            amzaServiceConfig.watcherMaxQueuedRows = amzaConfig.getWatcherMaxQueuedRows();
+            amzaServiceConfig.bulkLoadBatchSize = amzaConfig.getBulkLoadBatchSize();
+            amzaServiceConfig.maxResidentPartitions = amzaConfig.getMaxResidentPartitions();
+            amzaServiceConfig.coldPartitionAfterMillis = amzaConfig.getColdPartitionAfterMillis();
             amzaServiceConfig.flushHighwatersAfterNUpdates = amzaConfig.getFlushHighwatersAfterNUpdates();
             amzaServiceConfig.deltaUseHighwaterTxId = amzaConfig.getDeltaUseHighwaterTxId();
+            amzaServiceConfig.maxSubscribers = amzaConfig.getMaxSubscribers();
 
             AmzaStats amzaSystemStats = new AmzaStats();
             AmzaStats amzaStats = new AmzaStats();
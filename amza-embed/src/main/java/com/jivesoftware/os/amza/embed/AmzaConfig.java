@@ -2,6 +2,7 @@ package com.jivesoftware.os.amza.embed;
 
 import org.merlin.config.Config;
 import org.merlin.config.defaults.BooleanDefault;
+import org.merlin.config.defaults.DoubleDefault;
 import org.merlin.config.defaults.IntDefault;
 import org.merlin.config.defaults.LongDefault;
 import org.merlin.config.defaults.StringDefault;
@@ -11,6 +12,12 @@ public interface AmzaConfig extends Config {
     @StringDefault("./var/data")
     String getWorkingDirs();
 
+    @StringDefault("")
+    String getArchiveDirs();
+
+    @IntDefault(8)
+    int getArchiveMaxSegments();
+
     @LongDefault(60_000L)
     long getTakeSlowThresholdInMillis();
 
@@ -20,6 +27,9 @@ public interface AmzaConfig extends Config {
     @LongDefault(60_000L)
     long getTakeCyaIntervalInMillis();
 
+    @LongDefault(60_000L)
+    long getTakeFullSweepIntervalInMillis();
+
     @LongDefault(60_000L)
     long getHangupAvailableRowsAfterUnresponsiveMillis();
 
@@ -29,9 +39,39 @@ public interface AmzaConfig extends Config {
     @LongDefault(65_536L)
     long getRowsTakerLimit();
 
+    @LongDefault(3_600_000L)
+    long getTakeSnapshotLagInMillis();
+
+    @LongDefault(0L)
+    long getReplicationNodeBytesPerSecond();
+
+    @LongDefault(0L)
+    long getReplicationPeerBytesPerSecond();
+
+    @DoubleDefault(0.1)
+    double getReplicationMinBulkFactor();
+
+    @IntDefault(4)
+    int getWatcherThreads();
+
+    @LongDefault(1_000_000L)
+    long getWatcherMaxQueuedRows();
+
+    @IntDefault(10_000)
+    int getBulkLoadBatchSize();
+
+    @IntDefault(0)
+    int getMaxResidentPartitions();
+
+    @LongDefault(10 * 60 * 1_000L)
+    long getColdPartitionAfterMillis();
+
     @IntDefault(8)
     int getNumberOfTakerThreads();
 
+    @IntDefault(2)
+    int getNumberOfBulkTakerThreads();
+
     @IntDefault(8)
     int getSystemReadyInitConcurrencyLevel();
 
@@ -73,4 +113,7 @@ public interface AmzaConfig extends Config {
 
     @BooleanDefault(false)
     boolean getDeltaUseHighwaterTxId();
+
+    @IntDefault(64)
+    int getMaxSubscribers();
 }
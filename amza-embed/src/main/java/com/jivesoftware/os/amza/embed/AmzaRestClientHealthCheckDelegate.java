@@ -7,6 +7,8 @@ import com.jivesoftware.os.amza.api.filer.IWriteable;
 import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.amza.api.partition.PartitionStatistics;
+import com.jivesoftware.os.amza.api.scan.ScanCursor;
 import com.jivesoftware.os.amza.service.Partition.ScanRange;
 import com.jivesoftware.os.amza.service.replication.http.AmzaRestClient;
 import com.jivesoftware.os.amza.service.ring.RingTopology;
@@ -62,6 +64,33 @@ public class AmzaRestClientHealthCheckDelegate implements AmzaRestClient {
         }
     }
 
+    public interface BulkLoadLatency extends TimerHealthCheckConfig {
+        @StringDefault("client>bulkLoad>latency")
+        @Override
+        String getName();
+
+        @StringDefault("How long its taking to bulk load.")
+        @Override
+        String getDescription();
+
+        @DoubleDefault(3600000d)
+        @Override
+        Double get95ThPercentileMax();
+    }
+
+    private static final HealthTimer bulkLoadLatency = HealthFactory.getHealthTimer(BulkLoadLatency.class, TimerHealthChecker.FACTORY);
+
+    @Override
+    public StateMessageCause bulkLoad(PartitionName partitionName, Consistency consistency, boolean checkLeader, long partitionAwaitOnlineTimeoutMillis,
+        IReadable read) throws Exception {
+        try {
+            bulkLoadLatency.startTimer();
+            return client.bulkLoad(partitionName, consistency, checkLeader, partitionAwaitOnlineTimeoutMillis, read);
+        } finally {
+            bulkLoadLatency.stopTimer("Bulk load", "Check cluster health.");
+        }
+    }
+
     public interface ConfigRequestLatency extends TimerHealthCheckConfig {
         @StringDefault("client>config>request>latency")
         @Override
@@ -309,16 +338,49 @@ public class AmzaRestClientHealthCheckDelegate implements AmzaRestClient {
         boolean rangeBoundaries,
         KeyValueFilter filter,
         IWriteable out,
-        boolean hydrateValues) throws Exception {
+        boolean hydrateValues,
+        boolean frontCoded) throws Exception {
         HealthTimer timer = hydrateValues ? scanResponseLatency : scanKeysResponseLatency;
         try {
             timer.startTimer();
-            client.scan(partitionName, ranges, rangeBoundaries, filter, out, hydrateValues);
+            client.scan(partitionName, ranges, rangeBoundaries, filter, out, hydrateValues, frontCoded);
         } finally {
             timer.stopTimer("Ensure", "Check cluster health.");
         }
     }
 
+    public interface ScanPageResponseLatency extends TimerHealthCheckConfig {
+        @StringDefault("client>scanPage>response>latency")
+        @Override
+        String getName();
+
+        @StringDefault("How long its taking to scan a page.")
+        @Override
+        String getDescription();
+
+        @DoubleDefault(3600000d)
+        @Override
+        Double get95ThPercentileMax();
+    }
+
+    private static final HealthTimer scanPageResponseLatency = HealthFactory.getHealthTimer(ScanPageResponseLatency.class, TimerHealthChecker.FACTORY);
+
+    @Override
+    public void scanPage(PartitionName partitionName,
+        List<ScanRange> ranges,
+        ScanCursor cursor,
+        int pageSize,
+        long pageBytes,
+        IWriteable out,
+        boolean hydrateValues) throws Exception {
+        try {
+            scanPageResponseLatency.startTimer();
+            client.scanPage(partitionName, ranges, cursor, pageSize, pageBytes, out, hydrateValues);
+        } finally {
+            scanPageResponseLatency.stopTimer("Ensure", "Check cluster health.");
+        }
+    }
+
     public interface StatusLatency extends TimerHealthCheckConfig {
         @StringDefault("client>status>latency")
         @Override
@@ -371,6 +433,18 @@ public class AmzaRestClientHealthCheckDelegate implements AmzaRestClient {
         }
     }
 
+    private static final HealthTimer takeFromFilteredLatency = HealthFactory.getHealthTimer(TakeFromLatency.class, TimerHealthChecker.FACTORY);
+
+    @Override
+    public void takeFromTransactionIdFiltered(PartitionName partitionName, int limit, IReadable in, IWriteable out) throws Exception {
+        try {
+            takeFromFilteredLatency.startTimer();
+            client.takeFromTransactionIdFiltered(partitionName, limit, in, out);
+        } finally {
+            takeFromFilteredLatency.stopTimer("Ensure", "Check cluster health.");
+        }
+    }
+
     private static final HealthTimer takeFromWithPrefixLatency = HealthFactory.getHealthTimer(TakeFromLatency.class, TimerHealthChecker.FACTORY);
 
     @Override
@@ -383,6 +457,22 @@ public class AmzaRestClientHealthCheckDelegate implements AmzaRestClient {
         }
     }
 
+    @Override
+    public boolean acquireSubscriber() {
+        return client.acquireSubscriber();
+    }
+
+    @Override
+    public void releaseSubscriber() {
+        client.releaseSubscriber();
+    }
+
+    @Override
+    public void subscribe(PartitionName partitionName, int limit, IReadable in, IWriteable out) throws Exception {
+        // subscriptions stay open for as long as the subscriber follows the partition, so their duration says nothing about health
+        client.subscribe(partitionName, limit, in, out);
+    }
+
     private static final HealthTimer approximateCountLatency = HealthFactory.getHealthTimer(TakeFromLatency.class, TimerHealthChecker.FACTORY);
 
     @Override
@@ -395,4 +485,9 @@ public class AmzaRestClientHealthCheckDelegate implements AmzaRestClient {
         }
     }
 
+    @Override
+    public PartitionStatistics statistics(PartitionName partitionName) throws Exception {
+        return client.statistics(partitionName);
+    }
+
 }
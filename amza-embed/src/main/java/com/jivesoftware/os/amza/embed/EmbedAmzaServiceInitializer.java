@@ -34,8 +34,10 @@ import com.jivesoftware.os.amza.service.ring.AmzaRingReader;
 import com.jivesoftware.os.amza.service.ring.AmzaRingWriter;
 import com.jivesoftware.os.amza.service.stats.AmzaStats;
 import com.jivesoftware.os.amza.service.storage.PartitionPropertyMarshaller;
+import com.jivesoftware.os.amza.service.storage.SystemCompressionDictionaryStore;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshaller;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshaller;
+import com.jivesoftware.os.amza.service.storage.binary.RowCompressionDictionaries;
 import com.jivesoftware.os.amza.service.take.AvailableRowsTaker;
 import com.jivesoftware.os.amza.service.take.RowsTakerFactory;
 import com.jivesoftware.os.amza.ui.AmzaUIInitializer;
@@ -175,7 +177,15 @@ public class EmbedAmzaServiceInitializer {
             }
         };
 
-        BinaryPrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller(); // hehe you cant change this :)
+        SystemCompressionDictionaryStore compressionDictionaryStore = new SystemCompressionDictionaryStore(orderIdProvider);
+        BinaryPrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller(new RowCompressionDictionaries(
+            compressionDictionaryStore,
+            amzaServiceConfig.compressionDictionarySamples,
+            amzaServiceConfig.compressionDictionarySampleBytes,
+            amzaServiceConfig.compressionDictionaryBytes,
+            amzaServiceConfig.compressionDictionaryCacheBytes,
+            amzaServiceConfig.compressionDictionaryPartitions,
+            deployable.newBoundedExecutor(1, "dictionary-trainer"))); // hehe you cant change this :)
         BinaryHighwaterRowMarshaller highwaterRowMarshaller = new BinaryHighwaterRowMarshaller(amzaInterner);
 
         TenantRoutingHttpClientInitializer<String> nonSigningClientInitializer = new TenantRoutingHttpClientInitializer<>(new OAuthSignerProvider(() -> null));
@@ -250,6 +260,7 @@ public class EmbedAmzaServiceInitializer {
             sickThreads,
             sickPartitions,
             primaryRowMarshaller,
+            compressionDictionaryStore,
             highwaterRowMarshaller,
             ringMember,
             ringHost,
@@ -362,7 +373,13 @@ public class EmbedAmzaServiceInitializer {
         if (bindClientEndpoints) {
             deployable.addEndpoints(AmzaClientRestEndpoints.class);
             deployable.addInjectables(AmzaRestClient.class, new AmzaRestClientHealthCheckDelegate(
-                new AmzaClientService(amzaService.getRingReader(), amzaService.getRingWriter(), amzaService)));
+                new AmzaClientService(amzaService.getRingReader(),
+                    amzaService.getRingWriter(),
+                    amzaService,
+                    amzaServiceConfig.scanThreads > 0 ? deployable.newBoundedExecutor(amzaServiceConfig.scanThreads, "amza-scan") : null,
+                    amzaServiceConfig.scanRangeConcurrency,
+                    amzaServiceConfig.scanRangeBufferBytes,
+                    amzaServiceConfig.maxSubscribers)));
         }
 
         Resource staticResource = new Resource(null)
@@ -49,9 +49,13 @@ import com.jivesoftware.os.amza.service.ring.AmzaRingReader;
 import com.jivesoftware.os.amza.service.ring.RingTopology;
 import com.jivesoftware.os.amza.service.stats.AmzaStats;
 import com.jivesoftware.os.amza.service.storage.PartitionPropertyMarshaller;
+import com.jivesoftware.os.amza.service.storage.SystemCompressionDictionaryStore;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshaller;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshaller;
+import com.jivesoftware.os.amza.service.storage.binary.RowCompressionDictionaries;
 import com.jivesoftware.os.amza.service.take.AvailableRowsTaker;
+import com.jivesoftware.os.amza.sortedrun.pointers.SortedRunWALIndexConfig;
+import com.jivesoftware.os.amza.sortedrun.pointers.SortedRunWALIndexProvider;
 import com.jivesoftware.os.amza.ui.AmzaUIInitializer;
 import com.jivesoftware.os.aquarium.AquariumStats;
 import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
@@ -178,6 +182,10 @@ public class Main {
         if (amzaServiceConfig.systemRingSize > 0) {
             systemRingSize.set(amzaServiceConfig.systemRingSize);
         }
+        amzaServiceConfig.scanThreads = Integer.parseInt(System.getProperty("amza.scan.threads", "0"));
+        amzaServiceConfig.scanRangeConcurrency = Integer.parseInt(System.getProperty("amza.scan.range.concurrency", "8"));
+        amzaServiceConfig.scanRangeBufferBytes = Long.parseLong(System.getProperty("amza.scan.range.buffer.bytes", String.valueOf(64 * 1024 * 1024)));
+        amzaServiceConfig.maxSubscribers = Integer.parseInt(System.getProperty("amza.max.subscribers", "64"));
 
         AmzaInterner amzaInterner = new AmzaInterner();
 
@@ -204,8 +212,17 @@ public class Main {
         //  hmmm
         LABPointerIndexConfig labConfig = BindInterfaceToConfiguration.bindDefault(LABPointerIndexConfig.class);
         labConfig.setLeapCacheMaxCapacity(Integer.parseInt(System.getProperty("amza.leap.cache.max.capacity", "1000000")));
-
-        BinaryPrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller(); // hehe you cant change this :)
+        SortedRunWALIndexConfig sortedRunConfig = BindInterfaceToConfiguration.bindDefault(SortedRunWALIndexConfig.class);
+
+        SystemCompressionDictionaryStore compressionDictionaryStore = new SystemCompressionDictionaryStore(orderIdProvider);
+        BinaryPrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller(new RowCompressionDictionaries(
+            compressionDictionaryStore,
+            amzaServiceConfig.compressionDictionarySamples,
+            amzaServiceConfig.compressionDictionarySampleBytes,
+            amzaServiceConfig.compressionDictionaryBytes,
+            amzaServiceConfig.compressionDictionaryCacheBytes,
+            amzaServiceConfig.compressionDictionaryPartitions,
+            BoundedExecutor.newBoundedExecutor(1, "dictionary-trainer"))); // hehe you cant change this :)
         BinaryHighwaterRowMarshaller highwaterRowMarshaller = new BinaryHighwaterRowMarshaller(amzaInterner);
 
         AtomicReference<Callable<RingTopology>> topologyProvider = new AtomicReference<>(); // bit of a hack
@@ -257,6 +274,7 @@ public class Main {
             sickThreads,
             sickPartitions,
             primaryRowMarshaller,
+            compressionDictionaryStore,
             highwaterRowMarshaller,
             ringMember,
             ringHost,
@@ -280,6 +298,13 @@ public class Main {
                         partitionStripeFunction,
                         workingIndexDirectories),
                     persistentRowIOProvider);
+
+                indexProviderRegistry.register(
+                    new SortedRunWALIndexProvider(SortedRunWALIndexProvider.INDEX_CLASS_NAME,
+                        sortedRunConfig,
+                        partitionStripeFunction,
+                        workingIndexDirectories),
+                    persistentRowIOProvider);
             },
             availableRowsTaker,
             () -> {
@@ -334,7 +359,13 @@ public class Main {
             .addEndpoint(AmzaClientRestEndpoints.class)
             .addInjectable(AmzaInterner.class, amzaInterner)
             .addInjectable(ObjectMapper.class, mapper)
-            .addInjectable(AmzaRestClient.class, new AmzaClientService(amzaService.getRingReader(), amzaService.getRingWriter(), amzaService));
+            .addInjectable(AmzaRestClient.class, new AmzaClientService(amzaService.getRingReader(),
+                amzaService.getRingWriter(),
+                amzaService,
+                amzaServiceConfig.scanThreads > 0 ? BoundedExecutor.newBoundedExecutor(amzaServiceConfig.scanThreads, "amza-scan") : null,
+                amzaServiceConfig.scanRangeConcurrency,
+                amzaServiceConfig.scanRangeBufferBytes,
+                amzaServiceConfig.maxSubscribers));
 
         new AmzaUIInitializer().initialize(clusterName,
             ringHost,
@@ -50,6 +50,13 @@ public interface AmzaInstance {
         long leadershipToken,
         long limit) throws Exception;
 
+    void snapshotStream(DataOutputStream dos,
+        RingMember remoteRingMember,
+        VersionedPartitionName localVersionedPartitionName,
+        long takeSessionId,
+        long sharedKey,
+        long leadershipToken) throws Exception;
+
     void rowsTaken(RingMember remoteRingMember,
         long takeSessionId,
         long sharedKey,
@@ -19,19 +19,22 @@ import com.google.common.collect.Maps;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.scan.RowChanges;
 import com.jivesoftware.os.amza.api.scan.RowsChanged;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class AmzaPartitionWatcher implements RowChanges {
 
     private final boolean systemWatcher;
     private final RowChanges rowChanges;
+    private final RowChangesDispatcher rowChangesDispatcher;
     private final Map<PartitionName, List<RowChanges>> watchers = Maps.newConcurrentMap();
 
-    public AmzaPartitionWatcher(boolean systemWatcher, RowChanges rowChanges) {
+    public AmzaPartitionWatcher(boolean systemWatcher, RowChanges rowChanges, RowChangesDispatcher rowChangesDispatcher) {
         this.systemWatcher = systemWatcher;
         this.rowChanges = rowChanges;
+        this.rowChangesDispatcher = rowChangesDispatcher;
     }
 
     @Override
@@ -52,7 +55,15 @@ public class AmzaPartitionWatcher implements RowChanges {
             throw new IllegalArgumentException("This watch doesn't support this type of partition. Expect:" + systemWatcher + "  Is: " + partitionName
                 .isSystemPartition());
         }
-        watchers.computeIfAbsent(partitionName, (t) -> new ArrayList<>()).add(rowChanges);
+        watchers.computeIfAbsent(partitionName, (t) -> new CopyOnWriteArrayList<>()).add(rowChanges);
+    }
+
+    /**
+     * Same as {@link #watch(PartitionName, RowChanges)} but the watcher is called from the dispatcher instead of the committing thread.
+     */
+    public void watchAsync(PartitionName partitionName, RowChanges rowChanges) throws Exception {
+        String name = new String(partitionName.getName(), StandardCharsets.UTF_8);
+        watch(partitionName, rowChangesDispatcher.async(name, rowChanges));
     }
 
 }
@@ -28,12 +28,16 @@ import com.jivesoftware.os.amza.api.ring.RingMemberAndHost;
 import com.jivesoftware.os.amza.api.ring.TimestampedRingHost;
 import com.jivesoftware.os.amza.api.scan.RowChanges;
 import com.jivesoftware.os.amza.api.scan.RowStream;
+import com.jivesoftware.os.amza.api.stream.KeyValueStream;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.api.wal.WALKey;
 import com.jivesoftware.os.amza.api.wal.WALUpdated;
 import com.jivesoftware.os.amza.service.replication.AmzaAquariumProvider;
 import com.jivesoftware.os.amza.service.replication.PartitionComposter;
 import com.jivesoftware.os.amza.service.replication.PartitionStripe;
 import com.jivesoftware.os.amza.service.replication.PartitionStripeProvider;
 import com.jivesoftware.os.amza.service.replication.PartitionTombstoneCompactor;
+import com.jivesoftware.os.amza.service.replication.ReplicationQoS;
 import com.jivesoftware.os.amza.service.replication.RowChangeTaker;
 import com.jivesoftware.os.amza.service.replication.StorageVersionProvider;
 import com.jivesoftware.os.amza.service.ring.RingTopology;
@@ -42,6 +46,7 @@ import com.jivesoftware.os.amza.service.storage.PartitionCreator;
 import com.jivesoftware.os.amza.service.storage.PartitionIndex;
 import com.jivesoftware.os.amza.service.storage.PartitionStore;
 import com.jivesoftware.os.amza.service.storage.SystemWALStorage;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshaller;
 import com.jivesoftware.os.amza.service.take.AvailableRowsTaker.AvailableStream;
 import com.jivesoftware.os.amza.service.take.HighwaterStorage;
 import com.jivesoftware.os.amza.service.take.TakeCoordinator;
@@ -56,8 +61,14 @@ import com.jivesoftware.os.routing.bird.shared.BoundedExecutor;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -73,6 +84,9 @@ public class AmzaService implements AmzaInstance, PartitionProvider {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
+    private static final int SNAPSHOT_PAGE_ROWS = 10_000;
+    private static final long SNAPSHOT_PAGE_BYTES = 4 * 1024 * 1024;
+
     private final TimestampedOrderIdProvider orderIdProvider;
     public final AmzaStats amzaSystemStats;
     public final AmzaStats amzaStats;
@@ -96,7 +110,11 @@ public class AmzaService implements AmzaInstance, PartitionProvider {
     private final AmzaPartitionWatcher amzaStripedPartitionWatcher;
     private final AmzaAquariumProvider aquariumProvider;
     private final TakeFullySystemReady systemReady;
+    private final BinaryPrimaryRowMarshaller primaryRowMarshaller;
     private final Liveliness liveliness;
+    private final PartitionUpdateNotifier partitionUpdateNotifier;
+    private final File bulkLoadSpoolDirectory;
+    private final int bulkLoadBatchSize;
 
     public AmzaService(TimestampedOrderIdProvider orderIdProvider,
         AmzaStats amzaSystemStats,
@@ -121,7 +139,11 @@ public class AmzaService implements AmzaInstance, PartitionProvider {
         AmzaPartitionWatcher amzaStripedPartitionWatcher,
         AmzaAquariumProvider aquariumProvider,
         TakeFullySystemReady systemReady,
-        Liveliness liveliness) {
+        Liveliness liveliness,
+        BinaryPrimaryRowMarshaller primaryRowMarshaller,
+        PartitionUpdateNotifier partitionUpdateNotifier,
+        File bulkLoadSpoolDirectory,
+        int bulkLoadBatchSize) {
 
         this.orderIdProvider = orderIdProvider;
         this.amzaSystemStats = amzaSystemStats;
@@ -147,6 +169,10 @@ public class AmzaService implements AmzaInstance, PartitionProvider {
         this.aquariumProvider = aquariumProvider;
         this.systemReady = systemReady;
         this.liveliness = liveliness;
+        this.primaryRowMarshaller = primaryRowMarshaller;
+        this.partitionUpdateNotifier = partitionUpdateNotifier;
+        this.bulkLoadSpoolDirectory = bulkLoadSpoolDirectory;
+        this.bulkLoadBatchSize = bulkLoadBatchSize;
     }
 
     public PartitionIndex getPartitionIndex() {
@@ -189,6 +215,10 @@ public class AmzaService implements AmzaInstance, PartitionProvider {
         return takeCoordinator;
     }
 
+    public ReplicationQoS getReplicationQoS() {
+        return changeTaker.getReplicationQoS();
+    }
+
     public void start(RingMember ringMember, RingHost ringHost) throws Exception {
         partitionIndex.start();
         storageVersionProvider.start();
@@ -273,6 +303,11 @@ public class AmzaService implements AmzaInstance, PartitionProvider {
         }
     }
 
+    @Override
+    public PartitionUpdateNotifier.Listener listenForUpdates(PartitionName partitionName) {
+        return partitionUpdateNotifier.listen(partitionName);
+    }
+
     @Override
     public void awaitOnline(PartitionName partitionName, long timeoutMillis) throws Exception {
         if (!ringStoreWriter.isMemberOfRing(partitionName.getRingName(), 0)) {
@@ -421,7 +456,9 @@ public class AmzaService implements AmzaInstance, PartitionProvider {
                 ackWaters,
                 ringStoreReader,
                 systemReady,
-                takeCoordinator);
+                takeCoordinator,
+                bulkLoadSpoolDirectory,
+                bulkLoadBatchSize);
         }
     }
 
@@ -514,9 +551,9 @@ public class AmzaService implements AmzaInstance, PartitionProvider {
 
     public void watch(PartitionName partitionName, RowChanges rowChanges) throws Exception {
         if (partitionName.isSystemPartition()) {
-            amzaSystemPartitionWatcher.watch(partitionName, rowChanges);
+            amzaSystemPartitionWatcher.watchAsync(partitionName, rowChanges);
         } else {
-            amzaStripedPartitionWatcher.watch(partitionName, rowChanges);
+            amzaStripedPartitionWatcher.watchAsync(partitionName, rowChanges);
         }
     }
 
@@ -671,6 +708,194 @@ public class AmzaService implements AmzaInstance, PartitionProvider {
         });
     }
 
+    /**
+     * Streams the current value of every key, tombstones included, instead of the log. Rows carry no txId and are preceded by the highwater
+     * the snapshot was taken at, keyed by our own member, followed by our highwaters for the rest of the ring.
+     * <p>
+     * The highwaters are captured up front and the scan is then paged, re-entering the stripe for each page and writing each page outside
+     * it, so a slow taker never pins the stripe. Every key's latest value is at least as new as it was at the snapshot highwater, so the
+     * pages together still cover it, and anything newer is harmless.
+     */
+    @Override
+    public void snapshotStream(DataOutputStream dos,
+        RingMember remoteRingMember,
+        VersionedPartitionName localVersionedPartitionName,
+        long takeSessionId,
+        long sharedKey,
+        long remoteLeadershipToken) throws Exception {
+
+        if (!takeCoordinator.isValidSession(remoteRingMember, takeSessionId, sharedKey)) {
+            LOG.warn("Denied stale snapshotStream from:{} session:{}", remoteRingMember, takeSessionId);
+            throw new IllegalStateException("Attempted to take with invalid session");
+        }
+        PartitionName partitionName = localVersionedPartitionName.getPartitionName();
+        if (partitionName.isSystemPartition()) {
+            throw new IllegalArgumentException("System partitions cannot be taken as a snapshot");
+        }
+
+        MutableLong bytes = new MutableLong(0);
+        SnapshotPoint snapshotPoint = partitionStripeProvider.txPartition(partitionName, (txPartitionStripe, highwaterStorage, versionedAquarium) -> {
+            Waterline leader = versionedAquarium.getLeader();
+            long localLeadershipToken = (leader != null) ? leader.getTimestamp() : -1;
+            VersionedPartitionName versionedPartitionName = versionedAquarium.getVersionedPartitionName();
+
+            if (versionedPartitionName.getPartitionVersion() != localVersionedPartitionName.getPartitionVersion()
+                || !versionedAquarium.getLivelyEndState().isOnline()) {
+                streamBootstrap(localLeadershipToken, dos, bytes, null, -1, null);
+                return null;
+            }
+
+            // everything at or below the snapshot highwater is guaranteed to be in the scan
+            long snapshotTxId = txPartitionStripe.tx((deltaIndex, stripeIndex, partitionStripe) -> partitionStripe.highestTxId(versionedPartitionName));
+            Map<RingMember, Long> highwaters = new LinkedHashMap<>();
+            highwaters.put(ringStoreReader.getRingMember(), snapshotTxId);
+            RingTopology ring = ringStoreReader.getRing(partitionName.getRingName(), -1);
+            for (int i = 0; i < ring.entries.size(); i++) {
+                RingMember ringMember = ring.entries.get(i).ringMember;
+                if (ring.rootMemberIndex != i && !ringMember.equals(remoteRingMember)) {
+                    highwaters.put(ringMember, highwaterStorage.get(ringMember, versionedPartitionName));
+                }
+            }
+            return new SnapshotPoint(localLeadershipToken, versionedPartitionName, snapshotTxId, highwaters);
+        });
+
+        if (snapshotPoint == null) {
+            amzaStats.netStats.wrote.add(bytes.longValue());
+            return;
+        }
+
+        dos.writeLong(snapshotPoint.leadershipToken);
+        dos.writeLong(snapshotPoint.versionedPartitionName.getPartitionVersion());
+        dos.writeByte(1); // fully online
+        bytes.increment();
+        for (Map.Entry<RingMember, Long> highwater : snapshotPoint.highwaters.entrySet()) {
+            writeHighwater(dos, bytes, highwater.getKey(), highwater.getValue());
+        }
+        dos.writeByte(0); // last entry marker
+        bytes.increment();
+
+        RowType rowType = partitionCreator.getProperties(partitionName).rowType;
+        long rows = 0;
+        Set<Long> streamedDictionaries = new HashSet<>();
+        SnapshotPage page = null;
+        do {
+            page = snapshotPage(snapshotPoint.versionedPartitionName, rowType, page);
+            for (byte[] row : page.rows) {
+                streamDictionary(dos, bytes, streamedDictionaries, -1, rowType, row);
+                dos.writeByte(1);
+                dos.writeLong(-1);
+                dos.writeByte(rowType.toByte());
+                dos.writeInt(row.length);
+                dos.write(row);
+                bytes.add(1 + 8 + 1 + 4 + row.length);
+            }
+            rows += page.rows.size();
+        } while (page.full);
+
+        dos.writeByte(0); // last entry marker
+        dos.writeByte(1); // streamedToEnd marker
+        bytes.add(2);
+        amzaStats.netStats.wrote.add(bytes.longValue());
+        LOG.info("Streamed snapshot of {} rows for {} to {} at txId:{}",
+            rows, snapshotPoint.versionedPartitionName, remoteRingMember, snapshotPoint.txId);
+    }
+
+    /**
+     * Scans the next page of a snapshot, resuming at the last key of the previous page, which the inclusive range returns again.
+     */
+    private SnapshotPage snapshotPage(VersionedPartitionName versionedPartitionName, RowType rowType, SnapshotPage previous) throws Exception {
+        PartitionName partitionName = versionedPartitionName.getPartitionName();
+        return partitionStripeProvider.txPartition(partitionName, (txPartitionStripe, highwaterStorage, versionedAquarium) -> {
+            if (versionedAquarium.getVersionedPartitionName().getPartitionVersion() != versionedPartitionName.getPartitionVersion()) {
+                throw new IllegalStateException("Partition " + partitionName + " changed version while streaming a snapshot");
+            }
+            SnapshotPage page = new SnapshotPage();
+            KeyValueStream pageStream = (prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                if (previous != null && Arrays.equals(previous.lastPrefix, prefix) && Arrays.equals(previous.lastKey, key)) {
+                    return true;
+                }
+                byte[] row = primaryRowMarshaller.toRow(partitionName,
+                    rowType,
+                    WALKey.compose(prefix, key),
+                    value,
+                    valueTimestamp,
+                    valueTombstoned,
+                    valueVersion);
+                page.rows.add(row);
+                page.bytes += row.length;
+                page.lastPrefix = prefix;
+                page.lastKey = key;
+                page.full = page.rows.size() >= SNAPSHOT_PAGE_ROWS || page.bytes >= SNAPSHOT_PAGE_BYTES;
+                return !page.full;
+            };
+            txPartitionStripe.tx((deltaIndex, stripeIndex, partitionStripe) -> {
+                if (previous == null) {
+                    partitionStripe.rowScan(versionedAquarium, pageStream, true, true);
+                } else {
+                    partitionStripe.rangeScan(versionedAquarium, previous.lastPrefix, previous.lastKey, null, null, true, true, pageStream);
+                }
+                return null;
+            });
+            return page;
+        });
+    }
+
+    private static class SnapshotPoint {
+
+        private final long leadershipToken;
+        private final VersionedPartitionName versionedPartitionName;
+        private final long txId;
+        private final Map<RingMember, Long> highwaters;
+
+        private SnapshotPoint(long leadershipToken, VersionedPartitionName versionedPartitionName, long txId, Map<RingMember, Long> highwaters) {
+            this.leadershipToken = leadershipToken;
+            this.versionedPartitionName = versionedPartitionName;
+            this.txId = txId;
+            this.highwaters = highwaters;
+        }
+    }
+
+    private static class SnapshotPage {
+
+        private final List<byte[]> rows = new ArrayList<>();
+        private long bytes;
+        private byte[] lastPrefix;
+        private byte[] lastKey;
+        private boolean full;
+    }
+
+    /**
+     * Streams the dictionary a row was deflated with ahead of the first row which needs it, since the taker may not have replicated the
+     * dictionary's system row yet. Takers which predate dictionaries skip the unknown row type.
+     */
+    private void streamDictionary(DataOutputStream dos,
+        MutableLong bytes,
+        Set<Long> streamedDictionaries,
+        long rowTxId,
+        RowType rowType,
+        byte[] row) throws Exception {
+        long dictionaryId = primaryRowMarshaller.valueDictionaryId(rowType, row);
+        if (dictionaryId != -1 && streamedDictionaries.add(dictionaryId)) {
+            byte[] dictionary = primaryRowMarshaller.getDictionaries().dictionary(dictionaryId);
+            dos.writeByte(1);
+            dos.writeLong(rowTxId);
+            dos.writeByte(RowType.compression_dictionary.toByte());
+            dos.writeInt(8 + dictionary.length);
+            dos.writeLong(dictionaryId);
+            dos.write(dictionary);
+            bytes.add(1 + 8 + 1 + 4 + 8 + dictionary.length);
+        }
+    }
+
+    private static void writeHighwater(DataOutputStream dos, MutableLong bytes, RingMember ringMember, long highwaterMark) throws Exception {
+        byte[] ringMemberBytes = ringMember.toBytes();
+        dos.writeByte(1);
+        dos.writeInt(ringMemberBytes.length);
+        dos.write(ringMemberBytes);
+        dos.writeLong(highwaterMark);
+        bytes.add(1 + 4 + ringMemberBytes.length + 8);
+    }
+
     private boolean streamBootstrap(long leadershipToken,
         DataOutputStream dos,
         MutableLong bytes,
@@ -740,11 +965,13 @@ public class AmzaService implements AmzaInstance, PartitionProvider {
 
         long[] limited = new long[1];
         long[] lastRowTxId = { -1 };
+        Set<Long> streamedDictionaries = new HashSet<>();
         boolean streamedToEnd = streamer.stream((rowFP, rowTxId, rowType, row) -> {
             if (limited[0] >= limit && lastRowTxId[0] < rowTxId) {
                 return false;
             }
             lastRowTxId[0] = rowTxId;
+            streamDictionary(dos, bytes, streamedDictionaries, rowTxId, rowType, row);
             dos.writeByte(1);
             dos.writeLong(rowTxId);
             dos.writeByte(rowType.toByte());
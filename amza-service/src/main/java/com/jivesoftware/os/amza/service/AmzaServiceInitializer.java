@@ -35,6 +35,7 @@ import com.jivesoftware.os.amza.service.replication.PartitionBackedHighwaterStor
 import com.jivesoftware.os.amza.service.replication.PartitionComposter;
 import com.jivesoftware.os.amza.service.replication.PartitionStripeProvider;
 import com.jivesoftware.os.amza.service.replication.PartitionTombstoneCompactor;
+import com.jivesoftware.os.amza.service.replication.ReplicationQoS;
 import com.jivesoftware.os.amza.service.replication.RowChangeTaker;
 import com.jivesoftware.os.amza.service.replication.StorageVersionProvider;
 import com.jivesoftware.os.amza.service.replication.StripedPartitionCommitChanges;
@@ -47,6 +48,7 @@ import com.jivesoftware.os.amza.service.stats.AmzaStats;
 import com.jivesoftware.os.amza.service.storage.PartitionCreator;
 import com.jivesoftware.os.amza.service.storage.PartitionIndex;
 import com.jivesoftware.os.amza.service.storage.PartitionPropertyMarshaller;
+import com.jivesoftware.os.amza.service.storage.SystemCompressionDictionaryStore;
 import com.jivesoftware.os.amza.service.storage.SystemWALStorage;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshaller;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshaller;
@@ -95,10 +97,15 @@ public class AmzaServiceInitializer {
     public static class AmzaServiceConfig {
 
         public String[] workingDirectories = null;
+        public String[] archiveDirectories = null;
+        public int archiveBlockSizeInBytes = 64 * 1024;
+        public long archiveSpillSizeInBytes = 64 * 1024 * 1024;
+        public int archiveMaxSegments = 8;
 
         public long asyncFsyncIntervalMillis = 1_000;
 
         public int numberOfTakerThreads = 8;
+        public int numberOfBulkTakerThreads = 2;
 
         public int systemRingSize = -1;
         public int systemReadyInitConcurrencyLevel = 8;
@@ -126,6 +133,7 @@ public class AmzaServiceInitializer {
         public boolean useMemMap = true;
 
         public long takeCyaIntervalInMillis = 1_000;
+        public long takeFullSweepIntervalInMillis = 60_000;
         public long takeSlowThresholdInMillis = 1_000 * 60;
         public long takeLongPollTimeoutMillis = 10_000;
         public long takeSystemReofferDeltaMillis = 100;
@@ -134,6 +142,18 @@ public class AmzaServiceInitializer {
         public long hangupAvailableRowsAfterUnresponsiveMillis = 60_000;
         public long pongIntervalMillis = 10_000;
         public long rowsTakerLimit = 65_536L;
+        public long takeSnapshotLagInMillis = 1_000 * 60 * 60;
+        public long replicationNodeBytesPerSecond = 0;
+        public long replicationPeerBytesPerSecond = 0;
+        public double replicationMinBulkFactor = 0.1d;
+
+        public int watcherThreads = 4;
+        public long watcherMaxQueuedRows = 1_000_000;
+
+        public int bulkLoadBatchSize = 10_000;
+
+        public int maxResidentPartitions = 0;
+        public long coldPartitionAfterMillis = 10 * 60 * 1_000;
 
         public long aquariumLeaderDeadAfterMillis = 60_000;
         public long aquariumLivelinessFeedEveryMillis = 500;
@@ -148,6 +168,22 @@ public class AmzaServiceInitializer {
         public boolean rackDistributionEnabled = true;
 
         public long discoveryIntervalMillis = 30_000;
+
+        public boolean memoryIndexSnapshotsEnabled = false;
+        public long memoryIndexSnapshotIntervalMillis = TimeUnit.MINUTES.toMillis(5);
+
+        public int scanThreads = 0;
+        public int scanRangeConcurrency = 8;
+        public long scanRangeBufferBytes = 64 * 1024 * 1024;
+
+        // every open subscription holds a request thread, so past this many new subscribers are turned away with a 503
+        public int maxSubscribers = 64;
+
+        public int compressionDictionarySamples = 1_024;
+        public int compressionDictionarySampleBytes = 128 * 1024;
+        public int compressionDictionaryBytes = 16 * 1024;
+        public long compressionDictionaryCacheBytes = 64L * 1024 * 1024;
+        public int compressionDictionaryPartitions = 10_000;
     }
 
     public interface IndexProviderRegistryCallback {
@@ -173,6 +209,7 @@ public class AmzaServiceInitializer {
         SickThreads sickThreads,
         SickPartitions sickPartitions,
         BinaryPrimaryRowMarshaller primaryRowMarshaller,
+        SystemCompressionDictionaryStore compressionDictionaryStore,
         BinaryHighwaterRowMarshaller highwaterRowMarshaller,
         RingMember ringMember,
         RingHost ringHost,
@@ -188,7 +225,12 @@ public class AmzaServiceInitializer {
         RowChanges allRowChanges,
         AmzaThreadPoolProvider amzaThreadPoolProvider) throws Exception {
 
-        AmzaPartitionWatcher amzaSystemPartitionWatcher = new AmzaPartitionWatcher(true, allRowChanges);
+        RowChangesDispatcher rowChangesDispatcher = new RowChangesDispatcher(amzaStats,
+            config.watcherThreads > 0 ? amzaThreadPoolProvider.allocateThreadPool(config.watcherThreads, "row-changes-dispatcher") : null,
+            config.watcherMaxQueuedRows);
+        allRowChanges = rowChangesDispatcher.async("all", allRowChanges);
+
+        AmzaPartitionWatcher amzaSystemPartitionWatcher = new AmzaPartitionWatcher(true, allRowChanges, rowChangesDispatcher);
 
         int numberOfStripes = config.workingDirectories.length;
 
@@ -211,12 +253,50 @@ public class AmzaServiceInitializer {
             workingWALDirectories[i] = new File(config.workingDirectories[i], "wal");
             workingIndexDirectories[i] = new File(config.workingDirectories[i], "index");
         }
+        String[] archiveRoots = config.archiveDirectories != null && config.archiveDirectories.length > 0
+            ? config.archiveDirectories
+            : config.workingDirectories;
+        File[] archiveDirectories = new File[archiveRoots.length];
+        for (int i = 0; i < archiveDirectories.length; i++) {
+            archiveDirectories[i] = new File(archiveRoots[i], "archive");
+        }
+
+        // bulk loads are spooled next to the data rather than into java.io.tmpdir, anything left behind was abandoned by a previous process
+        File bulkLoadSpoolDirectory = new File(config.workingDirectories[0], "bulk-load-spool");
+        if (!bulkLoadSpoolDirectory.exists()) {
+            if (!bulkLoadSpoolDirectory.mkdirs()) {
+                throw new IllegalStateException("Please check your file permission. " + bulkLoadSpoolDirectory.getAbsolutePath());
+            }
+        } else {
+            File[] abandoned = bulkLoadSpoolDirectory.listFiles();
+            if (abandoned != null) {
+                for (File file : abandoned) {
+                    if (!file.delete()) {
+                        LOG.warn("Failed to delete abandoned bulk load spool:{}", file);
+                    }
+                }
+            }
+        }
 
-        WALIndexProviderRegistry indexProviderRegistry = new WALIndexProviderRegistry(ephemeralRowIOProvider, persistentRowIOProvider);
+        File[] memorySnapshotDirectories = null;
+        if (config.memoryIndexSnapshotsEnabled) {
+            memorySnapshotDirectories = new File[workingIndexDirectories.length];
+            for (int i = 0; i < workingIndexDirectories.length; i++) {
+                memorySnapshotDirectories[i] = new File(workingIndexDirectories[i], "memory-snapshots");
+            }
+        }
+        WALIndexProviderRegistry indexProviderRegistry = new WALIndexProviderRegistry(ephemeralRowIOProvider,
+            persistentRowIOProvider,
+            memorySnapshotDirectories,
+            config.memoryIndexSnapshotIntervalMillis);
         indexProviderRegistryCallback.call(workingIndexDirectories, indexProviderRegistry, ephemeralRowIOProvider, persistentRowIOProvider, numberOfStripes);
 
         IndexedWALStorageProvider walStorageProvider = new IndexedWALStorageProvider(amzaStats,
             workingWALDirectories,
+            archiveDirectories,
+            config.archiveBlockSizeInBytes,
+            config.archiveSpillSizeInBytes,
+            config.archiveMaxSegments,
             numberOfStripes,
             indexProviderRegistry,
             primaryRowMarshaller,
@@ -233,7 +313,9 @@ public class AmzaServiceInitializer {
             orderIdProvider,
             walStorageProvider,
             numProc,
-            amzaThreadPoolProvider.allocateThreadPool(numProc, "partition-loader"));
+            amzaThreadPoolProvider.allocateThreadPool(numProc, "partition-loader"),
+            config.maxResidentPartitions,
+            config.coldPartitionAfterMillis);
 
         AsyncStripeFlusher systemFlusher = new AsyncStripeFlusher(-1,
             config.asyncFsyncIntervalMillis,
@@ -298,6 +380,10 @@ public class AmzaServiceInitializer {
             allRowChanges,
             amzaInterner);
 
+        if (compressionDictionaryStore != null) {
+            compressionDictionaryStore.open(systemWALStorage, walUpdated);
+        }
+
         TakeFullySystemReady systemReady = new TakeFullySystemReady(systemRingSizeProvider, partitionCreator, sickPartitions, sickThreads);
 
         AtomicLong nodeCacheId = new AtomicLong(0);
@@ -382,6 +468,7 @@ public class AmzaServiceInitializer {
             idPacker,
             partitionCreator,
             config.takeCyaIntervalInMillis,
+            config.takeFullSweepIntervalInMillis,
             config.takeSlowThresholdInMillis,
             config.takeSystemReofferDeltaMillis,
             config.takeReofferDeltaMillis,
@@ -390,6 +477,8 @@ public class AmzaServiceInitializer {
         walUpdateDelegates.add((versionedPartitionName, txId) -> {
             takeCoordinator.update(ringStoreReader, Preconditions.checkNotNull(versionedPartitionName), txId);
         });
+        PartitionUpdateNotifier partitionUpdateNotifier = new PartitionUpdateNotifier();
+        walUpdateDelegates.add(partitionUpdateNotifier);
 
         long startupVersion = orderIdProvider.nextId();
         Member rootAquariumMember = ringMember.asAquariumMember();
@@ -422,7 +511,7 @@ public class AmzaServiceInitializer {
             sickThreads);
         amzaSystemPartitionWatcher.watch(PartitionCreator.AQUARIUM_STATE_INDEX.getPartitionName(), aquariumProvider);
 
-        AmzaPartitionWatcher amzaStripedPartitionWatcher = new AmzaPartitionWatcher(false, allRowChanges);
+        AmzaPartitionWatcher amzaStripedPartitionWatcher = new AmzaPartitionWatcher(false, allRowChanges, rowChangesDispatcher);
 
         AsyncStripeFlusher[] stripeFlusher = new AsyncStripeFlusher[numberOfStripes];
         for (int i = 0; i < numberOfStripes; i++) {
@@ -459,9 +548,11 @@ public class AmzaServiceInitializer {
 
         PartitionComposter partitionComposter = new PartitionComposter(amzaSystemStats, amzaStats, partitionIndex, partitionCreator, ringStoreReader,
             partitionStripeProvider, storageVersionProvider, amzaInterner, numProc);
-        amzaSystemPartitionWatcher.watch(PartitionCreator.REGION_INDEX.getPartitionName(), partitionComposter);
-        amzaSystemPartitionWatcher.watch(PartitionCreator.PARTITION_VERSION_INDEX.getPartitionName(), partitionComposter);
-        amzaSystemPartitionWatcher.watch(PartitionCreator.AQUARIUM_STATE_INDEX.getPartitionName(), partitionComposter);
+        // only marks partitions dirty for the next compost, so unlike the cache invalidating watchers it can lag the commit
+        RowChanges asyncPartitionComposter = rowChangesDispatcher.async("composter", partitionComposter);
+        amzaSystemPartitionWatcher.watch(PartitionCreator.REGION_INDEX.getPartitionName(), asyncPartitionComposter);
+        amzaSystemPartitionWatcher.watch(PartitionCreator.PARTITION_VERSION_INDEX.getPartitionName(), asyncPartitionComposter);
+        amzaSystemPartitionWatcher.watch(PartitionCreator.AQUARIUM_STATE_INDEX.getPartitionName(), asyncPartitionComposter);
 
         AmzaRingStoreWriter amzaRingWriter = new AmzaRingStoreWriter(ringStoreReader,
             systemWALStorage,
@@ -522,8 +613,14 @@ public class AmzaServiceInitializer {
             systemRowsTakerFactory.create(),
             rowsTakerFactory.create(),
             partitionStripeProvider,
+            partitionCreator,
             availableRowsTaker,
             amzaThreadPoolProvider.allocateThreadPool(config.numberOfTakerThreads, "row-taker"),
+            amzaThreadPoolProvider.allocateThreadPool(config.numberOfBulkTakerThreads, "bulk-row-taker"),
+            new ReplicationQoS(amzaStats,
+                config.replicationNodeBytesPerSecond,
+                config.replicationPeerBytesPerSecond,
+                config.replicationMinBulkFactor),
             new SystemPartitionCommitChanges(storageVersionProvider, systemWALStorage, highwaterStorage, walUpdated),
             new StripedPartitionCommitChanges(partitionStripeProvider, config.hardFsync, walUpdated),
             new OrderIdProviderImpl(new ConstantWriterIdProvider(1)),
@@ -531,6 +628,7 @@ public class AmzaServiceInitializer {
             config.takeLongPollTimeoutMillis,
             config.pongIntervalMillis,
             config.rowsTakerLimit,
+            idPacker.pack(config.takeSnapshotLagInMillis, 0, 0),
             primaryRowMarshaller,
             highwaterRowMarshaller);
 
@@ -566,6 +664,10 @@ public class AmzaServiceInitializer {
             amzaStripedPartitionWatcher,
             aquariumProvider,
             systemReady,
-            liveliness);
+            liveliness,
+            primaryRowMarshaller,
+            partitionUpdateNotifier,
+            bulkLoadSpoolDirectory,
+            config.bulkLoadBatchSize);
     }
 }
@@ -3,6 +3,7 @@ package com.jivesoftware.os.amza.service;
 import com.jivesoftware.os.amza.api.PartitionClient;
 import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.scan.ScanCursor;
 import com.jivesoftware.os.amza.api.stream.ClientUpdates;
 import com.jivesoftware.os.amza.api.stream.KeyValueStream;
 import com.jivesoftware.os.amza.api.stream.KeyValueTimestampStream;
@@ -12,10 +13,14 @@ import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
 import com.jivesoftware.os.amza.api.stream.TxKeyValueStream.TxResult;
 import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
 import com.jivesoftware.os.amza.api.take.Highwaters;
+import com.jivesoftware.os.amza.api.take.TakeFilter;
 import com.jivesoftware.os.amza.api.take.TakeResult;
+import com.jivesoftware.os.amza.api.take.TakeResultStream;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +51,16 @@ public class EmbeddedPartitionClient implements PartitionClient {
         partition.commit(consistency, prefix, updates, abandonSolutionAfterNMillis);
     }
 
+    @Override
+    public void bulkLoad(Consistency consistency,
+        byte[] prefix,
+        ClientUpdates updates,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        partition.bulkLoad(consistency, prefix, updates, abandonSolutionAfterNMillis);
+    }
+
     @Override
     public long getApproximateCount(Consistency consistency, long additionalSolverAfterNMillis, long abandonLeaderSolutionAfterNMillis,
         long abandonSolutionAfterNMillis, Optional<List<String>> solutionLog) throws Exception {
@@ -204,6 +219,70 @@ public class EmbeddedPartitionClient implements PartitionClient {
         }
     }
 
+    @Override
+    public ScanCursor scanPage(Consistency consistency,
+        PrefixedKeyRanges ranges,
+        ScanCursor cursor,
+        int pageSize,
+        long pageBytes,
+        boolean hydrateValues,
+        KeyValueTimestampStream stream,
+        long additionalSolverAfterNMillis,
+        long abandonLeaderSolutionAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+
+        List<byte[][]> rangeList = new ArrayList<>();
+        ranges.consume((fromPrefix, fromKey, toPrefix, toKey) -> {
+            rangeList.add(new byte[][] { fromPrefix, fromKey, toPrefix, toKey });
+            return true;
+        });
+        if (cursor != null && (cursor.rangeIndex < 0 || cursor.rangeIndex >= rangeList.size())) {
+            throw new IllegalArgumentException("Cursor range index is out of bounds:" + cursor.rangeIndex);
+        }
+
+        long highestTxId = cursor != null ? cursor.highestTxId : partition.highestTxId();
+        int fromRangeIndex = cursor != null ? cursor.rangeIndex : 0;
+        int[] rangeIndex = { -1 };
+        long[] countAndBytes = new long[2];
+        boolean[] stopped = { false };
+        ScanCursor[] nextCursor = new ScanCursor[1];
+        partition.scan(rangeStream -> {
+                for (int i = fromRangeIndex; i < rangeList.size(); i++) {
+                    byte[][] range = rangeList.get(i);
+                    rangeIndex[0] = i;
+                    boolean result;
+                    if (cursor != null && i == cursor.rangeIndex) {
+                        result = rangeStream.stream(cursor.prefix, cursor.resumeKey(), range[2], range[3]);
+                    } else {
+                        result = rangeStream.stream(range[0], range[1], range[2], range[3]);
+                    }
+                    if (!result || stopped[0]) {
+                        return false;
+                    }
+                }
+                return true;
+            },
+            hydrateValues,
+            true,
+            (prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                if (!valueTombstoned && !stream.stream(prefix, key, value, valueTimestamp, valueVersion)) {
+                    stopped[0] = true;
+                    nextCursor[0] = new ScanCursor(rangeIndex[0], prefix, key, highestTxId);
+                    return false;
+                }
+                countAndBytes[0]++;
+                countAndBytes[1] += (prefix != null ? prefix.length : 0) + key.length + (hydrateValues && value != null ? value.length : 0);
+                if ((pageSize > 0 && countAndBytes[0] >= pageSize) || (pageBytes > 0 && countAndBytes[1] >= pageBytes)) {
+                    stopped[0] = true;
+                    nextCursor[0] = new ScanCursor(rangeIndex[0], prefix, key, highestTxId);
+                    return false;
+                }
+                return true;
+            });
+        return nextCursor[0];
+    }
+
     @Override
     public TakeResult takeFromTransactionId(List<RingMember> membersInOrder,
         Map<RingMember, Long> memberTxIds,
@@ -227,6 +306,38 @@ public class EmbeddedPartitionClient implements PartitionClient {
             });
     }
 
+    @Override
+    public TakeResult takeFromTransactionId(List<RingMember> membersInOrder,
+        Map<RingMember, Long> memberTxIds,
+        int limit,
+        TakeFilter filter,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        if (!membersInOrder.contains(rootRingMember)) {
+            LOG.warn("Took filtered from {} but not in desired members {}", rootRingMember, membersInOrder);
+            return new TakeResult(rootRingMember, -1L, null);
+        }
+        long txId = memberTxIds.getOrDefault(rootRingMember, -1L);
+        int[] count = { 0 };
+        long[] filtered = { 0 };
+        TakeResult takeResult = partition.takeFromTransactionId(txId, true, highwaters,
+            (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                TxResult result;
+                if (filter.accept(prefix, key, valueTimestamp, valueVersion)) {
+                    result = stream.stream(rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion);
+                } else {
+                    filtered[0]++;
+                    result = TxResult.MORE;
+                }
+                count[0]++;
+                return (limit > 0 && count[0] >= limit) ? TxResult.ACCEPT_AND_STOP : result;
+            });
+        return new TakeResult(takeResult.tookFrom, takeResult.lastTxId, takeResult.tookToEnd, filtered[0]);
+    }
+
     @Override
     public TakeResult takePrefixFromTransactionId(List<RingMember> membersInOrder,
         byte[] prefix,
@@ -251,4 +362,45 @@ public class EmbeddedPartitionClient implements PartitionClient {
             });
     }
 
+    @Override
+    public TakeResult subscribe(List<RingMember> membersInOrder,
+        Map<RingMember, Long> memberTxIds,
+        int limit,
+        TakeFilter filter,
+        long heartbeatIntervalMillis,
+        Highwaters highwaters,
+        TxKeyValueStream stream,
+        TakeResultStream cursors,
+        long additionalSolverAfterNMillis,
+        long abandonSolutionAfterNMillis,
+        Optional<List<String>> solutionLog) throws Exception {
+        if (!membersInOrder.contains(rootRingMember)) {
+            LOG.warn("Subscribed to {} but not in desired members {}", rootRingMember, membersInOrder);
+            return new TakeResult(rootRingMember, -1L, null);
+        }
+        // the partition is local so taking again after every heartbeat costs no routing
+        long txId = memberTxIds.getOrDefault(rootRingMember, -1L);
+        while (true) {
+            boolean[] stopped = { false };
+            TxKeyValueStream stoppable = (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                TxResult result = stream.stream(rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion);
+                stopped[0] |= !result.wantsMore();
+                return result;
+            };
+            Map<RingMember, Long> fromTxIds = Collections.singletonMap(rootRingMember, txId);
+            TakeResult takeResult = (filter != null)
+                ? takeFromTransactionId(membersInOrder, fromTxIds, limit, filter, highwaters, stoppable, additionalSolverAfterNMillis,
+                    abandonSolutionAfterNMillis, solutionLog)
+                : takeFromTransactionId(membersInOrder, fromTxIds, limit, highwaters, stoppable, additionalSolverAfterNMillis,
+                    abandonSolutionAfterNMillis, solutionLog);
+            txId = Math.max(txId, takeResult.lastTxId);
+            if (stopped[0] || !cursors.stream(takeResult)) {
+                return takeResult;
+            }
+            if (takeResult.tookToEnd != null) {
+                Thread.sleep(heartbeatIntervalMillis);
+            }
+        }
+    }
+
 }
@@ -7,6 +7,7 @@ import com.jivesoftware.os.amza.api.wal.WALIndex;
 import com.jivesoftware.os.amza.api.wal.WALIndexProvider;
 import com.jivesoftware.os.amza.service.stats.AmzaStats;
 import com.jivesoftware.os.amza.service.storage.WALStorage;
+import com.jivesoftware.os.amza.service.storage.archive.WALArchive;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshaller;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryWALTx;
 import com.jivesoftware.os.amza.service.storage.binary.RowIOProvider;
@@ -28,6 +29,10 @@ public class IndexedWALStorageProvider {
     private final Random rand = new Random();
     private final AmzaStats amzaStats;
     private final File[] workingDirectories;
+    private final File[] archiveDirectories;
+    private final int archiveBlockSizeInBytes;
+    private final long archiveSpillSizeInBytes;
+    private final int archiveMaxSegments;
     private final int numberOfStripes;
     private final WALIndexProviderRegistry indexProviderRegistry;
     private final PrimaryRowMarshaller primaryRowMarshaller;
@@ -39,6 +44,10 @@ public class IndexedWALStorageProvider {
 
     public IndexedWALStorageProvider(AmzaStats amzaStats,
         File[] workingDirectories,
+        File[] archiveDirectories,
+        int archiveBlockSizeInBytes,
+        long archiveSpillSizeInBytes,
+        int archiveMaxSegments,
         int numberOfStripes,
         WALIndexProviderRegistry indexProviderRegistry,
         PrimaryRowMarshaller primaryRowMarshaller,
@@ -50,6 +59,10 @@ public class IndexedWALStorageProvider {
         this.amzaStats = amzaStats;
 
         this.workingDirectories = workingDirectories;
+        this.archiveDirectories = archiveDirectories;
+        this.archiveBlockSizeInBytes = archiveBlockSizeInBytes;
+        this.archiveSpillSizeInBytes = archiveSpillSizeInBytes;
+        this.archiveMaxSegments = archiveMaxSegments;
         this.numberOfStripes = numberOfStripes;
         this.indexProviderRegistry = indexProviderRegistry;
         this.primaryRowMarshaller = primaryRowMarshaller;
@@ -171,6 +184,14 @@ public class IndexedWALStorageProvider {
         return new File(workingDirectories[stripe % workingDirectories.length], String.valueOf(hash(versionedPartitionName) % 1024));
     }
 
+    /**
+     * Archives do not follow their partition when it is rebalanced to another stripe, so they are placed by partition alone.
+     */
+    private File archiveKey(VersionedPartitionName versionedPartitionName, String name) {
+        long hash = hash(versionedPartitionName);
+        return new File(new File(archiveDirectories[(int) (hash % archiveDirectories.length)], String.valueOf(hash % 1024)), name);
+    }
+
     private final static long randMult = 0x5DEECE66DL;
     private final static long randAdd = 0xBL;
     private final static long randMask = (1L << 48) - 1;
@@ -212,15 +233,18 @@ public class IndexedWALStorageProvider {
             partitionProperties.updatesBetweenLeaps,
             partitionProperties.maxLeaps);
         boolean hardFsyncBeforeLeapBoundary = versionedPartitionName.getPartitionName().isSystemPartition();
-        return new WALStorage<>(amzaStats,
+        WALStorage<I> walStorage = new WALStorage<>(amzaStats,
             versionedPartitionName,
             orderIdProvider,
             primaryRowMarshaller,
             highwaterRowMarshaller,
             binaryWALTx,
+            new WALArchive(archiveKey(versionedPartitionName, name), archiveBlockSizeInBytes, archiveSpillSizeInBytes, archiveMaxSegments),
             walIndexProvider,
             sickPartitions,
             hardFsyncBeforeLeapBoundary,
             tombstoneCompactionFactor);
+        walStorage.updatedPerformanceProfile(partitionProperties.resolvePerformanceProfile());
+        return walStorage;
     }
 }
@@ -8,6 +8,7 @@ import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
 import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
 import com.jivesoftware.os.amza.api.take.Highwaters;
 import com.jivesoftware.os.amza.api.take.TakeResult;
+import com.jivesoftware.os.amza.service.storage.sketch.PartitionSketches;
 import com.jivesoftware.os.aquarium.LivelyEndState;
 
 /**
@@ -20,6 +21,15 @@ public interface Partition {
         ClientUpdates updates,
         long timeoutInMillis) throws Exception;
 
+    /**
+     * Same contract as {@link #commit} but meant for loading large amounts of data, which where possible is written directly to storage
+     * rather than through the delta WAL.
+     */
+    void bulkLoad(Consistency consistency,
+        byte[] prefix,
+        ClientUpdates updates,
+        long timeoutInMillis) throws Exception;
+
     boolean get(Consistency consistency, byte[] prefix, boolean requiresOnline, UnprefixedWALKeys keys, KeyValueStream stream) throws Exception;
 
     boolean scan(PrefixedKeyRanges ranges, boolean hydrateValues, boolean requiresOnline, KeyValueStream stream) throws Exception;
@@ -43,7 +53,12 @@ public interface Partition {
      */
     long approximateCount() throws Exception;
 
-    /*long highestTxId() throws Exception;*/
+    /**
+     * Sketches of the rows the partition has taken, excluding unmerged changes on the delta WAL
+     */
+    PartitionSketches sketches() throws Exception;
+
+    long highestTxId() throws Exception;
 
     LivelyEndState livelyEndState() throws Exception;
 
@@ -21,4 +21,9 @@ public interface PartitionProvider {
     RingMember awaitLeader(PartitionName partitionName, long waitForLeaderElection) throws Exception;
 
     void awaitOnline(PartitionName partitionName, long timeoutMillis) throws Exception;
+
+    /**
+     * @return a listener signaled whenever the partition is updated, which must be closed once the caller stops listening
+     */
+    PartitionUpdateNotifier.Listener listenForUpdates(PartitionName partitionName);
 }
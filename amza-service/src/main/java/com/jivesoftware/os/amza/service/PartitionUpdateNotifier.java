@@ -0,0 +1,84 @@
+package com.jivesoftware.os.amza.service;
+
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.api.wal.WALUpdated;
+import java.util.Map;
+
+/**
+ * Wakes up the subscriptions following a partition when the partition is updated. Only partitions with at least one listener are tracked,
+ * so updates to every other partition cost a single map lookup.
+ */
+public class PartitionUpdateNotifier implements WALUpdated {
+
+    private final Map<PartitionName, Updates> partitionUpdates = Maps.newConcurrentMap();
+
+    @Override
+    public void updated(VersionedPartitionName versionedPartitionName, long txId) throws Exception {
+        Updates updates = partitionUpdates.get(versionedPartitionName.getPartitionName());
+        if (updates != null) {
+            synchronized (updates) {
+                updates.count++;
+                updates.notifyAll();
+            }
+        }
+    }
+
+    public Listener listen(PartitionName partitionName) {
+        Updates updates = partitionUpdates.compute(partitionName, (key, existing) -> {
+            Updates got = existing != null ? existing : new Updates();
+            got.listeners++;
+            return got;
+        });
+        return new Listener(partitionName, updates);
+    }
+
+    private static class Updates {
+
+        private long count;
+        private int listeners;
+    }
+
+    public class Listener implements AutoCloseable {
+
+        private final PartitionName partitionName;
+        private final Updates updates;
+
+        private Listener(PartitionName partitionName, Updates updates) {
+            this.partitionName = partitionName;
+            this.updates = updates;
+        }
+
+        /**
+         * @return the number of updates seen so far, to be passed to {@link #await} after reading the partition
+         */
+        public long updates() {
+            synchronized (updates) {
+                return updates.count;
+            }
+        }
+
+        /**
+         * @return true if the partition was updated after the given number of updates, false if the timeout elapsed first
+         */
+        public boolean await(long sinceUpdates, long timeoutMillis) throws InterruptedException {
+            long end = System.currentTimeMillis() + timeoutMillis;
+            synchronized (updates) {
+                while (updates.count == sinceUpdates) {
+                    long remaining = end - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    updates.wait(remaining);
+                }
+                return true;
+            }
+        }
+
+        @Override
+        public void close() {
+            partitionUpdates.computeIfPresent(partitionName, (key, existing) -> --existing.listeners == 0 ? null : existing);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.jivesoftware.os.amza.service;
+
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.api.scan.RowChanges;
+import com.jivesoftware.os.amza.api.scan.RowsChanged;
+import com.jivesoftware.os.amza.api.wal.KeyedTimestampId;
+import com.jivesoftware.os.amza.api.wal.WALKey;
+import com.jivesoftware.os.amza.api.wal.WALValue;
+import com.jivesoftware.os.amza.service.stats.AmzaStats;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Moves row change listeners off the committing thread. Every listener gets its own bounded queue of pending changes which is drained by
+ * at most one executor thread at a time, so changes reach a listener in commit order for any given partition. Changes queued for a
+ * partition whose previous changes have not been dispatched yet are coalesced into a single {@link RowsChanged}, and committers only wait
+ * once a listener falls a full queue behind.
+ */
+public class RowChangesDispatcher {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private static final int MAX_DISPATCHES_PER_DRAIN = 1_000;
+
+    private final AmzaStats amzaStats;
+    private final ExecutorService executor;
+    private final long maxQueuedRows;
+
+    /**
+     * @param executor the executor shared by the listeners, or null to dispatch synchronously on the committing thread
+     * @param maxQueuedRows the number of rows a listener may fall behind before committers wait for it
+     */
+    public RowChangesDispatcher(AmzaStats amzaStats, ExecutorService executor, long maxQueuedRows) {
+        this.amzaStats = amzaStats;
+        this.executor = executor;
+        this.maxQueuedRows = maxQueuedRows;
+    }
+
+    /**
+     * @return a listener that queues changes for the delegate, or the delegate itself when dispatch is synchronous
+     */
+    public RowChanges async(String name, RowChanges delegate) {
+        if (executor == null) {
+            return delegate;
+        }
+        return new Dispatch(name, delegate);
+    }
+
+    static RowsChanged coalesce(RowsChanged earlier, RowsChanged later) {
+        Map<WALKey, WALValue> apply = new LinkedHashMap<>();
+        if (earlier.getApply() != null) {
+            apply.putAll(earlier.getApply());
+        }
+        if (later.getApply() != null) {
+            apply.putAll(later.getApply());
+        }
+        return new RowsChanged(later.getVersionedPartitionName(),
+            apply,
+            concat(earlier.getRemove(), later.getRemove()),
+            concat(earlier.getClobbered(), later.getClobbered()),
+            Math.min(earlier.getSmallestCommittedTxId(), later.getSmallestCommittedTxId()),
+            Math.max(earlier.getLargestCommittedTxId(), later.getLargestCommittedTxId()),
+            later.getDeltaIndex());
+    }
+
+    private static List<KeyedTimestampId> concat(List<KeyedTimestampId> earlier, List<KeyedTimestampId> later) {
+        if (earlier == null || earlier.isEmpty()) {
+            return later;
+        } else if (later == null || later.isEmpty()) {
+            return earlier;
+        }
+        List<KeyedTimestampId> concat = new ArrayList<>(earlier.size() + later.size());
+        concat.addAll(earlier);
+        concat.addAll(later);
+        return concat;
+    }
+
+    private static int rowCount(RowsChanged changes) {
+        int count = 0;
+        if (changes.getApply() != null) {
+            count += changes.getApply().size();
+        }
+        if (changes.getRemove() != null) {
+            count += changes.getRemove().size();
+        }
+        if (changes.getClobbered() != null) {
+            count += changes.getClobbered().size();
+        }
+        return Math.max(count, 1);
+    }
+
+    private static class Pending {
+
+        private RowsChanged changes;
+        private int rows;
+        private final long enqueuedTimestampMillis;
+
+        private Pending(RowsChanged changes, int rows, long enqueuedTimestampMillis) {
+            this.changes = changes;
+            this.rows = rows;
+            this.enqueuedTimestampMillis = enqueuedTimestampMillis;
+        }
+    }
+
+    class Dispatch implements RowChanges {
+
+        private final String name;
+        private final RowChanges delegate;
+
+        private final Map<VersionedPartitionName, Pending> pending = new LinkedHashMap<>();
+        private long queuedRows;
+        private boolean draining;
+        private volatile Thread drainingThread;
+
+        private Dispatch(String name, RowChanges delegate) {
+            this.name = name;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void changes(RowsChanged changes) throws Exception {
+            int rows = rowCount(changes);
+            boolean submit = false;
+            synchronized (pending) {
+                // a listener committing from its own dispatch thread would otherwise wait on itself
+                while (queuedRows > 0 && queuedRows + rows > maxQueuedRows && drainingThread != Thread.currentThread()) {
+                    amzaStats.watcherBackPressure.increment();
+                    pending.wait(100);
+                }
+                Pending existing = pending.get(changes.getVersionedPartitionName());
+                if (existing != null) {
+                    existing.changes = coalesce(existing.changes, changes);
+                    existing.rows += rows;
+                    amzaStats.watcherCoalesced.increment();
+                } else {
+                    pending.put(changes.getVersionedPartitionName(), new Pending(changes, rows, System.currentTimeMillis()));
+                }
+                queuedRows += rows;
+                amzaStats.watcherQueuedRows.add(rows);
+                if (!draining) {
+                    draining = true;
+                    submit = true;
+                }
+                LOG.set(ValueType.COUNT, "watcher>" + name + ">queued", queuedRows);
+            }
+            if (submit) {
+                submit();
+            }
+        }
+
+        private void submit() {
+            try {
+                executor.submit(this::drain);
+            } catch (RejectedExecutionException x) {
+                synchronized (pending) {
+                    draining = false;
+                }
+                throw x;
+            }
+        }
+
+        private void drain() {
+            drainingThread = Thread.currentThread();
+            try {
+                for (int i = 0; i < MAX_DISPATCHES_PER_DRAIN; i++) {
+                    Pending next;
+                    synchronized (pending) {
+                        Iterator<Pending> iterator = pending.values().iterator();
+                        if (!iterator.hasNext()) {
+                            draining = false;
+                            return;
+                        }
+                        next = iterator.next();
+                        iterator.remove();
+                        queuedRows -= next.rows;
+                        amzaStats.watcherQueuedRows.add(-next.rows);
+                        pending.notifyAll();
+                    }
+                    long lagMillis = System.currentTimeMillis() - next.enqueuedTimestampMillis;
+                    amzaStats.watcherLagMillis.set(lagMillis);
+                    LOG.set(ValueType.VALUE, "watcher>" + name + ">lag", lagMillis);
+                    try {
+                        delegate.changes(next.changes);
+                        amzaStats.watcherDispatched.increment();
+                    } catch (Throwable t) {
+                        amzaStats.watcherFailures.increment();
+                        LOG.error("Watcher:{} failed to handle changes for {}", new Object[] { name, next.changes.getVersionedPartitionName() }, t);
+                    }
+                }
+            } finally {
+                drainingThread = null;
+            }
+            // yield the shared executor to other listeners before draining the rest
+            submit();
+        }
+    }
+}
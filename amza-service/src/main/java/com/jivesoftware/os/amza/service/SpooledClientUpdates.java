@@ -0,0 +1,165 @@
+package com.jivesoftware.os.amza.service;
+
+import com.jivesoftware.os.amza.api.stream.ClientUpdates;
+import com.jivesoftware.os.amza.api.stream.CommitKeyValueStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+/**
+ * Client updates drained to a local file up front, so whatever produces them, typically a network stream, is never read while the stripe is
+ * held. The spooled updates can be replayed any number of times, or in bounded batches which can each be replayed, which also lets a bulk
+ * load fall back to a commit one batch at a time.
+ */
+public class SpooledClientUpdates implements ClientUpdates, AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final boolean result;
+
+    public SpooledClientUpdates(File directory, ClientUpdates updates) throws Exception {
+        this.file = File.createTempFile("bulkLoad", ".spool", directory);
+        boolean spooled = false;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE))) {
+            this.result = updates.updates((key, value, valueTimestamp, valueTombstoned) -> {
+                write(out, key);
+                write(out, value);
+                out.writeLong(valueTimestamp);
+                out.writeBoolean(valueTombstoned);
+                return true;
+            });
+            spooled = true;
+        } finally {
+            if (!spooled) {
+                file.delete();
+            }
+        }
+    }
+
+    @Override
+    public boolean updates(CommitKeyValueStream commitKeyValueStream) throws Exception {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            while (true) {
+                byte[] key;
+                try {
+                    key = read(in);
+                } catch (EOFException e) {
+                    return result;
+                }
+                byte[] value = read(in);
+                long valueTimestamp = in.readLong();
+                boolean valueTombstoned = in.readBoolean();
+                if (!commitKeyValueStream.commit(key, value, valueTimestamp, valueTombstoned)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Replays the spooled updates as consecutive batches of at most batchSize updates. Only the current batch is held in memory.
+     *
+     * @return false if the stream stopped early, otherwise what the spooled updates returned
+     */
+    public boolean batches(int batchSize, BatchStream stream) throws Exception {
+        Batch batch = new Batch(batchSize);
+        int[] index = { 0 };
+        boolean[] stopped = { false };
+        boolean completed = updates((key, value, valueTimestamp, valueTombstoned) -> {
+            batch.add(key, value, valueTimestamp, valueTombstoned);
+            if (batch.size == batchSize) {
+                if (!stream.batch(index[0], batch)) {
+                    stopped[0] = true;
+                    return false;
+                }
+                index[0]++;
+                batch.clear();
+            }
+            return true;
+        });
+        if (stopped[0] || batch.size > 0 && !stream.batch(index[0], batch)) {
+            return false;
+        }
+        return completed;
+    }
+
+    public interface BatchStream {
+
+        /**
+         * @param index the position of this batch among the batches, starting at zero
+         * @param batch only valid for the duration of the call
+         */
+        boolean batch(int index, ClientUpdates batch) throws Exception;
+    }
+
+    private static class Batch implements ClientUpdates {
+
+        private final byte[][] keys;
+        private final byte[][] values;
+        private final long[] valueTimestamps;
+        private final boolean[] valueTombstones;
+        private int size;
+
+        private Batch(int capacity) {
+            this.keys = new byte[capacity][];
+            this.values = new byte[capacity][];
+            this.valueTimestamps = new long[capacity];
+            this.valueTombstones = new boolean[capacity];
+        }
+
+        private void add(byte[] key, byte[] value, long valueTimestamp, boolean valueTombstoned) {
+            keys[size] = key;
+            values[size] = value;
+            valueTimestamps[size] = valueTimestamp;
+            valueTombstones[size] = valueTombstoned;
+            size++;
+        }
+
+        private void clear() {
+            Arrays.fill(keys, 0, size, null);
+            Arrays.fill(values, 0, size, null);
+            size = 0;
+        }
+
+        @Override
+        public boolean updates(CommitKeyValueStream commitKeyValueStream) throws Exception {
+            for (int i = 0; i < size; i++) {
+                if (!commitKeyValueStream.commit(keys[i], values[i], valueTimestamps[i], valueTombstones[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void close() {
+        file.delete();
+    }
+
+    private static void write(DataOutputStream out, byte[] bytes) throws Exception {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] read(DataInputStream in) throws Exception {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
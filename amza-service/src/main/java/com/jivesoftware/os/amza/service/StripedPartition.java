@@ -25,6 +25,7 @@ import com.jivesoftware.os.amza.api.partition.PartitionProperties;
 import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.api.scan.RowsChanged;
 import com.jivesoftware.os.amza.api.stream.ClientUpdates;
+import com.jivesoftware.os.amza.api.stream.Commitable;
 import com.jivesoftware.os.amza.api.stream.KeyValueStream;
 import com.jivesoftware.os.amza.api.stream.PrefixedKeyRanges;
 import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
@@ -37,6 +38,7 @@ import com.jivesoftware.os.amza.api.wal.WALUpdated;
 import com.jivesoftware.os.amza.service.partition.VersionedPartitionProvider;
 import com.jivesoftware.os.amza.service.replication.PartitionStripeProvider;
 import com.jivesoftware.os.amza.service.stats.AmzaStats;
+import com.jivesoftware.os.amza.service.storage.sketch.PartitionSketches;
 import com.jivesoftware.os.amza.service.take.HighwaterStorage;
 import com.jivesoftware.os.amza.service.take.TakeCoordinator;
 import com.jivesoftware.os.aquarium.LivelyEndState;
@@ -44,6 +46,7 @@ import com.jivesoftware.os.aquarium.State;
 import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.io.File;
 import java.util.Set;
 
 public class StripedPartition implements Partition {
@@ -61,6 +64,8 @@ public class StripedPartition implements Partition {
     private final AmzaRingStoreReader ringReader;
     private final TakeFullySystemReady systemReady;
     private final TakeCoordinator takeCoordinator;
+    private final File bulkLoadSpoolDirectory;
+    private final int bulkLoadBatchSize;
 
     public StripedPartition(AmzaStats amzaStats,
         OrderIdProvider orderIdProvider,
@@ -72,7 +77,9 @@ public class StripedPartition implements Partition {
         AckWaters ackWaters,
         AmzaRingStoreReader ringReader,
         TakeFullySystemReady systemReady,
-        TakeCoordinator takeCoordinator) {
+        TakeCoordinator takeCoordinator,
+        File bulkLoadSpoolDirectory,
+        int bulkLoadBatchSize) {
 
         this.amzaStats = amzaStats;
         this.orderIdProvider = orderIdProvider;
@@ -85,6 +92,8 @@ public class StripedPartition implements Partition {
         this.ringReader = ringReader;
         this.systemReady = systemReady;
         this.takeCoordinator = takeCoordinator;
+        this.bulkLoadSpoolDirectory = bulkLoadSpoolDirectory;
+        this.bulkLoadBatchSize = bulkLoadBatchSize;
     }
 
     public PartitionName getPartitionName() {
@@ -96,6 +105,25 @@ public class StripedPartition implements Partition {
         byte[] prefix,
         ClientUpdates updates,
         long timeoutInMillis) throws Exception {
+        commit(consistency, prefix, stream -> stream.batch(0, updates), timeoutInMillis, false);
+    }
+
+    @Override
+    public void bulkLoad(Consistency consistency,
+        byte[] prefix,
+        ClientUpdates updates,
+        long timeoutInMillis) throws Exception {
+        // drained before the stripe is held exclusively, then loaded a bounded batch at a time so other writers get the stripe in between
+        try (SpooledClientUpdates spooled = new SpooledClientUpdates(bulkLoadSpoolDirectory, updates)) {
+            commit(consistency, prefix, stream -> spooled.batches(bulkLoadBatchSize, stream), timeoutInMillis, true);
+        }
+    }
+
+    private void commit(Consistency consistency,
+        byte[] prefix,
+        Batches batches,
+        long timeoutInMillis,
+        boolean bulkLoad) throws Exception {
 
         long end = System.currentTimeMillis() + timeoutInMillis;
         systemReady.await(timeoutInMillis);
@@ -115,6 +143,11 @@ public class StripedPartition implements Partition {
             throw new FailedToAchieveQuorumException("There are an insufficent number of nodes to achieve desired take quorum:" + takeQuorum);
         }
 
+        // a retry after the delta filled up resumes at the first batch which did not make it
+        int[] committedBatches = { 0 };
+        int[] applied = { 0 };
+        long[] smallestCommittedTxId = { -1 };
+        long[] largestCommittedTxId = { -1 };
         while (true) {
             try {
                 long currentTime = System.currentTimeMillis();
@@ -129,18 +162,36 @@ public class StripedPartition implements Partition {
                         leadershipToken = livelyEndState.getLeaderWaterline().getTimestamp();
                     }
 
-                    RowsChanged commit = txPartitionStripe.tx((deltaIndex, stripeIndex, partitionStripe) -> {
-                        return partitionStripe.commit(highwaterStorage,
-                            versionedAquarium,
-                            true,
-                            Optional.absent(),
-                            true,
-                            prefix,
-                            (highwaters, stream) -> updates.updates((key, value, valueTimestamp, valueTombstone) -> {
-                                long timestamp = valueTimestamp > 0 ? valueTimestamp : currentTime;
-                                return stream.row(-1L, key, value, timestamp, valueTombstone, version);
-                            }),
-                            walUpdated);
+                    batches.batches((index, batch) -> {
+                        if (index < committedBatches[0]) {
+                            return true;
+                        }
+                        Commitable commitable = (highwaters, stream) -> batch.updates((key, value, valueTimestamp, valueTombstone) -> {
+                            long timestamp = valueTimestamp > 0 ? valueTimestamp : currentTime;
+                            return stream.row(-1L, key, value, timestamp, valueTombstone, version);
+                        });
+                        RowsChanged commit = txPartitionStripe.tx((deltaIndex, stripeIndex, partitionStripe) -> {
+                            RowsChanged loaded = bulkLoad ? partitionStripe.bulkLoad(versionedAquarium, prefix, commitable, walUpdated) : null;
+                            if (loaded != null) {
+                                return loaded;
+                            }
+                            return partitionStripe.commit(highwaterStorage,
+                                versionedAquarium,
+                                true,
+                                Optional.absent(),
+                                true,
+                                prefix,
+                                commitable,
+                                walUpdated);
+                        });
+                        committedBatches[0]++;
+                        applied[0] += commit.getApply().size();
+                        if (commit.getSmallestCommittedTxId() != -1 && (smallestCommittedTxId[0] == -1
+                            || commit.getSmallestCommittedTxId() < smallestCommittedTxId[0])) {
+                            smallestCommittedTxId[0] = commit.getSmallestCommittedTxId();
+                        }
+                        largestCommittedTxId[0] = Math.max(largestCommittedTxId[0], commit.getLargestCommittedTxId());
+                        return true;
                     });
 
                     if (takeQuorum > 0) {
@@ -149,7 +200,7 @@ public class StripedPartition implements Partition {
                         int takenBy = 0;
                         if (timeToWait > 0) {
                             takenBy = ackWaters.await(versionedAquarium.getVersionedPartitionName(),
-                                commit.getLargestCommittedTxId(),
+                                largestCommittedTxId[0],
                                 neighbors,
                                 takeQuorum,
                                 timeToWait,
@@ -163,7 +214,7 @@ public class StripedPartition implements Partition {
                     }
                     //TODO necessary? aquarium.tapTheGlass();
 
-                    amzaStats.direct(partitionName, commit.getApply().size(), commit.getSmallestCommittedTxId());
+                    amzaStats.direct(partitionName, applied[0], smallestCommittedTxId[0]);
 
                     return null;
                 });
@@ -173,7 +224,7 @@ public class StripedPartition implements Partition {
                 if (timeRemaining <= 0) {
                     throw e;
                 }
-                Thread.sleep(Math.min(timeRemaining, 1000L)); //TODO magic number
+                Thread.sleep(Math.min(timeRemaining, properties.resolvePerformanceProfile().deltaFullRetryMillis));
             }
         }
 
@@ -333,7 +384,16 @@ public class StripedPartition implements Partition {
         });
     }
 
-    /*@Override
+    @Override
+    public PartitionSketches sketches() throws Exception {
+        return partitionStripeProvider.txPartition(partitionName, (txPartitionStripe, highwaterStorage, versionedAquarium) -> {
+            return txPartitionStripe.tx((deltaIndex, stripeIndex, partitionStripe) -> {
+                return partitionStripe.sketches(versionedAquarium);
+            });
+        });
+    }
+
+    @Override
     public long highestTxId() throws Exception {
         return partitionStripeProvider.txPartition(partitionName, (txPartitionStripe, highwaterStorage, versionedAquarium) -> {
             return txPartitionStripe.tx((deltaIndex, stripeIndex, partitionStripe) -> {
@@ -341,7 +401,7 @@ public class StripedPartition implements Partition {
                 return highestTxId == HighwaterStorage.LOCAL_NONE ? -1 : highestTxId;
             });
         });
-    }*/
+    }
 
     @Override
     public LivelyEndState livelyEndState() throws Exception {
@@ -349,4 +409,9 @@ public class StripedPartition implements Partition {
             return versionedAquarium.getLivelyEndState();
         });
     }
+
+    private interface Batches {
+
+        boolean batches(SpooledClientUpdates.BatchStream stream) throws Exception;
+    }
 }
@@ -34,6 +34,7 @@ import com.jivesoftware.os.amza.api.wal.WALHighwater;
 import com.jivesoftware.os.amza.api.wal.WALUpdated;
 import com.jivesoftware.os.amza.service.ring.AmzaRingReader;
 import com.jivesoftware.os.amza.service.storage.SystemWALStorage;
+import com.jivesoftware.os.amza.service.storage.sketch.PartitionSketches;
 import com.jivesoftware.os.amza.service.take.HighwaterStorage;
 import com.jivesoftware.os.amza.service.take.TakeCoordinator;
 import com.jivesoftware.os.aquarium.LivelyEndState;
@@ -119,6 +120,15 @@ public class SystemPartition implements Partition {
         }
     }
 
+    @Override
+    public void bulkLoad(Consistency consistency,
+        byte[] prefix,
+        ClientUpdates updates,
+        long timeoutInMillis) throws Exception {
+        // system partitions have no delta to skip
+        commit(consistency, prefix, updates, timeoutInMillis);
+    }
+
     @Override
     public boolean get(Consistency consistency, byte[] prefix, boolean requiresOnline, UnprefixedWALKeys keys, KeyValueStream stream) throws Exception {
         boolean got = systemWALStorage.get(versionedPartitionName, prefix, keys, stream);
@@ -225,10 +235,15 @@ public class SystemPartition implements Partition {
         return systemWALStorage.approximateCount(versionedPartitionName);
     }
 
-    /*@Override
+    @Override
+    public PartitionSketches sketches() throws Exception {
+        return systemWALStorage.sketches(versionedPartitionName);
+    }
+
+    @Override
     public long highestTxId() throws Exception {
         return systemWALStorage.highestPartitionTxId(versionedPartitionName);
-    }*/
+    }
 
     @Override
     public LivelyEndState livelyEndState() throws Exception {
@@ -7,6 +7,7 @@ import com.jivesoftware.os.amza.api.wal.WALIndexProvider;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryRowIOProvider;
 import com.jivesoftware.os.amza.service.storage.binary.MemoryBackedRowIOProvider;
 import com.jivesoftware.os.amza.service.storage.binary.RowIOProvider;
+import java.io.File;
 import java.util.Map;
 
 /**
@@ -18,9 +19,19 @@ public class WALIndexProviderRegistry {
     private final Map<String, RowIOProvider> rowIORegistry = Maps.newConcurrentMap();
 
     public WALIndexProviderRegistry(MemoryBackedRowIOProvider ephemeralRowIOProvider, BinaryRowIOProvider persistentRowIOProvider) {
+        this(ephemeralRowIOProvider, persistentRowIOProvider, null, 0);
+    }
+
+    /**
+     * @param memorySnapshotDirectories nullable, where the memory_persistent index snapshots its contents to avoid a full WAL replay on restart
+     */
+    public WALIndexProviderRegistry(MemoryBackedRowIOProvider ephemeralRowIOProvider,
+        BinaryRowIOProvider persistentRowIOProvider,
+        File[] memorySnapshotDirectories,
+        long memorySnapshotIntervalMillis) {
         //public WALIndexProviderRegistry(String[] workingDirectories, IoStats ioStats, int corruptionParanoiaFactor, boolean useMemMap) {
         register(new MemoryWALIndexProvider("memory_ephemeral"), ephemeralRowIOProvider);
-        register(new MemoryWALIndexProvider("memory_persistent"), persistentRowIOProvider);
+        register(new MemoryWALIndexProvider("memory_persistent", memorySnapshotDirectories, memorySnapshotIntervalMillis), persistentRowIOProvider);
         register(new NoOpWALIndexProvider("noop_persistent"), persistentRowIOProvider);
     }
 
@@ -1,5 +1,6 @@
 package com.jivesoftware.os.amza.service.filer;
 
+import com.jivesoftware.os.amza.api.filer.DirectBufferCleaner;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
@@ -24,6 +24,7 @@ import com.jivesoftware.os.amza.service.storage.HighwaterRowMarshaller;
 import com.jivesoftware.os.amza.service.storage.PartitionCreator;
 import com.jivesoftware.os.amza.service.storage.PartitionStore;
 import com.jivesoftware.os.amza.service.storage.delta.DeltaStripeWALStorage;
+import com.jivesoftware.os.amza.service.storage.sketch.PartitionSketches;
 import com.jivesoftware.os.amza.service.take.HighwaterStorage;
 import com.jivesoftware.os.aquarium.LivelyEndState;
 import com.jivesoftware.os.aquarium.State;
@@ -128,6 +129,29 @@ public class PartitionStripe {
 
     }
 
+    /**
+     * @return null if the partition has unmerged changes and the updates were not consumed
+     */
+    public RowsChanged bulkLoad(VersionedAquarium versionedAquarium,
+        byte[] prefix,
+        Commitable updates,
+        WALUpdated updated) throws Exception {
+
+        VersionedPartitionName versionedPartitionName = versionedAquarium.getVersionedPartitionName();
+        LivelyEndState livelyEndState = versionedAquarium.getLivelyEndState();
+        Preconditions.checkState(livelyEndState.isOnline(), "Partition:%s state:%s is not online.", versionedPartitionName, livelyEndState);
+
+        PartitionStore partitionStore = partitionCreator.get("stripe>bulkLoad", versionedPartitionName, stripeIndex);
+        if (partitionStore == null) {
+            throw new IllegalStateException("No partition defined for " + versionedPartitionName);
+        }
+        RowsChanged changes = storage.bulkLoad(versionedPartitionName, partitionStore, prefix, updates, updated);
+        if (changes != null && allRowChanges != null && !changes.isEmpty()) {
+            allRowChanges.changes(changes);
+        }
+        return changes;
+    }
+
     public void flush(boolean fsync) throws Exception {
         storage.flush(fsync);
     }
@@ -444,6 +468,18 @@ public class PartitionStripe {
         }
     }
 
+    public PartitionSketches sketches(VersionedAquarium versionedAquarium) throws Exception {
+        VersionedPartitionName versionedPartitionName = versionedAquarium.getVersionedPartitionName();
+
+        // any state is OK!
+        PartitionStore partitionStore = partitionCreator.get("stripe>sketches", versionedPartitionName, stripeIndex);
+        if (partitionStore == null) {
+            throw new IllegalStateException("No partition defined for " + versionedPartitionName);
+        } else {
+            return partitionStore.getWalStorage().sketches();
+        }
+    }
+
     public long approximateCount(VersionedAquarium versionedAquarium) throws Exception {
         VersionedPartitionName versionedPartitionName = versionedAquarium.getVersionedPartitionName();
 
@@ -0,0 +1,141 @@
+package com.jivesoftware.os.amza.service.replication;
+
+import com.google.common.collect.Maps;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.service.stats.AmzaStats;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Paces the bytes replication reads from its peers so a node catching up does not saturate the network and disks. Node wide and per peer
+ * limits are shared by every take, system takes are never paced, quorum takes are charged against the limits but never wait, and bulk takes
+ * have their limits scaled down as the local delta stripes fall behind on merges. A limit of zero or less is unlimited.
+ */
+public class ReplicationQoS {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_DEBT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * Ordered from most to least important.
+     */
+    public enum Priority {
+        system,
+        quorum,
+        leader,
+        bulk
+    }
+
+    public interface Throttle {
+
+        void acquire(int bytes) throws InterruptedException;
+    }
+
+    private final AmzaStats amzaStats;
+    private final double minBulkFactor;
+
+    private volatile long nodeBytesPerSecond;
+    private volatile long peerBytesPerSecond;
+
+    private final Pacer nodePacer = new Pacer();
+    private final Map<RingMember, Pacer> peerPacers = Maps.newConcurrentMap();
+    private final LongAdder[] priorityBytes = new LongAdder[Priority.values().length];
+    private final LongAdder[] priorityThrottledNanos = new LongAdder[Priority.values().length];
+
+    public ReplicationQoS(AmzaStats amzaStats, long nodeBytesPerSecond, long peerBytesPerSecond, double minBulkFactor) {
+        this.amzaStats = amzaStats;
+        this.nodeBytesPerSecond = nodeBytesPerSecond;
+        this.peerBytesPerSecond = peerBytesPerSecond;
+        this.minBulkFactor = minBulkFactor;
+        for (int i = 0; i < priorityBytes.length; i++) {
+            priorityBytes[i] = new LongAdder();
+            priorityThrottledNanos[i] = new LongAdder();
+        }
+    }
+
+    public Throttle throttle(RingMember remoteRingMember, Priority priority) {
+        LongAdder bytesAdder = priorityBytes[priority.ordinal()];
+        if (priority == Priority.system) {
+            return bytesAdder::add;
+        }
+        LongAdder throttledAdder = priorityThrottledNanos[priority.ordinal()];
+        Pacer peerPacer = peerPacers.computeIfAbsent(remoteRingMember, key -> new Pacer());
+        return bytes -> {
+            bytesAdder.add(bytes);
+            double factor = (priority == Priority.bulk) ? bulkFactor() : 1d;
+            long now = System.nanoTime();
+            long waitNanos = Math.max(nodePacer.reserve(now, bytes, nodeBytesPerSecond * factor),
+                peerPacer.reserve(now, bytes, peerBytesPerSecond * factor));
+            if (waitNanos > 0 && priority != Priority.quorum) {
+                throttledAdder.add(waitNanos);
+                LOG.inc("replicationQoS>throttled>" + priority.name());
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        };
+    }
+
+    /**
+     * @return 1 while every delta stripe is below its merge threshold, falling linearly toward the configured floor as the worst stripe
+     * approaches the point where commits are pushed back.
+     */
+    public double bulkFactor() {
+        double maxLoad = 0d;
+        for (double load : amzaStats.deltaStripeLoad) {
+            maxLoad = Math.max(maxLoad, load);
+        }
+        if (maxLoad <= 1d) {
+            return 1d;
+        }
+        return Math.max(minBulkFactor, 2d - maxLoad);
+    }
+
+    public long getNodeBytesPerSecond() {
+        return nodeBytesPerSecond;
+    }
+
+    public void setNodeBytesPerSecond(long nodeBytesPerSecond) {
+        LOG.info("Replication node limit changed from {} to {} bytes per second", this.nodeBytesPerSecond, nodeBytesPerSecond);
+        this.nodeBytesPerSecond = nodeBytesPerSecond;
+    }
+
+    public long getPeerBytesPerSecond() {
+        return peerBytesPerSecond;
+    }
+
+    public void setPeerBytesPerSecond(long peerBytesPerSecond) {
+        LOG.info("Replication peer limit changed from {} to {} bytes per second", this.peerBytesPerSecond, peerBytesPerSecond);
+        this.peerBytesPerSecond = peerBytesPerSecond;
+    }
+
+    public long getBytes(Priority priority) {
+        return priorityBytes[priority.ordinal()].longValue();
+    }
+
+    public long getThrottledMillis(Priority priority) {
+        return TimeUnit.NANOSECONDS.toMillis(priorityThrottledNanos[priority.ordinal()].longValue());
+    }
+
+    /**
+     * Virtual scheduling: tracks the time at which the limit would next be free, allowing a short burst to accumulate while idle and bounding
+     * the debt that unpaced reservations can run up.
+     */
+    static class Pacer {
+
+        private long theoreticalArrivalNanos = Long.MIN_VALUE;
+
+        synchronized long reserve(long nowNanos, int bytes, double bytesPerSecond) {
+            if (bytesPerSecond <= 0d) {
+                return 0;
+            }
+            long start = Math.max(theoreticalArrivalNanos, nowNanos - BURST_NANOS);
+            long cost = (long) (bytes * (TimeUnit.SECONDS.toNanos(1) / bytesPerSecond));
+            theoreticalArrivalNanos = Math.min(start + cost, nowNanos + MAX_DEBT_NANOS);
+            return theoreticalArrivalNanos - nowNanos;
+        }
+    }
+}
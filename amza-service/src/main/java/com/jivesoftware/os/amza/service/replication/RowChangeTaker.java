@@ -5,7 +5,9 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jivesoftware.os.amza.api.DeltaOverCapacityException;
+import com.jivesoftware.os.amza.api.filer.UIO;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.PartitionProperties;
 import com.jivesoftware.os.amza.api.partition.VersionedAquarium;
 import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.api.ring.RingHost;
@@ -24,11 +26,14 @@ import com.jivesoftware.os.amza.service.NotARingMemberException;
 import com.jivesoftware.os.amza.service.PartitionIsExpungedException;
 import com.jivesoftware.os.amza.service.PropertiesNotPresentException;
 import com.jivesoftware.os.amza.service.TakeFullySystemReady;
+import com.jivesoftware.os.amza.service.partition.VersionedPartitionProvider;
+import com.jivesoftware.os.amza.service.replication.ReplicationQoS.Priority;
 import com.jivesoftware.os.amza.service.ring.AmzaRingReader;
 import com.jivesoftware.os.amza.service.stats.AmzaStats;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshaller;
 import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshaller;
 import com.jivesoftware.os.amza.service.take.AvailableRowsTaker;
+import com.jivesoftware.os.amza.service.take.HighwaterStorage;
 import com.jivesoftware.os.amza.service.take.RowsTaker;
 import com.jivesoftware.os.amza.service.take.RowsTaker.StreamingRowsResult;
 import com.jivesoftware.os.aquarium.LivelyEndState;
@@ -39,6 +44,7 @@ import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -47,6 +53,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -73,7 +80,9 @@ public class RowChangeTaker implements RowChanges {
     private final RowsTaker systemRowsTaker;
     private final RowsTaker stripedRowsTaker;
     private final PartitionStripeProvider partitionStripeProvider;
+    private final VersionedPartitionProvider versionedPartitionProvider;
     private final AvailableRowsTaker availableRowsTaker;
+    private final ReplicationQoS replicationQoS;
     private final SystemPartitionCommitChanges systemPartitionCommitChanges;
     private final StripedPartitionCommitChanges stripedPartitionCommitChanges;
     private final OrderIdProvider sessionIdProvider;
@@ -81,6 +90,7 @@ public class RowChangeTaker implements RowChanges {
     private final long longPollTimeoutMillis;
     private final long pongIntervalMillis;
     private final long rowsTakerLimit;
+    private final long snapshotLagTxIds;
     private final BinaryPrimaryRowMarshaller primaryRowMarshaller;
     private final BinaryHighwaterRowMarshaller binaryHighwaterRowMarshaller;
 
@@ -90,6 +100,10 @@ public class RowChangeTaker implements RowChanges {
     private final ExecutorService cyaThreadPool;
 
     private final ExecutorService stripedRowTakerThreadPool;
+    private final ExecutorService bulkRowTakerThreadPool;
+    private final PriorityBlockingQueue<RowTaker> stripedRowTakerQueue = new PriorityBlockingQueue<>(11, RowChangeTaker::compareQueued);
+    private final PriorityBlockingQueue<RowTaker> bulkRowTakerQueue = new PriorityBlockingQueue<>(11, RowChangeTaker::compareQueued);
+    private final AtomicLong rowTakerSequence = new AtomicLong();
 
     private final Object[] stripedConsumerLocks;
     private final Object systemConsumerLock = new Object();
@@ -108,8 +122,11 @@ public class RowChangeTaker implements RowChanges {
         RowsTaker systemRowsTaker,
         RowsTaker stripedRowsTaker,
         PartitionStripeProvider partitionStripeProvider,
+        VersionedPartitionProvider versionedPartitionProvider,
         AvailableRowsTaker availableRowsTaker,
         ExecutorService rowTakerThreadPool,
+        ExecutorService bulkRowTakerThreadPool,
+        ReplicationQoS replicationQoS,
         SystemPartitionCommitChanges systemPartitionCommitChanges,
         StripedPartitionCommitChanges stripedPartitionCommitChanges,
         OrderIdProvider sessionIdProvider,
@@ -117,6 +134,7 @@ public class RowChangeTaker implements RowChanges {
         long longPollTimeoutMillis,
         long pongIntervalMillis,
         long rowsTakerLimit,
+        long snapshotLagTxIds,
         BinaryPrimaryRowMarshaller primaryRowMarshaller,
         BinaryHighwaterRowMarshaller binaryHighwaterRowMarshaller) {
 
@@ -130,8 +148,11 @@ public class RowChangeTaker implements RowChanges {
         this.systemRowsTaker = systemRowsTaker;
         this.stripedRowsTaker = stripedRowsTaker;
         this.partitionStripeProvider = partitionStripeProvider;
+        this.versionedPartitionProvider = versionedPartitionProvider;
         this.availableRowsTaker = availableRowsTaker;
         this.stripedRowTakerThreadPool = rowTakerThreadPool;
+        this.bulkRowTakerThreadPool = bulkRowTakerThreadPool;
+        this.replicationQoS = replicationQoS;
         this.systemPartitionCommitChanges = systemPartitionCommitChanges;
         this.stripedPartitionCommitChanges = stripedPartitionCommitChanges;
         this.sessionIdProvider = sessionIdProvider;
@@ -139,6 +160,7 @@ public class RowChangeTaker implements RowChanges {
         this.longPollTimeoutMillis = longPollTimeoutMillis;
         this.pongIntervalMillis = pongIntervalMillis;
         this.rowsTakerLimit = rowsTakerLimit;
+        this.snapshotLagTxIds = snapshotLagTxIds;
         this.primaryRowMarshaller = primaryRowMarshaller;
         this.binaryHighwaterRowMarshaller = binaryHighwaterRowMarshaller;
 
@@ -228,6 +250,7 @@ public class RowChangeTaker implements RowChanges {
         systemRowTakerThreadPool.shutdownNow();
         consumerThreadPool.shutdownNow();
         stripedRowTakerThreadPool.shutdownNow();
+        bulkRowTakerThreadPool.shutdownNow();
         cyaThreadPool.shutdownNow();
     }
 
@@ -281,6 +304,63 @@ public class RowChangeTaker implements RowChanges {
         });
     }
 
+    public ReplicationQoS getReplicationQoS() {
+        return replicationQoS;
+    }
+
+    private void scheduleRowTaker(RowTaker rowTaker) {
+        if (rowTaker.priority == Priority.system) {
+            systemRowTakerThreadPool.submit(rowTaker);
+        } else if (rowTaker.priority == Priority.bulk) {
+            // bulk takes are the ones paced hardest, so their waits are confined to a pool of their own
+            scheduleRowTaker(rowTaker, bulkRowTakerQueue, bulkRowTakerThreadPool);
+        } else {
+            scheduleRowTaker(rowTaker, stripedRowTakerQueue, stripedRowTakerThreadPool);
+        }
+    }
+
+    private void scheduleRowTaker(RowTaker rowTaker, PriorityBlockingQueue<RowTaker> queue, ExecutorService threadPool) {
+        // the pool runs whichever queued taker is most important, not necessarily the one that was just submitted
+        rowTaker.queuedSequence = rowTakerSequence.incrementAndGet();
+        queue.add(rowTaker);
+        threadPool.submit(() -> {
+            RowTaker next = queue.poll();
+            if (next != null) {
+                next.run();
+            }
+        });
+    }
+
+    private static int compareQueued(RowTaker o1, RowTaker o2) {
+        int c = Integer.compare(o1.priority.ordinal(), o2.priority.ordinal());
+        return c != 0 ? c : Long.compare(o1.queuedSequence, o2.queuedSequence);
+    }
+
+    private Priority priority(PartitionName partitionName, LivelyEndState livelyEndState, RingMember remoteRingMember) throws Exception {
+        if (partitionName.isSystemPartition()) {
+            return Priority.system;
+        }
+        if (!livelyEndState.isOnline()) {
+            return Priority.bulk;
+        }
+        PartitionProperties properties;
+        try {
+            properties = versionedPartitionProvider.getProperties(partitionName);
+        } catch (PropertiesNotPresentException e) {
+            return Priority.bulk;
+        }
+        int neighbors = amzaRingReader.getRingSize(partitionName.getRingName(), 0) - 1;
+        if (neighbors > 0 && properties.consistency.quorum(neighbors) > 0) {
+            // writers on our peers are blocked until we take and ack
+            return Priority.quorum;
+        }
+        Waterline leader = livelyEndState.getLeaderWaterline();
+        if (leader != null && leader.getMember().equals(remoteRingMember.asAquariumMember())) {
+            return Priority.leader;
+        }
+        return Priority.bulk;
+    }
+
     private void tookFully(VersionedAquarium versionedAquarium, RingMember remoteRingMember, long leadershipToken) throws Exception {
         VersionedPartitionName versionedPartitionName = versionedAquarium.getVersionedPartitionName();
         if (versionedPartitionName.getPartitionName().isSystemPartition()) {
@@ -473,18 +553,11 @@ public class RowChangeTaker implements RowChanges {
             RingHost remoteRingHost = amzaRingReader.getRingHost(remoteRingMember);
             PartitionName partitionName = remoteVersionedPartitionName.getPartitionName();
 
-            ExecutorService rowTakerThreadPool;
-            RowsTaker rowsTaker;
-            if (partitionName.isSystemPartition()) {
-                rowTakerThreadPool = systemRowTakerThreadPool;
-                rowsTaker = systemRowsTaker;
-            } else {
-                rowTakerThreadPool = stripedRowTakerThreadPool;
-                rowsTaker = stripedRowsTaker;
-            }
+            RowsTaker rowsTaker = partitionName.isSystemPartition() ? systemRowsTaker : stripedRowsTaker;
 
             long[] highwater = { -1 };
             boolean[] validPartition = { true };
+            Priority[] priority = { Priority.bulk };
 
             VersionedPartitionName currentLocalVersionedPartitionName = partitionStripeProvider.txPartition(partitionName,
                 (txPartitionStripe, highwaterStorage, versionedAquarium) -> {
@@ -505,6 +578,7 @@ public class RowChangeTaker implements RowChanges {
                         return null;
                     }
                     highwater[0] = highwaterStorage.get(remoteRingMember, localVersionedPartitionName);
+                    priority[0] = priority(partitionName, livelyEndState, remoteRingMember);
                     if (partitionName.isSystemPartition()) {
                         if (highwater[0] >= sessionedTxId.txId) {
                             // nothing to take
@@ -564,6 +638,7 @@ public class RowChangeTaker implements RowChanges {
                         sessionedTxId.txId,
                         remoteVersionedPartitionName,
                         rowsTaker,
+                        priority[0],
                         (initialRowTaker, changed, startVersion, version) -> {
                             versionedPartitionRowTakers.computeIfPresent(remoteVersionedPartitionName, (key2, latestRowTaker) -> {
                                 long initialVersion = initialRowTaker.localVersionedPartitionName.getPartitionVersion();
@@ -574,7 +649,7 @@ public class RowChangeTaker implements RowChanges {
                                     && initialVersion == latestVersion
                                     && (changed || startVersion < version.get())) {
                                     // reschedule
-                                    rowTakerThreadPool.submit(initialRowTaker);
+                                    scheduleRowTaker(initialRowTaker);
                                     return initialRowTaker;
                                 } else {
                                     // all done
@@ -583,11 +658,11 @@ public class RowChangeTaker implements RowChanges {
                             });
                         },
                         (_rowTaker, exception) -> {
-                            rowTakerThreadPool.submit(_rowTaker);
+                            scheduleRowTaker(_rowTaker);
                         });
 
                     // schedule the taker
-                    rowTakerThreadPool.submit(rowTaker);
+                    scheduleRowTaker(rowTaker);
                     return rowTaker;
                 } else {
                     rowTaker.moreRowsAvailable(sessionedTxId.txId);
@@ -621,10 +696,13 @@ public class RowChangeTaker implements RowChanges {
         private final AtomicLong takeToTxId;
         private final VersionedPartitionName remoteVersionedPartitionName;
         private final RowsTaker rowsTaker;
+        private final Priority priority;
         private final OnCompletion onCompletion;
         private final OnError onError;
 
         private final AtomicLong version = new AtomicLong(0);
+        private volatile long queuedSequence;
+        private volatile boolean lagging;
 
         public RowTaker(BinaryPrimaryRowMarshaller primaryRowMarshaller,
             BinaryHighwaterRowMarshaller binaryHighwaterRowMarshaller,
@@ -637,6 +715,7 @@ public class RowChangeTaker implements RowChanges {
             long takeToTxId,
             VersionedPartitionName remoteVersionedPartitionName,
             RowsTaker rowsTaker,
+            Priority priority,
             OnCompletion onCompletion,
             OnError onError) {
 
@@ -651,6 +730,7 @@ public class RowChangeTaker implements RowChanges {
             this.takeToTxId = new AtomicLong(takeToTxId);
             this.remoteVersionedPartitionName = remoteVersionedPartitionName;
             this.rowsTaker = rowsTaker;
+            this.priority = priority;
             this.onCompletion = onCompletion;
             this.onError = onError;
         }
@@ -693,7 +773,8 @@ public class RowChangeTaker implements RowChanges {
                                 remoteRingMember,
                                 initialHighwaterMark,
                                 primaryRowMarshaller,
-                                binaryHighwaterRowMarshaller);
+                                binaryHighwaterRowMarshaller,
+                                Integer.MAX_VALUE);
 
                             if (initialHighwaterMark >= takeToTxId.get()) {
                                 LOG.inc("take>fully>all");
@@ -708,6 +789,14 @@ public class RowChangeTaker implements RowChanges {
                                 }
                                 versionedAquarium.wipeTheGlass();
 
+                            } else if (lagging && snapshotLagTxIds > 0 && takeToTxId.get() - initialHighwaterMark > snapshotLagTxIds) {
+                                // far enough behind that the remote's current state is cheaper than its log, the tail is taken next run
+                                lagging = false;
+                                long snapshotTxId = takeSnapshot(stats, highwaterStorage, commitTo, initialHighwaterMark, leadershipToken);
+                                if (snapshotTxId > takeHighwaterMark) {
+                                    takeHighwaterMark = snapshotTxId;
+                                    flushed = true;
+                                }
                             } else {
                                 int updates = 0;
 
@@ -720,34 +809,16 @@ public class RowChangeTaker implements RowChanges {
                                     initialHighwaterMark,
                                     leadershipToken,
                                     rowsTakerLimit,
+                                    replicationQoS.throttle(remoteRingMember, priority),
                                     takeRowStream);
 
-                                if (rowsResult.error != null) {
-                                    LOG.inc("take>errors>all");
-                                    if (takeFailureListener.isPresent()) {
-                                        takeFailureListener.get().failedToTake(remoteRingMember, remoteRingHost, rowsResult.error);
-                                    }
-                                    if (stats.takeErrors.count(remoteRingMember) == 0) {
-                                        LOG.warn("Error while taking from member:{} host:{}", remoteRingMember, remoteRingHost);
-                                        LOG.trace("Error while taking from member:{} host:{} partition:{}",
-                                            new Object[] { remoteRingMember, remoteRingHost, remoteVersionedPartitionName }, rowsResult.error);
-                                    }
-                                    stats.takeErrors.add(remoteRingMember);
-                                } else if (rowsResult.unreachable != null) {
-                                    LOG.inc("take>unreachable>all");
-                                    if (takeFailureListener.isPresent()) {
-                                        takeFailureListener.get().failedToTake(remoteRingMember, remoteRingHost, rowsResult.unreachable);
-                                    }
-                                    if (stats.takeErrors.count(remoteRingMember) == 0) {
-                                        LOG.debug("Unreachable while taking from member:{} host:{}", remoteRingMember, remoteRingHost);
-                                        LOG.trace("Unreachable while taking from member:{} host:{} partition:{}",
-                                            new Object[] { remoteRingMember, remoteRingHost, remoteVersionedPartitionName },
-                                            rowsResult.unreachable);
-                                    }
-                                    stats.takeErrors.add(remoteRingMember);
-                                } else {
+                                if (!failed(stats, rowsResult)) {
                                     updates = takeRowStream.flush();
                                 }
+                                lagging = rowsResult.error == null
+                                    && rowsResult.unreachable == null
+                                    && rowsResult.partitionVersion != -1
+                                    && rowsResult.otherHighwaterMarks == null;
 
                                 for (Entry<RingMember, DeltaIndexAndTxId> entry : takeRowStream.flushedHighwatermarks.entrySet()) {
                                     DeltaIndexAndTxId deltaIndexAndTxId = entry.getValue();
@@ -865,6 +936,88 @@ public class RowChangeTaker implements RowChanges {
             }
         }
 
+        private long takeSnapshot(AmzaStats stats,
+            HighwaterStorage highwaterStorage,
+            CommitTo commitTo,
+            long initialHighwaterMark,
+            long leadershipToken) throws Exception {
+
+            LOG.inc("take>snapshot>all");
+            TakeRowStream snapshotRowStream = new TakeRowStream(stats,
+                remoteVersionedPartitionName,
+                commitTo,
+                remoteRingMember,
+                initialHighwaterMark,
+                primaryRowMarshaller,
+                binaryHighwaterRowMarshaller,
+                (int) Math.min(rowsTakerLimit, Integer.MAX_VALUE));
+
+            StreamingRowsResult rowsResult = rowsTaker.snapshotStream(amzaRingReader.getRingMember(),
+                remoteRingMember,
+                remoteRingHost,
+                remoteVersionedPartitionName,
+                takeSessionId,
+                takeSharedKey,
+                leadershipToken,
+                replicationQoS.throttle(remoteRingMember, priority),
+                snapshotRowStream);
+            if (failed(stats, rowsResult)) {
+                return -1;
+            }
+
+            int updates = snapshotRowStream.flush();
+            Long snapshotTxId = (rowsResult.otherHighwaterMarks != null) ? rowsResult.otherHighwaterMarks.get(remoteRingMember) : null;
+            if (rowsResult.partitionVersion == -1 || snapshotTxId == null) {
+                // whatever was applied is still valid, but without the snapshot highwater we have to keep taking the log
+                LOG.inc("take>snapshot>incomplete");
+                return -1;
+            }
+
+            int deltaIndex = snapshotRowStream.lastDeltaIndex.intValue();
+            for (Entry<RingMember, Long> otherHighwaterMark : rowsResult.otherHighwaterMarks.entrySet()) {
+                RingMember otherMember = otherHighwaterMark.getKey();
+                highwaterStorage.setIfLarger(otherMember,
+                    localVersionedPartitionName,
+                    otherHighwaterMark.getValue(),
+                    deltaIndex,
+                    otherMember.equals(remoteRingMember) ? updates : 0);
+            }
+            stats.snapshotTakes.increment();
+            LOG.inc("take>snapshot>rows", updates);
+            LOG.info("Took snapshot of {} rows for {} from {} moving highwater from {} to {}",
+                updates, localVersionedPartitionName, remoteRingMember, initialHighwaterMark, snapshotTxId);
+            return snapshotTxId;
+        }
+
+        private boolean failed(AmzaStats stats, StreamingRowsResult rowsResult) {
+            if (rowsResult.error != null) {
+                LOG.inc("take>errors>all");
+                if (takeFailureListener.isPresent()) {
+                    takeFailureListener.get().failedToTake(remoteRingMember, remoteRingHost, rowsResult.error);
+                }
+                if (stats.takeErrors.count(remoteRingMember) == 0) {
+                    LOG.warn("Error while taking from member:{} host:{}", remoteRingMember, remoteRingHost);
+                    LOG.trace("Error while taking from member:{} host:{} partition:{}",
+                        new Object[] { remoteRingMember, remoteRingHost, remoteVersionedPartitionName }, rowsResult.error);
+                }
+                stats.takeErrors.add(remoteRingMember);
+                return true;
+            } else if (rowsResult.unreachable != null) {
+                LOG.inc("take>unreachable>all");
+                if (takeFailureListener.isPresent()) {
+                    takeFailureListener.get().failedToTake(remoteRingMember, remoteRingHost, rowsResult.unreachable);
+                }
+                if (stats.takeErrors.count(remoteRingMember) == 0) {
+                    LOG.debug("Unreachable while taking from member:{} host:{}", remoteRingMember, remoteRingHost);
+                    LOG.trace("Unreachable while taking from member:{} host:{} partition:{}",
+                        new Object[] { remoteRingMember, remoteRingHost, remoteVersionedPartitionName },
+                        rowsResult.unreachable);
+                }
+                stats.takeErrors.add(remoteRingMember);
+                return true;
+            }
+            return false;
+        }
     }
 
     private static class DeltaIndexAndTxId {
@@ -894,6 +1047,7 @@ public class RowChangeTaker implements RowChanges {
         private final BinaryPrimaryRowMarshaller primaryRowMarshaller;
         private final BinaryHighwaterRowMarshaller binaryHighwaterRowMarshaller;
         private final Map<RingMember, DeltaIndexAndTxId> flushedHighwatermarks = new HashMap<>();
+        private final int maxBatchSize;
 
         public TakeRowStream(AmzaStats amzaStats,
             VersionedPartitionName versionedPartitionName,
@@ -901,7 +1055,8 @@ public class RowChangeTaker implements RowChanges {
             RingMember ringMember,
             long lastHighwaterMark,
             BinaryPrimaryRowMarshaller primaryRowMarshaller,
-            BinaryHighwaterRowMarshaller binaryHighwaterRowMarshaller) {
+            BinaryHighwaterRowMarshaller binaryHighwaterRowMarshaller,
+            int maxBatchSize) {
             this.amzaStats = amzaStats;
             this.versionedPartitionName = versionedPartitionName;
             this.commitTo = commitTo;
@@ -912,6 +1067,7 @@ public class RowChangeTaker implements RowChanges {
             this.primaryRowMarshaller = primaryRowMarshaller;
             this.binaryHighwaterRowMarshaller = binaryHighwaterRowMarshaller;
             this.flushedTxId = new MutableLong(-1);
+            this.maxBatchSize = maxBatchSize;
         }
 
         @Override
@@ -919,15 +1075,17 @@ public class RowChangeTaker implements RowChanges {
             if (rowType.isPrimary()) {
                 if (lastTxId.longValue() == Long.MIN_VALUE) {
                     lastTxId.setValue(txId);
-                } else if (lastTxId.longValue() != txId) {
-                    flush();
+                } else if (lastTxId.longValue() != txId || batch.size() >= maxBatchSize) {
+                    flushBatch();
                     lastTxId.setValue(txId);
-                    batch.clear();
-                    oldestTxId.setValue(Long.MAX_VALUE);
                 }
 
                 primaryRowMarshaller.fromRows(txFpRowStream -> txFpRowStream.stream(txId, rowFP, rowType, row),
                     (rowTxId, fp, rowType2, prefix, key, hasValue, value, valueTimestamp, valueTombstoned, valueVersion, _row) -> {
+                        if (!batch.isEmpty() && !Arrays.equals(batch.get(0).prefix, prefix)) {
+                            // a commit applies to a single prefix, which a transaction always is but a snapshot is not
+                            flushBatch();
+                        }
                         streamed.incrementAndGet();
                         if (highWaterMark.longValue() < txId) {
                             highWaterMark.setValue(txId);
@@ -941,10 +1099,18 @@ public class RowChangeTaker implements RowChanges {
 
             } else if (rowType == RowType.highwater) {
                 highwater.set(binaryHighwaterRowMarshaller.fromBytes(row));
+            } else if (rowType == RowType.compression_dictionary) {
+                primaryRowMarshaller.getDictionaries().learn(UIO.bytesLong(row, 0), Arrays.copyOfRange(row, 8, row.length));
             }
             return true;
         }
 
+        private void flushBatch() throws Exception {
+            flush();
+            batch.clear();
+            oldestTxId.setValue(Long.MAX_VALUE);
+        }
+
         public boolean haveFlushed() {
             return flushed.get() > 0;
         }
@@ -2,37 +2,52 @@ package com.jivesoftware.os.amza.service.replication.http;
 
 import com.jivesoftware.os.amza.api.PartitionClient.KeyValueFilter;
 import com.jivesoftware.os.amza.api.RingPartitionProperties;
+import com.jivesoftware.os.amza.api.filer.HeapFiler;
 import com.jivesoftware.os.amza.api.filer.IReadable;
 import com.jivesoftware.os.amza.api.filer.IWriteable;
 import com.jivesoftware.os.amza.api.filer.UIO;
 import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.amza.api.partition.PartitionStatistics;
 import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.api.ring.RingMemberAndHost;
+import com.jivesoftware.os.amza.api.scan.FrontCodedRows;
+import com.jivesoftware.os.amza.api.scan.ScanCursor;
+import com.jivesoftware.os.amza.api.stream.ClientUpdates;
 import com.jivesoftware.os.amza.api.stream.KeyValueStream;
 import com.jivesoftware.os.amza.api.stream.PrefixedKeyRanges;
 import com.jivesoftware.os.amza.api.stream.RowType;
 import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
 import com.jivesoftware.os.amza.api.stream.TxKeyValueStream.TxResult;
 import com.jivesoftware.os.amza.api.take.Highwaters;
+import com.jivesoftware.os.amza.api.take.TakeFilter;
 import com.jivesoftware.os.amza.api.take.TakeResult;
 import com.jivesoftware.os.amza.api.wal.WALHighwater;
 import com.jivesoftware.os.amza.service.NotARingMemberException;
 import com.jivesoftware.os.amza.service.Partition;
 import com.jivesoftware.os.amza.service.Partition.ScanRange;
 import com.jivesoftware.os.amza.service.PartitionProvider;
+import com.jivesoftware.os.amza.service.PartitionUpdateNotifier;
 import com.jivesoftware.os.amza.service.PropertiesNotPresentException;
 import com.jivesoftware.os.amza.service.ring.AmzaRingReader;
 import com.jivesoftware.os.amza.service.ring.AmzaRingWriter;
+import com.jivesoftware.os.amza.service.replication.http.endpoints.ObjectInputStreamWithLoader;
 import com.jivesoftware.os.amza.service.ring.RingTopology;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 /**
  * @author jonathan.colt
@@ -40,14 +55,40 @@ import java.util.List;
 public class AmzaClientService implements AmzaRestClient {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    private static final long MIN_HEARTBEAT_INTERVAL_MILLIS = 100;
+
     private final AmzaRingReader ringReader;
     private final AmzaRingWriter ringWriter;
     private final PartitionProvider partitionProvider;
+    private final ExecutorService scanExecutor;
+    private final int scanRangeConcurrency;
+    private final long scanRangeBufferBytes;
+    private final Semaphore subscribers;
 
     public AmzaClientService(AmzaRingReader ringReader, AmzaRingWriter ringWriter, PartitionProvider partitionProvider) {
+        this(ringReader, ringWriter, partitionProvider, null, 1, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param scanExecutor         nullable pool used to scan the ranges of a multi-range scan concurrently
+     * @param scanRangeConcurrency max number of ranges a single scan request may have in flight on the scanExecutor
+     * @param scanRangeBufferBytes max bytes a single scan request may buffer on heap across all of its ranges in flight
+     * @param maxSubscribers       max number of subscriptions served at once, each holds a request thread for as long as it is open
+     */
+    public AmzaClientService(AmzaRingReader ringReader,
+        AmzaRingWriter ringWriter,
+        PartitionProvider partitionProvider,
+        ExecutorService scanExecutor,
+        int scanRangeConcurrency,
+        long scanRangeBufferBytes,
+        int maxSubscribers) {
         this.ringReader = ringReader;
         this.ringWriter = ringWriter;
         this.partitionProvider = partitionProvider;
+        this.scanExecutor = scanExecutor;
+        this.scanRangeConcurrency = scanRangeConcurrency;
+        this.scanRangeBufferBytes = scanRangeBufferBytes;
+        this.subscribers = new Semaphore(maxSubscribers);
     }
 
     @Override
@@ -113,6 +154,24 @@ public class AmzaClientService implements AmzaRestClient {
         boolean checkLeader,
         long partitionAwaitOnlineTimeoutMillis,
         IReadable read) throws Exception {
+        return commit(partitionName, consistency, checkLeader, partitionAwaitOnlineTimeoutMillis, read, false);
+    }
+
+    @Override
+    public StateMessageCause bulkLoad(PartitionName partitionName,
+        Consistency consistency,
+        boolean checkLeader,
+        long partitionAwaitOnlineTimeoutMillis,
+        IReadable read) throws Exception {
+        return commit(partitionName, consistency, checkLeader, partitionAwaitOnlineTimeoutMillis, read, true);
+    }
+
+    private StateMessageCause commit(PartitionName partitionName,
+        Consistency consistency,
+        boolean checkLeader,
+        long partitionAwaitOnlineTimeoutMillis,
+        IReadable read,
+        boolean bulkLoad) throws Exception {
         StateMessageCause response = checkForReadyState(partitionName, consistency, checkLeader, partitionAwaitOnlineTimeoutMillis);
         if (response != null) {
             return response;
@@ -123,7 +182,7 @@ public class AmzaClientService implements AmzaRestClient {
         byte[] prefix = UIO.readByteArray(read, "prefix", intLongBuffer);
         long timeoutInMillis = UIO.readLong(read, "timeoutInMillis", intLongBuffer);
 
-        partition.commit(consistency, prefix, commitKeyValueStream -> {
+        ClientUpdates updates = commitKeyValueStream -> {
             while (!UIO.readBoolean(read, "eos")) {
                 boolean result = commitKeyValueStream.commit(
                     UIO.readByteArray(read, "key", intLongBuffer),
@@ -135,7 +194,12 @@ public class AmzaClientService implements AmzaRestClient {
                 }
             }
             return true;
-        }, timeoutInMillis);
+        };
+        if (bulkLoad) {
+            partition.bulkLoad(consistency, prefix, updates, timeoutInMillis);
+        } else {
+            partition.commit(consistency, prefix, updates, timeoutInMillis);
+        }
         return null;
     }
 
@@ -231,15 +295,28 @@ public class AmzaClientService implements AmzaRestClient {
         boolean rangeBoundaries,
         KeyValueFilter filter,
         IWriteable out,
-        boolean hydrateValues) throws Exception {
+        boolean hydrateValues,
+        boolean frontCoded) throws Exception {
 
         byte[] intLongBuffer = new byte[8];
         Partition partition = partitionProvider.getPartition(partitionName);
+        if (frontCoded) {
+            UIO.writeByte(out, FrontCodedRows.VERSION, "encoding");
+        }
+
+        if (rangeBoundaries && scanExecutor != null && scanRangeConcurrency > 1 && scanRangeBufferBytes > 0 && ranges.size() > 1) {
+            parallelScan(partition, ranges, filter, out, hydrateValues, frontCoded);
+            return;
+        }
 
         long[] scannedValuesCostInBytes = new long[2];
+        FrontCodedRows.Writer frontCodedWriter = frontCoded ? new FrontCodedRows.Writer(hydrateValues) : null;
         PrefixedKeyRanges prefixedKeyRanges = stream -> {
             if (rangeBoundaries) {
                 for (ScanRange range : ranges) {
+                    if (frontCodedWriter != null) {
+                        frontCodedWriter.reset();
+                    }
                     UIO.writeByte(out, (byte) 0, "eosRange");
                     boolean result = stream.stream(range.fromPrefix, range.fromKey, range.toPrefix, range.toKey);
                     UIO.writeByte(out, (byte) 1, "eos");
@@ -251,6 +328,9 @@ public class AmzaClientService implements AmzaRestClient {
                 UIO.writeByte(out, (byte) 1, "eosRange");
             } else {
                 for (ScanRange range : ranges) {
+                    if (frontCodedWriter != null) {
+                        frontCodedWriter.reset();
+                    }
                     if (!stream.stream(range.fromPrefix, range.fromKey, range.toPrefix, range.toKey)) {
                         UIO.writeByte(out, (byte) 1, "eos");
                         return false;
@@ -260,19 +340,7 @@ public class AmzaClientService implements AmzaRestClient {
             }
             return true;
         };
-        KeyValueStream keyValueStream = (prefix, key, value, timestamp, tombstoned, version) -> {
-            scannedValuesCostInBytes[0] += value != null ? value.length : 0;
-            UIO.writeByte(out, (byte) 0, "eos");
-            UIO.writeByteArray(out, prefix, "prefix", intLongBuffer);
-            UIO.writeByteArray(out, key, "key", intLongBuffer);
-            if (hydrateValues) {
-                UIO.writeByteArray(out, value, "value", intLongBuffer);
-            }
-            UIO.writeLong(out, timestamp, "timestamp", intLongBuffer);
-            UIO.writeByte(out, tombstoned ? (byte) 1 : (byte) 0, "tombstoned");
-            UIO.writeLong(out, version, "version", intLongBuffer);
-            return true;
-        };
+        KeyValueStream keyValueStream = rowWriter(out, hydrateValues, frontCodedWriter, scannedValuesCostInBytes, intLongBuffer);
         if (filter != null) {
             partition.scan(
                 prefixedKeyRanges,
@@ -294,12 +362,266 @@ public class AmzaClientService implements AmzaRestClient {
         }
     }
 
+    private static KeyValueStream rowWriter(IWriteable out,
+        boolean hydrateValues,
+        FrontCodedRows.Writer frontCodedWriter,
+        long[] scannedValuesCostInBytes,
+        byte[] intLongBuffer) {
+        return (prefix, key, value, timestamp, tombstoned, version) -> {
+            scannedValuesCostInBytes[0] += value != null ? value.length : 0;
+            UIO.writeByte(out, (byte) 0, "eos");
+            if (frontCodedWriter != null) {
+                frontCodedWriter.write(out, prefix, key, value, timestamp, tombstoned, version);
+                return true;
+            }
+            UIO.writeByteArray(out, prefix, "prefix", intLongBuffer);
+            UIO.writeByteArray(out, key, "key", intLongBuffer);
+            if (hydrateValues) {
+                UIO.writeByteArray(out, value, "value", intLongBuffer);
+            }
+            UIO.writeLong(out, timestamp, "timestamp", intLongBuffer);
+            UIO.writeByte(out, tombstoned ? (byte) 1 : (byte) 0, "tombstoned");
+            UIO.writeLong(out, version, "version", intLongBuffer);
+            return true;
+        };
+    }
+
+    /**
+     * Scans up to scanRangeConcurrency ranges at a time on the scanExecutor, buffering each range on heap, and writes the buffers
+     * back in range order using the same eosRange framing as a sequential scan. Each range buffers at most its share of
+     * scanRangeBufferBytes; a range which fills its buffer stops where it is and is finished by streaming straight to the response
+     * once it reaches the head of the queue, so a wide scan never holds more than scanRangeBufferBytes.
+     * <p>
+     * Filters are stateful per stream, so each range is filtered by its own copy of the filter as it was received, and the range's copy
+     * carries on if the range overflows. A range whose filter stops the stream ends the scan, and no further ranges are written.
+     */
+    private void parallelScan(Partition partition,
+        List<ScanRange> ranges,
+        KeyValueFilter filter,
+        IWriteable out,
+        boolean hydrateValues,
+        boolean frontCoded) throws Exception {
+
+        long start = System.currentTimeMillis();
+        long maxRangeBytes = Math.max(1, scanRangeBufferBytes / scanRangeConcurrency);
+        Deque<Future<RangeResult>> inFlight = new ArrayDeque<>();
+        byte[] intLongBuffer = new byte[8];
+        long[] scannedValuesCostInBytes = new long[1];
+        byte[] filterBytes = filter != null ? serialize(filter) : null;
+        long totalBytes = 0;
+        int nextRange = 0;
+        try {
+            boolean done = false;
+            while (!done && (nextRange < ranges.size() || !inFlight.isEmpty())) {
+                while (nextRange < ranges.size() && inFlight.size() < scanRangeConcurrency) {
+                    ScanRange range = ranges.get(nextRange);
+                    KeyValueFilter rangeFilter = filterBytes != null ? deserialize(filterBytes, filter.getClass().getClassLoader()) : null;
+                    nextRange++;
+                    inFlight.addLast(scanExecutor.submit(() -> scanRange(partition, range, rangeFilter, hydrateValues, frontCoded, maxRangeBytes)));
+                }
+                RangeResult result = inFlight.removeFirst().get();
+                UIO.writeByte(out, (byte) 0, "eosRange");
+                out.write(result.filer.leakBytes(), 0, (int) result.filer.length());
+                totalBytes += result.filer.length();
+                done = !result.completed;
+                if (!done && result.resumeKey != null) {
+                    LOG.inc("scan>parallel>overflow");
+                    KeyValueStream keyValueStream = rowWriter(out, hydrateValues, result.frontCodedWriter, scannedValuesCostInBytes, intLongBuffer);
+                    ScanRange range = result.range;
+                    KeyValueFilter rangeFilter = result.filter;
+                    // partitions may not report a stopped stream, so take it from the stream itself
+                    boolean[] completed = { true };
+                    partition.scan(
+                        stream -> stream.stream(result.resumePrefix, result.resumeKey, range.toPrefix, range.toKey),
+                        true,
+                        hydrateValues,
+                        (prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                            boolean streamed = rangeFilter != null
+                                ? rangeFilter.filter(prefix, key, value, valueTimestamp, valueTombstoned, valueVersion, keyValueStream)
+                                : keyValueStream.stream(prefix, key, value, valueTimestamp, valueTombstoned, valueVersion);
+                            if (!streamed) {
+                                completed[0] = false;
+                            }
+                            return streamed;
+                        });
+                    done = !completed[0];
+                }
+                UIO.writeByte(out, (byte) 1, "eos");
+            }
+            UIO.writeByte(out, (byte) 1, "eosRange");
+        } finally {
+            for (Future<RangeResult> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+
+        LOG.inc("scan>parallel>calls");
+        LOG.inc("scan>parallel>ranges", ranges.size());
+        LOG.inc("scan>parallel>bytes>pow>" + UIO.chunkPower(totalBytes, 0));
+        LOG.inc("scan>parallel>latency>pow>" + UIO.chunkPower(System.currentTimeMillis() - start, 0));
+    }
+
+    private RangeResult scanRange(Partition partition,
+        ScanRange range,
+        KeyValueFilter filter,
+        boolean hydrateValues,
+        boolean frontCoded,
+        long maxRangeBytes) throws Exception {
+        HeapFiler filer = new HeapFiler(1024);
+        byte[] intLongBuffer = new byte[8];
+        long[] scannedValuesCostInBytes = new long[1];
+        boolean[] completed = { true };
+        byte[][] resume = new byte[2][];
+        FrontCodedRows.Writer frontCodedWriter = frontCoded ? new FrontCodedRows.Writer(hydrateValues) : null;
+        KeyValueStream keyValueStream = rowWriter(filer, hydrateValues, frontCodedWriter, scannedValuesCostInBytes, intLongBuffer);
+        partition.scan(
+            stream -> stream.stream(range.fromPrefix, range.fromKey, range.toPrefix, range.toKey),
+            true,
+            hydrateValues,
+            (prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                boolean result = filter != null
+                    ? filter.filter(prefix, key, value, valueTimestamp, valueTombstoned, valueVersion, keyValueStream)
+                    : keyValueStream.stream(prefix, key, value, valueTimestamp, valueTombstoned, valueVersion);
+                if (!result) {
+                    completed[0] = false;
+                    return false;
+                }
+                if (filer.length() >= maxRangeBytes) {
+                    resume[0] = prefix;
+                    resume[1] = new ScanCursor(-1, prefix, key, -1).resumeKey();
+                    return false;
+                }
+                return true;
+            });
+        return new RangeResult(range, filter, filer, frontCodedWriter, completed[0], resume[0], resume[1]);
+    }
+
+    private static byte[] serialize(KeyValueFilter filter) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(filter);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static KeyValueFilter deserialize(byte[] filterBytes, ClassLoader classLoader) throws IOException, ClassNotFoundException {
+        ClassLoader loader = classLoader != null ? classLoader : ClassLoader.getSystemClassLoader();
+        try (ObjectInputStream in = new ObjectInputStreamWithLoader(new ByteArrayInputStream(filterBytes), loader)) {
+            return (KeyValueFilter) in.readObject();
+        }
+    }
+
+    private static class RangeResult {
+
+        private final ScanRange range;
+        private final KeyValueFilter filter;
+        private final HeapFiler filer;
+        private final FrontCodedRows.Writer frontCodedWriter;
+        private final boolean completed;
+        private final byte[] resumePrefix;
+        private final byte[] resumeKey;
+
+        private RangeResult(ScanRange range,
+            KeyValueFilter filter,
+            HeapFiler filer,
+            FrontCodedRows.Writer frontCodedWriter,
+            boolean completed,
+            byte[] resumePrefix,
+            byte[] resumeKey) {
+            this.range = range;
+            this.filter = filter;
+            this.filer = filer;
+            this.frontCodedWriter = frontCodedWriter;
+            this.completed = completed;
+            this.resumePrefix = resumePrefix;
+            this.resumeKey = resumeKey;
+        }
+    }
+
+    @Override
+    public void scanPage(PartitionName partitionName,
+        List<ScanRange> ranges,
+        ScanCursor cursor,
+        int pageSize,
+        long pageBytes,
+        IWriteable out,
+        boolean hydrateValues) throws Exception {
+
+        byte[] intLongBuffer = new byte[8];
+        Partition partition = partitionProvider.getPartition(partitionName);
+        long highestTxId = cursor != null ? cursor.highestTxId : partition.highestTxId();
+        int fromRangeIndex = cursor != null ? cursor.rangeIndex : 0;
+
+        int[] rangeIndex = { -1 };
+        long[] countAndBytes = new long[2];
+        ScanCursor[] nextCursor = new ScanCursor[1];
+        PrefixedKeyRanges prefixedKeyRanges = stream -> {
+            for (int i = fromRangeIndex; i < ranges.size(); i++) {
+                ScanRange range = ranges.get(i);
+                rangeIndex[0] = i;
+                UIO.writeByte(out, (byte) 0, "eosRange");
+                UIO.writeInt(out, i, "rangeIndex", intLongBuffer);
+                boolean result;
+                if (cursor != null && i == cursor.rangeIndex) {
+                    result = stream.stream(cursor.prefix, cursor.resumeKey(), range.toPrefix, range.toKey);
+                } else {
+                    result = stream.stream(range.fromPrefix, range.fromKey, range.toPrefix, range.toKey);
+                }
+                UIO.writeByte(out, (byte) 1, "eos");
+                if (!result || nextCursor[0] != null) {
+                    return false;
+                }
+            }
+            return true;
+        };
+        KeyValueStream keyValueStream = (prefix, key, value, timestamp, tombstoned, version) -> {
+            UIO.writeByte(out, (byte) 0, "eos");
+            UIO.writeByteArray(out, prefix, "prefix", intLongBuffer);
+            UIO.writeByteArray(out, key, "key", intLongBuffer);
+            if (hydrateValues) {
+                UIO.writeByteArray(out, value, "value", intLongBuffer);
+            }
+            UIO.writeLong(out, timestamp, "timestamp", intLongBuffer);
+            UIO.writeByte(out, tombstoned ? (byte) 1 : (byte) 0, "tombstoned");
+            UIO.writeLong(out, version, "version", intLongBuffer);
+
+            countAndBytes[0]++;
+            countAndBytes[1] += (prefix != null ? prefix.length : 0) + key.length + (hydrateValues && value != null ? value.length : 0);
+            if ((pageSize > 0 && countAndBytes[0] >= pageSize) || (pageBytes > 0 && countAndBytes[1] >= pageBytes)) {
+                nextCursor[0] = new ScanCursor(rangeIndex[0], prefix, key, highestTxId);
+                return false;
+            }
+            return true;
+        };
+
+        UIO.writeLong(out, highestTxId, "highestTxId", intLongBuffer);
+        partition.scan(prefixedKeyRanges, hydrateValues, true, keyValueStream);
+        UIO.writeByte(out, (byte) 1, "eosRange");
+        UIO.writeByteArray(out, nextCursor[0] != null ? nextCursor[0].toBytes() : null, "cursor", intLongBuffer);
+
+        LOG.inc("scanPage>calls");
+        LOG.inc("scanPage>rows", countAndBytes[0]);
+        LOG.inc("scanPage>bytes>pow>" + UIO.chunkPower(countAndBytes[1], 0));
+        if (nextCursor[0] == null) {
+            LOG.inc("scanPage>exhausted");
+        }
+    }
+
     @Override
     public void takeFromTransactionId(PartitionName partitionName, int limit, IReadable in, IWriteable out) throws Exception {
         byte[] intLongBuffer = new byte[8];
         long transactionId = UIO.readLong(in, "transactionId", intLongBuffer);
         Partition partition = partitionProvider.getPartition(partitionName);
-        take(out, partition, false, null, transactionId, limit, intLongBuffer);
+        take(out, partition, false, null, transactionId, limit, null, intLongBuffer);
+    }
+
+    @Override
+    public void takeFromTransactionIdFiltered(PartitionName partitionName, int limit, IReadable in, IWriteable out) throws Exception {
+        byte[] intLongBuffer = new byte[8];
+        long transactionId = UIO.readLong(in, "transactionId", intLongBuffer);
+        TakeFilter filter = TakeFilter.read(in, intLongBuffer);
+        Partition partition = partitionProvider.getPartition(partitionName);
+        take(out, partition, false, null, transactionId, limit, filter, intLongBuffer);
     }
 
     @Override
@@ -308,7 +630,47 @@ public class AmzaClientService implements AmzaRestClient {
         Partition partition = partitionProvider.getPartition(partitionName);
         byte[] prefix = UIO.readByteArray(in, "prefix", intLongBuffer);
         long txId = UIO.readLong(in, "txId", intLongBuffer);
-        take(out, partition, true, prefix, txId, limit, intLongBuffer);
+        take(out, partition, true, prefix, txId, limit, null, intLongBuffer);
+    }
+
+    @Override
+    public boolean acquireSubscriber() {
+        if (subscribers.tryAcquire()) {
+            return true;
+        }
+        LOG.inc("subscribe>rejected");
+        return false;
+    }
+
+    @Override
+    public void releaseSubscriber() {
+        subscribers.release();
+    }
+
+    @Override
+    public void subscribe(PartitionName partitionName, int limit, IReadable in, IWriteable out) throws Exception {
+        byte[] intLongBuffer = new byte[8];
+        long txId = UIO.readLong(in, "transactionId", intLongBuffer);
+        TakeFilter filter = UIO.readBoolean(in, "hasFilter") ? TakeFilter.read(in, intLongBuffer) : null;
+        long heartbeatIntervalMillis = Math.max(UIO.readLong(in, "heartbeatIntervalMillis", intLongBuffer), MIN_HEARTBEAT_INTERVAL_MILLIS);
+        Partition partition = partitionProvider.getPartition(partitionName);
+
+        LOG.inc("subscribe>calls");
+        try (PartitionUpdateNotifier.Listener listener = partitionProvider.listenForUpdates(partitionName)) {
+            // runs until the subscriber goes away and a write fails, every batch doubles as a heartbeat and carries the cursor to resume from
+            while (true) {
+                long updates = listener.updates();
+                UIO.writeByte(out, (byte) 0, "eos");
+                TakeResult takeResult = take(out, partition, false, null, txId, limit, filter, intLongBuffer);
+                out.flush(false);
+                txId = Math.max(txId, takeResult.lastTxId);
+                if (takeResult.tookToEnd != null) {
+                    listener.await(updates, heartbeatIntervalMillis);
+                } else {
+                    LOG.inc("subscribe>batches>limited");
+                }
+            }
+        }
     }
 
     @Override
@@ -317,12 +679,19 @@ public class AmzaClientService implements AmzaRestClient {
         return partition.approximateCount();
     }
 
-    private void take(IWriteable out,
+    @Override
+    public PartitionStatistics statistics(PartitionName partitionName) throws Exception {
+        Partition partition = partitionProvider.getPartition(partitionName);
+        return partition.sketches().statistics();
+    }
+
+    private TakeResult take(IWriteable out,
         Partition partition,
         boolean usePrefix,
         byte[] prefix,
         long txId,
         int limit,
+        TakeFilter filter,
         byte[] lengthBuffer) throws Exception {
 
         RingMember ringMember = ringReader.getRingMember();
@@ -333,7 +702,14 @@ public class AmzaClientService implements AmzaRestClient {
             writeHighwaters(out, highwater, lengthBuffer);
         };
         int[] count = { 0 };
+        long[] filtered = { 0 };
         TxKeyValueStream stream = (rowTxId, prefix1, key, value, timestamp, tombstoned, version) -> {
+            if (filter != null && !filter.accept(prefix1, key, timestamp, version)) {
+                // still counts toward the limit so a take which matches nothing remains bounded
+                filtered[0]++;
+                count[0]++;
+                return (limit > 0 && count[0] >= limit) ? TxResult.ACCEPT_AND_STOP : TxResult.MORE;
+            }
             UIO.writeByte(out, (byte) 0, "eos");
             UIO.writeByte(out, RowType.primary.toByte(), "type");
             UIO.writeLong(out, rowTxId, "rowTxId", lengthBuffer);
@@ -358,7 +734,11 @@ public class AmzaClientService implements AmzaRestClient {
         UIO.writeByteArray(out, takeResult.tookFrom.toBytes(), "ringMember", lengthBuffer);
         UIO.writeLong(out, takeResult.lastTxId, "lastTxId", lengthBuffer);
         writeHighwaters(out, takeResult.tookToEnd, lengthBuffer);
+        if (filter != null) {
+            UIO.writeLong(out, filtered[0], "filtered", lengthBuffer);
+        }
         UIO.writeByte(out, (byte) 1, "eos");
+        return takeResult;
     }
 
     private void writeHighwaters(IWriteable out, WALHighwater highwater, byte[] lengthBuffer) throws IOException {
@@ -7,7 +7,9 @@ import com.jivesoftware.os.amza.api.filer.IWriteable;
 import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.amza.api.partition.PartitionStatistics;
 import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.scan.ScanCursor;
 import com.jivesoftware.os.amza.service.Partition.ScanRange;
 import com.jivesoftware.os.amza.service.replication.http.endpoints.ChunkedOutputFiler;
 import com.jivesoftware.os.amza.service.ring.RingTopology;
@@ -24,6 +26,9 @@ public interface AmzaRestClient {
     StateMessageCause commit(PartitionName partitionName, Consistency consistency, boolean checkLeader, long partitionAwaitOnlineTimeoutMillis, IReadable read)
         throws Exception;
 
+    StateMessageCause bulkLoad(PartitionName partitionName, Consistency consistency, boolean checkLeader, long partitionAwaitOnlineTimeoutMillis,
+        IReadable read) throws Exception;
+
     RingTopology configPartition(PartitionName partitionName, PartitionProperties partitionProperties, int ringSize) throws Exception;
 
     void configPartition(RingTopology ring, IWriteable writeable) throws Exception;
@@ -45,16 +50,39 @@ public interface AmzaRestClient {
         boolean rangeBoundaries,
         KeyValueFilter filter,
         IWriteable out,
+        boolean hydrateValues,
+        boolean frontCoded) throws Exception;
+
+    void scanPage(PartitionName partitionName,
+        List<ScanRange> ranges,
+        ScanCursor cursor,
+        int pageSize,
+        long pageBytes,
+        IWriteable out,
         boolean hydrateValues) throws Exception;
 
     StateMessageCause status(PartitionName partitionName, Consistency consistency, boolean checkLeader, long partitionAwaitOnlineTimeoutMillis);
 
     void takeFromTransactionId(PartitionName partitionName, int limit, IReadable in, IWriteable out) throws Exception;
 
+    void takeFromTransactionIdFiltered(PartitionName partitionName, int limit, IReadable in, IWriteable out) throws Exception;
+
     void takePrefixFromTransactionId(PartitionName partitionName, int limit, IReadable in, IWriteable out) throws Exception;
 
+    /**
+     * @return false when as many subscriptions as allowed are already open, otherwise the caller must {@link #releaseSubscriber()} once its
+     * subscription ends
+     */
+    boolean acquireSubscriber();
+
+    void releaseSubscriber();
+
+    void subscribe(PartitionName partitionName, int limit, IReadable in, IWriteable out) throws Exception;
+
     long approximateCount(PartitionName partitionName) throws Exception;
 
+    PartitionStatistics statistics(PartitionName partitionName) throws Exception;
+
     class RingLeader {
 
         final RingTopology ringTopology;
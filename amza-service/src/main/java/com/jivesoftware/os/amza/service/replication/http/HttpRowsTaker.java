@@ -25,6 +25,7 @@ import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.api.ring.RingHost;
 import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.api.scan.RowStream;
+import com.jivesoftware.os.amza.service.replication.ReplicationQoS.Throttle;
 import com.jivesoftware.os.amza.service.stats.AmzaStats;
 import com.jivesoftware.os.amza.service.take.RowsTaker;
 import com.jivesoftware.os.amza.service.take.StreamingTakesConsumer;
@@ -43,7 +44,10 @@ import com.jivesoftware.os.routing.bird.shared.HttpClientException;
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Serializable;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -114,6 +118,7 @@ public class HttpRowsTaker implements RowsTaker {
      * @param remoteRingHost
      * @param remoteVersionedPartitionName
      * @param remoteTxId
+     * @param throttle paces the bytes read off the wire
      * @param rowStream
      * @return Will return null if the other node was reachable but the partition on that node was NOT online.
      * @throws Exception
@@ -128,20 +133,49 @@ public class HttpRowsTaker implements RowsTaker {
         long remoteTxId,
         long localLeadershipToken,
         long limit,
+        Throttle throttle,
+        RowStream rowStream) {
+
+        String endpoint = "/amza/rows/stream/" + localRingMember.getMember()
+            + "/" + remoteVersionedPartitionName.toBase64()
+            + "/" + takeSessionId
+            + "/" + remoteTxId
+            + "/" + localLeadershipToken
+            + "/" + limit;
+        return stream(endpoint, "rowsStream", remoteRingHost, takeSharedKey, throttle, rowStream);
+    }
+
+    @Override
+    public StreamingRowsResult snapshotStream(RingMember localRingMember,
+        RingMember remoteRingMember,
+        RingHost remoteRingHost,
+        VersionedPartitionName remoteVersionedPartitionName,
+        long takeSessionId,
+        long takeSharedKey,
+        long localLeadershipToken,
+        Throttle throttle,
+        RowStream rowStream) {
+
+        String endpoint = "/amza/rows/snapshot/" + localRingMember.getMember()
+            + "/" + remoteVersionedPartitionName.toBase64()
+            + "/" + takeSessionId
+            + "/" + localLeadershipToken;
+        return stream(endpoint, "snapshotStream", remoteRingHost, takeSharedKey, throttle, rowStream);
+    }
+
+    private StreamingRowsResult stream(String endpoint,
+        String family,
+        RingHost remoteRingHost,
+        long takeSharedKey,
+        Throttle throttle,
         RowStream rowStream) {
 
         HttpStreamResponse httpStreamResponse;
         try {
-            String endpoint = "/amza/rows/stream/" + localRingMember.getMember()
-                + "/" + remoteVersionedPartitionName.toBase64()
-                + "/" + takeSessionId
-                + "/" + remoteTxId
-                + "/" + localLeadershipToken
-                + "/" + limit;
             String sharedKeyJson = mapper.writeValueAsString(takeSharedKey); // lame
             httpStreamResponse = ringClient.call("",
                 new ConnectionDescriptorSelectiveStrategy(new HostPort[] { new HostPort(remoteRingHost.getHost(), remoteRingHost.getPort()) }),
-                "rowsStream",
+                family,
                 httpClient -> {
                     HttpStreamResponse response = httpClient.streamingPost(endpoint, sharedKeyJson, null);
                     if (response.getStatusCode() < 200 || response.getStatusCode() >= 300) {
@@ -153,7 +187,7 @@ public class HttpRowsTaker implements RowsTaker {
             return new StreamingRowsResult(e, null, -1, -1, null);
         }
         try {
-            BufferedInputStream bis = new BufferedInputStream(httpStreamResponse.getInputStream(), 8192); // TODO config??
+            BufferedInputStream bis = new BufferedInputStream(new ThrottledInputStream(httpStreamResponse.getInputStream(), throttle), 8192); // TODO config??
             DataInputStream dis = new DataInputStream(new SnappyInputStream(bis));
             StreamingTakeConsumed consumed = streamingTakesConsumer.consume(dis, rowStream);
             amzaStats.netStats.read.add(consumed.bytes);
@@ -166,6 +200,43 @@ public class HttpRowsTaker implements RowsTaker {
         }
     }
 
+    private static class ThrottledInputStream extends FilterInputStream {
+
+        private final Throttle throttle;
+
+        ThrottledInputStream(InputStream in, Throttle throttle) {
+            super(in);
+            this.throttle = throttle;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read != -1) {
+                acquire(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                acquire(read);
+            }
+            return read;
+        }
+
+        private void acquire(int bytes) throws IOException {
+            try {
+                throttle.acquire(bytes);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling rows stream");
+            }
+        }
+    }
+
     private static class Ackable {
         public final AtomicBoolean running = new AtomicBoolean(false);
         public final Semaphore semaphore = new Semaphore(Short.MAX_VALUE);
@@ -29,6 +29,8 @@ import com.jivesoftware.os.amza.api.filer.UIO;
 import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.amza.api.partition.PartitionStatistics;
+import com.jivesoftware.os.amza.api.scan.ScanCursor;
 import com.jivesoftware.os.amza.api.wal.KeyUtil;
 import com.jivesoftware.os.amza.api.wal.WALKey;
 import com.jivesoftware.os.amza.service.NotARingMemberException;
@@ -93,6 +95,21 @@ public class AmzaClientRestEndpoints {
         }
     }
 
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/statistics/{base64PartitionName}")
+    public Response getStatistics(@PathParam("base64PartitionName") String base64PartitionName) {
+        PartitionName partitionName = null;
+        try {
+            partitionName = amzaInterner.internPartitionNameBase64(base64PartitionName);
+            PartitionStatistics statistics = client.statistics(partitionName);
+            return Response.ok(statistics).build();
+        } catch (Exception e) {
+            LOG.error("Failed while attempting to getStatistics:{}", new Object[] { partitionName }, e);
+            return ResponseHelper.INSTANCE.errorResponse(Status.INTERNAL_SERVER_ERROR, "Failed while attempting to getStatistics.", e);
+        }
+    }
+
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Path("/configPartition/{base64PartitionName}/{ringSize}")
@@ -240,6 +257,43 @@ public class AmzaClientRestEndpoints {
         }
     }
 
+    @POST
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.TEXT_PLAIN)
+    @Path("/bulkLoad/{base64PartitionName}/{consistency}/{checkLeader}")
+    public Response bulkLoad(@PathParam("base64PartitionName") String base64PartitionName,
+        @PathParam("consistency") String consistencyName,
+        @PathParam("checkLeader") boolean checkLeader,
+        InputStream inputStream) {
+
+        FilerInputStream in = null;
+        PartitionName partitionName = null;
+        try {
+            partitionName = amzaInterner.internPartitionNameBase64(base64PartitionName);
+            in = new FilerInputStream(inputStream);
+            StateMessageCause stateMessageCause = client.bulkLoad(partitionName,
+                Consistency.valueOf(consistencyName),
+                checkLeader, 10_000, in);
+            if (stateMessageCause != null) {
+                return stateMessageCauseToResponse(stateMessageCause);
+            }
+            return Response.ok("success").build();
+
+        } catch (DeltaOverCapacityException x) {
+            LOG.warn("Delta over capacity for {} {}", base64PartitionName, x);
+            return ResponseHelper.INSTANCE.errorResponse(Status.SERVICE_UNAVAILABLE, "Delta over capacity.");
+        } catch (FailedToAchieveQuorumException x) {
+            LOG.warn("FailedToAchieveQuorumException for {} {}", base64PartitionName, x);
+            return ResponseHelper.INSTANCE.errorResponse(Status.ACCEPTED, "Failed to achieve quorum exception.");
+        } catch (Exception x) {
+            Object[] vals = new Object[] { partitionName, consistencyName };
+            LOG.warn("Failed to bulk load {} at {}.", vals, x);
+            return ResponseHelper.INSTANCE.errorResponse("Failed to bulk load: " + Arrays.toString(vals), x);
+        } finally {
+            closeStreams(partitionName, "bulkLoad", in, null);
+        }
+    }
+
     @POST
     @Consumes(MediaType.APPLICATION_OCTET_STREAM)
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
@@ -323,7 +377,7 @@ public class AmzaClientRestEndpoints {
         @PathParam("checkLeader") boolean checkLeader,
         @PathParam("hydrateValues") boolean hydrateValues,
         InputStream inputStream) {
-        return multiScanInternal(base64PartitionName, consistencyName, checkLeader, hydrateValues, false, inputStream);
+        return multiScanInternal(base64PartitionName, consistencyName, checkLeader, hydrateValues, false, false, inputStream);
     }
 
     @POST
@@ -335,7 +389,19 @@ public class AmzaClientRestEndpoints {
         @PathParam("checkLeader") boolean checkLeader,
         @PathParam("hydrateValues") boolean hydrateValues,
         InputStream inputStream) {
-        return multiScanInternal(base64PartitionName, consistencyName, checkLeader, hydrateValues, true, inputStream);
+        return multiScanInternal(base64PartitionName, consistencyName, checkLeader, hydrateValues, true, false, inputStream);
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @Path("/multiScanFrontCoded/{base64PartitionName}/{consistency}/{checkLeader}/{hydrateValues}")
+    public Object multiScanFrontCoded(@PathParam("base64PartitionName") String base64PartitionName,
+        @PathParam("consistency") String consistencyName,
+        @PathParam("checkLeader") boolean checkLeader,
+        @PathParam("hydrateValues") boolean hydrateValues,
+        InputStream inputStream) {
+        return multiScanInternal(base64PartitionName, consistencyName, checkLeader, hydrateValues, true, true, inputStream);
     }
 
     private Object multiScanInternal(String base64PartitionName,
@@ -343,6 +409,7 @@ public class AmzaClientRestEndpoints {
         boolean checkLeader,
         boolean hydrateValues,
         boolean rangeBoundaries,
+        boolean frontCoded,
         InputStream inputStream) {
 
         PartitionName partitionName = null;
@@ -391,7 +458,7 @@ public class AmzaClientRestEndpoints {
                 os.flush();
                 FilerOutputStream fos = new FilerOutputStream(new BufferedOutputStream(os, 8192));
                 try {
-                    client.scan(effectivelyFinalPartitionName, ranges, rangeBoundaries, null, fos, hydrateValues);
+                    client.scan(effectivelyFinalPartitionName, ranges, rangeBoundaries, null, fos, hydrateValues, frontCoded);
                 } catch (Exception x) {
                     LOG.warn("Failed during stream scan", x);
                 } finally {
@@ -414,7 +481,7 @@ public class AmzaClientRestEndpoints {
         @PathParam("checkLeader") boolean checkLeader,
         @PathParam("hydrateValues") boolean hydrateValues,
         InputStream inputStream) {
-        return scanCompressedInternal(base64PartitionName, consistencyName, checkLeader, hydrateValues, false, inputStream);
+        return scanCompressedInternal(base64PartitionName, consistencyName, checkLeader, hydrateValues, false, false, inputStream);
     }
 
     @POST
@@ -426,7 +493,19 @@ public class AmzaClientRestEndpoints {
         @PathParam("checkLeader") boolean checkLeader,
         @PathParam("hydrateValues") boolean hydrateValues,
         InputStream inputStream) {
-        return scanCompressedInternal(base64PartitionName, consistencyName, checkLeader, hydrateValues, true, inputStream);
+        return scanCompressedInternal(base64PartitionName, consistencyName, checkLeader, hydrateValues, true, false, inputStream);
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @Path("/multiScanFrontCodedCompressed/{base64PartitionName}/{consistency}/{checkLeader}/{hydrateValues}")
+    public Object multiScanFrontCodedCompressed(@PathParam("base64PartitionName") String base64PartitionName,
+        @PathParam("consistency") String consistencyName,
+        @PathParam("checkLeader") boolean checkLeader,
+        @PathParam("hydrateValues") boolean hydrateValues,
+        InputStream inputStream) {
+        return scanCompressedInternal(base64PartitionName, consistencyName, checkLeader, hydrateValues, true, true, inputStream);
     }
 
     private Object scanCompressedInternal(String base64PartitionName,
@@ -434,6 +513,7 @@ public class AmzaClientRestEndpoints {
         boolean checkLeader,
         boolean hydrateValues,
         boolean rangeBoundaries,
+        boolean frontCoded,
         InputStream inputStream) {
 
         PartitionName partitionName = null;
@@ -483,7 +563,7 @@ public class AmzaClientRestEndpoints {
                 SnappyOutputStream sos = new SnappyOutputStream(os);
                 FilerOutputStream fos = new FilerOutputStream(new BufferedOutputStream(sos, 8192));
                 try {
-                    client.scan(effectivelyFinalPartitionName, ranges, rangeBoundaries, null, fos, hydrateValues);
+                    client.scan(effectivelyFinalPartitionName, ranges, rangeBoundaries, null, fos, hydrateValues, frontCoded);
                 } catch (Exception x) {
                     LOG.warn("Failed during compressed stream scan", x);
                 } finally {
@@ -597,7 +677,7 @@ public class AmzaClientRestEndpoints {
                 os.flush();
                 FilerOutputStream fos = new FilerOutputStream(new BufferedOutputStream(os, 8192));
                 try {
-                    client.scan(effectivelyFinalPartitionName, ranges, rangeBoundaries, filter, fos, hydrateValues);
+                    client.scan(effectivelyFinalPartitionName, ranges, rangeBoundaries, filter, fos, hydrateValues, false);
                 } catch (Exception x) {
                     LOG.warn("Failed during filtered stream scan", x);
                 } finally {
@@ -712,7 +792,7 @@ public class AmzaClientRestEndpoints {
                 SnappyOutputStream sos = new SnappyOutputStream(os);
                 FilerOutputStream fos = new FilerOutputStream(new BufferedOutputStream(sos, 8192));
                 try {
-                    client.scan(effectivelyFinalPartitionName, ranges, rangeBoundaries, filter, fos, hydrateValues);
+                    client.scan(effectivelyFinalPartitionName, ranges, rangeBoundaries, filter, fos, hydrateValues, false);
                 } catch (Exception x) {
                     LOG.warn("Failed during filtered compressed stream scan", x);
                 } finally {
@@ -726,6 +806,86 @@ public class AmzaClientRestEndpoints {
         }
     }
 
+    @POST
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @Path("/scanPage/{base64PartitionName}/{consistency}/{checkLeader}/{hydrateValues}/{pageSize}/{pageBytes}")
+    public Object scanPage(@PathParam("base64PartitionName") String base64PartitionName,
+        @PathParam("consistency") String consistencyName,
+        @PathParam("checkLeader") boolean checkLeader,
+        @PathParam("hydrateValues") boolean hydrateValues,
+        @PathParam("pageSize") int pageSize,
+        @PathParam("pageBytes") long pageBytes,
+        InputStream inputStream) {
+
+        PartitionName partitionName = null;
+        try {
+            partitionName = amzaInterner.internPartitionNameBase64(base64PartitionName);
+        } catch (Exception x) {
+            LOG.error("Failure while getting partitionName {}", new Object[] { partitionName }, x);
+            return Response.serverError().build();
+        }
+
+        StateMessageCause stateMessageCause = client.status(partitionName,
+            Consistency.valueOf(consistencyName),
+            checkLeader,
+            10_000);
+        if (stateMessageCause != null) {
+            return stateMessageCauseToResponse(stateMessageCause);
+        }
+
+        List<ScanRange> ranges = Lists.newArrayList();
+        ScanCursor cursor;
+        FilerInputStream in = new FilerInputStream(inputStream);
+        try {
+            byte[] intLongBuffer = new byte[8];
+            cursor = ScanCursor.fromBytes(UIO.readByteArray(in, "cursor", intLongBuffer));
+            while (UIO.readByte(in, "eos") == (byte) 1) {
+                byte[] fromPrefix = UIO.readByteArray(in, "fromPrefix", intLongBuffer);
+                byte[] fromKey = UIO.readByteArray(in, "fromKey", intLongBuffer);
+                byte[] toPrefix = UIO.readByteArray(in, "toPrefix", intLongBuffer);
+                byte[] toKey = UIO.readByteArray(in, "toKey", intLongBuffer);
+
+                byte[] from = fromKey != null ? WALKey.compose(fromPrefix, fromKey) : null;
+                byte[] to = toKey != null ? WALKey.compose(toPrefix, toKey) : null;
+                if (from != null && to != null && KeyUtil.compare(from, to) > 0) {
+                    return Response.status(Status.BAD_REQUEST).entity("Invalid range").build();
+                }
+                ranges.add(new ScanRange(fromPrefix, fromKey, toPrefix, toKey));
+            }
+            if (cursor != null && (cursor.rangeIndex < 0 || cursor.rangeIndex >= ranges.size())) {
+                return Response.status(Status.BAD_REQUEST).entity("Invalid cursor").build();
+            }
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Invalid cursor for paged scan of {}", partitionName);
+            return Response.status(Status.BAD_REQUEST).entity("Invalid cursor").build();
+        } catch (Exception e) {
+            LOG.error("Failed to get ranges for paged scan", e);
+            return Response.serverError().build();
+        } finally {
+            closeStreams(partitionName, "scanPage", in, null);
+        }
+
+        try {
+            PartitionName effectivelyFinalPartitionName = partitionName;
+            StreamingOutput stream = os -> {
+                os.flush();
+                FilerOutputStream fos = new FilerOutputStream(new BufferedOutputStream(os, 8192));
+                try {
+                    client.scanPage(effectivelyFinalPartitionName, ranges, cursor, pageSize, pageBytes, fos, hydrateValues);
+                } catch (Exception x) {
+                    LOG.warn("Failed during paged scan", x);
+                } finally {
+                    fos.close();
+                }
+            };
+            return Response.ok(stream).build();
+        } catch (Exception e) {
+            LOG.error("Failed to paged scan", e);
+            return Response.serverError().build();
+        }
+    }
+
     @POST
     @Consumes(MediaType.APPLICATION_OCTET_STREAM)
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
@@ -763,6 +923,43 @@ public class AmzaClientRestEndpoints {
         }
     }
 
+    @POST
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @Path("/takeFromTransactionIdFiltered/{base64PartitionName}/{limit}")
+    public Object takeFromTransactionIdFiltered(@PathParam("base64PartitionName") String base64PartitionName,
+        @PathParam("limit") int limit,
+        InputStream inputStream) {
+
+        try {
+            PartitionName partitionName = amzaInterner.internPartitionNameBase64(base64PartitionName);
+            StateMessageCause stateMessageCause = client.status(partitionName,
+                Consistency.none,
+                false,
+                10_000);
+            if (stateMessageCause != null) {
+                return stateMessageCauseToResponse(stateMessageCause);
+            }
+            StreamingOutput stream = os -> {
+                os.flush();
+                FilerInputStream fin = new FilerInputStream(inputStream);
+                FilerOutputStream fos = new FilerOutputStream(new BufferedOutputStream(os, 8192));
+                try {
+                    client.takeFromTransactionIdFiltered(partitionName, limit, fin, fos);
+                } catch (Exception x) {
+                    LOG.warn("Failed during takeFromTransactionIdFiltered", x);
+                } finally {
+                    closeStreams(partitionName, "takeFromTransactionIdFiltered", fin, fos);
+                    fos.close();
+                }
+            };
+            return Response.ok(stream).build();
+        } catch (Exception e) {
+            LOG.error("Failed to takeFromTransactionIdFiltered", e);
+            return Response.serverError().build();
+        }
+    }
+
     @POST
     @Consumes(MediaType.APPLICATION_OCTET_STREAM)
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
@@ -800,6 +997,52 @@ public class AmzaClientRestEndpoints {
         }
     }
 
+    @POST
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @Path("/subscribe/{base64PartitionName}/{limit}")
+    public Object subscribe(@PathParam("base64PartitionName") String base64PartitionName,
+        @PathParam("limit") int limit,
+        InputStream inputStream) {
+
+        try {
+            PartitionName partitionName = amzaInterner.internPartitionNameBase64(base64PartitionName);
+            StateMessageCause stateMessageCause = client.status(partitionName,
+                Consistency.none,
+                false,
+                10_000);
+            if (stateMessageCause != null) {
+                return stateMessageCauseToResponse(stateMessageCause);
+            }
+            if (!client.acquireSubscriber()) {
+                return ResponseHelper.INSTANCE.errorResponse(Status.SERVICE_UNAVAILABLE, "Too many subscribers.");
+            }
+            StreamingOutput stream = os -> {
+                try {
+                    os.flush();
+                    FilerInputStream fin = new FilerInputStream(inputStream);
+                    FilerOutputStream fos = new FilerOutputStream(new BufferedOutputStream(os, 8192));
+                    try {
+                        client.subscribe(partitionName, limit, fin, fos);
+                    } catch (IOException x) {
+                        LOG.debug("Subscriber went away", x);
+                    } catch (Exception x) {
+                        LOG.warn("Failed during subscribe", x);
+                    } finally {
+                        closeStreams(partitionName, "subscribe", fin, fos);
+                        fos.close();
+                    }
+                } finally {
+                    client.releaseSubscriber();
+                }
+            };
+            return Response.ok(stream).build();
+        } catch (Exception e) {
+            LOG.error("Failed to subscribe", e);
+            return Response.serverError().build();
+        }
+    }
+
     private void closeStreams(PartitionName partitionName, String context, ICloseable in, ICloseable out) {
         if (in != null) {
             try {
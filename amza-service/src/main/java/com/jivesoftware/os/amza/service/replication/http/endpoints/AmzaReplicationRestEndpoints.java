@@ -125,6 +125,50 @@ public class AmzaReplicationRestEndpoints {
         }
     }
 
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @Path("/rows/snapshot/{ringMemberString}/{versionedPartitionName}/{takeSessionId}/{leadershipToken}")
+    public Response snapshotStream(@PathParam("ringMemberString") String ringMemberString,
+        @PathParam("versionedPartitionName") String versionedPartitionName,
+        @PathParam("takeSessionId") long takeSessionId,
+        @PathParam("leadershipToken") long leadershipToken,
+        byte[] takeSharedKey) {
+
+        try {
+            amzaStats.rowsStream.increment();
+
+            StreamingOutput stream = (OutputStream os) -> {
+                os.flush();
+                BufferedOutputStream bos = new BufferedOutputStream(new SnappyOutputStream(os), 8192); // TODO expose to config
+                final DataOutputStream dos = new DataOutputStream(bos);
+                try {
+                    amzaInstance.snapshotStream(dos,
+                        new RingMember(ringMemberString),
+                        VersionedPartitionName.fromBase64(versionedPartitionName, amzaInterner),
+                        takeSessionId,
+                        objectMapper.readValue(takeSharedKey, Long.class),
+                        leadershipToken);
+                } catch (IOException x) {
+                    LOG.error("Failed to stream snapshot.", x);
+                    throw x;
+                } catch (Exception x) {
+                    LOG.error("Failed to stream snapshot.", x);
+                    throw new IOException("Failed to stream snapshot.", x);
+                } finally {
+                    dos.flush();
+                    amzaStats.rowsStream.decrement();
+                    amzaStats.completedRowsStream.increment();
+                }
+            };
+            return Response.ok(stream).build();
+        } catch (Exception x) {
+            Object[] vals = new Object[] { ringMemberString, versionedPartitionName };
+            LOG.warn("Failed to snapshotStream {} {}. ", vals, x);
+            return ResponseHelper.INSTANCE.errorResponse("Failed to snapshotStream " + Arrays.toString(vals), x);
+        }
+    }
+
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
@@ -83,9 +83,24 @@ public class AmzaStats {
 
     public final LongAdder deltaFirstCheckRemoves = new LongAdder();
     public final LongAdder deltaSecondCheckRemoves = new LongAdder();
+    public final LongAdder bulkLoads = new LongAdder();
+    public final LongAdder bulkLoadFallbacks = new LongAdder();
+
+    public final LongAdder watcherQueuedRows = new LongAdder();
+    public final LongAdder watcherCoalesced = new LongAdder();
+    public final LongAdder watcherDispatched = new LongAdder();
+    public final LongAdder watcherFailures = new LongAdder();
+    public final LongAdder watcherBackPressure = new LongAdder();
+    public final AtomicLong watcherLagMillis = new AtomicLong();
+
+    public final AtomicLong residentPartitions = new AtomicLong();
+    public final LongAdder coldPartitionsClosed = new LongAdder();
+    public final LongAdder partitionReopens = new LongAdder();
+    public final AtomicLong partitionReopenLatencyMillis = new AtomicLong();
 
     public final LongAdder takes = new LongAdder();
     public final LongAdder takeExcessRows = new LongAdder();
+    public final LongAdder snapshotTakes = new LongAdder();
 
     public AmzaStats() {
     }
@@ -75,6 +75,9 @@ public class PartitionCreator implements RowChanges, VersionedPartitionProvider
     public static final VersionedPartitionName AQUARIUM_LIVELINESS_INDEX = new VersionedPartitionName(
         new PartitionName(true, AmzaRingReader.SYSTEM_RING, "AQUARIUM_LIVELINESS_INDEX".getBytes()),
         VersionedPartitionName.STATIC_VERSION);
+    public static final VersionedPartitionName COMPRESSION_DICTIONARY_INDEX = new VersionedPartitionName(
+        new PartitionName(true, AmzaRingReader.SYSTEM_RING, "COMPRESSION_DICTIONARY_INDEX".getBytes()),
+        VersionedPartitionName.STATIC_VERSION);
 
     private final OrderIdProvider orderIdProvider;
     private final PartitionPropertyMarshaller partitionPropertyMarshaller;
@@ -139,6 +142,7 @@ public class PartitionCreator implements RowChanges, VersionedPartitionProvider
         .put(PartitionCreator.HIGHWATER_MARK_INDEX, NON_REPLICATED_PROPERTIES)
         .put(PartitionCreator.AQUARIUM_STATE_INDEX, AQUARIUM_PROPERTIES)
         .put(PartitionCreator.AQUARIUM_LIVELINESS_INDEX, AQUARIUM_PROPERTIES)
+        .put(PartitionCreator.COMPRESSION_DICTIONARY_INDEX, REPLICATED_PROPERTIES)
         .build();
 
     public PartitionCreator(OrderIdProvider orderIdProvider,
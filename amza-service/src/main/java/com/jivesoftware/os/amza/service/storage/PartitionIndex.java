@@ -2,6 +2,7 @@ package com.jivesoftware.os.amza.service.storage;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
 import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
@@ -12,12 +13,24 @@ import com.jivesoftware.os.jive.utils.collections.lh.ConcurrentLHash;
 import com.jivesoftware.os.jive.utils.ordered.id.TimestampedOrderIdProvider;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Opens partition stores on first access. When given a budget of resident partitions, partitions which have not been accessed for a while
+ * are closed least recently used first whenever the budget is exceeded, releasing their WAL and index handles until they are next accessed.
+ * A closed store stays indexed and reopens itself on its next operation, so callers holding on to it never see it closed. System partitions
+ * are never closed.
+ *
  * @author jonathan.colt
  */
 public class PartitionIndex {
@@ -34,13 +47,23 @@ public class PartitionIndex {
     private final IndexedWALStorageProvider walStorageProvider;
     private final int concurrency;
     private final ExecutorService partitionLoadExecutorService;
+    private final int maxResidentPartitions;
+    private final long coldPartitionAfterMillis;
 
+    private ScheduledExecutorService residencyExecutor;
+
+    /**
+     * @param maxResidentPartitions the number of non system partitions to keep open, or 0 to never close partitions
+     * @param coldPartitionAfterMillis how long a partition must go without access before it may be closed
+     */
     public PartitionIndex(AmzaStats amzaSystemStats,
         AmzaStats amzaStats,
         TimestampedOrderIdProvider orderIdProvider,
         IndexedWALStorageProvider walStorageProvider,
         int concurrency,
-        ExecutorService partitionLoadExecutorService) {
+        ExecutorService partitionLoadExecutorService,
+        int maxResidentPartitions,
+        long coldPartitionAfterMillis) {
 
         this.amzaSystemStats = amzaSystemStats;
         this.amzaStats = amzaStats;
@@ -48,19 +71,40 @@ public class PartitionIndex {
         this.walStorageProvider = walStorageProvider;
         this.concurrency = concurrency;
         this.partitionLoadExecutorService = partitionLoadExecutorService;
+        this.maxResidentPartitions = maxResidentPartitions;
+        this.coldPartitionAfterMillis = coldPartitionAfterMillis;
     }
 
     public void start() {
+        if (maxResidentPartitions > 0) {
+            long intervalMillis = Math.max(coldPartitionAfterMillis / 2, 1_000);
+            residencyExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("partition-residency-%d").build());
+            residencyExecutor.scheduleWithFixedDelay(() -> {
+                try {
+                    closeColdPartitions();
+                } catch (Exception x) {
+                    LOG.error("Failed to close cold partitions", x);
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     public void stop() {
         partitionLoadExecutorService.shutdownNow();
+        if (residencyExecutor != null) {
+            residencyExecutor.shutdownNow();
+            residencyExecutor = null;
+        }
     }
 
     public PartitionStore getIfPresent(VersionedPartitionName versionedPartitionName) {
         ConcurrentLHash<PartitionStore> versionedStores = partitionStores.get(versionedPartitionName.getPartitionName());
         if (versionedStores != null) {
-            return versionedStores.get(versionedPartitionName.getPartitionVersion());
+            PartitionStore partitionStore = versionedStores.get(versionedPartitionName.getPartitionVersion());
+            if (partitionStore != null) {
+                partitionStore.touch(System.currentTimeMillis());
+            }
+            return partitionStore;
         }
         return null;
     }
@@ -88,6 +132,7 @@ public class PartitionIndex {
         if (versionedStores != null) {
             PartitionStore partitionStore = versionedStores.get(versionedPartitionName.getPartitionVersion());
             if (partitionStore != null) {
+                partitionStore.touch(System.currentTimeMillis());
                 File baseKey = walStorageProvider.baseKey(versionedPartitionName, stripe);
                 partitionStore.load(baseKey, deltaWALId, prevDeltaWALId, stripe, partitionLoadExecutorService);
                 return partitionStore;
@@ -176,7 +221,9 @@ public class PartitionIndex {
     public void streamActivePartitions(PartitionStream stream) throws Exception {
         if (stream != null) {
             for (Entry<PartitionName, ConcurrentLHash<PartitionStore>> entry : partitionStores.entrySet()) {
-                if (!entry.getValue().stream((key, partitionStore) -> stream.stream(new VersionedPartitionName(entry.getKey(), key)))) {
+                // closed partitions are left alone until something opens them again
+                if (!entry.getValue().stream((key, partitionStore) -> partitionStore.isClosed()
+                    || stream.stream(new VersionedPartitionName(entry.getKey(), key)))) {
                     break;
                 }
             }
@@ -191,4 +238,70 @@ public class PartitionIndex {
     public void invalidate(PartitionName partitionName) {
         partitionStores.remove(partitionName);
     }
+
+    /**
+     * Closes the least recently used partitions which have gone cold until no more than the budgeted number of partitions are open.
+     *
+     * @return the number of partitions closed
+     */
+    public int closeColdPartitions() throws Exception {
+        long coldBeforeTimestamp = System.currentTimeMillis() - coldPartitionAfterMillis;
+        int[] resident = { 0 };
+        List<PartitionStore> cold = new ArrayList<>();
+        for (Entry<PartitionName, ConcurrentLHash<PartitionStore>> entry : partitionStores.entrySet()) {
+            if (entry.getKey().isSystemPartition()) {
+                continue;
+            }
+            entry.getValue().stream((key, partitionStore) -> {
+                if (partitionStore.isClosed()) {
+                    return true;
+                }
+                resident[0]++;
+                if (partitionStore.getLastAccessTimestamp() < coldBeforeTimestamp && !partitionStore.isSick()) {
+                    cold.add(partitionStore);
+                }
+                return true;
+            });
+        }
+
+        int closed = 0;
+        int excess = resident[0] - maxResidentPartitions;
+        if (maxResidentPartitions > 0 && excess > 0) {
+            cold.sort(Comparator.comparingLong(PartitionStore::getLastAccessTimestamp));
+            for (PartitionStore partitionStore : cold) {
+                if (closed == excess) {
+                    break;
+                }
+                if (closeIfCold(partitionStore, coldBeforeTimestamp)) {
+                    closed++;
+                }
+            }
+        }
+        amzaStats.residentPartitions.set(resident[0] - closed);
+        LOG.set(ValueType.COUNT, "residency>resident", resident[0] - closed);
+        return closed;
+    }
+
+    private boolean closeIfCold(PartitionStore partitionStore, long coldBeforeTimestamp) throws Exception {
+        VersionedPartitionName versionedPartitionName = partitionStore.getVersionedPartitionName();
+        synchronized (locksProvider.lock(versionedPartitionName, 1234)) {
+            ConcurrentLHash<PartitionStore> versionedStores = partitionStores.get(versionedPartitionName.getPartitionName());
+            long partitionVersion = versionedPartitionName.getPartitionVersion();
+            if (versionedStores == null || versionedStores.get(partitionVersion) != partitionStore) {
+                return false;
+            }
+            // an access since the sweep started keeps the partition open, one racing the close just reopens it
+            if (partitionStore.getLastAccessTimestamp() >= coldBeforeTimestamp) {
+                return false;
+            }
+            try {
+                partitionStore.close();
+            } catch (Exception x) {
+                LOG.error("Failed to close cold partition:{}", new Object[] { versionedPartitionName }, x);
+            }
+            amzaStats.coldPartitionsClosed.increment();
+            LOG.info("Closed cold partition:{}", versionedPartitionName);
+            return true;
+        }
+    }
 }
@@ -47,6 +47,7 @@ public class PartitionStore implements RangeScannable {
     private final AtomicLong loadedAtDeltaWALId = new AtomicLong(Integer.MIN_VALUE);
 
     private volatile PartitionProperties properties;
+    private volatile long lastAccessTimestamp = System.currentTimeMillis();
 
     public PartitionStore(AmzaStats amzaStats,
         TimestampedOrderIdProvider orderIdProvider,
@@ -69,6 +70,18 @@ public class PartitionStore implements RangeScannable {
         return walStorage;
     }
 
+    public VersionedPartitionName getVersionedPartitionName() {
+        return versionedPartitionName;
+    }
+
+    void touch(long timestamp) {
+        lastAccessTimestamp = timestamp;
+    }
+
+    long getLastAccessTimestamp() {
+        return lastAccessTimestamp;
+    }
+
     public void load(
         File baseKey,
         long deltaWALId,
@@ -135,6 +148,10 @@ public class PartitionStore implements RangeScannable {
         return walStorage.isSick();
     }
 
+    public boolean isClosed() {
+        return walStorage.isClosed();
+    }
+
     public void flush(boolean fsync) throws Exception {
         walStorage.flush(fsync);
     }
@@ -169,6 +186,8 @@ public class PartitionStore implements RangeScannable {
         long ttlCompactTimestamp = 0;
         long ttlCheckVersion = 0;
         long ttlCompactVersion = 0;
+        long archiveCheckTimestamp = 0;
+        long archiveCompactTimestamp = 0;
         PartitionProperties stackProperties = this.properties;
         if (stackProperties != null) {
             if (stackProperties.tombstoneTimestampAgeInMillis > 0) {
@@ -187,10 +206,15 @@ public class PartitionStore implements RangeScannable {
                 ttlCheckVersion = getVersion(stackProperties.ttlVersionAgeInMillis + stackProperties.ttlVersionIntervalMillis);
                 ttlCompactVersion = getVersion(stackProperties.ttlVersionAgeInMillis);
             }
+            if (stackProperties.archiveTimestampAgeInMillis > 0) {
+                archiveCheckTimestamp = getTimestampId(stackProperties.archiveTimestampAgeInMillis + stackProperties.archiveTimestampIntervalMillis);
+                archiveCompactTimestamp = getTimestampId(stackProperties.archiveTimestampAgeInMillis);
+            }
         }
 
         try {
-            if (force || walStorage.compactableTombstone(tombstoneCheckTimestamp, tombstoneCheckVersion, ttlCheckTimestamp, ttlCheckVersion, disposalVersion)) {
+            if (force || walStorage.compactableTombstone(tombstoneCheckTimestamp, tombstoneCheckVersion, ttlCheckTimestamp, ttlCheckVersion, disposalVersion,
+                archiveCheckTimestamp)) {
                 String dir = fromBaseKey.toString();
                 if (!fromBaseKey.equals(toBaseKey)) {
                     dir = " rebalance " + fromBaseKey + " to " + toBaseKey;
@@ -198,8 +222,10 @@ public class PartitionStore implements RangeScannable {
                 String name = versionedPartitionName.toString() + " " + dir + " stripe:" + stripe + " force:" + force;
                 AmzaStats.CompactionStats compactionStats = amzaStats.beginCompaction(CompactionFamily.tombstone, name);
                 try {
-                    LOG.info("Compacting tombstoneTimestampId:{} tombstoneVersion:{} ttlTimestampId:{} ttlVersion:{} versionedPartitionName:{}",
-                        tombstoneCompactTimestamp, tombstoneCompactVersion, ttlCompactTimestamp, ttlCompactVersion, versionedPartitionName);
+                    LOG.info("Compacting tombstoneTimestampId:{} tombstoneVersion:{} ttlTimestampId:{} ttlVersion:{} archiveTimestampId:{}"
+                        + " versionedPartitionName:{}",
+                        tombstoneCompactTimestamp, tombstoneCompactVersion, ttlCompactTimestamp, ttlCompactVersion, archiveCompactTimestamp,
+                        versionedPartitionName);
                     boolean expectedEndOfMerge = !versionedPartitionName.getPartitionName().isSystemPartition();
                     walStorage.compactTombstone(amzaStats.compactTombstoneIoStats,
                         compactionStats,
@@ -211,6 +237,7 @@ public class PartitionStore implements RangeScannable {
                         ttlCompactTimestamp,
                         ttlCompactVersion,
                         disposalVersion,
+                        archiveCompactTimestamp,
                         stackProperties.maxValueSizeInIndex,
                         stripe,
                         expectedEndOfMerge,
@@ -285,4 +312,8 @@ public class PartitionStore implements RangeScannable {
     public void delete(File baseKey) throws Exception {
         walStorage.delete(baseKey);
     }
+
+    public void close() throws Exception {
+        walStorage.close(amzaStats.mergeIoStats);
+    }
 }
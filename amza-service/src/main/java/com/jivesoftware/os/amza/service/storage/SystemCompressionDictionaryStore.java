@@ -0,0 +1,75 @@
+package com.jivesoftware.os.amza.service.storage;
+
+import com.jivesoftware.os.amza.api.TimestampedValue;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.wal.WALUpdated;
+import com.jivesoftware.os.amza.service.storage.binary.RowCompressionDictionaries.DictionaryStore;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Keeps compression dictionaries in a replicated system partition so every member of a ring can decode rows compressed elsewhere.
+ * <p>
+ * The system partitions are stored with the row marshaller this store is handed to, so the store is created first and opened once
+ * the system partitions exist. Until then it has no dictionaries and refuses to save one.
+ */
+public class SystemCompressionDictionaryStore implements DictionaryStore {
+
+    private static final byte[] DICTIONARY_PREFIX = "dictionary".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PARTITION_PREFIX = "partition".getBytes(StandardCharsets.UTF_8);
+
+    private final OrderIdProvider orderIdProvider;
+    private volatile SystemWALStorage systemWALStorage;
+    private volatile WALUpdated walUpdated;
+
+    public SystemCompressionDictionaryStore(OrderIdProvider orderIdProvider) {
+        this.orderIdProvider = orderIdProvider;
+    }
+
+    public void open(SystemWALStorage systemWALStorage, WALUpdated walUpdated) {
+        this.walUpdated = walUpdated;
+        this.systemWALStorage = systemWALStorage;
+    }
+
+    @Override
+    public byte[] load(long dictionaryId) throws Exception {
+        SystemWALStorage systemWALStorage = this.systemWALStorage;
+        if (systemWALStorage == null) {
+            return null;
+        }
+        TimestampedValue got = systemWALStorage.getTimestampedValue(PartitionCreator.COMPRESSION_DICTIONARY_INDEX,
+            DICTIONARY_PREFIX,
+            UIO.longBytes(dictionaryId));
+        return got == null ? null : got.getValue();
+    }
+
+    @Override
+    public long currentDictionaryId(PartitionName partitionName) throws Exception {
+        SystemWALStorage systemWALStorage = this.systemWALStorage;
+        if (systemWALStorage == null) {
+            return -1;
+        }
+        TimestampedValue got = systemWALStorage.getTimestampedValue(PartitionCreator.COMPRESSION_DICTIONARY_INDEX,
+            PARTITION_PREFIX,
+            partitionName.toBytes());
+        return got == null || got.getValue() == null ? -1 : UIO.bytesLong(got.getValue());
+    }
+
+    @Override
+    public void save(PartitionName partitionName, long dictionaryId, byte[] dictionary) throws Exception {
+        SystemWALStorage systemWALStorage = this.systemWALStorage;
+        if (systemWALStorage == null) {
+            throw new IllegalStateException("Compression dictionary store has not been opened");
+        }
+        long timestamp = orderIdProvider.nextId();
+        // the dictionary must land before anything points at it
+        systemWALStorage.update(PartitionCreator.COMPRESSION_DICTIONARY_INDEX, DICTIONARY_PREFIX,
+            (highwater, scan) -> scan.row(-1, UIO.longBytes(dictionaryId), dictionary, timestamp, false, timestamp),
+            walUpdated);
+        systemWALStorage.update(PartitionCreator.COMPRESSION_DICTIONARY_INDEX, PARTITION_PREFIX,
+            (highwater, scan) -> scan.row(-1, partitionName.toBytes(), UIO.longBytes(dictionaryId), timestamp, false, timestamp),
+            walUpdated);
+        systemWALStorage.flush(PartitionCreator.COMPRESSION_DICTIONARY_INDEX);
+    }
+}
@@ -23,6 +23,7 @@ import com.jivesoftware.os.amza.api.wal.WALUpdated;
 import com.jivesoftware.os.amza.service.replication.AsyncStripeFlusher;
 import com.jivesoftware.os.amza.service.replication.PartitionStripe;
 import com.jivesoftware.os.amza.service.stats.AmzaStats;
+import com.jivesoftware.os.amza.service.storage.sketch.PartitionSketches;
 import com.jivesoftware.os.aquarium.LivelyEndState;
 
 /**
@@ -248,4 +249,9 @@ public class SystemWALStorage {
         Preconditions.checkArgument(versionedPartitionName.getPartitionName().isSystemPartition(), "Must be a system partition");
         return partitionIndex.getSystemPartition(versionedPartitionName).getWalStorage().approximateCount();
     }
+
+    public PartitionSketches sketches(VersionedPartitionName versionedPartitionName) throws Exception {
+        Preconditions.checkArgument(versionedPartitionName.getPartitionName().isSystemPartition(), "Must be a system partition");
+        return partitionIndex.getSystemPartition(versionedPartitionName).getWalStorage().sketches();
+    }
 }
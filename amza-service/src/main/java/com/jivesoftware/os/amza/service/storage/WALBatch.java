@@ -0,0 +1,99 @@
+package com.jivesoftware.os.amza.service.storage;
+
+import java.util.Arrays;
+
+/**
+ * Column oriented rows for a single {@link WALStorage#update}, reused by the updating thread so merging millions of rows does not allocate a
+ * handful of objects per row. Keys and values are held by reference since they arrive as arrays and are consumed as arrays by the row
+ * marshaller and the index.
+ */
+class WALBatch {
+
+    private static final int INITIAL_CAPACITY = 64;
+    // a batch that grew is kept that large until this many consecutive batches have used no more than a quarter of it
+    static final int SHRINK_AFTER_SMALL_BATCHES = 1_024;
+    private static final ThreadLocal<WALBatch> BATCHES = ThreadLocal.withInitial(WALBatch::new);
+
+    int size;
+    byte[][] keys;
+    byte[][] values;
+    long[] timestamps;
+    boolean[] tombstones;
+    long[] versions;
+    long[] fps;
+
+    private boolean acquired;
+    private int smallBatches;
+    private int largestSmallBatch;
+
+    private WALBatch() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return this thread's batch, or a throwaway batch if the thread's batch is already in use by an enclosing update
+     */
+    static WALBatch acquire() {
+        WALBatch batch = BATCHES.get();
+        if (batch.acquired) {
+            return new WALBatch();
+        }
+        batch.acquired = true;
+        return batch;
+    }
+
+    void release() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        if (keys.length > INITIAL_CAPACITY && size <= keys.length / 4) {
+            largestSmallBatch = Math.max(largestSmallBatch, size);
+            if (++smallBatches >= SHRINK_AFTER_SMALL_BATCHES) {
+                // shrink to what the recent batches actually needed, so steady large merges never pay for regrowing
+                allocate(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(largestSmallBatch, 1)) * 2));
+                smallBatches = 0;
+                largestSmallBatch = 0;
+            }
+        } else {
+            smallBatches = 0;
+            largestSmallBatch = 0;
+        }
+        size = 0;
+        acquired = false;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    void add(byte[] key, byte[] value, long timestamp, boolean tombstoned, long version) {
+        if (size == keys.length) {
+            grow();
+        }
+        keys[size] = key;
+        values[size] = value;
+        timestamps[size] = timestamp;
+        tombstones[size] = tombstoned;
+        versions[size] = version;
+        fps[size] = -1;
+        size++;
+    }
+
+    private void allocate(int capacity) {
+        keys = new byte[capacity][];
+        values = new byte[capacity][];
+        timestamps = new long[capacity];
+        tombstones = new boolean[capacity];
+        versions = new long[capacity];
+        fps = new long[capacity];
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        tombstones = Arrays.copyOf(tombstones, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        fps = Arrays.copyOf(fps, capacity);
+    }
+}
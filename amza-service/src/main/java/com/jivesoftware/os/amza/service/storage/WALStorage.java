@@ -21,6 +21,7 @@ import com.jivesoftware.os.amza.api.IoStats;
 import com.jivesoftware.os.amza.api.TimestampedValue;
 import com.jivesoftware.os.amza.api.filer.UIO;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.amza.api.partition.PerformanceProfile;
 import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.api.scan.RangeScannable;
 import com.jivesoftware.os.amza.api.scan.RowStream;
@@ -35,13 +36,13 @@ import com.jivesoftware.os.amza.api.stream.TxKeyPointerStream;
 import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
 import com.jivesoftware.os.amza.api.stream.WALKeyPointers;
 import com.jivesoftware.os.amza.api.stream.WALMergeKeyPointerStream;
+import com.jivesoftware.os.amza.api.wal.KeyUtil;
 import com.jivesoftware.os.amza.api.wal.KeyedTimestampId;
 import com.jivesoftware.os.amza.api.wal.PrimaryRowMarshaller;
 import com.jivesoftware.os.amza.api.wal.WALCompactionStats;
 import com.jivesoftware.os.amza.api.wal.WALHighwater;
 import com.jivesoftware.os.amza.api.wal.WALIndex;
 import com.jivesoftware.os.amza.api.wal.WALIndexProvider;
-import com.jivesoftware.os.amza.api.wal.WALIndexable;
 import com.jivesoftware.os.amza.api.wal.WALKey;
 import com.jivesoftware.os.amza.api.wal.WALTimestampId;
 import com.jivesoftware.os.amza.api.wal.WALTx;
@@ -51,6 +52,9 @@ import com.jivesoftware.os.amza.api.wal.WALWriter.IndexableKeys;
 import com.jivesoftware.os.amza.api.wal.WALWriter.RawRows;
 import com.jivesoftware.os.amza.api.wal.WALWriter.TxKeyPointerFpStream;
 import com.jivesoftware.os.amza.service.SickPartitions;
+import com.jivesoftware.os.amza.service.storage.archive.ArchivedRow;
+import com.jivesoftware.os.amza.service.storage.archive.WALArchive;
+import com.jivesoftware.os.amza.service.storage.sketch.PartitionSketches;
 import com.jivesoftware.os.amza.service.stats.AmzaStats;
 import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProvider;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
@@ -64,20 +68,21 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.CRC32;
-import org.apache.commons.lang.mutable.MutableInt;
 import org.apache.commons.lang.mutable.MutableLong;
 
 public class WALStorage<I extends WALIndex> implements RangeScannable {
 
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
-    private static final int numTickleMeElmaphore = 1024; // TODO config
-    private static final int numKeyHighwaterStripes = 1024; // TODO expose to config
+    private static final int numTickleMeElmaphore = PerformanceProfile.MAX_CONCURRENCY;
+    private static final int numKeyHighwaterStripes = 1024; // part of the end of merge marker layout, changing it breaks existing markers
 
     private final AmzaStats amzaStats;
     private final VersionedPartitionName versionedPartitionName;
@@ -85,6 +90,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
     private final PrimaryRowMarshaller primaryRowMarshaller;
     private final HighwaterRowMarshaller<byte[]> highwaterRowMarshaller;
     private final WALTx walTx;
+    private final WALArchive walArchive;
     private final WALIndexProvider<I> walIndexProvider;
     private final SickPartitions sickPartitions;
     private final boolean hardFsyncBeforeLeapBoundary;
@@ -102,10 +108,18 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
     private final AtomicLong clobberCount = new AtomicLong(0);
     private final AtomicLong highestTxId = new AtomicLong(-1);
     private final AtomicBoolean hasEndOfMergeMarker = new AtomicBoolean(false);
+    private volatile PartitionSketches sketches = new PartitionSketches();
     private final int tombstoneCompactionFactor;
 
     private final ThreadLocal<Integer> reentrant = new ReentrantThreadLocal();
+    private final ThreadLocal<Integer> heldPermits = new ThreadLocal<>();
+    private volatile int permitsPerOperation = 1;
     private final AtomicBoolean sick = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile File loadedBaseKey;
+    private volatile boolean loadedBackwardScan;
+    private volatile int loadedMaxValueSizeInIndex;
+    private volatile int loadedStripe;
 
     private volatile long mergedTxId = -1;
 
@@ -123,6 +137,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         PrimaryRowMarshaller rowMarshaller,
         HighwaterRowMarshaller<byte[]> highwaterRowMarshaller,
         WALTx walTx,
+        WALArchive walArchive,
         WALIndexProvider<I> walIndexProvider,
         SickPartitions sickPartitions,
         boolean hardFsyncBeforeLeapBoundary,
@@ -134,6 +149,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         this.primaryRowMarshaller = rowMarshaller;
         this.highwaterRowMarshaller = highwaterRowMarshaller;
         this.walTx = walTx;
+        this.walArchive = walArchive;
         this.walIndexProvider = walIndexProvider;
         this.sickPartitions = sickPartitions;
         this.hardFsyncBeforeLeapBoundary = hardFsyncBeforeLeapBoundary;
@@ -146,15 +162,31 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
     }
 
     private void acquireOne() {
-        if (sick.get()) {
-            throw new IllegalStateException("Partition is sick: " + versionedPartitionName);
-        }
         try {
-            int enters = reentrant.get();
-            if (enters == 0) {
-                tickleMeElmophore.acquire();
+            while (true) {
+                if (sick.get()) {
+                    throw new IllegalStateException("Partition is sick: " + versionedPartitionName);
+                }
+                int enters = reentrant.get();
+                if (enters == 0) {
+                    int permits = permitsPerOperation;
+                    tickleMeElmophore.acquire(permits);
+                    heldPermits.set(permits);
+                }
+                reentrant.set(enters + 1);
+                // closing takes every permit, so a partition found open while holding one stays open until it is released
+                if (!closed.get()) {
+                    return;
+                }
+                releaseOne();
+                try {
+                    reopen();
+                } catch (InterruptedException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new RuntimeException("Failed to reopen partition: " + versionedPartitionName, ex);
+                }
             }
-            reentrant.set(enters + 1);
         } catch (InterruptedException ex) {
             throw new RuntimeException(ex);
         }
@@ -163,7 +195,8 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
     private void releaseOne() {
         int enters = reentrant.get();
         if (enters - 1 == 0) {
-            tickleMeElmophore.release();
+            tickleMeElmophore.release(heldPermits.get());
+            heldPermits.remove();
             reentrant.remove();
         } else {
             reentrant.set(enters - 1);
@@ -177,18 +210,50 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         tickleMeElmophore.acquire(numTickleMeElmaphore);
     }
 
+    private void acquireAllOpen() throws Exception {
+        acquireAll();
+        while (closed.get()) {
+            releaseAll();
+            reopen();
+            acquireAll();
+        }
+    }
+
     private void releaseAll() {
         tickleMeElmophore.release(numTickleMeElmaphore);
     }
 
+    /**
+     * Reloads a partition closed while cold, so callers still holding its storage never see it closed.
+     */
+    private void reopen() throws Exception {
+        acquireAll();
+        try {
+            if (!closed.get()) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            loadInternal(amzaStats.loadIoStats, loadedBaseKey, -1, -1, true, loadedBackwardScan, false, loadedMaxValueSizeInIndex, loadedStripe);
+            closed.set(false);
+            long latency = System.currentTimeMillis() - start;
+            amzaStats.partitionReopens.increment();
+            amzaStats.partitionReopenLatencyMillis.set(latency);
+            LOG.info("Reopened partition:{} in {} millis", versionedPartitionName, latency);
+        } finally {
+            releaseAll();
+        }
+    }
+
     public VersionedPartitionName getVersionedPartitionName() {
         return versionedPartitionName;
     }
 
     public void delete(File baseKey) throws Exception {
-        acquireAll();
+        // the index can only be deleted while open
+        acquireAllOpen();
         try {
             walTx.delete(baseKey);
+            walArchive.delete();
             I wali = walIndex.get();
             if (wali != null) {
                 wali.delete();
@@ -200,12 +265,50 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         }
     }
 
+    /**
+     * Releases the WAL and index handles of a partition which has gone cold. Rows written since the last end of merge marker, as a bulk load
+     * does, get a marker of their own so reopening only has to scan backward to it. The next operation on a closed storage reopens it.
+     */
+    public void close(IoStats ioStats) throws Exception {
+        acquireAll();
+        try {
+            if (closed.get()) {
+                return;
+            }
+            long txId = highestTxId.get();
+            if (txId != mergedTxId) {
+                endOfMergeMarker(ioStats, -1, txId);
+                commitIndex(true, txId);
+            }
+            walTx.flush(true);
+            I wali = walIndex.get();
+            if (wali != null) {
+                wali.close();
+                walIndex.set(null);
+            }
+            walTx.close();
+            walArchive.close();
+            closed.set(true);
+        } finally {
+            releaseAll();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
     public boolean compactableTombstone(long tombstoneTimestampId,
         long tombstoneVersion,
         long ttlTimestampId,
         long ttlVersion,
-        long disposalVersion) throws Exception {
+        long disposalVersion,
+        long archiveTimestampId) throws Exception {
 
+        if (closed.get()) {
+            // compacted once something opens it again
+            return false;
+        }
         long compactableOldestTombstonedTimestamp = oldestTombstonedTimestamp.get();
         long compactableOldestTombstonedVersion = oldestTombstonedVersion.get();
         long compactableOldestTimestamp = oldestTimestamp.get();
@@ -215,6 +318,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
             || (compactableOldestTimestamp > -1 && compactableOldestTimestamp < ttlTimestampId)
             || (compactableOldestVersion > -1 && compactableOldestVersion < ttlVersion)
             || (compactableOldestVersion > -1 && compactableOldestVersion < disposalVersion)
+            || (compactableOldestTimestamp > -1 && compactableOldestTimestamp < archiveTimestampId)
             || ((clobberCount.get() + 1) / (keyCount.get() + 1) > tombstoneCompactionFactor);
     }
 
@@ -238,6 +342,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         long ttlTimestampId,
         long ttlVersion,
         long disposalVersion,
+        long archiveTimestampId,
         int maxValueSizeInIndex,
         int stripe,
         boolean expectedEndOfMerge,
@@ -246,23 +351,28 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         if (expectedEndOfMerge && !hasEndOfMergeMarker.get()) {
             return 0;
         }
+        // expired tombstones go to a non empty archive even when archiving is off, or they would uncover what it holds for their keys
+        WALArchive.Writer archiveWriter = archiveTimestampId > 0 || !walArchive.isEmpty() ? walArchive.writer() : null;
         I got = walIndex.get();
         WALTx.Compacted<I> compact = walTx.compact(ioStats,
             walCompactionStats,
             fromBaseKey,
             toBaseKey,
+            versionedPartitionName.getPartitionName(),
             rowType,
             tombstoneTimestampId,
             tombstoneVersion,
             ttlTimestampId,
             ttlVersion,
             disposalVersion,
+            archiveTimestampId,
+            archiveWriter,
             got,
             stripe);
 
         long[] compactKeyHighwaterTimestamps = findKeyHighwaterTimestamps(ioStats);
 
-        return transitionToCompacted.tx((completedCompactCommit) -> {
+        long sizeAfterCompaction = transitionToCompacted.tx((completedCompactCommit) -> {
 
             acquireAll();
             try {
@@ -284,6 +394,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                         if (oldMarker == null) {
                             throw new IllegalStateException("Invalid end of merge marker");
                         }
+                        sketches.decay();
                         long[] marker = buildEndOfMergeMarker(oldMarker[EOM_DELTA_WAL_ID_INDEX],
                             highestTxId,
                             oldestTimestamp,
@@ -295,7 +406,8 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                             fpOfLastLeap,
                             updatesSinceLeap,
                             compactKeyHighwaterTimestamps,
-                            0);
+                            0,
+                            sketches.toLongs());
 
                         return UIO.longsBytes(marker);
                     }, completedCompactCommit);
@@ -306,6 +418,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                     return -1L;
                 }
                 walIndex.set(compacted.index);
+                loadedBaseKey = toBaseKey;
                 keyCount.set(compacted.keyCount);
                 clobberCount.set(0);
                 oldestTimestamp.set(compacted.oldestTimestamp);
@@ -320,6 +433,17 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                 releaseAll();
             }
         });
+
+        WALArchive.Merge merge = walArchive.merge(tombstoneTimestampId, tombstoneVersion, ttlTimestampId, ttlVersion);
+        if (merge != null) {
+            acquireAll();
+            try {
+                merge.commit();
+            } finally {
+                releaseAll();
+            }
+        }
+        return sizeAfterCompaction;
     }
 
     public void load(IoStats ioStats,
@@ -332,6 +456,10 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         int stripe) throws Exception {
         acquireAll();
         try {
+            loadedBaseKey = baseKey;
+            loadedBackwardScan = backwardScan;
+            loadedMaxValueSizeInIndex = maxValueSizeInIndex;
+            loadedStripe = stripe;
             loadInternal(ioStats, baseKey, deltaWALId, prevDeltaWALId, false, backwardScan, truncateToEndOfMergeMarker, maxValueSizeInIndex, stripe);
         } finally {
             releaseAll();
@@ -369,6 +497,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                 long[] loadKeyCount = { 0 };
                 long[] loadClobberCount = { 0 };
                 long[] loadKeyHighwaterTimestamps = versionedPartitionName.getPartitionName().isSystemPartition() ? new long[numKeyHighwaterStripes] : null;
+                PartitionSketches[] loadSketches = { new PartitionSketches() };
 
                 long[] truncate = { 0 };
                 primaryRowMarshaller.fromRows(fpRowStream -> {
@@ -392,6 +521,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                                 loadOldestTombstonedVersion[0] = marker[EOM_OLDEST_TOMBSTONED_VERSION_INDEX];
                                 loadKeyCount[0] = marker[EOM_KEY_COUNT_INDEX];
                                 loadClobberCount[0] = marker[EOM_CLOBBER_COUNT_INDEX];
+                                loadSketches[0] = PartitionSketches.fromLongs(marker, EOM_SKETCHES_OFFSET);
                                 //markerStripedTimestamps[0] = marker;
 
                                 fpOfLastLeap[0] = marker[EOM_FP_OF_LAST_LEAP_INDEX];
@@ -432,6 +562,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                                 loadOldestTombstonedVersion[0] = Math.min(loadOldestTombstonedVersion[0], marker[EOM_OLDEST_TOMBSTONED_VERSION_INDEX]);
                                 loadKeyCount[0] = marker[EOM_KEY_COUNT_INDEX];
                                 loadClobberCount[0] = marker[EOM_CLOBBER_COUNT_INDEX];
+                                loadSketches[0] = PartitionSketches.fromLongs(marker, EOM_SKETCHES_OFFSET);
                                 //markerStripedTimestamps[0] = marker;
 
                                 if (truncateToEndOfMergeMarker) {
@@ -479,6 +610,9 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                     if (loadKeyHighwaterTimestamps != null) {
                         mergeStripedKeyHighwaters(prefix, key, valueTimestamp, loadKeyHighwaterTimestamps);
                     }
+                    // only rows after the last end of merge marker survive, the marker replaces the sketches of everything before it
+                    loadSketches[0].prefix(prefix, 1);
+                    loadSketches[0].row(key, value, valueTimestamp, valueTombstoned);
                     return true;
                 });
 
@@ -491,6 +625,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                 oldestTombstonedVersion.set(loadOldestTombstonedVersion[0]);
                 keyCount.set(loadKeyCount[0] + updatesSinceLastMergeMarker[0]);
                 clobberCount.set(loadClobberCount[0]);
+                sketches = loadSketches[0];
 
                 io.initLeaps(ioStats, fpOfLastLeap[0], updatesSinceLastLeap[0]);
 
@@ -548,7 +683,8 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                 io.getFpOfLastLeap(),
                 io.getUpdatesSinceLeap(),
                 keyHighwaterTimestamps,
-                0);
+                0,
+                sketches.toLongs());
             byte[] endOfMergeMarker = UIO.longsBytes(marker);
 
             io.write(ioStats,
@@ -579,6 +715,8 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
     private static final int EOM_FP_OF_LAST_LEAP_INDEX = 10;
     private static final int EOM_UPDATES_SINCE_LAST_LEAP_INDEX = 11;
     private static final int EOM_HIGHWATER_STRIPES_OFFSET = 12;
+    // sketches trail the fixed layout, older markers simply end before them
+    private static final int EOM_SKETCHES_OFFSET = EOM_HIGHWATER_STRIPES_OFFSET + numKeyHighwaterStripes;
 
     private static long[] buildEndOfMergeMarker(long deltaWALId,
         long highestTxId,
@@ -591,8 +729,9 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         long fpOfLastLeap,
         long updatesSinceLeap,
         long[] stripedKeyHighwaterTimestamps,
-        int offset) {
-        final long[] marker = new long[EOM_HIGHWATER_STRIPES_OFFSET + numKeyHighwaterStripes];
+        int offset,
+        long[] sketches) {
+        final long[] marker = new long[EOM_SKETCHES_OFFSET + sketches.length];
         marker[EOM_VERSION_INDEX] = 1; // version
         marker[EOM_CHECKSUM_INDEX] = 0; // placeholder checksum
         marker[EOM_DELTA_WAL_ID_INDEX] = deltaWALId;
@@ -608,6 +747,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         marker[EOM_UPDATES_SINCE_LAST_LEAP_INDEX] = updatesSinceLeap;
 
         System.arraycopy(stripedKeyHighwaterTimestamps, offset, marker, EOM_HIGHWATER_STRIPES_OFFSET, numKeyHighwaterStripes);
+        System.arraycopy(sketches, 0, marker, EOM_SKETCHES_OFFSET, sketches.length);
 
         CRC32 crC32 = new CRC32();
         byte[] hintsAsBytes = UIO.longsBytes(marker);
@@ -652,29 +792,54 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
             throw new IllegalArgumentException("rowType:" + rowType + " needs to be of type primary.");
         }
 
-        Map<WALKey, WALValue> apply = new LinkedHashMap<>();
+        // forced rows, from merges and bulk loads, go straight into the batch without being keyed for de-duplication, any changes are built
+        // from the batch once the index has said which rows it kept
+        boolean keyed = !forceApply;
+        Map<WALKey, WALValue> apply = (keyed || generateRowsChanged) ? new LinkedHashMap<>() : null;
         List<KeyedTimestampId> removes = generateRowsChanged ? new ArrayList<>() : null;
         List<KeyedTimestampId> clobbers = generateRowsChanged ? new ArrayList<>() : null;
 
-        List<byte[]> keys = new ArrayList<>();
-        List<WALValue> values = new ArrayList<>();
+        List<byte[]> keys = forceApply ? null : new ArrayList<>();
+        List<WALValue> values = forceApply ? null : new ArrayList<>();
         WALHighwater[] highwater = new WALHighwater[1];
         long updateVersion = orderIdProvider.nextId();
 
-        updates.commitable(
-            (_highwater) -> highwater[0] = _highwater,
-            (transactionId, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
-                WALValue walValue = new WALValue(rowType, value, valueTimestamp, valueTombstoned, valueVersion != -1 ? valueVersion : updateVersion);
-                Preconditions.checkArgument(valueTimestamp > 0, "Timestamp must be greater than zero");
-                Preconditions.checkArgument(valueVersion > 0, "Version must be greater than zero");
-                if (!forceApply) {
-                    keys.add(key);
-                    values.add(walValue);
-                } else {
-                    apply.put(new WALKey(prefix, key), walValue);
-                }
-                return true;
-            });
+        WALBatch batch = WALBatch.acquire();
+        try {
+            updates.commitable(
+                (_highwater) -> highwater[0] = _highwater,
+                (transactionId, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                    Preconditions.checkArgument(valueTimestamp > 0, "Timestamp must be greater than zero");
+                    Preconditions.checkArgument(valueVersion > 0, "Version must be greater than zero");
+                    long version = valueVersion != -1 ? valueVersion : updateVersion;
+                    if (!keyed) {
+                        batch.add(key, value, valueTimestamp, valueTombstoned, version);
+                    } else {
+                        keys.add(key);
+                        values.add(new WALValue(rowType, value, valueTimestamp, valueTombstoned, version));
+                    }
+                    return true;
+                });
+
+            return update(ioStats, generateRowsChanged, rowType, forceTxId, forceApply, prefix, batch, apply, removes, clobbers, keys, values, highwater[0]);
+        } finally {
+            batch.release();
+        }
+    }
+
+    private RowsChanged update(IoStats ioStats,
+        boolean generateRowsChanged,
+        RowType rowType,
+        long forceTxId,
+        boolean forceApply,
+        byte[] prefix,
+        WALBatch batch,
+        Map<WALKey, WALValue> apply,
+        List<KeyedTimestampId> removes,
+        List<KeyedTimestampId> clobbers,
+        List<byte[]> keys,
+        List<WALValue> values,
+        WALHighwater highwater) throws Exception {
 
         acquireOne();
         try {
@@ -687,7 +852,6 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
             MutableLong indexCommittedUpToTxId = new MutableLong();
 
             if (!forceApply) {
-                MutableInt i = new MutableInt(0);
                 streamPointers(ioStats,
                     stream -> {
                         for (int k = 0; k < keys.size(); k++) {
@@ -723,51 +887,59 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                                 }
                             }
                         }
-                        i.increment();
                         return true;
                     });
             }
 
-            if (apply.isEmpty()) {
+            if (apply != null) {
+                for (Entry<WALKey, WALValue> row : apply.entrySet()) {
+                    WALValue value = row.getValue();
+                    batch.add(row.getKey().key, value.getValue(), value.getTimestampId(), value.getTombstoned(), value.getVersion());
+                }
+            }
+
+            if (batch.size == 0) {
                 if (generateRowsChanged) {
                     rowsChanged = new RowsChanged(versionedPartitionName, apply, removes, clobbers, -1, -1, -1);
                 }
             } else {
-                int size = apply.size();
+                int size = batch.size;
                 long[] keyHighwaterTimestamps = findKeyHighwaterTimestamps(ioStats);
-                List<WALIndexable> indexables = new ArrayList<>(size);
+                long[] writtenTxId = { -1 };
                 walTx.tx((io) -> {
+                    int prefixLength = prefix != null ? prefix.length : 0;
                     int estimatedSizeInBytes = 0;
-                    for (Entry<WALKey, WALValue> row : apply.entrySet()) {
-                        byte[] value = row.getValue().getValue();
+                    for (int i = 0; i < size; i++) {
+                        byte[] value = batch.values[i];
                         estimatedSizeInBytes += primaryRowMarshaller.maximumSizeInBytes(rowType,
-                            row.getKey().sizeOfComposed(),
+                            WALKey.sizeOfComposed(prefixLength, batch.keys[i].length),
                             (value != null ? value.length : 0));
                     }
+                    int[] written = { 0 };
                     flush(ioStats,
                         rowType,
                         forceTxId,
                         size,
                         estimatedSizeInBytes,
                         rowStream -> {
-                            for (Entry<WALKey, WALValue> row : apply.entrySet()) {
-                                WALValue value = row.getValue();
-                                if (!rowStream.stream(primaryRowMarshaller.toRow(rowType,
-                                    row.getKey().compose(),
-                                    value.getValue(),
-                                    value.getTimestampId(),
-                                    value.getTombstoned(),
-                                    value.getVersion()))) {
+                            for (int i = 0; i < size; i++) {
+                                if (!rowStream.stream(primaryRowMarshaller.toRow(versionedPartitionName.getPartitionName(),
+                                    rowType,
+                                    prefix,
+                                    batch.keys[i],
+                                    batch.values[i],
+                                    batch.timestamps[i],
+                                    batch.tombstones[i],
+                                    batch.versions[i]))) {
                                     return false;
                                 }
                             }
                             return true;
                         },
                         indexableKeyStream -> {
-                            for (Entry<WALKey, WALValue> row : apply.entrySet()) {
-                                WALValue value = row.getValue();
-                                if (!indexableKeyStream.stream(row.getKey().prefix, row.getKey().key,
-                                    value.getValue(), value.getTimestampId(), value.getTombstoned(), value.getVersion())) {
+                            for (int i = 0; i < size; i++) {
+                                if (!indexableKeyStream.stream(prefix, batch.keys[i],
+                                    batch.values[i], batch.timestamps[i], batch.tombstones[i], batch.versions[i])) {
                                     return false;
                                 }
                             }
@@ -776,7 +948,7 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                         indexCommittedFromTxId,
                         indexCommittedUpToTxId,
                         io,
-                        highwater[0],
+                        highwater,
                         (rowTxId, _prefix, key, value, valueTimestamp, valueTombstoned, valueVersion, fp) -> {
                             minimize(oldestTimestamp, valueTimestamp);
                             minimize(oldestVersion, valueVersion);
@@ -785,33 +957,47 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                                 minimize(oldestTombstonedTimestamp, valueTimestamp);
                                 minimize(oldestTombstonedVersion, valueVersion);
                             }
-                            indexables.add(new WALIndexable(rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion, fp));
+                            // every row of an update is written under the same txId and fps arrive in row order
+                            writtenTxId[0] = rowTxId;
+                            batch.fps[written[0]] = fp;
+                            written[0]++;
                             return true;
                         });
 
                     return null;
                 });
+                List<byte[]> ignored = (forceApply && generateRowsChanged) ? new ArrayList<>() : null;
                 synchronized (oneIndexerAtATimeLock) {
+                    long txId = writtenTxId[0];
+                    sketches.prefix(prefix, size);
                     wali.merge((TxKeyPointerStream stream) -> {
-                        for (WALIndexable ix : indexables) {
-                            if (!stream.stream(ix.txId, ix.prefix, ix.key, ix.value, ix.valueTimestamp, ix.valueTombstoned, ix.valueVersion, ix.fp)) {
+                        for (int i = 0; i < size; i++) {
+                            if (!stream.stream(txId, prefix, batch.keys[i], batch.values[i], batch.timestamps[i], batch.tombstones[i], batch.versions[i],
+                                batch.fps[i])) {
                                 return false;
                             }
 
-                            mergeStripedKeyHighwaters(ix.prefix, ix.key, ix.valueTimestamp, keyHighwaterTimestamps);
+                            mergeStripedKeyHighwaters(prefix, batch.keys[i], batch.timestamps[i], keyHighwaterTimestamps);
+                            sketches.row(batch.keys[i], batch.values[i], batch.timestamps[i], batch.tombstones[i]);
                         }
                         return true;
-                    }, (mode, txId, _prefix, key, timestamp, tombstoned, version, fp) -> {
+                    }, (mode, _txId, _prefix, key, timestamp, tombstoned, version, fp) -> {
                         if (mode == WALMergeKeyPointerStream.added) {
                             keyCount.incrementAndGet();
                         } else if (mode == WALMergeKeyPointerStream.clobbered) {
                             clobberCount.incrementAndGet();
-                        } else {
+                        } else if (ignored != null) {
+                            ignored.add(key);
+                        } else if (apply != null) {
                             apply.remove(new WALKey(prefix, key));
                         }
                         return true;
                     });
 
+                    if (ignored != null) {
+                        forcedChanges(wali, rowType, prefix, batch, apply, ignored);
+                    }
+
                     if (generateRowsChanged) {
                         rowsChanged = new RowsChanged(versionedPartitionName,
                             apply,
@@ -830,6 +1016,45 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         }
     }
 
+    /**
+     * Keys the newest row in the batch for each key, then drops any key whose index pointer is newer still, which can only be the case for
+     * keys the index ignored a row for.
+     */
+    private static void forcedChanges(WALIndex wali,
+        RowType rowType,
+        byte[] prefix,
+        WALBatch batch,
+        Map<WALKey, WALValue> apply,
+        List<byte[]> ignored) throws Exception {
+        for (int i = 0; i < batch.size; i++) {
+            WALKey walKey = new WALKey(prefix, batch.keys[i]);
+            WALValue existing = apply.get(walKey);
+            if (existing == null || CompareTimestampVersions.compare(existing.getTimestampId(), existing.getVersion(),
+                batch.timestamps[i], batch.versions[i]) < 0) {
+                apply.put(walKey, new WALValue(rowType, batch.values[i], batch.timestamps[i], batch.tombstones[i], batch.versions[i]));
+            }
+        }
+        if (!ignored.isEmpty()) {
+            wali.getPointers(prefix,
+                stream -> {
+                    for (byte[] key : ignored) {
+                        if (!stream.stream(key)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                },
+                (_prefix, key, timestamp, tombstoned, version, fp, hasValue, value) -> {
+                    WALKey walKey = new WALKey(prefix, key);
+                    WALValue applied = apply.get(walKey);
+                    if (applied != null && CompareTimestampVersions.compare(timestamp, version, applied.getTimestampId(), applied.getVersion()) > 0) {
+                        apply.remove(walKey);
+                    }
+                    return true;
+                });
+        }
+    }
+
     private static void minimize(AtomicLong existing, long value) {
         long existingValue = existing.get();
         if (existingValue == -1 || value < existingValue) {
@@ -878,14 +1103,19 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         acquireOne();
         try {
             WALIndex wali = walIndex.get();
-            return wali == null || wali.rowScan((prefix, key, timestamp, tombstoned, version, fp, hasValue, value) -> {
+            if (wali == null) {
+                return true;
+            }
+            ArchiveMergingStream mergingStream = walArchive.isEmpty() ? null : new ArchiveMergingStream(walArchive.cursor(null, null), keyValueStream);
+            KeyValueStream stream = mergingStream != null ? mergingStream : keyValueStream;
+            return wali.rowScan((prefix, key, timestamp, tombstoned, version, fp, hasValue, value) -> {
                 if (!hasValue) {
                     byte[] hydrateRowIndexValue = hydrateRowIndexValue(fp);
                     RowType rowType = RowType.fromByte(hydrateRowIndexValue[0]);
                     value = primaryRowMarshaller.valueFromRow(rowType, hydrateRowIndexValue, 1 + 8);
                 }
-                return keyValueStream.stream(prefix, key, value, timestamp, tombstoned, version);
-            }, hydrateValues);
+                return stream.stream(prefix, key, value, timestamp, tombstoned, version);
+            }, hydrateValues) && (mergingStream == null || mergingStream.streamArchivedBefore(null));
         } finally {
             releaseOne();
         }
@@ -897,6 +1127,12 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         acquireOne();
         try {
             WALIndex wali = walIndex.get();
+            byte[] fromPk = fromKey != null ? WALKey.compose(fromPrefix, fromKey) : null;
+            byte[] toPk = toKey != null ? WALKey.compose(toPrefix, toKey) : null;
+            boolean ascending = fromPk == null || toPk == null || KeyUtil.compare(fromPk, toPk) <= 0;
+            ArchiveMergingStream mergingStream = walArchive.isEmpty() ? null
+                : new ArchiveMergingStream(ascending ? walArchive.cursor(fromPk, toPk) : walArchive.reverseCursor(fromPk, toPk), keyValueStream);
+            KeyValueStream stream = mergingStream != null ? mergingStream : keyValueStream;
             return wali.rangeScan(fromPrefix,
                 fromKey,
                 toPrefix,
@@ -907,8 +1143,8 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                         RowType rowType = RowType.fromByte(hydrateRowIndexValue[0]);
                         value = primaryRowMarshaller.valueFromRow(rowType, hydrateRowIndexValue, 1 + 8);
                     }
-                    return keyValueStream.stream(prefix, key, value, timestamp, tombstoned, version);
-                }, hydrateValues);
+                    return stream.stream(prefix, key, value, timestamp, tombstoned, version);
+                }, hydrateValues) && (mergingStream == null || mergingStream.streamArchivedBefore(null));
         } finally {
             releaseOne();
         }
@@ -923,7 +1159,12 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                 return null;
             }
             TimestampedValue[] values = new TimestampedValue[1];
+            long[] pointerTimestampVersion = { -1, -1 };
             wali.getPointer(prefix, key, (_prefix, _key, timestamp, tombstoned, version, fp, hasValue, value) -> {
+                if (fp != -1 || hasValue) {
+                    pointerTimestampVersion[0] = timestamp;
+                    pointerTimestampVersion[1] = version;
+                }
                 if ((fp != -1 || hasValue) && !tombstoned) {
                     if (!hasValue) {
                         byte[] hydrateRowIndexValue = hydrateRowIndexValue(fp);
@@ -934,6 +1175,10 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                 }
                 return true;
             });
+            ArchivedRow archived = newerArchivedRow(prefix, key, pointerTimestampVersion[0], pointerTimestampVersion[1]);
+            if (archived != null) {
+                return archived.valueTombstoned ? null : new TimestampedValue(archived.valueTimestamp, archived.valueVersion, archivedValue(archived));
+            }
             return values[0];
         } finally {
             releaseOne();
@@ -946,7 +1191,16 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
             WALIndex wali = walIndex.get();
             return wali == null || wali.getPointers(prefix, keys,
                 (_prefix, key, pointerTimestamp, pointerTombstoned, pointerVersion, pointerFp, pointerHasValue, pointerValue) -> {
-                    if (pointerFp != -1 || pointerHasValue) {
+                    boolean hasPointer = pointerFp != -1 || pointerHasValue;
+                    ArchivedRow archived = newerArchivedRow(prefix, key, hasPointer ? pointerTimestamp : -1, hasPointer ? pointerVersion : -1);
+                    if (archived != null) {
+                        return keyValueStream.stream(prefix,
+                            key,
+                            archivedValue(archived),
+                            archived.valueTimestamp,
+                            archived.valueTombstoned,
+                            archived.valueVersion);
+                    } else if (hasPointer) {
                         byte[] value;
                         if (pointerTombstoned) {
                             value = null;
@@ -990,7 +1244,18 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
                             return indexStream.stream(prefix, key, value, valueTimestamp, valueTombstone, valueVersion);
                         }
                     }),
-                stream);
+                (prefix, key, value, valueTimestamp, valueTombstoned, valueVersion,
+                    pointerTimestamp, pointerTombstoned, pointerVersion, pointerFp, pointerHasValue, pointerValue) -> {
+                    boolean hasPointer = pointerFp != -1 || pointerHasValue;
+                    ArchivedRow archived = newerArchivedRow(prefix, key, hasPointer ? pointerTimestamp : -1, hasPointer ? pointerVersion : -1);
+                    if (archived != null) {
+                        // archived rows have no fp, so they are offered as an index value
+                        return stream.stream(prefix, key, value, valueTimestamp, valueTombstoned, valueVersion,
+                            archived.valueTimestamp, archived.valueTombstoned, archived.valueVersion, -1, true, archivedValue(archived));
+                    }
+                    return stream.stream(prefix, key, value, valueTimestamp, valueTombstoned, valueVersion,
+                        pointerTimestamp, pointerTombstoned, pointerVersion, pointerFp, pointerHasValue, pointerValue);
+                });
         } finally {
             releaseOne();
         }
@@ -1000,7 +1265,13 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         acquireOne();
         try {
             WALIndex wali = walIndex.get();
-            return wali != null && wali.containsKeys(prefix, keys, stream);
+            return wali != null && wali.containsKeys(prefix, keys, (_prefix, key, contained, timestamp, version) -> {
+                ArchivedRow archived = newerArchivedRow(_prefix, key, timestamp, version);
+                if (archived != null) {
+                    return stream.stream(_prefix, key, !archived.valueTombstoned, archived.valueTimestamp, archived.valueVersion);
+                }
+                return stream.stream(_prefix, key, contained, timestamp, version);
+            });
         } finally {
             releaseOne();
         }
@@ -1059,6 +1330,93 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         return keyHighwaterTimestamps[highwaterTimestampIndex];
     }
 
+    /**
+     * Archived rows stream in key order rather than transaction order, while takers advance their cursor to the highest txId they have
+     * seen and may stop at any txId boundary. So the archived rows go out first as a single transaction just past the taker's cursor,
+     * which a limit cannot split, and are offered again until the cursor has passed every archived txId.
+     */
+    private static RowStream archivedRowStream(long sinceTransactionId, RowStream rowStream) {
+        return (rowFP, rowTxId, rowType, row) -> rowStream.row(rowFP, sinceTransactionId + 1, rowType, row);
+    }
+
+    /**
+     * @return the archived row for the key if it is newer than the given timestamp and version, which are -1 for a key the index lacks
+     */
+    private ArchivedRow newerArchivedRow(byte[] prefix, byte[] key, long timestamp, long version) throws Exception {
+        if (walArchive.isEmpty() || timestamp > walArchive.maxTimestamp()) {
+            return null;
+        }
+        ArchivedRow archived = walArchive.get(prefix, key);
+        if (archived != null && CompareTimestampVersions.compare(archived.valueTimestamp, archived.valueVersion, timestamp, version) > 0) {
+            return archived;
+        }
+        return null;
+    }
+
+    private byte[] archivedValue(ArchivedRow archived) throws Exception {
+        return archived.valueTombstoned ? null : primaryRowMarshaller.valueFromRow(archived.rowType, archived.row, 0);
+    }
+
+    /**
+     * Interleaves the archived rows of a key range with an ascending scan of the index, so scans see both tiers in key order and a key
+     * found in both resolves to its newest row.
+     */
+    private class ArchiveMergingStream implements KeyValueStream {
+
+        private final WALArchive.Cursor cursor;
+        private final KeyValueStream delegate;
+
+        private ArchiveMergingStream(WALArchive.Cursor cursor, KeyValueStream delegate) {
+            this.cursor = cursor;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean stream(byte[] prefix, byte[] key, byte[] value, long valueTimestamp, boolean valueTombstoned, long valueVersion)
+            throws Exception {
+            byte[] pk = WALKey.compose(prefix, key);
+            if (!streamArchivedBefore(pk)) {
+                return false;
+            }
+            ArchivedRow archived = cursor.peek();
+            if (archived != null && KeyUtil.compare(archived.pk, pk) == 0) {
+                cursor.next();
+                if (CompareTimestampVersions.compare(archived.valueTimestamp, archived.valueVersion, valueTimestamp, valueVersion) > 0) {
+                    return streamArchived(archived);
+                }
+            }
+            return delegate.stream(prefix, key, value, valueTimestamp, valueTombstoned, valueVersion);
+        }
+
+        /**
+         * @param pk exclusive, or null to stream every remaining archived row
+         */
+        private boolean streamArchivedBefore(byte[] pk) throws Exception {
+            ArchivedRow archived;
+            while ((archived = cursor.peek()) != null && (pk == null || before(archived.pk, pk))) {
+                cursor.next();
+                if (!streamArchived(archived)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean before(byte[] archivedPk, byte[] pk) {
+            int c = KeyUtil.compare(archivedPk, pk);
+            return cursor.isDescending() ? c > 0 : c < 0;
+        }
+
+        private boolean streamArchived(ArchivedRow archived) throws Exception {
+            return delegate.stream(archived.prefix(),
+                archived.key(),
+                archivedValue(archived),
+                archived.valueTimestamp,
+                archived.valueTombstoned,
+                archived.valueVersion);
+        }
+    }
+
     //TODO replace with stream!
     private byte[] hydrateRowIndexValue(long indexFP) {
         if (indexFP >= 0) {
@@ -1089,6 +1447,10 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         }
         acquireOne();
         try {
+            if (sinceTransactionId < walArchive.maxTxId()
+                && !walArchive.takeRowsSince(sinceTransactionId, archivedRowStream(sinceTransactionId, rowStream))) {
+                return false;
+            }
             long[] excessRows = new long[1];
             boolean readFromTransactionId = walIndex.get() == null || walTx.readFromTransactionId(sinceTransactionId,
                 (offset, reader) -> reader.scan(ioStats,
@@ -1116,6 +1478,10 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         }
         acquireOne();
         try {
+            if (sinceTransactionId < walArchive.maxTxId()
+                && !walArchive.takePrefixRowsSince(prefix, sinceTransactionId, archivedRowStream(sinceTransactionId, rowStream))) {
+                return false;
+            }
             long[] excessRows = new long[1];
             WALIndex wali = walIndex.get();
             boolean readFromTransactionId = wali == null || walTx.tx(
@@ -1140,13 +1506,24 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
     public boolean takeAllRows(IoStats ioStats, RowStream rowStream) throws Exception {
         acquireOne();
         try {
-            return walIndex.get() == null || walTx.readFromTransactionId(0, (offset, reader) -> reader.scan(ioStats, offset, false, rowStream::row));
+            return walIndex.get() == null
+                || walArchive.takeRowsSince(-1, rowStream)
+                && walTx.readFromTransactionId(0, (offset, reader) -> reader.scan(ioStats, offset, false, rowStream::row));
         } finally {
             releaseOne();
         }
     }
 
+    /**
+     * Applies the concurrency limits of a profile. Operations already admitted finish under the limits they were admitted with.
+     */
+    public void updatedPerformanceProfile(PerformanceProfile performanceProfile) {
+        permitsPerOperation = PerformanceProfile.permitsPerOperation(performanceProfile.walConcurrency);
+        walTx.setConcurrency(performanceProfile.walTxConcurrency);
+    }
+
     public void updatedProperties(PartitionProperties partitionProperties) throws Exception {
+        updatedPerformanceProfile(partitionProperties.resolvePerformanceProfile());
         acquireOne();
         try {
             //TODO indexClassName transition?
@@ -1159,21 +1536,60 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         }
     }
 
+    /**
+     * Counts an archived key only when neither the index nor the given pending keys already account for it, which costs a pass over the
+     * archive.
+     */
     public long count(WALKeyPointers keyPointers) throws Exception {
         acquireOne();
         try {
             WALIndex wali = walIndex.get();
-            return wali == null ? 0 : wali.deltaCount(keyPointers) + keyCount.get();
+            if (wali == null) {
+                return 0;
+            }
+            long count = wali.deltaCount(keyPointers) + keyCount.get();
+            return walArchive.isEmpty() ? count : count + archivedOnlyCount(wali, keyPointers);
         } finally {
             releaseOne();
         }
     }
 
+    private long archivedOnlyCount(WALIndex wali, WALKeyPointers keyPointers) throws Exception {
+        Set<byte[]> pending = new TreeSet<>(KeyUtil::compare);
+        keyPointers.consume((prefix, key, requestTimestamp, requestTombstoned, requestVersion, fp, hasValue, value) -> {
+            pending.add(WALKey.compose(prefix, key));
+            return true;
+        });
+        long count = 0;
+        WALArchive.Cursor cursor = walArchive.cursor(null, null);
+        ArchivedRow archived;
+        while ((archived = cursor.next()) != null) {
+            if (archived.valueTombstoned || pending.contains(archived.pk)) {
+                continue;
+            }
+            boolean[] indexed = { false };
+            wali.getPointer(archived.prefix(), archived.key(), (prefix, key, timestamp, tombstoned, version, fp, hasValue, value) -> {
+                indexed[0] = fp != -1 || hasValue;
+                return true;
+            });
+            if (!indexed[0]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * An estimate which stays cheap by adding the archive's row count as is, so an archived key is counted once for every segment holding
+     * it, and again if it was written since it was archived.
+     */
     public long approximateCount() {
         acquireOne();
         try {
             WALIndex wali = walIndex.get();
-            return wali == null ? 0 : keyCount.get();
+            return wali == null ? 0 : keyCount.get() + walArchive.rowCount();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to count archived rows for " + versionedPartitionName, e);
         } finally {
             releaseOne();
         }
@@ -1187,6 +1603,13 @@ public class WALStorage<I extends WALIndex> implements RangeScannable {
         return clobberCount.get();
     }
 
+    /**
+     * @return a copy of the sketches over the rows this partition has taken, which the caller is free to merge into
+     */
+    public PartitionSketches sketches() {
+        return sketches.copy();
+    }
+
     public long highestTxId() {
         return highestTxId.get();
     }
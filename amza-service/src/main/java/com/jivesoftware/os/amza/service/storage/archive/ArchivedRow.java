@@ -0,0 +1,51 @@
+package com.jivesoftware.os.amza.service.storage.archive;
+
+import com.jivesoftware.os.amza.api.CompareTimestampVersions;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.api.wal.WALKey;
+
+/**
+ * A primary row which compaction moved out of the hot WAL. The row is kept exactly as it was written so it can be replayed to takers,
+ * alongside the key and timestamps needed to resolve it against newer copies.
+ */
+public class ArchivedRow {
+
+    public final byte[] pk;
+    public final long txId;
+    public final RowType rowType;
+    public final byte[] row;
+    public final long valueTimestamp;
+    public final boolean valueTombstoned;
+    public final long valueVersion;
+
+    public ArchivedRow(byte[] pk, long txId, RowType rowType, byte[] row, long valueTimestamp, boolean valueTombstoned, long valueVersion) {
+        this.pk = pk;
+        this.txId = txId;
+        this.rowType = rowType;
+        this.row = row;
+        this.valueTimestamp = valueTimestamp;
+        this.valueTombstoned = valueTombstoned;
+        this.valueVersion = valueVersion;
+    }
+
+    public byte[] prefix() {
+        return WALKey.rawKeyPrefix(pk);
+    }
+
+    public byte[] key() {
+        return WALKey.rawKeyKey(pk);
+    }
+
+    int sizeInBytes() {
+        return 4 + pk.length + 8 + 1 + 8 + 1 + 8 + 4 + row.length;
+    }
+
+    static ArchivedRow newest(ArchivedRow a, ArchivedRow b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        }
+        return CompareTimestampVersions.compare(a.valueTimestamp, a.valueVersion, b.valueTimestamp, b.valueVersion) >= 0 ? a : b;
+    }
+}
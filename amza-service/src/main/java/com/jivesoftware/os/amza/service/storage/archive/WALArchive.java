@@ -0,0 +1,436 @@
+package com.jivesoftware.os.amza.service.storage.archive;
+
+import com.jivesoftware.os.amza.api.scan.RowStream;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.api.wal.KeyUtil;
+import com.jivesoftware.os.amza.api.wal.WALKey;
+import com.jivesoftware.os.amza.api.wal.WALTx;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The cold tier of a partition. Compaction hands every row older than the partition's archive age to a {@link Writer}, which sorts them
+ * into immutable {@link WALArchiveSegment}s under a directory which may live on slower, cheaper disks than the hot WAL. A key can be found
+ * in more than one segment, in which case the newest timestamp and version wins, and {@link #merge} folds the segments back into one once
+ * there are too many of them.
+ */
+public class WALArchive {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final int blockSizeInBytes;
+    private final long spillSizeInBytes;
+    private final int maxSegments;
+    private final AtomicLong nextSegmentId = new AtomicLong();
+
+    private volatile List<WALArchiveSegment> segments;
+
+    public WALArchive(File directory, int blockSizeInBytes, long spillSizeInBytes, int maxSegments) {
+        this.directory = directory;
+        this.blockSizeInBytes = blockSizeInBytes;
+        this.spillSizeInBytes = spillSizeInBytes;
+        this.maxSegments = maxSegments;
+    }
+
+    private List<WALArchiveSegment> segments() throws IOException {
+        List<WALArchiveSegment> got = segments;
+        if (got == null) {
+            synchronized (this) {
+                got = segments;
+                if (got == null) {
+                    got = load();
+                    segments = got;
+                }
+            }
+        }
+        return got;
+    }
+
+    private List<WALArchiveSegment> load() throws IOException {
+        List<WALArchiveSegment> loaded = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(TMP_SUFFIX)) {
+                    if (!file.delete()) {
+                        LOG.warn("Failed to remove abandoned archive segment {}", file);
+                    }
+                } else if (name.endsWith(WALArchiveSegment.SUFFIX)) {
+                    long id = Long.parseLong(name.substring(0, name.length() - WALArchiveSegment.SUFFIX.length()));
+                    loaded.add(new WALArchiveSegment(id, file));
+                    nextSegmentId.set(Math.max(nextSegmentId.get(), id + 1));
+                }
+            }
+        }
+        Collections.sort(loaded, (a, b) -> Long.compare(a.getId(), b.getId()));
+        return Collections.unmodifiableList(loaded);
+    }
+
+    public boolean isEmpty() throws IOException {
+        return segments().isEmpty();
+    }
+
+    public int segmentCount() throws IOException {
+        return segments().size();
+    }
+
+    /**
+     * @return the number of archived rows, counting a key once for every segment it appears in
+     */
+    public long rowCount() throws IOException {
+        long count = 0;
+        for (WALArchiveSegment segment : segments()) {
+            count += segment.rowCount();
+        }
+        return count;
+    }
+
+    public long maxTxId() throws IOException {
+        long maxTxId = -1;
+        for (WALArchiveSegment segment : segments()) {
+            maxTxId = Math.max(maxTxId, segment.maxTxId());
+        }
+        return maxTxId;
+    }
+
+    public long maxTimestamp() throws IOException {
+        long maxTimestamp = -1;
+        for (WALArchiveSegment segment : segments()) {
+            maxTimestamp = Math.max(maxTimestamp, segment.maxTimestamp());
+        }
+        return maxTimestamp;
+    }
+
+    public long sizeInBytes() throws IOException {
+        long size = 0;
+        for (WALArchiveSegment segment : segments()) {
+            size += segment.sizeInBytes();
+        }
+        return size;
+    }
+
+    /**
+     * @return the newest archived row for the key, tombstones included, or null if the key was never archived
+     */
+    public ArchivedRow get(byte[] prefix, byte[] key) throws IOException {
+        List<WALArchiveSegment> got = segments();
+        if (got.isEmpty()) {
+            return null;
+        }
+        byte[] pk = WALKey.compose(prefix, key);
+        ArchivedRow newest = null;
+        for (WALArchiveSegment segment : got) {
+            newest = ArchivedRow.newest(newest, segment.get(pk));
+        }
+        return newest;
+    }
+
+    /**
+     * @param fromPk inclusive, or null for the first row
+     * @param toPk exclusive, or null for the last row
+     * @return the newest row of every archived key in the range, in ascending key order
+     */
+    public Cursor cursor(byte[] fromPk, byte[] toPk) throws IOException {
+        List<WALArchiveSegment> got = segments();
+        List<WALArchiveSegment.Cursor> cursors = new ArrayList<>(got.size());
+        for (WALArchiveSegment segment : got) {
+            cursors.add(segment.cursor(fromPk, toPk));
+        }
+        return new Cursor(cursors, false);
+    }
+
+    /**
+     * @param fromPk inclusive, or null for the last row
+     * @param toPk exclusive, or null for the first row
+     * @return the newest row of every archived key in the range, in descending key order
+     */
+    public Cursor reverseCursor(byte[] fromPk, byte[] toPk) throws IOException {
+        List<WALArchiveSegment> got = segments();
+        List<WALArchiveSegment.Cursor> cursors = new ArrayList<>(got.size());
+        for (WALArchiveSegment segment : got) {
+            cursors.add(segment.reverseCursor(fromPk, toPk));
+        }
+        return new Cursor(cursors, true);
+    }
+
+    /**
+     * Replays archived rows with a transaction id greater than sinceTransactionId. Rows are streamed segment by segment rather than in
+     * transaction order, and a key may be streamed more than once, which takers already tolerate since rows are merged by timestamp.
+     */
+    public boolean takeRowsSince(long sinceTransactionId, RowStream rowStream) throws Exception {
+        return takeRowsSince(null, null, sinceTransactionId, rowStream);
+    }
+
+    public boolean takePrefixRowsSince(byte[] prefix, long sinceTransactionId, RowStream rowStream) throws Exception {
+        byte[] fromPk = WALKey.compose(prefix, new byte[0]);
+        return takeRowsSince(fromPk, WALKey.prefixUpperExclusive(fromPk), sinceTransactionId, rowStream);
+    }
+
+    private boolean takeRowsSince(byte[] fromPk, byte[] toPk, long sinceTransactionId, RowStream rowStream) throws Exception {
+        for (WALArchiveSegment segment : segments()) {
+            if (segment.maxTxId() <= sinceTransactionId) {
+                continue;
+            }
+            WALArchiveSegment.Cursor cursor = segment.cursor(fromPk, toPk);
+            ArchivedRow row;
+            while ((row = cursor.next()) != null) {
+                if (row.txId > sinceTransactionId && !rowStream.row(-1, row.txId, row.rowType, row.row)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public Writer writer() throws IOException {
+        segments();
+        return new Writer();
+    }
+
+    /**
+     * Writes every segment into one, dropping expired tombstones and rows which outlived their ttl. Nothing is visible to readers until
+     * the returned merge is committed, which callers must do while no reads are in flight because the merged away segments are closed.
+     *
+     * @return null if the archive does not have more than the allowed number of segments
+     */
+    public Merge merge(long tombstoneTimestampId, long tombstoneVersion, long ttlTimestampId, long ttlVersion) throws IOException {
+        List<WALArchiveSegment> merging = segments();
+        if (merging.size() <= maxSegments) {
+            return null;
+        }
+
+        Cursor cursor = cursor(null, null);
+        long[] dropped = new long[1];
+        Iterator<ArchivedRow> live = new Iterator<ArchivedRow>() {
+
+            private ArchivedRow next = advance();
+
+            private ArchivedRow advance() {
+                try {
+                    ArchivedRow row;
+                    while ((row = cursor.next()) != null) {
+                        if (row.valueTombstoned && (row.valueTimestamp < tombstoneTimestampId || row.valueVersion < tombstoneVersion)) {
+                            dropped[0]++;
+                        } else if (row.valueTimestamp < ttlTimestampId || row.valueVersion < ttlVersion) {
+                            dropped[0]++;
+                        } else {
+                            return row;
+                        }
+                    }
+                    return null;
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to merge archive " + directory, e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public ArchivedRow next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                ArchivedRow row = next;
+                next = advance();
+                return row;
+            }
+        };
+
+        long id = nextSegmentId.getAndIncrement();
+        File tmp = new File(directory, id + WALArchiveSegment.SUFFIX + TMP_SUFFIX);
+        WALArchiveSegment.write(tmp, live, blockSizeInBytes);
+        return () -> {
+            WALArchiveSegment merged = publish(id, tmp);
+            synchronized (this) {
+                List<WALArchiveSegment> swapped = new ArrayList<>(segments);
+                swapped.removeAll(merging);
+                swapped.add(merged);
+                segments = Collections.unmodifiableList(swapped);
+            }
+            for (WALArchiveSegment segment : merging) {
+                segment.close();
+                if (!segment.getFile().delete()) {
+                    LOG.warn("Failed to remove merged archive segment {}", segment.getFile());
+                }
+            }
+            LOG.info("Merged {} archive segments into {} rows:{} dropped:{}", merging.size(), merged.getFile(), merged.rowCount(), dropped[0]);
+            return merged;
+        };
+    }
+
+    private WALArchiveSegment publish(long id, File tmp) throws IOException {
+        File file = new File(directory, id + WALArchiveSegment.SUFFIX);
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed to rename " + tmp + " to " + file);
+        }
+        return new WALArchiveSegment(id, file);
+    }
+
+    public void close() throws IOException {
+        synchronized (this) {
+            List<WALArchiveSegment> got = segments;
+            if (got != null) {
+                for (WALArchiveSegment segment : got) {
+                    segment.close();
+                }
+            }
+            segments = null;
+        }
+    }
+
+    public void delete() throws IOException {
+        synchronized (this) {
+            List<WALArchiveSegment> got = segments();
+            for (WALArchiveSegment segment : got) {
+                segment.close();
+                if (!segment.getFile().delete()) {
+                    throw new IOException("Failed to delete archive segment " + segment.getFile());
+                }
+            }
+            segments = Collections.emptyList();
+            if (directory.exists() && !directory.delete()) {
+                LOG.warn("Failed to remove archive directory {}", directory);
+            }
+        }
+    }
+
+    public interface Merge {
+
+        WALArchiveSegment commit() throws IOException;
+    }
+
+    /**
+     * Collects the rows of one compaction. Rows are buffered in key order and spilled to a new segment whenever the buffer grows past the
+     * spill size, so archiving a large partition for the first time does not have to hold all of its cold rows in memory. Spilled segments
+     * are readable immediately, which is harmless because the hot WAL still holds the same rows until the compaction commits.
+     */
+    public class Writer implements WALTx.Archiver {
+
+        private final TreeMap<byte[], ArchivedRow> buffer = new TreeMap<>(KeyUtil::compare);
+        private long bufferedBytes;
+        private long archivedCount;
+
+        private Writer() {
+        }
+
+        @Override
+        public void archive(long txId,
+            RowType rowType,
+            byte[] prefix,
+            byte[] key,
+            long valueTimestamp,
+            boolean valueTombstoned,
+            long valueVersion,
+            byte[] row) throws IOException {
+
+            byte[] pk = WALKey.compose(prefix, key);
+            ArchivedRow archived = new ArchivedRow(pk, txId, rowType, row, valueTimestamp, valueTombstoned, valueVersion);
+            ArchivedRow existing = buffer.get(pk);
+            ArchivedRow newest = ArchivedRow.newest(existing, archived);
+            if (newest != existing) {
+                buffer.put(pk, newest);
+                bufferedBytes += newest.sizeInBytes() - (existing == null ? 0 : existing.sizeInBytes());
+            }
+            archivedCount++;
+            if (bufferedBytes >= spillSizeInBytes) {
+                spill();
+            }
+        }
+
+        public long archivedCount() {
+            return archivedCount;
+        }
+
+        /**
+         * Spills whatever is still buffered. Every archived row is durable once this returns.
+         */
+        @Override
+        public void flush() throws IOException {
+            spill();
+        }
+
+        private void spill() throws IOException {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Failed to mkdirs for " + directory);
+            }
+            long id = nextSegmentId.getAndIncrement();
+            File tmp = new File(directory, id + WALArchiveSegment.SUFFIX + TMP_SUFFIX);
+            WALArchiveSegment.write(tmp, buffer.values().iterator(), blockSizeInBytes);
+            WALArchiveSegment segment = publish(id, tmp);
+            synchronized (WALArchive.this) {
+                List<WALArchiveSegment> appended = new ArrayList<>(segments());
+                appended.add(segment);
+                segments = Collections.unmodifiableList(appended);
+            }
+            LOG.info("Archived {} rows to {}", buffer.size(), segment.getFile());
+            buffer.clear();
+            bufferedBytes = 0;
+        }
+    }
+
+    /**
+     * Merges the per segment cursors, resolving a key found in several segments to its newest row.
+     */
+    public static class Cursor {
+
+        private final List<WALArchiveSegment.Cursor> cursors;
+        private final boolean descending;
+
+        private Cursor(List<WALArchiveSegment.Cursor> cursors, boolean descending) {
+            this.cursors = cursors;
+            this.descending = descending;
+        }
+
+        public boolean isDescending() {
+            return descending;
+        }
+
+        public ArchivedRow peek() {
+            ArchivedRow first = null;
+            for (WALArchiveSegment.Cursor cursor : cursors) {
+                ArchivedRow row = cursor.peek();
+                if (row != null) {
+                    int c = first == null ? -1 : descending ? KeyUtil.compare(first.pk, row.pk) : KeyUtil.compare(row.pk, first.pk);
+                    if (c < 0) {
+                        first = row;
+                    } else if (c == 0) {
+                        first = ArchivedRow.newest(first, row);
+                    }
+                }
+            }
+            return first;
+        }
+
+        public ArchivedRow next() throws IOException {
+            ArchivedRow first = peek();
+            if (first != null) {
+                for (WALArchiveSegment.Cursor cursor : cursors) {
+                    ArchivedRow row = cursor.peek();
+                    if (row != null && KeyUtil.compare(row.pk, first.pk) == 0) {
+                        cursor.next();
+                    }
+                }
+            }
+            return first;
+        }
+    }
+}
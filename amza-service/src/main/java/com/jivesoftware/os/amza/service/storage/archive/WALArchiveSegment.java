@@ -0,0 +1,388 @@
+package com.jivesoftware.os.amza.service.storage.archive;
+
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.api.wal.KeyUtil;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.xerial.snappy.Snappy;
+
+/**
+ * An immutable, key ordered run of archived rows. Rows are packed into snappy compressed blocks, and the first key of every block is kept in
+ * a sparse index at the end of the file so a point read only has to inflate a single block.
+ *
+ * <pre>
+ * block*  : snappy([pkLength:int pk txId:long rowType:byte timestamp:long tombstoned:byte version:long rowLength:int row]*)
+ * index   : [firstPkLength:int firstPk fp:long length:int]*
+ * footer  : indexFp:long blockCount:int rowCount:long minTxId:long maxTxId:long maxTimestamp:long magic:long
+ * </pre>
+ */
+public class WALArchiveSegment {
+
+    static final String SUFFIX = ".kva";
+
+    private static final long MAGIC = 0x616D7A6141524356L;
+    private static final int FOOTER_SIZE = 8 + 4 + 8 + 8 + 8 + 8 + 8;
+
+    private final long id;
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final byte[][] blockFirstPks;
+    private final long[] blockFps;
+    private final int[] blockLengths;
+    private final long rowCount;
+    private final long minTxId;
+    private final long maxTxId;
+    private final long maxTimestamp;
+
+    private volatile CachedBlock cachedBlock;
+
+    public WALArchiveSegment(long id, File file) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "r");
+        this.channel = randomAccessFile.getChannel();
+
+        long length = channel.size();
+        if (length < FOOTER_SIZE) {
+            throw new IOException("Archive segment is truncated: " + file);
+        }
+        ByteBuffer footer = read(length - FOOTER_SIZE, FOOTER_SIZE);
+        long indexFp = footer.getLong();
+        int blockCount = footer.getInt();
+        this.rowCount = footer.getLong();
+        this.minTxId = footer.getLong();
+        this.maxTxId = footer.getLong();
+        this.maxTimestamp = footer.getLong();
+        if (footer.getLong() != MAGIC) {
+            throw new IOException("Archive segment is corrupt: " + file);
+        }
+
+        ByteBuffer index = read(indexFp, (int) (length - FOOTER_SIZE - indexFp));
+        this.blockFirstPks = new byte[blockCount][];
+        this.blockFps = new long[blockCount];
+        this.blockLengths = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            blockFirstPks[i] = new byte[index.getInt()];
+            index.get(blockFirstPks[i]);
+            blockFps[i] = index.getLong();
+            blockLengths[i] = index.getInt();
+        }
+    }
+
+    /**
+     * @param rows must be in ascending {@link KeyUtil#compare} order with at most one row per key
+     */
+    public static void write(File file, Iterator<ArchivedRow> rows, int blockSizeInBytes) throws IOException {
+        List<byte[]> firstPks = new ArrayList<>();
+        List<Long> fps = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        long rowCount = 0;
+        long minTxId = Long.MAX_VALUE;
+        long maxTxId = -1;
+        long maxTimestamp = -1;
+
+        try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOutputStream, 1024 * 1024));
+            ByteArrayOutputStream blockBytes = new ByteArrayOutputStream(blockSizeInBytes + 1024);
+            DataOutputStream block = new DataOutputStream(blockBytes);
+            long fp = 0;
+            byte[] firstPk = null;
+            while (rows.hasNext()) {
+                ArchivedRow row = rows.next();
+                if (firstPk == null) {
+                    firstPk = row.pk;
+                }
+                block.writeInt(row.pk.length);
+                block.write(row.pk);
+                block.writeLong(row.txId);
+                block.writeByte(row.rowType.toByte());
+                block.writeLong(row.valueTimestamp);
+                block.writeBoolean(row.valueTombstoned);
+                block.writeLong(row.valueVersion);
+                block.writeInt(row.row.length);
+                block.write(row.row);
+
+                rowCount++;
+                minTxId = Math.min(minTxId, row.txId);
+                maxTxId = Math.max(maxTxId, row.txId);
+                maxTimestamp = Math.max(maxTimestamp, row.valueTimestamp);
+
+                if (blockBytes.size() >= blockSizeInBytes) {
+                    fp += flushBlock(out, blockBytes, fp, firstPk, firstPks, fps, lengths);
+                    firstPk = null;
+                }
+            }
+            if (blockBytes.size() > 0) {
+                fp += flushBlock(out, blockBytes, fp, firstPk, firstPks, fps, lengths);
+            }
+
+            long indexFp = fp;
+            for (int i = 0; i < firstPks.size(); i++) {
+                out.writeInt(firstPks.get(i).length);
+                out.write(firstPks.get(i));
+                out.writeLong(fps.get(i));
+                out.writeInt(lengths.get(i));
+            }
+            out.writeLong(indexFp);
+            out.writeInt(firstPks.size());
+            out.writeLong(rowCount);
+            out.writeLong(minTxId == Long.MAX_VALUE ? -1 : minTxId);
+            out.writeLong(maxTxId);
+            out.writeLong(maxTimestamp);
+            out.writeLong(MAGIC);
+            out.flush();
+            fileOutputStream.getFD().sync();
+        }
+    }
+
+    private static int flushBlock(DataOutputStream out,
+        ByteArrayOutputStream blockBytes,
+        long fp,
+        byte[] firstPk,
+        List<byte[]> firstPks,
+        List<Long> fps,
+        List<Integer> lengths) throws IOException {
+        byte[] compressed = Snappy.compress(blockBytes.toByteArray());
+        out.write(compressed);
+        firstPks.add(firstPk);
+        fps.add(fp);
+        lengths.add(compressed.length);
+        blockBytes.reset();
+        return compressed.length;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long rowCount() {
+        return rowCount;
+    }
+
+    public long minTxId() {
+        return minTxId;
+    }
+
+    public long maxTxId() {
+        return maxTxId;
+    }
+
+    public long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    public long sizeInBytes() {
+        return file.length();
+    }
+
+    public ArchivedRow get(byte[] pk) throws IOException {
+        int blockIndex = floorBlock(pk);
+        if (blockIndex < 0) {
+            return null;
+        }
+        ArchivedRow[] block = block(blockIndex);
+        int low = 0;
+        int high = block.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = KeyUtil.compare(block[mid].pk, pk);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return block[mid];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param fromPk inclusive, or null for the first row
+     * @param toPk exclusive, or null for the last row
+     */
+    public Cursor cursor(byte[] fromPk, byte[] toPk) throws IOException {
+        return new Cursor(fromPk, toPk, false);
+    }
+
+    /**
+     * @param fromPk inclusive, or null for the last row
+     * @param toPk exclusive, or null for the first row
+     */
+    public Cursor reverseCursor(byte[] fromPk, byte[] toPk) throws IOException {
+        return new Cursor(fromPk, toPk, true);
+    }
+
+    public void close() throws IOException {
+        cachedBlock = null;
+        randomAccessFile.close();
+    }
+
+    private int floorBlock(byte[] pk) {
+        int low = 0;
+        int high = blockFirstPks.length - 1;
+        int floor = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (KeyUtil.compare(blockFirstPks[mid], pk) <= 0) {
+                floor = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return floor;
+    }
+
+    private ArchivedRow[] block(int blockIndex) throws IOException {
+        CachedBlock cached = cachedBlock;
+        if (cached != null && cached.index == blockIndex) {
+            return cached.rows;
+        }
+
+        ByteBuffer compressed = read(blockFps[blockIndex], blockLengths[blockIndex]);
+        byte[] uncompressed = Snappy.uncompress(compressed.array());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(uncompressed));
+        List<ArchivedRow> rows = new ArrayList<>();
+        while (in.available() > 0) {
+            byte[] pk = new byte[in.readInt()];
+            in.readFully(pk);
+            long txId = in.readLong();
+            RowType rowType = RowType.fromByte(in.readByte());
+            long valueTimestamp = in.readLong();
+            boolean valueTombstoned = in.readBoolean();
+            long valueVersion = in.readLong();
+            byte[] row = new byte[in.readInt()];
+            in.readFully(row);
+            rows.add(new ArchivedRow(pk, txId, rowType, row, valueTimestamp, valueTombstoned, valueVersion));
+        }
+        ArchivedRow[] block = rows.toArray(new ArchivedRow[rows.size()]);
+        cachedBlock = new CachedBlock(blockIndex, block);
+        return block;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of archive segment: " + file);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static class CachedBlock {
+
+        private final int index;
+        private final ArchivedRow[] rows;
+
+        private CachedBlock(int index, ArchivedRow[] rows) {
+            this.index = index;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Walks the rows of a key range in ascending or descending order, inflating one block at a time.
+     */
+    public class Cursor {
+
+        private final byte[] toPk;
+        private final boolean descending;
+        private int blockIndex;
+        private ArchivedRow[] block;
+        private int rowIndex;
+        private ArchivedRow next;
+
+        private Cursor(byte[] fromPk, byte[] toPk, boolean descending) throws IOException {
+            this.toPk = toPk;
+            this.descending = descending;
+            if (descending) {
+                this.blockIndex = fromPk == null ? blockFirstPks.length - 1 : floorBlock(fromPk);
+                this.block = blockIndex >= 0 ? block(blockIndex) : new ArchivedRow[0];
+                this.rowIndex = block.length - 1;
+            } else {
+                this.blockIndex = fromPk == null ? 0 : Math.max(0, floorBlock(fromPk));
+                this.block = blockIndex < blockFirstPks.length ? block(blockIndex) : new ArchivedRow[0];
+                this.rowIndex = 0;
+            }
+            advance();
+            while (fromPk != null && next != null && order(next.pk, fromPk) < 0) {
+                advance();
+            }
+        }
+
+        private int order(byte[] a, byte[] b) {
+            int c = KeyUtil.compare(a, b);
+            return descending ? -c : c;
+        }
+
+        public ArchivedRow peek() {
+            return next;
+        }
+
+        public ArchivedRow next() throws IOException {
+            ArchivedRow row = next;
+            if (row != null) {
+                advance();
+            }
+            return row;
+        }
+
+        private void advance() throws IOException {
+            if (descending) {
+                while (rowIndex < 0) {
+                    blockIndex--;
+                    if (blockIndex < 0) {
+                        next = null;
+                        return;
+                    }
+                    block = block(blockIndex);
+                    rowIndex = block.length - 1;
+                }
+                ArchivedRow row = block[rowIndex--];
+                next = (toPk != null && KeyUtil.compare(row.pk, toPk) <= 0) ? null : row;
+                if (next == null) {
+                    block = new ArchivedRow[0];
+                    rowIndex = -1;
+                    blockIndex = -1;
+                }
+                return;
+            }
+            while (rowIndex >= block.length) {
+                blockIndex++;
+                if (blockIndex >= blockFirstPks.length) {
+                    next = null;
+                    return;
+                }
+                block = block(blockIndex);
+                rowIndex = 0;
+            }
+            ArchivedRow row = block[rowIndex++];
+            next = (toPk != null && KeyUtil.compare(row.pk, toPk) >= 0) ? null : row;
+            if (next == null) {
+                block = new ArchivedRow[0];
+                blockIndex = blockFirstPks.length;
+            }
+        }
+    }
+}
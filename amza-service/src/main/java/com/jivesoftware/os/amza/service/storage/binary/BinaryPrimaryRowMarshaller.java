@@ -16,6 +16,7 @@
 package com.jivesoftware.os.amza.service.storage.binary;
 
 import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.stream.FpKeyValueStream;
 import com.jivesoftware.os.amza.api.stream.RowType;
 import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
@@ -27,14 +28,78 @@ import org.xerial.snappy.Snappy;
 
 public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
 
+    private final RowCompressionDictionaries dictionaries;
+
+    public BinaryPrimaryRowMarshaller() {
+        // reads dictionary rows but never trains, so every value it writes is raw
+        this(new RowCompressionDictionaries(null, 1_024, 128 * 1024, 16 * 1024, 64L * 1024 * 1024, 1_024, null));
+    }
+
+    public BinaryPrimaryRowMarshaller(RowCompressionDictionaries dictionaries) {
+        this.dictionaries = dictionaries;
+    }
+
+    public RowCompressionDictionaries getDictionaries() {
+        return dictionaries;
+    }
+
     @Override
     public byte[] toRow(RowType rowType, byte[] pk, byte[] value, long timestamp, boolean tombstoned, long version) throws Exception {
+        return toRow(null, rowType, pk, value, timestamp, tombstoned, version);
+    }
+
+    @Override
+    public byte[] toRow(PartitionName partitionName,
+        RowType rowType,
+        byte[] pk,
+        byte[] value,
+        long timestamp,
+        boolean tombstoned,
+        long version) throws Exception {
+
+        return toRowBytes(compress(rowType, pk), compressValue(partitionName, rowType, value), timestamp, tombstoned, version);
+    }
 
-        return toRowBytes(compress(rowType, pk), compress(rowType, value), timestamp, tombstoned, version);
+    @Override
+    public byte[] toRow(PartitionName partitionName,
+        RowType rowType,
+        byte[] prefix,
+        byte[] key,
+        byte[] value,
+        long timestamp,
+        boolean tombstoned,
+        long version) throws Exception {
+
+        if (rowType == RowType.snappy_primary) {
+            return toRow(partitionName, rowType, WALKey.compose(prefix, key), value, timestamp, tombstoned, version);
+        }
+        byte[] compressedValue = compressValue(partitionName, rowType, value);
+        int prefixLength = prefix != null ? prefix.length : 0;
+        int pkLength = WALKey.sizeOfComposed(prefixLength, key.length);
+        byte[] bytes = new byte[8 + 1 + 8 + 4 + (compressedValue != null ? compressedValue.length : 0) + 4 + pkLength];
+        int o = writeRowHeader(bytes, compressedValue, timestamp, tombstoned, version);
+        UIO.intBytes(pkLength, bytes, o);
+        o += 4;
+        UIO.shortBytes((short) prefixLength, bytes, o);
+        o += 2;
+        if (prefix != null) {
+            UIO.writeBytes(prefix, bytes, o);
+            o += prefixLength;
+        }
+        UIO.writeBytes(key, bytes, o);
+        return bytes;
     }
 
     private byte[] toRowBytes(byte[] pk, byte[] value, long timestamp, boolean tombstoned, long version) throws IOException {
         byte[] bytes = new byte[8 + 1 + 8 + 4 + (value != null ? value.length : 0) + 4 + pk.length];
+        int o = writeRowHeader(bytes, value, timestamp, tombstoned, version);
+        UIO.intBytes(pk.length, bytes, o);
+        o += 4;
+        UIO.writeBytes(pk, bytes, o);
+        return bytes;
+    }
+
+    private static int writeRowHeader(byte[] bytes, byte[] value, long timestamp, boolean tombstoned, long version) {
         int o = 0;
         UIO.longBytes(timestamp, bytes, o);
         o += 8;
@@ -49,17 +114,21 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
             UIO.writeBytes(value, bytes, o);
             o += value.length;
         }
-
-        UIO.intBytes(pk.length, bytes, o);
-        o += 4;
-        UIO.writeBytes(pk, bytes, o);
-        return bytes;
+        return o;
     }
 
     @Override
     public byte[] convert(RowType fromType, byte[] row, RowType toType) throws Exception {
+        return convert(null, fromType, row, toType);
+    }
+
+    @Override
+    public byte[] convert(PartitionName partitionName, RowType fromType, byte[] row, RowType toType) throws Exception {
         if (fromType == toType) {
-            return row;
+            // rows written before the partition had a dictionary get another chance to compress
+            if (toType != RowType.dictionary_primary || partitionName == null || !hasRawValue(row)) {
+                return row;
+            }
         }
         int o = 0;
         long timestamp = UIO.bytesLong(row, o);
@@ -80,13 +149,31 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
         o += 4;
         byte[] pk = new byte[pkLength];
         UIO.readBytes(row, o, pk);
-        return toRow(toType, uncompress(fromType, pk), uncompress(fromType, value), timestamp, tombstone, version);
+        return toRow(partitionName, toType, uncompress(fromType, pk), uncompressValue(fromType, value), timestamp, tombstone, version);
+    }
+
+    /**
+     * @return the id of the dictionary the row's value was deflated with, or -1 if the row does not need one to be read
+     */
+    public long valueDictionaryId(RowType rowType, byte[] row) {
+        if (rowType != RowType.dictionary_primary) {
+            return -1;
+        }
+        int o = 8 + 1 + 8;
+        return UIO.bytesInt(row, o) > 0 ? RowCompressionDictionaries.dictionaryId(row, o + 4) : -1;
+    }
+
+    private static boolean hasRawValue(byte[] row) {
+        int o = 8 + 1 + 8;
+        return UIO.bytesInt(row, o) > 0 && row[o + 4] == RowCompressionDictionaries.RAW;
     }
 
     @Override
     public int maximumSizeInBytes(RowType rowType, int pkSizeInBytes, int valueSizeInBytes) {
         if (rowType == RowType.snappy_primary) {
             return 8 + 1 + 8 + 4 + Snappy.maxCompressedLength(valueSizeInBytes) + 4 + Snappy.maxCompressedLength(pkSizeInBytes);
+        } else if (rowType == RowType.dictionary_primary) {
+            return 8 + 1 + 8 + 4 + dictionaries.maximumSizeInBytes(valueSizeInBytes) + 4 + pkSizeInBytes;
         } else {
             return 8 + 1 + 8 + 4 + valueSizeInBytes + 4 + pkSizeInBytes;
         }
@@ -116,7 +203,7 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
                 o += 4;
                 byte[] pk = new byte[pkLength];
                 UIO.readBytes(row, o, pk);
-                return stream.stream(-1, fp, rowType, uncompress(rowType, pk), true, uncompress(rowType, value), timestamp, tombstone, version, row);
+                return stream.stream(-1, fp, rowType, uncompress(rowType, pk), true, uncompressValue(rowType, value), timestamp, tombstone, version, row);
             }),
             (txId, fp, rowType, prefix, key, hasValue, value, valueTimestamp, valueTombstoned, valueVersion, row)
                 -> fpKeyValueStream.stream(fp, rowType, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion));
@@ -146,7 +233,7 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
                 o += 4;
                 byte[] pk = new byte[pkLength];
                 UIO.readBytes(row, o, pk);
-                return stream.stream(txId, fp, rowType, uncompress(rowType, pk), true, uncompress(rowType, value), timestamp, tombstone, version, row);
+                return stream.stream(txId, fp, rowType, uncompress(rowType, pk), true, uncompressValue(rowType, value), timestamp, tombstone, version, row);
             }),
             (txId, fp, rowType, prefix, key, hasValue, value, valueTimestamp, valueTombstoned, valueVersion, row)
                 -> txKeyValueStream.stream(txId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion).wantsMore());
@@ -176,7 +263,7 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
                 o += 4;
                 byte[] pk = new byte[pkLength];
                 UIO.readBytes(row, o, pk);
-                return stream.stream(txId, fp, rowType, uncompress(rowType, pk), true, uncompress(rowType, value), timestamp, tombstone, version, row);
+                return stream.stream(txId, fp, rowType, uncompress(rowType, pk), true, uncompressValue(rowType, value), timestamp, tombstone, version, row);
             }),
             (txId, fp, rowType, prefix, key, hasValue, value, valueTimestamp, valueTombstoned, valueVersion, row)
                 -> txKeyValueStream.row(txId, key, value, valueTimestamp, valueTombstoned, valueVersion));
@@ -206,7 +293,7 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
                 o += 4;
                 byte[] pk = new byte[pkLength];
                 UIO.readBytes(row, o, pk);
-                return txFpRawKeyValueEntryStream.stream(txId, fp, rowType, uncompress(rowType, pk), true, uncompress(rowType, value),
+                return txFpRawKeyValueEntryStream.stream(txId, fp, rowType, uncompress(rowType, pk), true, uncompressValue(rowType, value),
                     timestamp, tombstone, version, row);
             }),
             txFpKeyValueStream);
@@ -222,7 +309,7 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
             value = new byte[valueLength];
             UIO.readBytes(row, o, value);
         }
-        return uncompress(rowType, value);
+        return uncompressValue(rowType, value);
     }
 
     @Override
@@ -240,8 +327,22 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
         return UIO.bytesLong(row, offset + 8 + 1);
     }
 
+    private byte[] compressValue(PartitionName partitionName, RowType rowType, byte[] value) throws IOException {
+        if (rowType == RowType.dictionary_primary) {
+            return dictionaries.compress(partitionName, value);
+        }
+        return compress(rowType, value);
+    }
+
+    private byte[] uncompressValue(RowType rowType, byte[] value) throws Exception {
+        if (rowType == RowType.dictionary_primary) {
+            return dictionaries.uncompress(value);
+        }
+        return uncompress(rowType, value);
+    }
+
     private byte[] compress(RowType rowType, byte[] bytes) throws IOException {
-        if (rowType == RowType.primary) {
+        if (rowType == RowType.primary || rowType == RowType.dictionary_primary) {
             return bytes;
         } else if (rowType == RowType.snappy_primary) {
             if (bytes != null) {
@@ -254,7 +355,7 @@ public class BinaryPrimaryRowMarshaller implements PrimaryRowMarshaller {
     }
 
     private byte[] uncompress(RowType rowType, byte[] bytes) throws IOException {
-        if (rowType == RowType.primary) {
+        if (rowType == RowType.primary || rowType == RowType.dictionary_primary) {
             return bytes;
         } else if (rowType == RowType.snappy_primary) {
             if (bytes != null) {
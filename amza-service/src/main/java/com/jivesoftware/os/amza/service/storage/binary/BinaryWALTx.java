@@ -5,9 +5,12 @@ import com.google.common.collect.Sets;
 import com.jivesoftware.os.amza.api.AmzaVersionConstants;
 import com.jivesoftware.os.amza.api.CompareTimestampVersions;
 import com.jivesoftware.os.amza.api.IoStats;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.PerformanceProfile;
 import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.api.scan.CompactableWALIndex;
 import com.jivesoftware.os.amza.api.scan.CompactionWALIndex;
+import com.jivesoftware.os.amza.api.scan.SnapshotWALIndex;
 import com.jivesoftware.os.amza.api.stream.RowType;
 import com.jivesoftware.os.amza.api.wal.PrimaryRowMarshaller;
 import com.jivesoftware.os.amza.api.wal.RowIO;
@@ -35,9 +38,10 @@ public class BinaryWALTx implements WALTx {
     private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
 
     private static final String SUFFIX = ".kvt";
-    private static final int NUM_PERMITS = 1024;
+    private static final int NUM_PERMITS = PerformanceProfile.MAX_CONCURRENCY;
 
     private final Semaphore compactionLock = new Semaphore(NUM_PERMITS, true);
+    private volatile int permitsPerOperation = 1;
     private final String name;
     private final PrimaryRowMarshaller primaryRowMarshaller;
     private final int updatesBetweenLeaps;
@@ -77,45 +81,54 @@ public class BinaryWALTx implements WALTx {
         return ioProvider.sizeInBytes(key, name);
     }
 
+    @Override
+    public void setConcurrency(int concurrency) {
+        permitsPerOperation = PerformanceProfile.permitsPerOperation(concurrency);
+    }
+
     @Override
     public <R> R tx(Tx<R> tx) throws Exception {
-        compactionLock.acquire();
+        int permits = permitsPerOperation;
+        compactionLock.acquire(permits);
         try {
             return tx.tx(rowIO);
         } finally {
-            compactionLock.release();
+            compactionLock.release(permits);
         }
     }
 
     @Override
     public <R> R readFromTransactionId(long sinceTransactionId, WALReadWithOffset<R> readWithOffset) throws Exception {
-        compactionLock.acquire();
+        int permits = permitsPerOperation;
+        compactionLock.acquire(permits);
         try {
             RowIO io = rowIO;
             long offset = io.getInclusiveStartOfRow(sinceTransactionId);
             return readWithOffset.read(offset, io);
         } finally {
-            compactionLock.release();
+            compactionLock.release(permits);
         }
     }
 
     @Override
     public long length() throws Exception {
-        compactionLock.acquire();
+        int permits = permitsPerOperation;
+        compactionLock.acquire(permits);
         try {
             return rowIO.sizeInBytes();
         } finally {
-            compactionLock.release();
+            compactionLock.release(permits);
         }
     }
 
     @Override
     public void flush(boolean fsync) throws Exception {
-        compactionLock.acquire();
+        int permits = permitsPerOperation;
+        compactionLock.acquire(permits);
         try {
             rowIO.flush(fsync);
         } finally {
-            compactionLock.release();
+            compactionLock.release(permits);
         }
     }
 
@@ -140,7 +153,13 @@ public class BinaryWALTx implements WALTx {
             initIO(baseKey);
 
             I walIndex = walIndexProvider.createIndex(versionedPartitionName, maxValueSizeInIndex, stripe);
-            if (!walIndex.exists()) {
+            if (walIndex instanceof SnapshotWALIndex && ((SnapshotWALIndex) walIndex).getSnapshotTxId() != -1) {
+                SnapshotWALIndex snapshotWALIndex = (SnapshotWALIndex) walIndex;
+                if (!replayIndexTail(ioStats, versionedPartitionName, snapshotWALIndex)) {
+                    snapshotWALIndex.discardSnapshot();
+                    rebuildIndex(ioStats, versionedPartitionName, walIndex, true);
+                }
+            } else if (!walIndex.exists()) {
                 rebuildIndex(ioStats, versionedPartitionName, walIndex, true);
             }
 
@@ -194,6 +213,44 @@ public class BinaryWALTx implements WALTx {
         compactableWALIndex.commit(fsync);
     }
 
+    /**
+     * Tops up an index loaded from a snapshot with the WAL rows written after the snapshot's txId.
+     *
+     * @return false if the WAL no longer contains the snapshot's txId, in which case the snapshot cannot be trusted
+     */
+    private boolean replayIndexTail(IoStats ioStats, VersionedPartitionName versionedPartitionName, SnapshotWALIndex snapshotWALIndex) throws Exception {
+        long snapshotTxId = snapshotWALIndex.getSnapshotTxId();
+        long offset = rowIO.getInclusiveStartOfRow(snapshotTxId);
+        boolean[] found = { false };
+        MutableLong replayed = new MutableLong();
+        snapshotWALIndex.merge(
+            stream -> primaryRowMarshaller.fromRows(
+                txFpRowStream -> {
+                    return rowIO.scan(ioStats, offset, true, (rowPointer, rowTxId, rowType, row) -> {
+                        if (rowTxId == snapshotTxId) {
+                            found[0] = true;
+                        }
+                        if (rowType.isPrimary() && rowTxId > snapshotTxId) {
+                            return txFpRowStream.stream(rowTxId, rowPointer, rowType, row);
+                        }
+                        return true;
+                    });
+                },
+                (txId, fp, rowType, prefix, key, hasValue, value, valueTimestamp, valueTombstoned, valueVersion, row) -> {
+                    replayed.increment();
+                    return stream.stream(txId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion, fp);
+                }),
+            null);
+
+        if (!found[0]) {
+            LOG.warn("Snapshot for {} covers txId:{} which is missing from the WAL, rebuilding", versionedPartitionName, snapshotTxId);
+            return false;
+        }
+        LOG.info("Replayed ({}) rows after snapshot txId:{} for {}", replayed.longValue(), snapshotTxId, versionedPartitionName);
+        snapshotWALIndex.commit(true);
+        return true;
+    }
+
     private void initIO(File baseKey) throws Exception {
         if (rowIO == null) {
             File key = ioProvider.versionedKey(baseKey, AmzaVersionConstants.LATEST_VERSION);
@@ -221,7 +278,9 @@ public class BinaryWALTx implements WALTx {
         File key = ioProvider.versionedKey(baseKey, AmzaVersionConstants.LATEST_VERSION);
         compactionLock.acquire(NUM_PERMITS);
         try {
-            rowIO.close();
+            if (rowIO != null) {
+                rowIO.close();
+            }
             File compactingKey = ioProvider.buildKey(key, "compacting");
             File backupKey = ioProvider.buildKey(key, "backup");
             ioProvider.delete(key, name);
@@ -232,6 +291,19 @@ public class BinaryWALTx implements WALTx {
         }
     }
 
+    @Override
+    public void close() throws Exception {
+        compactionLock.acquire(NUM_PERMITS);
+        try {
+            if (rowIO != null) {
+                rowIO.close();
+                rowIO = null;
+            }
+        } finally {
+            compactionLock.release(NUM_PERMITS);
+        }
+    }
+
     @Override
     public void hackTruncation(int numBytes) {
         rowIO.hackTruncation(numBytes);
@@ -242,12 +314,15 @@ public class BinaryWALTx implements WALTx {
         WALCompactionStats compactionStats,
         File fromBaseKey,
         File toBaseKey,
+        PartitionName partitionName,
         RowType compactToRowType,
         long tombstoneTimestampId,
         long tombstoneVersion,
         long ttlTimestampId,
         long ttlVersion,
         long disposalVersion,
+        long archiveTimestampId,
+        Archiver archiver,
         I compactableWALIndex,
         int stripe) throws Exception {
 
@@ -278,12 +353,14 @@ public class BinaryWALTx implements WALTx {
         MutableLong tombstoneCount = new MutableLong();
         MutableLong ttlCount = new MutableLong();
         MutableLong disposalCount = new MutableLong();
+        MutableLong archiveCount = new MutableLong();
         MutableLong flushTxId = new MutableLong(-1);
 
         byte[] carryOverEndOfMerge = null;
 
         long endOfLastRow;
-        compactionLock.acquire();
+        int permits = permitsPerOperation;
+        compactionLock.acquire(permits);
         try {
             long prevEndOfLastRow = 0;
             endOfLastRow = rowIO.getEndOfLastRow();
@@ -294,6 +371,7 @@ public class BinaryWALTx implements WALTx {
                     compactionStats.add("compact", 1);
                     compactionStats.start("compact-" + compactionPass);
                     carryOverEndOfMerge = compact(ioStats,
+                        partitionName,
                         compactToRowType,
                         prevEndOfLastRow,
                         endOfLastRow,
@@ -310,12 +388,15 @@ public class BinaryWALTx implements WALTx {
                         tombstoneCount,
                         ttlCount,
                         disposalCount,
+                        archiveCount,
                         flushTxId,
                         tombstoneTimestampId,
                         tombstoneVersion,
                         ttlTimestampId,
                         ttlVersion,
                         disposalVersion,
+                        archiveTimestampId,
+                        archiver,
                         null);
                 } catch (Exception x) {
                     LOG.error("Failure while compacting fromKey:{} -> toKey:{} name:{} from:{} to:{}",
@@ -331,7 +412,7 @@ public class BinaryWALTx implements WALTx {
                 compactionPass++;
             }
         } finally {
-            compactionLock.release();
+            compactionLock.release(permits);
         }
 
         long finalEndOfLastRow = endOfLastRow;
@@ -346,6 +427,7 @@ public class BinaryWALTx implements WALTx {
                 compactionStats.start("completion-compact-" + completionPass[0]);
                 try {
                     compact(ioStats,
+                        partitionName,
                         compactToRowType,
                         finalEndOfLastRow,
                         Long.MAX_VALUE,
@@ -362,13 +444,19 @@ public class BinaryWALTx implements WALTx {
                         tombstoneCount,
                         ttlCount,
                         disposalCount,
+                        archiveCount,
                         flushTxId,
                         tombstoneTimestampId,
                         tombstoneVersion,
                         ttlTimestampId,
                         ttlVersion,
                         disposalVersion,
+                        archiveTimestampId,
+                        archiver,
                         endOfMerge);
+                    if (archiver != null) {
+                        archiver.flush();
+                    }
                 } finally {
                     compactionStats.stop("completion-compact-" + completionPass[0]);
                 }
@@ -442,6 +530,7 @@ public class BinaryWALTx implements WALTx {
                     tombstoneCount.longValue(),
                     ttlCount.longValue(),
                     disposalCount.longValue(),
+                    archiveCount.longValue(),
                     oldestTimestamp.longValue() == Long.MAX_VALUE ? -1 : oldestTimestamp.longValue(),
                     oldestVersion.longValue() == Long.MAX_VALUE ? -1 : oldestVersion.longValue(),
                     oldestTombstonedTimestamp.longValue() == Long.MAX_VALUE ? -1 : oldestTombstonedTimestamp.longValue(),
@@ -462,6 +551,7 @@ public class BinaryWALTx implements WALTx {
     }
 
     private byte[] compact(IoStats ioStats,
+        PartitionName partitionName,
         RowType compactToRowType,
         long startAtRow,
         long endOfLastRow,
@@ -478,12 +568,15 @@ public class BinaryWALTx implements WALTx {
         MutableLong tombstoneCount,
         MutableLong ttlCount,
         MutableLong disposalCount,
+        MutableLong archiveCount,
         MutableLong highestTxId,
         long tombstoneTimestampId,
         long tombstoneVersion,
         long ttlTimestampId,
         long ttlVersion,
         long disposalVersion,
+        long archiveTimestampId,
+        Archiver archiver,
         EndOfMerge endOfMerge) throws Exception {
 
         Preconditions.checkNotNull(compactableWALIndex, "If you don't have one use NoOpWALIndex.");
@@ -520,7 +613,7 @@ public class BinaryWALTx implements WALTx {
 
                     if (rowType.isPrimary()) {
                         highestTxId.setValue(Math.max(highestTxId.longValue(), rowTxId));
-                        byte[] convertedRow = primaryRowMarshaller.convert(rowType, row, compactToRowType);
+                        byte[] convertedRow = primaryRowMarshaller.convert(partitionName, rowType, row, compactToRowType);
                         if (!txFpRowStream.stream(rowTxId, rowFP, compactToRowType, convertedRow)) {
                             return false;
                         }
@@ -539,11 +632,21 @@ public class BinaryWALTx implements WALTx {
                         if ((pointerFp == -1 && !hasValue1)
                             || CompareTimestampVersions.compare(valueTimestamp, valueVersion, pointerTimestamp, pointerVersion) >= 0) {
                             if (valueTombstoned && (valueTimestamp < tombstoneTimestampId || valueVersion < tombstoneVersion)) {
-                                tombstoneCount.increment();
+                                if (archiver != null) {
+                                    // the archive may still hold an older value for the key, so the tombstone has to shadow it there until an
+                                    // archive merge folds both away
+                                    archiver.archive(txId, compactToRowType, prefix, key, valueTimestamp, valueTombstoned, valueVersion, row);
+                                    archiveCount.increment();
+                                } else {
+                                    tombstoneCount.increment();
+                                }
                             } else if (valueTimestamp < ttlTimestampId || valueVersion < ttlVersion) {
                                 ttlCount.increment();
                             } else if (valueVersion < disposalVersion) {
                                 disposalCount.increment();
+                            } else if (archiver != null && valueTimestamp < archiveTimestampId) {
+                                archiver.archive(txId, compactToRowType, prefix, key, valueTimestamp, valueTombstoned, valueVersion, row);
+                                archiveCount.increment();
                             } else {
                                 estimatedSizeInBytes.add(row.length);
                                 oldestTimestamp.setValue(Math.min(valueTimestamp, oldestTimestamp.longValue()));
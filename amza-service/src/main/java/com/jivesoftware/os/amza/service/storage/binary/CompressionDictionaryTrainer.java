@@ -0,0 +1,94 @@
+package com.jivesoftware.os.amza.service.storage.binary;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds a deflate preset dictionary from sampled values. Counts how many samples each 8 byte gram appears in, then greedily takes
+ * the segments around the most common grams which are not already covered. Deflate favors short distances so the most common
+ * segments end up at the tail of the dictionary.
+ */
+class CompressionDictionaryTrainer {
+
+    private static final int GRAM = 8;
+    private static final int SEGMENT = 64;
+
+    private CompressionDictionaryTrainer() {
+    }
+
+    static byte[] train(List<byte[]> samples, int maxSizeInBytes) {
+        // [samplesContaining, sampleIndex, offset, lastSampleIndex]
+        Map<Long, int[]> grams = new HashMap<>();
+        for (int s = 0; s < samples.size(); s++) {
+            byte[] sample = samples.get(s);
+            for (int i = 0; i + GRAM <= sample.length; i++) {
+                long hash = hash(sample, i);
+                int[] gram = grams.get(hash);
+                if (gram == null) {
+                    grams.put(hash, new int[] { 1, s, i, s });
+                } else if (gram[3] != s) {
+                    gram[0]++;
+                    gram[3] = s;
+                }
+            }
+        }
+
+        List<int[]> candidates = new ArrayList<>();
+        for (int[] gram : grams.values()) {
+            if (gram[0] > 1) {
+                candidates.add(gram);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        candidates.sort((a, b) -> Integer.compare(b[0], a[0]));
+
+        Set<Long> covered = new HashSet<>();
+        List<byte[]> segments = new ArrayList<>();
+        int size = 0;
+        for (int[] candidate : candidates) {
+            if (size >= maxSizeInBytes) {
+                break;
+            }
+            byte[] sample = samples.get(candidate[1]);
+            if (covered.contains(hash(sample, candidate[2]))) {
+                continue;
+            }
+            int start = Math.max(0, candidate[2] - SEGMENT / 4);
+            int end = Math.min(sample.length, start + SEGMENT);
+            for (int i = start; i + GRAM <= end; i++) {
+                covered.add(hash(sample, i));
+            }
+            byte[] segment = new byte[end - start];
+            System.arraycopy(sample, start, segment, 0, segment.length);
+            segments.add(segment);
+            size += segment.length;
+        }
+
+        byte[] dictionary = new byte[Math.min(size, maxSizeInBytes)];
+        int o = dictionary.length;
+        for (byte[] segment : segments) {
+            int length = Math.min(o, segment.length);
+            o -= length;
+            System.arraycopy(segment, segment.length - length, dictionary, o, length);
+            if (o == 0) {
+                break;
+            }
+        }
+        return dictionary;
+    }
+
+    private static long hash(byte[] bytes, int offset) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + GRAM; i++) {
+            hash ^= bytes[i];
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
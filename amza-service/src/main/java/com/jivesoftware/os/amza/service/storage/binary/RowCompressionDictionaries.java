@@ -0,0 +1,296 @@
+package com.jivesoftware.os.amza.service.storage.binary;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per partition deflate dictionaries for {@link com.jivesoftware.os.amza.api.stream.RowType#dictionary_primary}. Values written before a
+ * partition has a dictionary are sampled, and once enough have been seen a dictionary is trained in the background and saved to the
+ * {@link DictionaryStore}. Until then values are written raw. Dictionaries are immutable and addressed by id, so rows written against
+ * an older dictionary stay readable after a partition is retrained.
+ * <p>
+ * Encoded value layout: codec byte, then either the raw value, or dictionary id (8), uncompressed length (4), deflated bytes and a
+ * trailing pad byte which nowrap inflaters require.
+ */
+public class RowCompressionDictionaries {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    public interface DictionaryStore {
+
+        byte[] load(long dictionaryId) throws Exception;
+
+        /**
+         * @return the id of the dictionary new rows for this partition should use, or -1 if the partition has none
+         */
+        long currentDictionaryId(PartitionName partitionName) throws Exception;
+
+        void save(PartitionName partitionName, long dictionaryId, byte[] dictionary) throws Exception;
+    }
+
+    static final byte RAW = 0;
+    static final byte DEFLATED = 1;
+    private static final int DEFLATED_HEADER = 1 + 8 + 4;
+
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private final int samplesPerDictionary;
+    private final int maxSampleSizeInBytes;
+    private final int maxDictionarySizeInBytes;
+    private final DictionaryStore store;
+    private final Cache<PartitionName, PartitionDictionary> partitions;
+    private final Cache<Long, byte[]> dictionaries;
+    private final ExecutorService trainer;
+
+    /**
+     * @param store   nullable store dictionaries are saved to and loaded from, without one every value is written raw
+     * @param trainer nullable executor dictionaries are trained on, without one every value is written raw
+     */
+    public RowCompressionDictionaries(DictionaryStore store,
+        int samplesPerDictionary,
+        int maxSampleSizeInBytes,
+        int maxDictionarySizeInBytes,
+        long maxCachedDictionaryBytes,
+        int maxPartitions,
+        ExecutorService trainer) {
+        this.store = store;
+        this.samplesPerDictionary = samplesPerDictionary;
+        this.maxSampleSizeInBytes = maxSampleSizeInBytes;
+        this.maxDictionarySizeInBytes = maxDictionarySizeInBytes;
+        this.trainer = trainer;
+        // an evicted partition reloads its current dictionary from the store on its next write
+        this.partitions = CacheBuilder.newBuilder()
+            .maximumSize(maxPartitions)
+            .build();
+        this.dictionaries = CacheBuilder.newBuilder()
+            .maximumWeight(maxCachedDictionaryBytes)
+            .weigher((Long key, byte[] value) -> value.length)
+            .build();
+    }
+
+    public byte[] compress(PartitionName partitionName, byte[] value) throws IOException {
+        if (value == null) {
+            return null;
+        }
+        Dictionary dictionary = partitionName == null ? null : dictionary(partitionName, value);
+        if (dictionary != null) {
+            Deflater deflater = DEFLATERS.get();
+            deflater.reset();
+            deflater.setDictionary(dictionary.bytes);
+            deflater.setInput(value);
+            deflater.finish();
+            byte[] compressed = new byte[DEFLATED_HEADER + value.length];
+            int o = DEFLATED_HEADER;
+            while (!deflater.finished() && o < compressed.length - 1) {
+                o += deflater.deflate(compressed, o, compressed.length - 1 - o);
+            }
+            if (deflater.finished()) {
+                compressed[0] = DEFLATED;
+                UIO.longBytes(dictionary.id, compressed, 1);
+                UIO.intBytes(value.length, compressed, 1 + 8);
+                byte[] bytes = new byte[o + 1];
+                System.arraycopy(compressed, 0, bytes, 0, o);
+                return bytes;
+            }
+        }
+        byte[] bytes = new byte[1 + value.length];
+        bytes[0] = RAW;
+        System.arraycopy(value, 0, bytes, 1, value.length);
+        return bytes;
+    }
+
+    public byte[] uncompress(byte[] bytes) throws Exception {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes[0] == RAW) {
+            byte[] value = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, value, 0, value.length);
+            return value;
+        } else if (bytes[0] != DEFLATED) {
+            throw new IOException("Unsupported value codec:" + bytes[0]);
+        }
+
+        long dictionaryId = UIO.bytesLong(bytes, 1);
+        byte[] value = new byte[UIO.bytesInt(bytes, 1 + 8)];
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setDictionary(get(dictionaryId));
+        inflater.setInput(bytes, DEFLATED_HEADER, bytes.length - DEFLATED_HEADER);
+        try {
+            int o = 0;
+            while (o < value.length) {
+                int inflated = inflater.inflate(value, o, value.length - o);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated value for dictionary:" + dictionaryId);
+                }
+                o += inflated;
+            }
+        } catch (DataFormatException x) {
+            throw new IOException("Corrupt value for dictionary:" + dictionaryId, x);
+        }
+        return value;
+    }
+
+    public int maximumSizeInBytes(int valueSizeInBytes) {
+        return 1 + valueSizeInBytes;
+    }
+
+    /**
+     * @return the id of the dictionary an encoded value was deflated with, or -1 if it is raw
+     */
+    public static long dictionaryId(byte[] bytes, int offset) {
+        return bytes[offset] == DEFLATED ? UIO.bytesLong(bytes, offset + 1) : -1;
+    }
+
+    /**
+     * @return the dictionary for the given id, loading it from the store if it is not cached
+     */
+    public byte[] dictionary(long dictionaryId) throws Exception {
+        return get(dictionaryId);
+    }
+
+    /**
+     * Caches a dictionary which arrived ahead of the rows deflated with it, so they can be read before the dictionary's system row is
+     * replicated to the store.
+     */
+    public void learn(long dictionaryId, byte[] dictionary) {
+        dictionaries.put(dictionaryId, dictionary);
+    }
+
+    private byte[] get(long dictionaryId) throws Exception {
+        try {
+            return dictionaries.get(dictionaryId, () -> {
+                byte[] dictionary = store == null ? null : store.load(dictionaryId);
+                if (dictionary == null) {
+                    // most likely the dictionary row has not been replicated to us yet
+                    throw new IllegalStateException("Unknown compression dictionary:" + dictionaryId);
+                }
+                return dictionary;
+            });
+        } catch (ExecutionException | UncheckedExecutionException x) {
+            throw x.getCause() instanceof Exception ? (Exception) x.getCause() : x;
+        }
+    }
+
+    private Dictionary dictionary(PartitionName partitionName, byte[] value) {
+        if (store == null || trainer == null) {
+            return null;
+        }
+        PartitionDictionary partition = partitions.asMap().computeIfAbsent(partitionName, key -> new PartitionDictionary());
+        Dictionary dictionary = partition.dictionary;
+        if (dictionary != null) {
+            return dictionary;
+        }
+        if (!partition.abandoned) {
+            boolean ready = partition.sample(value, samplesPerDictionary, maxSampleSizeInBytes);
+            if ((!partition.loaded || ready) && partition.resolving.compareAndSet(false, true)) {
+                trainer.submit(() -> resolve(partitionName, partition));
+            }
+        }
+        return null;
+    }
+
+    private void resolve(PartitionName partitionName, PartitionDictionary partition) {
+        try {
+            if (!partition.loaded) {
+                long dictionaryId = store.currentDictionaryId(partitionName);
+                if (dictionaryId != -1) {
+                    partition.dictionary = new Dictionary(dictionaryId, get(dictionaryId));
+                    partition.clearSamples();
+                }
+                partition.loaded = true;
+            }
+            if (partition.dictionary != null) {
+                return;
+            }
+            List<byte[]> samples = partition.drainSamples(samplesPerDictionary, maxSampleSizeInBytes);
+            if (samples == null) {
+                return;
+            }
+            byte[] dictionary = CompressionDictionaryTrainer.train(samples, maxDictionarySizeInBytes);
+            if (dictionary == null || dictionary.length == 0) {
+                LOG.info("Values for {} have nothing in common, skipping dictionary", partitionName);
+                partition.abandoned = true;
+                return;
+            }
+            long dictionaryId = Hashing.sha256().newHasher()
+                .putBytes(partitionName.toBytes())
+                .putBytes(dictionary)
+                .hash()
+                .asLong();
+            store.save(partitionName, dictionaryId, dictionary);
+            dictionaries.put(dictionaryId, dictionary);
+            partition.dictionary = new Dictionary(dictionaryId, dictionary);
+            LOG.info("Trained {} byte dictionary:{} for {} from {} samples", dictionary.length, dictionaryId, partitionName, samples.size());
+        } catch (Exception x) {
+            LOG.warn("Failed to resolve compression dictionary for {}", new Object[] { partitionName }, x);
+        } finally {
+            partition.resolving.set(false);
+        }
+    }
+
+    private static class Dictionary {
+
+        private final long id;
+        private final byte[] bytes;
+
+        private Dictionary(long id, byte[] bytes) {
+            this.id = id;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class PartitionDictionary {
+
+        private final AtomicBoolean resolving = new AtomicBoolean();
+        private volatile boolean loaded;
+        private volatile boolean abandoned;
+        private volatile Dictionary dictionary;
+
+        private final List<byte[]> samples = new ArrayList<>();
+        private long sampledBytes;
+
+        synchronized boolean sample(byte[] value, int samplesPerDictionary, int maxSampleSizeInBytes) {
+            if (samples.size() < samplesPerDictionary && sampledBytes + value.length <= maxSampleSizeInBytes) {
+                samples.add(value);
+                sampledBytes += value.length;
+            }
+            return ready(samplesPerDictionary, maxSampleSizeInBytes);
+        }
+
+        private boolean ready(int samplesPerDictionary, int maxSampleSizeInBytes) {
+            return samples.size() >= samplesPerDictionary || sampledBytes >= maxSampleSizeInBytes / 2;
+        }
+
+        synchronized List<byte[]> drainSamples(int samplesPerDictionary, int maxSampleSizeInBytes) {
+            if (!ready(samplesPerDictionary, maxSampleSizeInBytes)) {
+                return null;
+            }
+            List<byte[]> drained = new ArrayList<>(samples);
+            clearSamples();
+            return drained;
+        }
+
+        synchronized void clearSamples() {
+            samples.clear();
+            sampledBytes = 0;
+        }
+    }
+}
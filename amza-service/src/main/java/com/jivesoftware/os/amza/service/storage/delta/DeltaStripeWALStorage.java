@@ -11,8 +11,10 @@ import com.jivesoftware.os.amza.api.CompareTimestampVersions;
 import com.jivesoftware.os.amza.api.DeltaOverCapacityException;
 import com.jivesoftware.os.amza.api.IoStats;
 import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.Durability;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.amza.api.partition.PerformanceProfile;
 import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.api.scan.RangeScannable;
 import com.jivesoftware.os.amza.api.scan.RowStream;
@@ -348,6 +350,15 @@ public class DeltaStripeWALStorage {
     }
 
     private boolean txPartitionDelta(VersionedPartitionName versionedPartitionName, PartitionDeltaTx tx) throws Exception {
+        return txPartitionDelta(versionedPartitionName, null, tx);
+    }
+
+    /**
+     * @param properties decides the layout and profile of a delta created by this call, null picks the defaults and leaves it to the next merge
+     */
+    private boolean txPartitionDelta(VersionedPartitionName versionedPartitionName,
+        PartitionProperties properties,
+        PartitionDeltaTx tx) throws Exception {
         PartitionDelta partitionDelta;
         synchronized (partitionDeltas) {
             partitionDelta = partitionDeltas.get(versionedPartitionName);
@@ -356,8 +367,10 @@ public class DeltaStripeWALStorage {
                 if (wal == null) {
                     throw new IllegalStateException("Delta WAL is currently unavailable.");
                 }
+                boolean lazyOrdered = properties != null && properties.resolveLazyOrderedDelta();
+                PerformanceProfile performanceProfile = properties != null ? properties.resolvePerformanceProfile() : PerformanceProfile.standard;
                 partitionDelta = partitionDeltas.computeIfAbsent(versionedPartitionName,
-                    vpn -> new PartitionDelta(versionedPartitionName, wal, maxValueSizeInIndex, null));
+                    vpn -> new PartitionDelta(versionedPartitionName, wal, maxValueSizeInIndex, lazyOrdered, performanceProfile, null));
             }
             partitionDelta.acquire();
         }
@@ -448,7 +461,13 @@ public class DeltaStripeWALStorage {
                         if (mergeableDelta.needsToMerge()) {
                             long mergeableCount = mergeableDelta.size();
                             unmerged.addAndGet(mergeableCount);
-                            PartitionDelta currentDelta = new PartitionDelta(versionedPartitionName, newDeltaWAL, maxValueSizeInIndex, mergeableDelta);
+                            PartitionProperties properties = deltaProperties(versionedPartitionProvider, versionedPartitionName);
+                            PartitionDelta currentDelta = new PartitionDelta(versionedPartitionName,
+                                newDeltaWAL,
+                                maxValueSizeInIndex,
+                                properties != null ? properties.resolveLazyOrderedDelta() : mergeableDelta.isLazyOrdered(),
+                                properties != null ? properties.resolvePerformanceProfile() : mergeableDelta.getPerformanceProfile(),
+                                mergeableDelta);
                             entry.setValue(currentDelta);
                             mergeable.incrementAndGet();
                             futures.add(mergeDeltaThreads.submit(() -> {
@@ -546,6 +565,19 @@ public class DeltaStripeWALStorage {
         return true;
     }
 
+    /**
+     * @return the properties which shape the next delta for a partition, or null to carry over the shape of the delta being merged
+     */
+    private static PartitionProperties deltaProperties(VersionedPartitionProvider versionedPartitionProvider,
+        VersionedPartitionName versionedPartitionName) {
+        try {
+            return versionedPartitionProvider.getProperties(versionedPartitionName.getPartitionName());
+        } catch (Exception x) {
+            LOG.warn("Keeping delta layout for {} without properties", versionedPartitionName);
+            return null;
+        }
+    }
+
     private void parkSick(String message, Exception x) {
         sickThreads.sick(x);
         LOG.error(message
@@ -713,7 +745,7 @@ public class DeltaStripeWALStorage {
             if (apply.isEmpty()) {
                 rowsChanged[0] = new RowsChanged(versionedPartitionName, Collections.emptyMap(), removes, clobbers, -1, -1, index);
             } else {
-                txPartitionDelta(versionedPartitionName, delta -> {
+                txPartitionDelta(versionedPartitionName, partitionStore.getProperties(), delta -> {
                     WALHighwater partitionHighwater = null;
                     if (delta.shouldWriteHighwater()) {
                         partitionHighwater = highwaterStorage.getPartitionHighwater(versionedPartitionName, false);
@@ -774,6 +806,51 @@ public class DeltaStripeWALStorage {
         }
     }
 
+    /**
+     * Writes straight into the partition's storage, skipping the delta WAL and the later merge. Only possible while the delta holds nothing
+     * for the partition, otherwise reads and takes would see storage rows out of order with the delta, in which case nothing is consumed and
+     * null is returned so the caller can fall back to {@link #update}. Every writer on the stripe is held off for the duration, so the updates
+     * should already be local and no bigger than a batch, see {@link com.jivesoftware.os.amza.service.SpooledClientUpdates#batches}, and
+     * larger loads call this once per batch. The rows are closed off with an end of merge marker and an index commit, as a delta merge would,
+     * so a restart neither truncates nor replays them.
+     */
+    public RowsChanged bulkLoad(VersionedPartitionName versionedPartitionName,
+        PartitionStore partitionStore,
+        byte[] prefix,
+        Commitable updates,
+        WALUpdated updated) throws Exception {
+
+        writeAcquireAll();
+        try {
+            boolean[] empty = { false };
+            txPartitionDelta(versionedPartitionName, delta -> {
+                empty[0] = delta.lowestTxId() == -1;
+                return true;
+            });
+            if (!empty[0]) {
+                amzaStats.bulkLoadFallbacks.increment();
+                return null;
+            }
+
+            PartitionProperties properties = partitionStore.getProperties();
+            RowsChanged changes = partitionStore.merge(true, properties, -1, prefix, updates);
+            if (changes != null && changes.getLargestCommittedTxId() != -1) {
+                long txId = changes.getLargestCommittedTxId();
+                WALStorage walStorage = partitionStore.getWalStorage();
+                walStorage.endOfMergeMarker(amzaStats.mergeIoStats, -1, txId);
+                // nothing went through the delta WAL so the partition's own WAL is the only durable copy
+                partitionStore.flush(properties.durability == Durability.fsync_always);
+                walStorage.commitIndex(true, txId);
+                highwaterStorage.setLocal(versionedPartitionName, txId);
+                updated.updated(versionedPartitionName, txId);
+            }
+            amzaStats.bulkLoads.increment();
+            return changes;
+        } finally {
+            writeReleaseAll();
+        }
+    }
+
     public boolean takeRowsFromTransactionId(IoStats ioStats,
         VersionedPartitionName versionedPartitionName,
         WALStorage storage,
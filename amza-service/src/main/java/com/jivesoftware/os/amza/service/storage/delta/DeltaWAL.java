@@ -2,6 +2,7 @@ package com.jivesoftware.os.amza.service.storage.delta;
 
 import com.jivesoftware.os.amza.api.IoStats;
 import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.api.scan.RowStream;
 import com.jivesoftware.os.amza.api.stream.FpKeyValueHighwaterStream;
@@ -166,7 +167,13 @@ public class DeltaWAL implements WALRowHydrator, Comparable<DeltaWAL> {
                         for (KeyValueHighwater kvh : keyValueHighwaters) {
                             byte[] pk = WALKey.compose(versionedPartitionName.toBytes(), WALKey.compose(kvh.prefix, kvh.key));
                             byte[] value = appendHighwaterHints(kvh.value, highwaterRowMarshaller.toBytes(kvh.highwater));
-                            byte[] row = primaryRowMarshaller.toRow(rowType, pk, value, kvh.valueTimestamp, kvh.valueTombstone, kvh.valueVersion);
+                            byte[] row = primaryRowMarshaller.toRow(versionedPartitionName.getPartitionName(),
+                                rowType,
+                                pk,
+                                value,
+                                kvh.valueTimestamp,
+                                kvh.valueTombstone,
+                                kvh.valueVersion);
                             if (!rowStream.stream(row)) {
                                 return false;
                             }
@@ -205,7 +212,7 @@ public class DeltaWAL implements WALRowHydrator, Comparable<DeltaWAL> {
         boolean consume(TxFpsStream txFpsStream) throws Exception;
     }
 
-    boolean takeRows(IoStats ioStats, ConsumeTxFps consumeTxFps, RowStream rowStream) throws Exception {
+    boolean takeRows(IoStats ioStats, PartitionName partitionName, ConsumeTxFps consumeTxFps, RowStream rowStream) throws Exception {
         return wal.tx(io -> primaryRowMarshaller.fromRows(
             txFpRowStream -> consumeTxFps.consume(txFps -> io.read(
                 ioStats,
@@ -222,7 +229,8 @@ public class DeltaWAL implements WALRowHydrator, Comparable<DeltaWAL> {
                 int o = 0;
                 byte[] valueValue = UIO.readByteArray(value, o, "value");
                 o += 4 + (valueValue == null ? 0 : valueValue.length);
-                byte[] deltaRow = primaryRowMarshaller.toRow(rowType,
+                byte[] deltaRow = primaryRowMarshaller.toRow(partitionName,
+                    rowType,
                     key,
                     valueValue,
                     valueTimestamp,
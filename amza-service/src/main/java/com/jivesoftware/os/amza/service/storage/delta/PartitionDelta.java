@@ -5,6 +5,7 @@ import com.google.common.collect.Maps;
 import com.google.common.primitives.Longs;
 import com.jivesoftware.os.amza.api.IoStats;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.amza.api.partition.PerformanceProfile;
 import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.api.scan.RowStream;
 import com.jivesoftware.os.amza.api.stream.FpKeyValueStream;
@@ -23,10 +24,12 @@ import com.jivesoftware.os.amza.service.take.HighwaterStorage;
 import com.jivesoftware.os.jive.utils.collections.bah.ConcurrentBAHash;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.util.AbstractMap;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -44,22 +47,43 @@ class PartitionDelta {
     private final VersionedPartitionName versionedPartitionName;
     private final DeltaWAL deltaWAL;
     private final int maxValueSizeInIndex;
+    private final boolean lazyOrdered;
     private final AtomicReference<PartitionDelta> mergingDelta;
 
     private final ConcurrentBAHash<WALPointer> pointerIndex = new ConcurrentBAHash<>(3, true, 4);
-    private final ConcurrentSkipListMap<byte[], WALPointer> orderedIndex = new ConcurrentSkipListMap<>(KeyUtil::compare);
+    // exactly one of these orders the delta, see PartitionProperties.lazyOrderedDelta
+    private final ConcurrentSkipListMap<byte[], WALPointer> orderedIndex;
+    private final AppendOnlyKeyLog keyLog;
+    private final Object sortedKeysLock = new Object();
+    private volatile SortedKeys sortedKeys;
     private final Map<WALPrefix, AppendOnlyConcurrentArrayList> prefixTxFpIndex = Maps.newConcurrentMap();
-    private final AppendOnlyConcurrentArrayList txIdWAL = new AppendOnlyConcurrentArrayList(11); //TODO expose to config
+    private final PerformanceProfile performanceProfile;
+    private final AppendOnlyConcurrentArrayList txIdWAL;
     private final AtomicLong updatesSinceLastHighwaterFlush = new AtomicLong();
 
     PartitionDelta(VersionedPartitionName versionedPartitionName,
         DeltaWAL deltaWAL,
         int maxValueSizeInIndex,
+        boolean lazyOrdered,
+        PerformanceProfile performanceProfile,
         PartitionDelta merging) {
         this.versionedPartitionName = versionedPartitionName;
         this.deltaWAL = deltaWAL;
         this.maxValueSizeInIndex = maxValueSizeInIndex;
+        this.lazyOrdered = lazyOrdered;
+        this.performanceProfile = performanceProfile;
+        this.txIdWAL = new AppendOnlyConcurrentArrayList(performanceProfile.deltaTxIdCapacity);
         this.mergingDelta = new AtomicReference<>(merging);
+        this.orderedIndex = lazyOrdered ? null : new ConcurrentSkipListMap<>(KeyUtil::compare);
+        this.keyLog = lazyOrdered ? new AppendOnlyKeyLog(16) : null;
+    }
+
+    boolean isLazyOrdered() {
+        return lazyOrdered;
+    }
+
+    PerformanceProfile getPerformanceProfile() {
+        return performanceProfile;
     }
 
     void acquire() {
@@ -222,15 +246,133 @@ class PartitionDelta {
             pointer = new WALPointer(fp, valueTimestamp, valueTombstone, valueVersion, false, null);
         }
         byte[] walKey = WALKey.compose(prefix, key);
-        pointerIndex.put(walKey, pointer);
-        orderedIndex.put(walKey, pointer);
+        if (lazyOrdered) {
+            // only new keys change the order, racing writers may log a key twice which the sort discards
+            boolean exists = pointerIndex.get(walKey) != null;
+            pointerIndex.put(walKey, pointer);
+            if (!exists) {
+                keyLog.add(walKey);
+            }
+        } else {
+            pointerIndex.put(walKey, pointer);
+            orderedIndex.put(walKey, pointer);
+        }
+    }
+
+    /**
+     * @return the keys of a lazily ordered delta in ascending order, sorted in bulk and cached until a write adds a key
+     */
+    private byte[][] sortedKeys() {
+        SortedKeys sorted = sortedKeys;
+        if (sorted != null && sorted.logLength == keyLog.length()) {
+            return sorted.keys;
+        }
+        // readers queue on their own lock so writers only ever wait on the key log for the snapshot, never for the sort
+        synchronized (sortedKeysLock) {
+            byte[][] keys = keyLog.snapshot();
+            sorted = sortedKeys;
+            if (sorted != null && sorted.logLength == keys.length) {
+                return sorted.keys;
+            }
+            int logLength = keys.length;
+            Arrays.sort(keys, KeyUtil::compare);
+            int distinct = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (distinct == 0 || KeyUtil.compare(keys[distinct - 1], keys[i]) != 0) {
+                    keys[distinct] = keys[i];
+                    distinct++;
+                }
+            }
+            keys = distinct == keys.length ? keys : Arrays.copyOf(keys, distinct);
+            sortedKeys = new SortedKeys(logLength, keys);
+            return keys;
+        }
+    }
+
+    private Iterator<Map.Entry<byte[], WALPointer>> entries(byte[] from, byte[] to) {
+        if (!lazyOrdered) {
+            return subMap(orderedIndex, from, to).entrySet().iterator();
+        }
+        byte[][] keys = sortedKeys();
+        if (from != null && to != null && KeyUtil.compare(from, to) > 0) {
+            // descending, from inclusive and to exclusive
+            return new SortedKeysIterator(keys, ceiling(keys, from, true) - 1, ceiling(keys, to, true) - 1, -1);
+        }
+        int start = from == null ? 0 : ceiling(keys, from, false);
+        int end = to == null ? keys.length : ceiling(keys, to, false);
+        return new SortedKeysIterator(keys, start, end, 1);
+    }
+
+    /**
+     * @return the index of the first key greater than or equal to the given key, or when strictly greater than the given key
+     */
+    private static int ceiling(byte[][] keys, byte[] key, boolean strictlyGreater) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int c = KeyUtil.compare(keys[mid], key);
+            if (c < 0 || (strictlyGreater && c == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private class SortedKeysIterator implements Iterator<Map.Entry<byte[], WALPointer>> {
+
+        private final byte[][] keys;
+        private final int end;
+        private final int step;
+        private int index;
+
+        private SortedKeysIterator(byte[][] keys, int start, int end, int step) {
+            this.keys = keys;
+            this.index = start;
+            this.end = end;
+            this.step = step;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return step > 0 ? index < end : index > end;
+        }
+
+        @Override
+        public Map.Entry<byte[], WALPointer> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            byte[] key = keys[index];
+            index += step;
+            try {
+                // pointers are never removed from a delta, so the latest pointer for every logged key is always present
+                return new AbstractMap.SimpleImmutableEntry<>(key, pointerIndex.get(key));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while iterating delta", e);
+            }
+        }
+    }
+
+    private static class SortedKeys {
+
+        private final int logLength;
+        private final byte[][] keys;
+
+        private SortedKeys(int logLength, byte[][] keys) {
+            this.logLength = logLength;
+            this.keys = keys;
+        }
     }
 
     private final AtomicBoolean firstAndOnlyOnce = new AtomicBoolean(true);
 
     boolean shouldWriteHighwater() {
         long got = updatesSinceLastHighwaterFlush.get();
-        if (got > 1000) { // TODO expose to partition config
+        if (got > performanceProfile.deltaUpdatesBetweenHighwaters) {
             updatesSinceLastHighwaterFlush.set(0);
             return true;
         } else {
@@ -241,7 +383,9 @@ class PartitionDelta {
     boolean keys(WALKeyPointerStream keyPointerStream) throws Exception {
         return WALKey.decompose(
             txFpRawKeyValueEntryStream -> {
-                for (Map.Entry<byte[], WALPointer> entry : orderedIndex.entrySet()) {
+                Iterator<Map.Entry<byte[], WALPointer>> entries = entries(null, null);
+                while (entries.hasNext()) {
+                    Map.Entry<byte[], WALPointer> entry = entries.next();
                     WALPointer pointer = entry.getValue();
                     if (!txFpRawKeyValueEntryStream.stream(-1,
                         pointer.getFp(),
@@ -265,12 +409,12 @@ class PartitionDelta {
     DeltaPeekableElmoIterator rangeScanIterator(byte[] fromPrefix, byte[] fromKey, byte[] toPrefix, byte[] toKey, boolean hydrateValues) {
         byte[] from = fromKey != null ? WALKey.compose(fromPrefix, fromKey) : null;
         byte[] to = toKey != null ? WALKey.compose(toPrefix, toKey) : null;
-        Iterator<Map.Entry<byte[], WALPointer>> iterator = subMap(orderedIndex, from, to).entrySet().iterator();
+        Iterator<Map.Entry<byte[], WALPointer>> iterator = entries(from, to);
         Iterator<Map.Entry<byte[], WALPointer>> mergingIterator = Iterators.emptyIterator();
         DeltaWAL mergingDeltaWAL = null;
         PartitionDelta mergingPartitionDelta = acquireMerging();
         if (mergingPartitionDelta != null) {
-            mergingIterator = subMap(mergingPartitionDelta.orderedIndex, from, to).entrySet().iterator();
+            mergingIterator = mergingPartitionDelta.entries(from, to);
             mergingDeltaWAL = mergingPartitionDelta.deltaWAL;
         }
         return new DeltaPeekableElmoIterator(iterator, mergingIterator, deltaWAL, mergingDeltaWAL, hydrateValues);
@@ -281,7 +425,8 @@ class PartitionDelta {
             if (KeyUtil.compare(from, to) <= 0) {
                 return index.subMap(from, to);
             } else {
-                return index.subMap(from, to).descendingMap();
+                // descending, from inclusive and to exclusive
+                return index.descendingMap().subMap(from, true, to, false);
             }
         } else if (from != null) {
             return index.tailMap(from, true);
@@ -293,12 +438,12 @@ class PartitionDelta {
     }
 
     DeltaPeekableElmoIterator rowScanIterator(boolean hydrateValues) {
-        Iterator<Map.Entry<byte[], WALPointer>> iterator = orderedIndex.entrySet().iterator();
+        Iterator<Map.Entry<byte[], WALPointer>> iterator = entries(null, null);
         Iterator<Map.Entry<byte[], WALPointer>> mergingIterator = Iterators.emptyIterator();
         DeltaWAL mergingDeltaWAL = null;
         PartitionDelta mergingPartitionDelta = acquireMerging();
         if (mergingPartitionDelta != null) {
-            mergingIterator = mergingPartitionDelta.orderedIndex.entrySet().iterator();
+            mergingIterator = mergingPartitionDelta.entries(null, null);
             mergingDeltaWAL = mergingPartitionDelta.deltaWAL;
         }
         return new DeltaPeekableElmoIterator(iterator, mergingIterator, deltaWAL, mergingDeltaWAL, hydrateValues);
@@ -413,7 +558,7 @@ class PartitionDelta {
             return true;
         }
 
-        return deltaWAL.takeRows(ioStats, txFpsStream -> txIdWAL.streamFromTxId(transactionId, false, txFpsStream), rowStream);
+        return deltaWAL.takeRows(ioStats, versionedPartitionName.getPartitionName(), txFpsStream -> txIdWAL.streamFromTxId(transactionId, false, txFpsStream), rowStream);
     }
 
     public boolean takeRowsFromTransactionId(IoStats ioStats, byte[] prefix, long transactionId, RowStream rowStream) throws Exception {
@@ -433,7 +578,7 @@ class PartitionDelta {
             return true;
         }
 
-        return deltaWAL.takeRows(ioStats, txFpsStream -> prefixTxFps.streamFromTxId(transactionId, false, txFpsStream), rowStream);
+        return deltaWAL.takeRows(ioStats, versionedPartitionName.getPartitionName(), txFpsStream -> prefixTxFps.streamFromTxId(transactionId, false, txFpsStream), rowStream);
     }
 
     public static class MergeResult {
@@ -488,7 +633,12 @@ class PartitionDelta {
                     }
                     long highestTxId = partitionStore.highestTxId();
                     LOG.info("Merging ({}) deltas for partition: {} from tx: {}", merge.pointerIndex.size(), merge.versionedPartitionName, highestTxId);
-                    LOG.debug("Merging keys: {}", merge.orderedIndex.keySet());
+                    if (merge.lazyOrdered) {
+                        // the merging delta no longer takes writes, so sort it once up front for every range scan that runs during the merge
+                        merge.sortedKeys();
+                    } else {
+                        LOG.debug("Merging keys: {}", merge.orderedIndex.keySet());
+                    }
                     MutableBoolean eos = new MutableBoolean(false);
 
                     PartitionStore mergeToStore = partitionStore;
@@ -511,7 +661,7 @@ class PartitionDelta {
                                     },
                                     (fp, rowType, prefix, key, value, valueTimestamp, valueTombstone, valueVersion, highwater) -> {
                                         // prefix is the partitionName and is discarded
-                                        WALPointer pointer = merge.orderedIndex.get(key);
+                                        WALPointer pointer = merge.pointerIndex.get(key);
                                         if (pointer == null) {
                                             throw new RuntimeException("Delta WAL missing"
                                                 + " prefix: " + Arrays.toString(prefix)
@@ -553,6 +703,38 @@ class PartitionDelta {
         return new MergeResult(partitionStore, versionedPartitionName, walIndex, merged, lastTxId);
     }
 
+    private static class AppendOnlyKeyLog {
+
+        private volatile byte[][] array;
+        private volatile int length;
+
+        AppendOnlyKeyLog(int initialCapacity) {
+            this.array = new byte[Math.max(initialCapacity, 1)][];
+        }
+
+        void add(byte[] key) {
+            synchronized (this) {
+                if (length == array.length) {
+                    array = Arrays.copyOf(array, array.length * 2);
+                }
+                array[length] = key;
+                length++;
+            }
+        }
+
+        int length() {
+            synchronized (this) {
+                return length;
+            }
+        }
+
+        byte[][] snapshot() {
+            synchronized (this) {
+                return Arrays.copyOf(array, length);
+            }
+        }
+    }
+
     private static final Comparator<TxFps> txFpsComparator = (o1, o2) -> Longs.compare(o1.txId, o2.txId);
 
     private static class AppendOnlyConcurrentArrayList {
@@ -0,0 +1,74 @@
+package com.jivesoftware.os.amza.service.storage.sketch;
+
+/**
+ * Counts distinct 64 bit hashes in a fixed 1KB of registers, with a standard error of about 3%. Two logs merge by taking the larger of each
+ * register, so the estimate of a merge is the estimate of the union.
+ */
+public class HyperLogLog {
+
+    private static final int PRECISION = 10;
+    private static final int REGISTERS = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - PRECISION));
+        // the guard bit caps the run of zeros when the remaining bits are all zero
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // linear counting is far more accurate while most registers are still empty
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    int sizeInLongs() {
+        return REGISTERS / 8;
+    }
+
+    int write(long[] longs, int offset) {
+        for (int i = 0; i < REGISTERS; i += 8) {
+            long packed = 0;
+            for (int j = 0; j < 8; j++) {
+                packed = (packed << 8) | (registers[i + j] & 0xFF);
+            }
+            longs[offset++] = packed;
+        }
+        return offset;
+    }
+
+    int read(long[] longs, int offset) {
+        for (int i = 0; i < REGISTERS; i += 8) {
+            long packed = longs[offset++];
+            for (int j = 7; j >= 0; j--) {
+                registers[i + j] = (byte) (packed & 0xFF);
+                packed >>>= 8;
+            }
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,139 @@
+package com.jivesoftware.os.amza.service.storage.sketch;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.jivesoftware.os.amza.api.partition.PartitionStatistics;
+import com.jivesoftware.os.amza.api.partition.PartitionStatistics.HotPrefix;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The streaming sketches a partition keeps over the rows it takes: distinct prefixes, key and value size distributions, value timestamps for
+ * row ages, and the most written prefixes. Sketches describe the write stream rather than the live rows, so they survive compaction, and any
+ * two merge into the sketches of the combined stream. They are carried in the end of merge marker so a reload picks up where it left off.
+ */
+public class PartitionSketches {
+
+    private static final long SKETCH_VERSION = 1;
+    private static final int QUANTILE_K = 64;
+    private static final int TOP_PREFIXES = 16;
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 1.0 };
+    private static final HashFunction PREFIX_HASH = Hashing.murmur3_128();
+
+    private final HyperLogLog prefixes = new HyperLogLog();
+    private final QuantileSketch keySizes = new QuantileSketch(QUANTILE_K);
+    private final QuantileSketch valueSizes = new QuantileSketch(QUANTILE_K);
+    private final QuantileSketch timestamps = new QuantileSketch(QUANTILE_K);
+    private final TopPrefixes topPrefixes = new TopPrefixes(TOP_PREFIXES);
+
+    /**
+     * Accounts for the prefix of a batch of rows, which is cheaper than once per row since an update carries a single prefix.
+     */
+    public synchronized void prefix(byte[] prefix, int numRows) {
+        if (prefix != null && numRows > 0) {
+            prefixes.add(PREFIX_HASH.hashBytes(prefix).asLong());
+            topPrefixes.add(prefix, numRows);
+        }
+    }
+
+    public synchronized void row(byte[] key, byte[] value, long valueTimestamp, boolean valueTombstoned) {
+        keySizes.add(key.length);
+        if (!valueTombstoned) {
+            valueSizes.add(value == null ? 0 : value.length);
+        }
+        timestamps.add(valueTimestamp);
+    }
+
+    public void merge(PartitionSketches other) {
+        // copied outside our lock so two sketches merging into each other cannot deadlock
+        PartitionSketches copy = other.copy();
+        synchronized (this) {
+            prefixes.merge(copy.prefixes);
+            keySizes.merge(copy.keySizes);
+            valueSizes.merge(copy.valueSizes);
+            timestamps.merge(copy.timestamps);
+            topPrefixes.merge(copy.topPrefixes);
+        }
+    }
+
+    /**
+     * Halves the prefix write counts, called on compaction so the hot prefixes favor recent writes.
+     */
+    public synchronized void decay() {
+        topPrefixes.decay();
+    }
+
+    public synchronized PartitionSketches copy() {
+        PartitionSketches copy = new PartitionSketches();
+        long[] longs = toLongs();
+        copy.read(longs, 0);
+        return copy;
+    }
+
+    public synchronized PartitionStatistics statistics() {
+        long newestTimestamp = timestamps.quantile(1.0);
+        long[] rowAges = new long[QUANTILES.length];
+        for (int i = 0; i < QUANTILES.length; i++) {
+            // the age a fraction of rows are younger than is the timestamp that same fraction of rows are newer than
+            long timestamp = timestamps.quantile(1.0 - QUANTILES[i]);
+            rowAges[i] = timestamp == -1 ? -1 : newestTimestamp - timestamp;
+        }
+        List<HotPrefix> hotPrefixes = new ArrayList<>();
+        for (TopPrefixes.Counter counter : topPrefixes.top()) {
+            hotPrefixes.add(new HotPrefix(counter.prefix, counter.count(), counter.error()));
+        }
+        return new PartitionStatistics(keySizes.count(),
+            prefixes.estimate(),
+            QUANTILES.clone(),
+            quantiles(keySizes),
+            quantiles(valueSizes),
+            rowAges,
+            newestTimestamp,
+            hotPrefixes);
+    }
+
+    private static long[] quantiles(QuantileSketch sketch) {
+        long[] quantiles = new long[QUANTILES.length];
+        for (int i = 0; i < QUANTILES.length; i++) {
+            quantiles[i] = sketch.quantile(QUANTILES[i]);
+        }
+        return quantiles;
+    }
+
+    public synchronized long[] toLongs() {
+        long[] longs = new long[1
+            + prefixes.sizeInLongs()
+            + keySizes.sizeInLongs()
+            + valueSizes.sizeInLongs()
+            + timestamps.sizeInLongs()
+            + topPrefixes.sizeInLongs()];
+        int offset = 0;
+        longs[offset++] = SKETCH_VERSION;
+        offset = prefixes.write(longs, offset);
+        offset = keySizes.write(longs, offset);
+        offset = valueSizes.write(longs, offset);
+        offset = timestamps.write(longs, offset);
+        topPrefixes.write(longs, offset);
+        return longs;
+    }
+
+    /**
+     * @return the sketches written by {@link #toLongs()} at the given offset, or empty sketches if there are none or they are from another version
+     */
+    public static PartitionSketches fromLongs(long[] longs, int offset) {
+        PartitionSketches sketches = new PartitionSketches();
+        if (offset < longs.length && longs[offset] == SKETCH_VERSION) {
+            sketches.read(longs, offset);
+        }
+        return sketches;
+    }
+
+    private void read(long[] longs, int offset) {
+        offset++;
+        offset = prefixes.read(longs, offset);
+        offset = keySizes.read(longs, offset);
+        offset = valueSizes.read(longs, offset);
+        offset = timestamps.read(longs, offset);
+        topPrefixes.read(longs, offset);
+    }
+}
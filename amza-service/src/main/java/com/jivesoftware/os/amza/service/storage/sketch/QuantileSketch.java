@@ -0,0 +1,198 @@
+package com.jivesoftware.os.amza.service.storage.sketch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A KLL style quantile sketch over longs. Values land in level zero, and a full level is sorted and every other value is promoted to the level
+ * above with twice the weight. Lower levels get geometrically smaller capacities, so the sketch holds roughly {@code 3 * k} values no matter
+ * how many were added, and answers any quantile to within a couple of percent of rank. Two sketches merge by concatenating their levels.
+ */
+public class QuantileSketch {
+
+    private static final int MIN_LEVEL_CAPACITY = 8;
+    private static final double LEVEL_DECAY = 2.0 / 3.0;
+
+    private final int k;
+    private final List<long[]> levels = new ArrayList<>();
+    private final List<Integer> levelSizes = new ArrayList<>();
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private boolean promoteOdd;
+
+    public QuantileSketch(int k) {
+        this.k = k;
+        addLevel();
+    }
+
+    public void add(long value) {
+        append(0, value);
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        if (retained() >= capacity()) {
+            compress();
+        }
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        for (int level = 0; level < other.levels.size(); level++) {
+            while (levels.size() <= level) {
+                addLevel();
+            }
+            long[] items = other.levels.get(level);
+            for (int i = 0; i < other.levelSizes.get(level); i++) {
+                append(level, items[i]);
+            }
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        while (retained() >= capacity()) {
+            compress();
+        }
+    }
+
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @param fraction between 0 and 1
+     * @return the value at that rank, or -1 if nothing has been added
+     */
+    public long quantile(double fraction) {
+        if (count == 0) {
+            return -1;
+        }
+        if (fraction <= 0) {
+            return min;
+        }
+        if (fraction >= 1) {
+            return max;
+        }
+        long[][] weighted = new long[retained()][];
+        int n = 0;
+        for (int level = 0; level < levels.size(); level++) {
+            long[] items = levels.get(level);
+            for (int i = 0; i < levelSizes.get(level); i++) {
+                weighted[n++] = new long[] { items[i], 1L << level };
+            }
+        }
+        Arrays.sort(weighted, (a, b) -> Long.compare(a[0], b[0]));
+        double rank = fraction * count;
+        long cumulative = 0;
+        for (long[] valueWeight : weighted) {
+            cumulative += valueWeight[1];
+            if (cumulative >= rank) {
+                return valueWeight[0];
+            }
+        }
+        return max;
+    }
+
+    private void addLevel() {
+        levels.add(new long[MIN_LEVEL_CAPACITY]);
+        levelSizes.add(0);
+    }
+
+    private void append(int level, long value) {
+        long[] items = levels.get(level);
+        int size = levelSizes.get(level);
+        if (size == items.length) {
+            items = Arrays.copyOf(items, items.length * 2);
+            levels.set(level, items);
+        }
+        items[size] = value;
+        levelSizes.set(level, size + 1);
+    }
+
+    private int retained() {
+        int retained = 0;
+        for (int size : levelSizes) {
+            retained += size;
+        }
+        return retained;
+    }
+
+    private int capacity(int level) {
+        int depth = levels.size() - 1 - level;
+        return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(LEVEL_DECAY, depth)));
+    }
+
+    private int capacity() {
+        int capacity = 0;
+        for (int level = 0; level < levels.size(); level++) {
+            capacity += capacity(level);
+        }
+        return capacity;
+    }
+
+    private void compress() {
+        for (int level = 0; level < levels.size(); level++) {
+            if (levelSizes.get(level) >= capacity(level)) {
+                compact(level);
+                return;
+            }
+        }
+    }
+
+    private void compact(int level) {
+        if (level + 1 == levels.size()) {
+            addLevel();
+        }
+        long[] items = levels.get(level);
+        int size = levelSizes.get(level);
+        Arrays.sort(items, 0, size);
+        // an odd value out stays behind so the promoted pairs keep the total weight exact
+        int keep = size % 2;
+        int offset = promoteOdd ? 1 : 0;
+        promoteOdd = !promoteOdd;
+        for (int i = keep + offset; i < size; i += 2) {
+            append(level + 1, items[i]);
+        }
+        levelSizes.set(level, keep);
+    }
+
+    int sizeInLongs() {
+        return 4 + levels.size() + retained();
+    }
+
+    int write(long[] longs, int offset) {
+        longs[offset++] = count;
+        longs[offset++] = min;
+        longs[offset++] = max;
+        longs[offset++] = levels.size();
+        for (int level = 0; level < levels.size(); level++) {
+            int size = levelSizes.get(level);
+            longs[offset++] = size;
+            System.arraycopy(levels.get(level), 0, longs, offset, size);
+            offset += size;
+        }
+        return offset;
+    }
+
+    int read(long[] longs, int offset) {
+        count = longs[offset++];
+        min = longs[offset++];
+        max = longs[offset++];
+        int numLevels = (int) longs[offset++];
+        levels.clear();
+        levelSizes.clear();
+        for (int level = 0; level < numLevels; level++) {
+            int size = (int) longs[offset++];
+            levels.add(Arrays.copyOfRange(longs, offset, offset + Math.max(size, MIN_LEVEL_CAPACITY)));
+            levelSizes.add(size);
+            offset += size;
+        }
+        if (levels.isEmpty()) {
+            addLevel();
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,144 @@
+package com.jivesoftware.os.amza.service.storage.sketch;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space saving heavy hitters over prefixes. A new prefix evicts the least written one and inherits its count as error, so every prefix written
+ * more than {@code 1/capacity} of the time is guaranteed to be tracked. Counts are halved by {@link #decay()} so the heaviest prefixes
+ * follow the recent write rate rather than all time totals.
+ */
+public class TopPrefixes {
+
+    /**
+     * Longer prefixes are tracked by their leading bytes so a marker stays bounded.
+     */
+    static final int MAX_PREFIX_LENGTH = 256;
+
+    private final int capacity;
+    private final Map<ByteBuffer, Counter> counters = new HashMap<>();
+
+    public TopPrefixes(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public void add(byte[] prefix, long weight) {
+        add(Arrays.copyOf(prefix, Math.min(prefix.length, MAX_PREFIX_LENGTH)), weight, 0);
+    }
+
+    private void add(byte[] prefix, long weight, long error) {
+        ByteBuffer key = ByteBuffer.wrap(prefix);
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            counter.count += weight;
+            counter.error += error;
+        } else if (counters.size() < capacity) {
+            counters.put(key, new Counter(prefix, weight, error));
+        } else {
+            Counter evict = null;
+            for (Counter candidate : counters.values()) {
+                if (evict == null || candidate.count < evict.count) {
+                    evict = candidate;
+                }
+            }
+            counters.remove(ByteBuffer.wrap(evict.prefix));
+            counters.put(key, new Counter(prefix, evict.count + weight, evict.count + error));
+        }
+    }
+
+    public void merge(TopPrefixes other) {
+        for (Counter counter : other.counters.values()) {
+            add(counter.prefix, counter.count, counter.error);
+        }
+    }
+
+    public void decay() {
+        counters.values().removeIf(counter -> {
+            counter.count >>>= 1;
+            counter.error >>>= 1;
+            return counter.count == 0;
+        });
+    }
+
+    /**
+     * @return the tracked prefixes, heaviest first
+     */
+    public List<Counter> top() {
+        List<Counter> top = new ArrayList<>(counters.size());
+        for (Counter counter : counters.values()) {
+            top.add(new Counter(counter.prefix, counter.count, counter.error));
+        }
+        top.sort((a, b) -> Long.compare(b.count, a.count));
+        return top;
+    }
+
+    int sizeInLongs() {
+        int size = 1;
+        for (Counter counter : counters.values()) {
+            size += 3 + (counter.prefix.length + 7) / 8;
+        }
+        return size;
+    }
+
+    int write(long[] longs, int offset) {
+        longs[offset++] = counters.size();
+        for (Counter counter : counters.values()) {
+            longs[offset++] = counter.count;
+            longs[offset++] = counter.error;
+            longs[offset++] = counter.prefix.length;
+            ByteBuffer packed = ByteBuffer.wrap(Arrays.copyOf(counter.prefix, (counter.prefix.length + 7) / 8 * 8));
+            while (packed.hasRemaining()) {
+                longs[offset++] = packed.getLong();
+            }
+        }
+        return offset;
+    }
+
+    int read(long[] longs, int offset) {
+        counters.clear();
+        int size = (int) longs[offset++];
+        for (int i = 0; i < size; i++) {
+            long count = longs[offset++];
+            long error = longs[offset++];
+            int length = (int) longs[offset++];
+            ByteBuffer packed = ByteBuffer.allocate((length + 7) / 8 * 8);
+            while (packed.hasRemaining()) {
+                packed.putLong(longs[offset++]);
+            }
+            byte[] prefix = Arrays.copyOf(packed.array(), length);
+            counters.put(ByteBuffer.wrap(prefix), new Counter(prefix, count, error));
+        }
+        return offset;
+    }
+
+    public static class Counter {
+
+        public final byte[] prefix;
+        long count;
+        long error;
+
+        Counter(byte[] prefix, long count, long error) {
+            this.prefix = prefix;
+            this.count = count;
+            this.error = error;
+        }
+
+        /**
+         * @return an upper bound on the writes to this prefix
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * @return how much of the count may belong to prefixes this one evicted
+         */
+        public long error() {
+            return error;
+        }
+    }
+}
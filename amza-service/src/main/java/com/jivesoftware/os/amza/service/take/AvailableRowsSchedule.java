@@ -0,0 +1,141 @@
+package com.jivesoftware.os.amza.service.take;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Decides which partitions an available rows session looks at on each pass. A partition is looked at on the first pass after it is dirtied,
+ * or once a revisit it asked for comes due. Everything is swept when the sweep interval elapses or the sweep generation moves, as a safety
+ * net for anything which was never dirtied. Partitions may be dirtied from any thread, everything else belongs to the session's thread.
+ */
+class AvailableRowsSchedule {
+
+    private static final Comparator<Revisit> REVISIT_COMPARATOR = (o1, o2) -> Long.compare(o1.atMillis, o2.atMillis);
+
+    private final long fullSweepIntervalMillis;
+
+    private final Object dirtyLock = new Object();
+    private Set<VersionedPartitionName> dirtySet;
+
+    private final PriorityQueue<Revisit> revisits = new PriorityQueue<>(REVISIT_COMPARATOR);
+    private final Map<VersionedPartitionName, Long> revisitAtMillis = Maps.newHashMap();
+    private long lastSweepMillis;
+    private long lastSweepGeneration = -1;
+
+    AvailableRowsSchedule(long fullSweepIntervalMillis) {
+        this.fullSweepIntervalMillis = fullSweepIntervalMillis;
+    }
+
+    void dirty(VersionedPartitionName versionedPartitionName) {
+        synchronized (dirtyLock) {
+            if (dirtySet == null) {
+                dirtySet = Sets.newHashSet();
+            }
+            dirtySet.add(versionedPartitionName);
+        }
+    }
+
+    /**
+     * Schedules a partition to be looked at again, keeping whichever revisit is due first if it already has one.
+     */
+    void revisit(VersionedPartitionName versionedPartitionName, long atMillis) {
+        Long existing = revisitAtMillis.get(versionedPartitionName);
+        if (existing == null || atMillis < existing) {
+            revisitAtMillis.put(versionedPartitionName, atMillis);
+            revisits.add(new Revisit(versionedPartitionName, atMillis));
+        }
+    }
+
+    /**
+     * Makes the next pass a sweep, for a session whose remote has reconnected and may have missed anything offered before.
+     */
+    void restart() {
+        lastSweepMillis = 0;
+        lastSweepGeneration = -1;
+    }
+
+    boolean isSweepDue(long nowMillis, long generation) {
+        return nowMillis - lastSweepMillis >= fullSweepIntervalMillis || generation != lastSweepGeneration;
+    }
+
+    /**
+     * Forgets dirtied partitions and pending revisits, since the sweep about to run looks at every partition anyway.
+     */
+    void sweeping(long generation) {
+        synchronized (dirtyLock) {
+            dirtySet = null;
+        }
+        revisits.clear();
+        revisitAtMillis.clear();
+        lastSweepGeneration = generation;
+    }
+
+    void swept(long nowMillis) {
+        lastSweepMillis = nowMillis;
+    }
+
+    /**
+     * @return the partitions dirtied since the last drain or sweep
+     */
+    Set<VersionedPartitionName> drainDirty() {
+        Set<VersionedPartitionName> drained;
+        synchronized (dirtyLock) {
+            drained = dirtySet;
+            dirtySet = null;
+        }
+        return drained == null ? Sets.newHashSet() : drained;
+    }
+
+    /**
+     * @return the number of revisits which were due and added to the given set
+     */
+    int drainRevisits(long nowMillis, Set<VersionedPartitionName> into) {
+        int count = 0;
+        while (!revisits.isEmpty() && revisits.peek().atMillis <= nowMillis) {
+            Revisit revisit = revisits.poll();
+            // otherwise the partition was rescheduled sooner, and this entry is stale
+            if (isCurrent(revisit)) {
+                revisitAtMillis.remove(revisit.versionedPartitionName);
+                into.add(revisit.versionedPartitionName);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return how long until the next revisit is due, at least 1, or Long.MAX_VALUE if there are none
+     */
+    long untilNextRevisit(long nowMillis) {
+        // stale entries would otherwise wake the session for nothing
+        while (!revisits.isEmpty() && !isCurrent(revisits.peek())) {
+            revisits.poll();
+        }
+        return revisits.isEmpty() ? Long.MAX_VALUE : Math.max(1, revisits.peek().atMillis - nowMillis);
+    }
+
+    private boolean isCurrent(Revisit revisit) {
+        Long atMillis = revisitAtMillis.get(revisit.versionedPartitionName);
+        return atMillis != null && atMillis == revisit.atMillis;
+    }
+
+    int pendingRevisits() {
+        return revisitAtMillis.size();
+    }
+
+    private static class Revisit {
+
+        private final VersionedPartitionName versionedPartitionName;
+        private final long atMillis;
+
+        private Revisit(VersionedPartitionName versionedPartitionName, long atMillis) {
+            this.versionedPartitionName = versionedPartitionName;
+            this.atMillis = atMillis;
+        }
+    }
+}
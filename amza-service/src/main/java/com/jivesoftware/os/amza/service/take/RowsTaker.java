@@ -19,6 +19,7 @@ import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.api.ring.RingHost;
 import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.api.scan.RowStream;
+import com.jivesoftware.os.amza.service.replication.ReplicationQoS.Throttle;
 import java.util.Map;
 
 public interface RowsTaker {
@@ -32,6 +33,21 @@ public interface RowsTaker {
         long remoteTxId,
         long localLeadershipToken,
         long limit,
+        Throttle throttle,
+        RowStream rowStream);
+
+    /**
+     * Takes the current state of the partition rather than its log. When the snapshot completes the other highwater marks include the
+     * remote member's own highwater as of the snapshot.
+     */
+    StreamingRowsResult snapshotStream(RingMember localRingMember,
+        RingMember remoteRingMember,
+        RingHost remoteRingHost,
+        VersionedPartitionName remoteVersionedPartitionName,
+        long takeSessionId,
+        long takeSharedKey,
+        long localLeadershipToken,
+        Throttle throttle,
         RowStream rowStream);
 
     class StreamingRowsResult {
@@ -2,7 +2,6 @@ package com.jivesoftware.os.amza.service.take;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jivesoftware.os.amza.api.filer.UIO;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
@@ -29,6 +28,7 @@ import com.jivesoftware.os.jive.utils.ordered.id.IdPacker;
 import com.jivesoftware.os.jive.utils.ordered.id.TimestampedOrderIdProvider;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import com.jivesoftware.os.mlogger.core.ValueType;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -59,6 +59,7 @@ public class TakeCoordinator {
     private final VersionedPartitionProvider versionedPartitionProvider;
 
     private final long cyaIntervalMillis;
+    private final long fullSweepIntervalMillis;
     private final long slowTakeInMillis;
     private final long systemReofferDeltaMillis;
     private final long reofferDeltaMillis;
@@ -71,6 +72,7 @@ public class TakeCoordinator {
     private final AtomicLong systemUpdates = new AtomicLong();
     private final AtomicLong stripedUpdates = new AtomicLong();
     private final AtomicLong cyaLock = new AtomicLong();
+    private final AtomicLong sweepGeneration = new AtomicLong();
 
     private final Map<SessionKey, Session> takeSessions = Maps.newConcurrentMap();
     private final AtomicBoolean running = new AtomicBoolean();
@@ -85,6 +87,7 @@ public class TakeCoordinator {
         IdPacker idPacker,
         VersionedPartitionProvider versionedPartitionProvider,
         long cyaIntervalMillis,
+        long fullSweepIntervalMillis,
         long slowTakeInMillis,
         long systemReofferDeltaMillis,
         long reofferDeltaMillis,
@@ -99,6 +102,7 @@ public class TakeCoordinator {
         this.idPacker = idPacker;
         this.versionedPartitionProvider = versionedPartitionProvider;
         this.cyaIntervalMillis = cyaIntervalMillis;
+        this.fullSweepIntervalMillis = fullSweepIntervalMillis;
         this.slowTakeInMillis = slowTakeInMillis;
         this.systemReofferDeltaMillis = systemReofferDeltaMillis;
         this.reofferDeltaMillis = reofferDeltaMillis;
@@ -141,11 +145,14 @@ public class TakeCoordinator {
                 while (running.get()) {
                     long updates = cyaLock.get();
                     try {
-                        systemRingCoordinator.cya(ringReader.getRing(AmzaRingReader.SYSTEM_RING, -1));
+                        if (systemRingCoordinator.cya(ringReader.getRing(AmzaRingReader.SYSTEM_RING, -1))) {
+                            sweepGeneration.incrementAndGet();
+                        }
                         takeRingCoordinators.stream((ringName, takeRingCoordinator) -> {
                             RingTopology ring = ringReader.getRing(ringName, 0);
                             if (takeRingCoordinator.cya(ring)) {
-                                // whatever
+                                // categories are derived from the ring, so every partition in it needs a fresh look
+                                sweepGeneration.incrementAndGet();
                                 awakeRemoteTakers(ring, true);
                                 awakeRemoteTakers(ring, false);
                             }
@@ -242,19 +249,16 @@ public class TakeCoordinator {
         }
 
         stats.updates(ringReader.getRingMember(), versionedPartitionName.getPartitionName(), 1, txId);
+        markDirty(system, versionedPartitionName);
+        awakeRemoteTakers(ring, system);
+    }
+
+    private void markDirty(boolean system, VersionedPartitionName versionedPartitionName) {
         for (Session session : takeSessions.values()) {
             if (system && session.system || !system && !session.system) {
-                synchronized (session.dirtySet) {
-                    Set<VersionedPartitionName> dirtySet = session.dirtySet.get();
-                    if (dirtySet == null) {
-                        dirtySet = Sets.newHashSet();
-                        session.dirtySet.set(dirtySet);
-                    }
-                    dirtySet.add(versionedPartitionName);
-                }
+                session.schedule.dirty(versionedPartitionName);
             }
         }
-        awakeRemoteTakers(ring, system);
     }
 
     public void stateChanged(AmzaRingReader ringReader, VersionedPartitionName versionedPartitionName) throws Exception {
@@ -303,6 +307,11 @@ public class TakeCoordinator {
         boolean stream(VersionedPartitionName versionedPartitionName, int category, long ringCallCount, long partitionCallCount) throws Exception;
     }
 
+    interface RevisitStream {
+
+        void revisit(VersionedPartitionName versionedPartitionName, long revisitInMillis);
+    }
+
     public boolean streamCategories(CategoryStream stream) throws Exception {
         if (!systemRingCoordinator.streamCategories(stream)) {
             return false;
@@ -370,6 +379,15 @@ public class TakeCoordinator {
         }
     }
 
+    private void awakeAllRemoteTakers(boolean system) {
+        Map<RingMember, Object> ringMembersLocks = system ? systemRingMembersLocks : stripedRingMembersLocks;
+        for (Object lock : ringMembersLocks.values()) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
     public void availableRowsStream(boolean system,
         AmzaRingReader ringReader,
         PartitionStripeProvider partitionStripeProvider,
@@ -383,7 +401,8 @@ public class TakeCoordinator {
 
 
         SessionKey sessionKey = new SessionKey(remoteRingMember, takeSessionId);
-        Session session = takeSessions.computeIfAbsent(sessionKey, sessionKey1 -> new Session(System.currentTimeMillis(), system, sharedKey));
+        Session session = takeSessions.computeIfAbsent(sessionKey, sessionKey1 -> new Session(System.currentTimeMillis(), system, sharedKey,
+            fullSweepIntervalMillis));
         synchronized (session.sessionThread) {
             session.sessionThread.set(Thread.currentThread());
         }
@@ -406,6 +425,13 @@ public class TakeCoordinator {
 
             long[] suggestedWaitInMillis = new long[] { Long.MAX_VALUE };
 
+            // partitions which asked to be looked at again after a delay, everything else waits to be dirtied
+            AvailableRowsSchedule schedule = session.schedule;
+            schedule.restart();
+            RevisitStream revisitStream = (versionedPartitionName, revisitInMillis) -> {
+                schedule.revisit(versionedPartitionName, System.currentTimeMillis() + revisitInMillis);
+            };
+
 
             AtomicLong electionCounter = new AtomicLong(-1);
             RingNameStream ringNameStream = (ringName, ringHash) -> {
@@ -422,7 +448,8 @@ public class TakeCoordinator {
                             remoteRingMember,
                             takeSessionId,
                             electionCounter,
-                            watchAvailableStream));
+                            watchAvailableStream,
+                            revisitStream));
                 }
                 return true;
             };
@@ -431,27 +458,51 @@ public class TakeCoordinator {
             Map<RingMember, Object> ringMembersLocks = system ? systemRingMembersLocks : stripedRingMembersLocks;
             Object lock = ringMembersLocks.computeIfAbsent(remoteRingMember, LOCK_CREATOR);
 
-            long lastScan = 0;
+            String metricPrefix = "takeCoordinator>" + (system ? "system" : "striped") + ">" + remoteRingMember.getMember();
+            long lastElection = 0;
             while (true) {
                 long initialUpdates = updates.get();
                 suggestedWaitInMillis[0] = Long.MAX_VALUE;
 
-                long timeSinceLastFullScan = System.currentTimeMillis() - lastScan;
                 long start = System.currentTimeMillis();
-                if (timeSinceLastFullScan >= heartbeatIntervalMillis) {
+                if (start - lastElection >= heartbeatIntervalMillis) {
                     electionCounter.set(reofferMaxElectionsPerHeartbeat);
+                    lastElection = start;
+                }
+
+                long generation = sweepGeneration.get();
+                if (schedule.isSweepDue(start, generation)) {
+                    // safety net, everything we care about should already have been dirtied or scheduled for a revisit
+                    schedule.sweeping(generation);
                     if (system) {
                         ringNameStream.stream(AmzaRingReader.SYSTEM_RING, systemRingHash);
                     } else {
                         ringReader.streamRingNames(remoteRingMember, 0, ringNameStream);
                     }
-                    lastScan = System.currentTimeMillis();
-                } else {
-                    Set<VersionedPartitionName> dirtySet;
-                    synchronized (session.dirtySet) {
-                        dirtySet = session.dirtySet.getAndSet(null);
+                    long lastScan = System.currentTimeMillis();
+                    schedule.swept(lastScan);
+
+                    long swept = 0;
+                    if (system) {
+                        swept = systemRingCoordinator.getPartitionCount();
+                    } else {
+                        long[] count = { 0 };
+                        takeRingCoordinators.stream((ringName, ringCoordinator) -> {
+                            count[0] += ringCoordinator.getPartitionCount();
+                            return true;
+                        });
+                        swept = count[0];
                     }
-                    if (dirtySet != null && !dirtySet.isEmpty()) {
+                    LOG.inc(metricPrefix + ">sweep>count", 1);
+                    LOG.inc(metricPrefix + ">sweep>elapsed", lastScan - start);
+                    LOG.inc(metricPrefix + ">sweep>partitions", swept);
+                } else {
+                    Set<VersionedPartitionName> dirtySet = schedule.drainDirty();
+                    int dirtyCount = dirtySet.size();
+                    int revisitCount = schedule.drainRevisits(start, dirtySet);
+                    LOG.inc(metricPrefix + ">dirty>partitions", dirtyCount);
+                    LOG.inc(metricPrefix + ">revisit>partitions", revisitCount);
+                    if (!dirtySet.isEmpty()) {
                         Semaphore dirtyRingsSemaphore = new Semaphore(Short.MAX_VALUE, true);
                         BAHash<List<VersionedPartitionName>> dirtyRings = new BAHash<>(
                             new BAHMapState<>(10, true, BAHMapState.NIL),
@@ -488,7 +539,8 @@ public class TakeCoordinator {
                                         takeSessionId,
                                         versionedPartitionNames,
                                         electionCounter,
-                                        watchAvailableStream));
+                                        watchAvailableStream,
+                                        revisitStream));
                             }
                             return true;
                         });
@@ -497,9 +549,10 @@ public class TakeCoordinator {
                 long elapsed = System.currentTimeMillis() - start;
 
                 int offerPower = offered.longValue() == 0 ? -1 : UIO.chunkPower(offered.longValue(), 0);
-                LOG.inc("takeCoordinator>" + (system ? "system" : "striped") + ">" + remoteRingMember.getMember() + ">count", 1);
-                LOG.inc("takeCoordinator>" + (system ? "system" : "striped") + ">" + remoteRingMember.getMember() + ">elapsed", elapsed);
-                LOG.inc("takeCoordinator>" + (system ? "system" : "striped") + ">" + remoteRingMember.getMember() + ">offered>" + offerPower, 1);
+                LOG.inc(metricPrefix + ">count", 1);
+                LOG.inc(metricPrefix + ">elapsed", elapsed);
+                LOG.inc(metricPrefix + ">offered>" + offerPower, 1);
+                LOG.set(ValueType.COUNT, metricPrefix + ">revisit>pending", schedule.pendingRevisits());
 
                 while (true) {
                     long currentOffer = offered.get();
@@ -514,6 +567,7 @@ public class TakeCoordinator {
                 }
                 session.lastPingTime.set(System.currentTimeMillis());
 
+                suggestedWaitInMillis[0] = Math.min(suggestedWaitInMillis[0], schedule.untilNextRevisit(System.currentTimeMillis()));
                 if (suggestedWaitInMillis[0] == Long.MAX_VALUE) {
                     suggestedWaitInMillis[0] = heartbeatIntervalMillis; // Hmmm
                 }
@@ -573,9 +627,14 @@ public class TakeCoordinator {
 
         Session session = takeSessions.get(new SessionKey(remoteRingMember, takeSessionId));
         if (session != null && session.sharedKey == sharedKey) {
-            TakeRingCoordinator ring = getCoordinator(versionedAquarium.getVersionedPartitionName());
-            if (ring != null) {
-                ring.rowsTaken(remoteRingMember, takeSessionId, txPartitionStripe, versionedAquarium, localTxId);
+            VersionedPartitionName versionedPartitionName = versionedAquarium.getVersionedPartitionName();
+            TakeRingCoordinator ring = getCoordinator(versionedPartitionName);
+            if (ring != null && ring.rowsTaken(remoteRingMember, takeSessionId, txPartitionStripe, versionedAquarium, localTxId)) {
+                // category moved so takers which were previously ineligible may now need an offer
+                boolean system = versionedPartitionName.getPartitionName().isSystemPartition();
+                markDirty(system, versionedPartitionName);
+                (system ? systemUpdates : stripedUpdates).incrementAndGet();
+                awakeAllRemoteTakers(system);
             }
             pongInternal(System.currentTimeMillis(), session);
             PartitionName partitionName = versionedAquarium.getVersionedPartitionName().getPartitionName();
@@ -620,7 +679,10 @@ public class TakeCoordinator {
             if (ringCoordinator != null) {
                 boolean system = versionedPartitionName.getPartitionName().isSystemPartition();
                 RingTopology ring = ringReader.getRing(ringName, system ? -1 : 0);
-                ringCoordinator.cya(ring);
+                if (ringCoordinator.cya(ring)) {
+                    sweepGeneration.incrementAndGet();
+                    awakeRemoteTakers(ring, system);
+                }
             }
         } else {
             LOG.warn("Ignored stale invalidate from:{} session:{} partition:{}", remoteRingMember, takeSessionId, versionedPartitionName);
@@ -671,12 +733,13 @@ public class TakeCoordinator {
         private final AtomicLong lastPingTime = new AtomicLong(-1);
         private final AtomicLong lastPongTime = new AtomicLong(-1);
         private final AtomicReference<Thread> sessionThread = new AtomicReference<>();
-        private final AtomicReference<Set<VersionedPartitionName>> dirtySet = new AtomicReference<>();
+        private final AvailableRowsSchedule schedule;
 
-        public Session(long startTime, boolean system, long sharedKey) {
+        public Session(long startTime, boolean system, long sharedKey, long fullSweepIntervalMillis) {
             this.startTime = startTime;
             this.system = system;
             this.sharedKey = sharedKey;
+            this.schedule = new AvailableRowsSchedule(fullSweepIntervalMillis);
         }
     }
 }
@@ -15,6 +15,7 @@ import com.jivesoftware.os.amza.service.ring.RingTopology;
 import com.jivesoftware.os.amza.service.storage.SystemWALStorage;
 import com.jivesoftware.os.amza.service.take.AvailableRowsTaker.AvailableStream;
 import com.jivesoftware.os.amza.service.take.TakeCoordinator.CategoryStream;
+import com.jivesoftware.os.amza.service.take.TakeCoordinator.RevisitStream;
 import com.jivesoftware.os.amza.service.take.TakeCoordinator.TookLatencyStream;
 import com.jivesoftware.os.jive.utils.ordered.id.IdPacker;
 import com.jivesoftware.os.jive.utils.ordered.id.TimestampedOrderIdProvider;
@@ -113,7 +114,8 @@ public class TakeRingCoordinator {
         RingMember ringMember,
         long takeSessionId,
         AtomicLong electionCounter,
-        AvailableStream availableStream) throws Exception {
+        AvailableStream availableStream,
+        RevisitStream revisitStream) throws Exception {
 
         callCount++;
         long suggestedWaitInMillis = Long.MAX_VALUE;
@@ -128,6 +130,7 @@ public class TakeRingCoordinator {
                 takeSessionId,
                 electionCounter,
                 availableStream,
+                revisitStream,
                 ring,
                 versionedPartitionName,
                 coordinator);
@@ -141,18 +144,23 @@ public class TakeRingCoordinator {
         long takeSessionId,
         List<VersionedPartitionName> versionedPartitionNames,
         AtomicLong electionCounter,
-        AvailableStream availableStream) throws Exception {
+        AvailableStream availableStream,
+        RevisitStream revisitStream) throws Exception {
 
         callCount++;
         long suggestedWaitInMillis = Long.MAX_VALUE;
         VersionedRing ring = versionedRing;
         for (VersionedPartitionName versionedPartitionName : versionedPartitionNames) {
             TakeVersionedPartitionCoordinator coordinator = partitionCoordinators.get(versionedPartitionName);
+            if (coordinator == null) {
+                continue;
+            }
             long timeout = streamPartitionCoordinator(partitionStripeProvider,
                 ringMember,
                 takeSessionId,
                 electionCounter,
                 availableStream,
+                revisitStream,
                 ring,
                 versionedPartitionName,
                 coordinator);
@@ -166,6 +174,7 @@ public class TakeRingCoordinator {
         long takeSessionId,
         AtomicLong electionCounter,
         AvailableStream availableStream,
+        RevisitStream revisitStream,
         VersionedRing ring,
         VersionedPartitionName versionedPartitionName,
         TakeVersionedPartitionCoordinator coordinator) throws Exception {
@@ -175,12 +184,16 @@ public class TakeRingCoordinator {
         PartitionProperties properties = coordinator.versionedPartitionProperties.properties;
         if (properties.replicated) {
             try {
-                return coordinator.availableRowsStream(partitionStripeProvider,
+                long timeout = coordinator.availableRowsStream(partitionStripeProvider,
                     takeSessionId,
                     ring,
                     ringMember,
                     electionCounter,
                     availableStream);
+                if (timeout != Long.MAX_VALUE) {
+                    revisitStream.revisit(versionedPartitionName, timeout);
+                }
+                return timeout;
             } catch (PartitionIsDisposedException e) {
                 LOG.warn("Partition {} was disposed when streaming available rows", versionedPartitionName);
                 partitionCoordinators.remove(versionedPartitionName);
@@ -195,7 +208,7 @@ public class TakeRingCoordinator {
         return Long.MAX_VALUE;
     }
 
-    void rowsTaken(RingMember remoteRingMember,
+    boolean rowsTaken(RingMember remoteRingMember,
         long takeSessionId,
         TxPartitionStripe txPartitionStripe,
         VersionedAquarium versionedAquarium,
@@ -203,7 +216,7 @@ public class TakeRingCoordinator {
         TakeVersionedPartitionCoordinator coordinator = partitionCoordinators.get(versionedAquarium.getVersionedPartitionName());
         if (coordinator != null) {
             PartitionProperties properties = versionedPartitionProvider.getProperties(coordinator.versionedPartitionName.getPartitionName());
-            coordinator.rowsTaken(takeSessionId,
+            return coordinator.rowsTaken(takeSessionId,
                 txPartitionStripe,
                 versionedAquarium,
                 versionedRing,
@@ -211,6 +224,7 @@ public class TakeRingCoordinator {
                 localTxId,
                 properties.replicated);
         }
+        return false;
     }
 
     private VersionedRing ensureVersionedRing(RingTopology ring) {
@@ -228,6 +242,10 @@ public class TakeRingCoordinator {
         return callCount;
     }
 
+    int getPartitionCount() {
+        return partitionCoordinators.size();
+    }
+
     boolean streamCategories(CategoryStream stream) throws Exception {
         for (TakeVersionedPartitionCoordinator partitionCoordinator : partitionCoordinators.values()) {
             long ringCallCount = getCallCount();
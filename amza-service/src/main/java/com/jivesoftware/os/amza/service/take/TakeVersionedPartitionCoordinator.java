@@ -208,6 +208,7 @@ public class TakeVersionedPartitionCoordinator {
             || isSufficientCategory) {
 
             boolean available = false;
+            boolean deferred = false;
             long reofferDelta = (isSystemPartition ? systemReofferDeltaMillis : reofferDeltaMillis);
             long reofferAfterTimeInMillis = System.currentTimeMillis() + reofferDelta;
 
@@ -241,6 +242,7 @@ public class TakeVersionedPartitionCoordinator {
                             session.reofferAtTimeInMillis = reofferAfterTimeInMillis;
                             session.steadyState = false;
                         } else {
+                            deferred = true;
                             break;
                         }
                     } else {
@@ -257,6 +259,9 @@ public class TakeVersionedPartitionCoordinator {
             if (available) {
                 availableStream.available(versionedPartitionName, highestTxId);
                 return reofferDelta;
+            } else if (deferred) {
+                // out of elections for this heartbeat, so come back rather than waiting on the next sweep
+                return reofferDelta;
             } else {
                 return Long.MAX_VALUE;
             }
@@ -289,7 +294,10 @@ public class TakeVersionedPartitionCoordinator {
         }
     }
 
-    void rowsTaken(long takeSessionId,
+    /**
+     * @return true if the category changed, in which case every session needs to be reoffered
+     */
+    boolean rowsTaken(long takeSessionId,
         TxPartitionStripe txPartitionStripe,
         VersionedAquarium versionedAquarium,
         VersionedRing versionedRing,
@@ -300,7 +308,7 @@ public class TakeVersionedPartitionCoordinator {
         lastTakenMillis = System.currentTimeMillis();
 
         if (expunged) {
-            return;
+            return false;
         }
 
         Session session = sessions.get(remoteRingMember);
@@ -329,7 +337,9 @@ public class TakeVersionedPartitionCoordinator {
                     wipe.steadyState = false;
                 }
             }
+            return true;
         }
+        return false;
     }
 
     //TODO call this?
@@ -0,0 +1,290 @@
+package com.jivesoftware.os.amza.service;
+
+import com.google.common.io.Files;
+import com.google.common.primitives.Longs;
+import com.jivesoftware.os.amza.api.LatencyHistogram;
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.ring.RingHost;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.ring.RingMemberAndHost;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.api.stream.TxKeyValueStream.TxResult;
+import com.jivesoftware.os.amza.api.take.TakeCursors;
+import com.jivesoftware.os.amza.api.wal.WALValue;
+import com.jivesoftware.os.amza.lab.pointers.LABPointerIndexWALIndexProvider;
+import com.jivesoftware.os.amza.service.AmzaTestCluster.AmzaNode;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmarks replication on a single box by running an {@link AmzaTestCluster} of N nodes in one JVM. Rows move between nodes through
+ * the in-memory take path of the test cluster, which serializes them with the same stream format as the http taker, and every round trip
+ * can be slowed down with a simulated latency and bandwidth.
+ *
+ * Writers commit through the partition leader, if it has one, while every other node watches the partition. Each value carries the time it was
+ * committed, so the watchers measure how long it took for the row to be replicated and applied.
+ */
+public class AmzaBenchmarkCluster {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    public static class BenchmarkConfig {
+
+        public int nodes = 3;
+        public Consistency consistency = Consistency.leader_quorum;
+        public String indexClassName = LABPointerIndexWALIndexProvider.INDEX_CLASS_NAME;
+        public int writerThreads = 4;
+        public long durationMillis = 10_000;
+        public int keyCount = 100_000;
+        public int valueSize = 100;
+        public long wireLatencyMillis = 0;
+        public long wireBytesPerSecond = 0;
+        public long replicationTimeoutMillis = 30_000;
+    }
+
+    public static class BenchmarkReport {
+
+        public long onlineMillis;
+        public long writes;
+        public long errors;
+        public double writesPerSecond;
+        public LatencyHistogram commitMicros;
+        public LatencyHistogram replicationLagMicros;
+        public long replicatedRows;
+        public double takeRowsPerSecond;
+        public long cpuNanosPerWrite;
+        public long allocatedBytesPerWrite;
+
+        @Override
+        public String toString() {
+            return "onlineMillis:" + onlineMillis
+                + " writes:" + writes
+                + " errors:" + errors
+                + " writesPerSecond:" + String.format("%.1f", writesPerSecond)
+                + "\ncommitMicros " + latency(commitMicros)
+                + "\nreplicationLagMicros " + latency(replicationLagMicros)
+                + "\nreplicatedRows:" + replicatedRows
+                + " takeRowsPerSecond:" + String.format("%.1f", takeRowsPerSecond)
+                + " cpuNanosPerWrite:" + cpuNanosPerWrite
+                + " allocatedBytesPerWrite:" + allocatedBytesPerWrite;
+        }
+
+        private static String latency(LatencyHistogram histogram) {
+            return "count:" + histogram.count()
+                + " p50:" + histogram.percentile(50)
+                + " p90:" + histogram.percentile(90)
+                + " p99:" + histogram.percentile(99)
+                + " p99.9:" + histogram.percentile(99.9)
+                + " max:" + histogram.max();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkConfig config = new BenchmarkConfig();
+        if (args.length > 0) {
+            config.nodes = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            config.consistency = Consistency.valueOf(args[1]);
+        }
+        if (args.length > 2) {
+            config.durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(args[2]));
+        }
+        if (args.length > 3) {
+            config.wireLatencyMillis = Long.parseLong(args[3]);
+        }
+        if (args.length > 4) {
+            config.wireBytesPerSecond = Long.parseLong(args[4]);
+        }
+
+        BenchmarkReport report = new AmzaBenchmarkCluster().run(Files.createTempDir(), config);
+        LOG.info("Benchmark finished\n{}", report);
+        System.exit(0);
+    }
+
+    public BenchmarkReport run(File workingDirectory, BenchmarkConfig config) throws Exception {
+        BenchmarkReport report = new BenchmarkReport();
+        AmzaTestCluster cluster = new AmzaTestCluster(workingDirectory, 0, 0);
+        cluster.setNetworkConditions(config.wireLatencyMillis, config.wireBytesPerSecond);
+        List<AmzaNode> nodes = new ArrayList<>();
+        for (int i = 0; i < config.nodes; i++) {
+            nodes.add(cluster.newNode(new RingMember("bench-" + i), new RingHost("datacenter", "rack", "localhost", i)));
+        }
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            PartitionName partitionName = new PartitionName(false, "test".getBytes(), "benchmark".getBytes());
+
+            // every node has to elect or learn a leader before the partition comes online
+            long onlineStart = System.currentTimeMillis();
+            List<Future<?>> online = new ArrayList<>();
+            for (AmzaNode node : nodes) {
+                online.add(executor.submit(() -> {
+                    node.create(config.consistency, partitionName, config.indexClassName, -1, RowType.primary);
+                    return null;
+                }));
+            }
+            for (Future<?> future : online) {
+                future.get();
+            }
+            report.onlineMillis = System.currentTimeMillis() - onlineStart;
+
+            // consistencies without a leader are written through the first node
+            RingMemberAndHost leaderMember = nodes.get(0).getPartitionRoute(partitionName).leader;
+            AmzaNode leader = leaderMember != null ? cluster.get(leaderMember.ringMember) : nodes.get(0);
+
+            report.replicationLagMicros = new LatencyHistogram();
+            AtomicLong replicatedRows = new AtomicLong();
+            for (AmzaNode node : nodes) {
+                if (node != leader) {
+                    node.watch(partitionName, changes -> {
+                        long now = System.nanoTime();
+                        for (WALValue walValue : changes.getApply().values()) {
+                            byte[] value = walValue.getValue();
+                            if (value != null && value.length >= 8) {
+                                report.replicationLagMicros.record(TimeUnit.NANOSECONDS.toMicros(now - Longs.fromByteArray(value)));
+                                replicatedRows.incrementAndGet();
+                            }
+                        }
+                    });
+                }
+            }
+
+            report.commitMicros = new LatencyHistogram();
+            AtomicLong writes = new AtomicLong();
+            AtomicLong errors = new AtomicLong();
+            long cpuStart = processCpuNanos();
+            long allocatedStart = allocatedBytes();
+            long start = System.currentTimeMillis();
+            long end = start + config.durationMillis;
+            List<Future<?>> writers = new ArrayList<>();
+            for (int i = 0; i < config.writerThreads; i++) {
+                writers.add(executor.submit(() -> {
+                    Random random = new Random();
+                    byte[] value = new byte[Math.max(8, config.valueSize)];
+                    while (System.currentTimeMillis() < end) {
+                        byte[] key = String.valueOf(random.nextInt(config.keyCount)).getBytes();
+                        long committed = System.nanoTime();
+                        System.arraycopy(Longs.toByteArray(committed), 0, value, 0, 8);
+                        try {
+                            leader.update(config.consistency, partitionName, null, key, value.clone(), false);
+                            report.commitMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - committed));
+                            writes.incrementAndGet();
+                        } catch (Exception x) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : writers) {
+                future.get();
+            }
+            long elapsedMillis = Math.max(1, System.currentTimeMillis() - start);
+            long cpuNanos = processCpuNanos() - cpuStart;
+            long allocated = allocatedBytes() - allocatedStart;
+
+            report.writes = writes.get();
+            report.errors = errors.get();
+            report.writesPerSecond = report.writes * 1_000d / elapsedMillis;
+            report.cpuNanosPerWrite = report.writes == 0 ? 0 : cpuNanos / report.writes;
+            report.allocatedBytesPerWrite = report.writes == 0 ? 0 : allocated / report.writes;
+
+            // rewrites of a key within one take batch are applied once, so stop waiting once replication stops making progress
+            long expectedRows = report.writes * (config.nodes - 1);
+            long replicationDeadline = System.currentTimeMillis() + config.replicationTimeoutMillis;
+            long lastReplicated = -1;
+            long lastProgress = System.currentTimeMillis();
+            while (replicatedRows.get() < expectedRows && System.currentTimeMillis() < replicationDeadline) {
+                long replicated = replicatedRows.get();
+                if (replicated != lastReplicated) {
+                    lastReplicated = replicated;
+                    lastProgress = System.currentTimeMillis();
+                } else if (System.currentTimeMillis() - lastProgress > 1_000) {
+                    break;
+                }
+                Thread.sleep(10);
+            }
+            report.replicatedRows = replicatedRows.get();
+
+            report.takeRowsPerSecond = takeRowsPerSecond(nodes, leader, partitionName);
+        } finally {
+            executor.shutdownNow();
+            for (AmzaNode node : nodes) {
+                node.stop();
+            }
+        }
+        return report;
+    }
+
+    /**
+     * @return the rows per second a follower streams when taking the whole partition from the start
+     */
+    private double takeRowsPerSecond(List<AmzaNode> nodes, AmzaNode leader, PartitionName partitionName) throws Exception {
+        long rows = 0;
+        long nanos = 0;
+        for (AmzaNode node : nodes) {
+            if (node == leader && nodes.size() > 1) {
+                continue;
+            }
+            long[] taken = { 0 };
+            long txId = -1;
+            long start = System.nanoTime();
+            while (true) {
+                TakeCursors cursors = node.takeFromTransactionId(partitionName, txId,
+                    (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                        taken[0]++;
+                        return TxResult.MORE;
+                    });
+                long nextTxId = txId;
+                for (TakeCursors.RingMemberCursor cursor : cursors.ringMemberCursors) {
+                    if (cursor.ringMember.equals(node.ringMember)) {
+                        nextTxId = Math.max(nextTxId, cursor.transactionId);
+                    }
+                }
+                if (cursors.tookToEnd || nextTxId == txId) {
+                    break;
+                }
+                txId = nextTxId;
+            }
+            nanos += System.nanoTime() - start;
+            rows += taken[0];
+        }
+        return nanos == 0 ? 0 : rows * 1e9 / nanos;
+    }
+
+    private static long processCpuNanos() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    /**
+     * Allocations are only tracked per live thread, so bytes allocated by threads which died during the run are missed.
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            long total = 0;
+            for (long allocated : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threads.getAllThreadIds())) {
+                total += Math.max(0, allocated);
+            }
+            return total;
+        }
+        return 0;
+    }
+}
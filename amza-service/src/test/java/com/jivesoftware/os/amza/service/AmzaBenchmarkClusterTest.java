@@ -0,0 +1,34 @@
+package com.jivesoftware.os.amza.service;
+
+import com.google.common.io.Files;
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import com.jivesoftware.os.amza.service.AmzaBenchmarkCluster.BenchmarkConfig;
+import com.jivesoftware.os.amza.service.AmzaBenchmarkCluster.BenchmarkReport;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class AmzaBenchmarkClusterTest {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    @Test(enabled = false, description = "Runs a timed benchmark, use AmzaBenchmarkCluster.main for real runs")
+    public void testBenchmark() throws Exception {
+        BenchmarkConfig config = new BenchmarkConfig();
+        config.nodes = 2;
+        config.consistency = Consistency.quorum;
+        config.writerThreads = 2;
+        config.durationMillis = 2_000;
+        config.keyCount = 1_000;
+        config.wireLatencyMillis = 1;
+
+        BenchmarkReport report = new AmzaBenchmarkCluster().run(Files.createTempDir(), config);
+        LOG.info("Benchmark finished\n{}", report);
+
+        Assert.assertTrue(report.writes > 0);
+        Assert.assertEquals(report.commitMicros.count(), report.writes);
+        Assert.assertTrue(report.replicatedRows > 0);
+        Assert.assertTrue(report.takeRowsPerSecond > 0);
+    }
+}
@@ -87,6 +87,62 @@ public class AmzaClientTest {
         System.out.println("\n------PASSED :) ---------");
     }
 
+    @Test
+    public void testBulkLoad() throws Exception {
+        final int numberOfServices = 3;
+
+        File createTempDir = Files.createTempDir();
+        AmzaTestCluster cluster = new AmzaTestCluster(createTempDir, 0, 0);
+        for (int i = 0; i < numberOfServices; i++) {
+            cluster.newNode(new RingMember("localhost-" + i), new RingHost("datacenter", "rack", "localhost", i));
+        }
+        PartitionName partitionName = new PartitionName(false, "test".getBytes(), "bulkLoad".getBytes());
+        AmzaNode writer = cluster.get(new RingMember("localhost-0"));
+        for (AmzaNode node : cluster.getAllNodes()) {
+            node.create(Consistency.quorum, partitionName, "memory_persistent", -1, RowType.primary);
+        }
+
+        byte[] prefix = "a".getBytes();
+        // an empty delta loads straight into storage
+        writer.bulkLoad(Consistency.quorum, partitionName, prefix, commitKeyValueStream -> {
+            for (int i = 0; i < 1_000; i++) {
+                if (!commitKeyValueStream.commit(("key-" + i).getBytes(), ("value-" + i).getBytes(), 1, false)) {
+                    return false;
+                }
+            }
+            return true;
+        });
+        // an unmerged delta falls back to a commit, which replays the spooled updates
+        writer.update(Consistency.quorum, partitionName, prefix, "key-0".getBytes(), "updated-0".getBytes(), false);
+        writer.bulkLoad(Consistency.quorum, partitionName, prefix, commitKeyValueStream -> {
+            return commitKeyValueStream.commit("key-1000".getBytes(), "value-1000".getBytes(), 1, false);
+        });
+
+        for (AmzaNode node : cluster.getAllNodes()) {
+            node.mergeAllDeltas(true);
+        }
+        // replicas which were not part of the quorum take the rows eventually
+        List<AmzaNode> nodes = new ArrayList<>(cluster.getAllNodes());
+        long giveUpAt = System.currentTimeMillis() + 60_000;
+        for (int i = 1; i < nodes.size(); i++) {
+            while (!writer.compare(Consistency.quorum, nodes.get(i)) || !nodes.get(i).compare(Consistency.quorum, writer)) {
+                Assert.assertTrue(System.currentTimeMillis() < giveUpAt, nodes.get(i) + " never caught up with " + writer);
+                Thread.sleep(100);
+            }
+        }
+        for (AmzaNode node : nodes) {
+            for (int i = 1; i <= 1_000; i++) {
+                Assert.assertEquals(new String(node.get(Consistency.quorum, partitionName, prefix, ("key-" + i).getBytes())), "value-" + i,
+                    node + " key-" + i);
+            }
+            Assert.assertEquals(new String(node.get(Consistency.quorum, partitionName, prefix, "key-0".getBytes())), "updated-0", node.toString());
+        }
+
+        for (AmzaNode node : cluster.getAllNodes()) {
+            node.stop();
+        }
+    }
+
     private void testRowType(AmzaTestCluster cluster, int maxNumberOfServices, PartitionName partitionName, RowType rowType) throws Exception {
         final int maxUpdates = 100;
         final int delayBetweenUpdates = 0;
@@ -30,6 +30,7 @@ import com.jivesoftware.os.amza.service.AmzaTestCluster.AmzaNode;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -163,6 +164,77 @@ public class AmzaServiceTest {
         System.out.println("-------------------------");
     }
 
+    @Test(enabled = true)
+    public void testLaggingNodeCatchesUpFromSnapshot() throws Exception {
+        File createTempDir = Files.createTempDir();
+        AmzaTestCluster cluster = new AmzaTestCluster(createTempDir, 0, 0);
+        AmzaNode node0 = cluster.newNode(new RingMember("localhost-0"), new RingHost("datacenter", "rack", "localhost", 0));
+        AmzaNode node1 = cluster.newNode(new RingMember("localhost-1"), new RingHost("datacenter", "rack", "localhost", 1));
+
+        PartitionName partitionName = new PartitionName(false, "test".getBytes(), "snapshot".getBytes());
+        node0.create(Consistency.quorum, partitionName, "memory_persistent", -1, RowType.primary);
+        node1.create(Consistency.quorum, partitionName, "memory_persistent", -1, RowType.primary);
+
+        int numKeys = 500;
+        Map<String, String> expected = new ConcurrentHashMap<>();
+        for (int i = 0; i < numKeys; i++) {
+            update(node0, partitionName, expected, "k" + i, "v" + i);
+        }
+
+        // a small take limit leaves the newcomer lagging after its first take, and any lag at all is enough to prefer a snapshot
+        AmzaNode node2 = cluster.newNode(new RingMember("localhost-2"), new RingHost("datacenter", "rack", "localhost", 2), config -> {
+            config.rowsTakerLimit = 10;
+            config.takeSnapshotLagInMillis = 1;
+        });
+
+        // keep writing while the newcomer catches up so the tail after the snapshot has new keys and overwrites of snapshotted keys
+        for (int i = 0; i < 100; i++) {
+            update(node1, partitionName, expected, "k" + (numKeys + i), "v" + (numKeys + i));
+            update(node1, partitionName, expected, "k" + i, "w" + i);
+        }
+        node2.create(Consistency.quorum, partitionName, "memory_persistent", -1, RowType.primary);
+
+        Map<String, String> scanned = new HashMap<>();
+        int duplicates = -1;
+        for (int i = 0; i < 300; i++) {
+            scanned.clear();
+            int[] dupes = { 0 };
+            node2.scan(partitionName, (prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                if (!valueTombstoned && scanned.put(new String(key), new String(value)) != null) {
+                    dupes[0]++;
+                }
+                return true;
+            });
+            duplicates = dupes[0];
+            if (scanned.equals(expected)) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+
+        assertEquals(duplicates, 0);
+        assertEquals(scanned, expected);
+        assertTrue(node2.snapshotTakes() > 0, "Expected the lagging node to catch up from a snapshot");
+        assertConsistency(Consistency.quorum, cluster.getAllNodes());
+
+        for (AmzaNode node : cluster.getAllNodes()) {
+            node.stop();
+        }
+    }
+
+    private void update(AmzaNode node, PartitionName partitionName, Map<String, String> expected, String key, String value) throws Exception {
+        while (true) {
+            try {
+                node.update(Consistency.quorum, partitionName, "a".getBytes(), key.getBytes(), value.getBytes(), false);
+                expected.put(key, value);
+                return;
+            } catch (FailedToAchieveQuorumException x) {
+                System.out.println("Failed to achieve quorum, waiting... " + x.getMessage());
+                Thread.sleep(100);
+            }
+        }
+    }
+
     private void assertConsistency(Consistency readConsistency, Collection<AmzaNode> clusterNodes) throws Exception {
         int falseCount = -1;
         while (falseCount != 0) {
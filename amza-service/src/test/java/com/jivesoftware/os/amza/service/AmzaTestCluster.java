@@ -31,8 +31,11 @@ import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.api.ring.RingHost;
 import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.api.ring.TimestampedRingHost;
+import com.jivesoftware.os.amza.api.scan.RowChanges;
 import com.jivesoftware.os.amza.api.scan.RowStream;
 import com.jivesoftware.os.amza.api.scan.RowsChanged;
+import com.jivesoftware.os.amza.api.stream.ClientUpdates;
+import com.jivesoftware.os.amza.api.stream.KeyValueStream;
 import com.jivesoftware.os.amza.api.stream.RowType;
 import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
 import com.jivesoftware.os.amza.api.take.TakeCursors;
@@ -41,6 +44,7 @@ import com.jivesoftware.os.amza.lab.pointers.LABPointerIndexConfig;
 import com.jivesoftware.os.amza.lab.pointers.LABPointerIndexWALIndexProvider;
 import com.jivesoftware.os.amza.service.AmzaServiceInitializer.AmzaServiceConfig;
 import com.jivesoftware.os.amza.service.EmbeddedClientProvider.CheckOnline;
+import com.jivesoftware.os.amza.service.replication.ReplicationQoS.Throttle;
 import com.jivesoftware.os.amza.service.replication.TakeFailureListener;
 import com.jivesoftware.os.amza.service.ring.AmzaRingReader;
 import com.jivesoftware.os.amza.service.ring.RingTopology;
@@ -77,9 +81,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -88,6 +92,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import org.apache.commons.lang.mutable.MutableBoolean;
 import org.apache.commons.lang.mutable.MutableInt;
 import org.merlin.config.BindInterfaceToConfiguration;
@@ -103,6 +108,8 @@ public class AmzaTestCluster {
     private int oddsOfAConnectionFailureWhenAdding = 0; // 0 never - 100 always
     private int oddsOfAConnectionFailureWhenTaking = 0; // 0 never - 100 always
     private AmzaService lastAmzaService = null;
+    private volatile long wireLatencyMillis = 0;
+    private volatile long wireBytesPerSecond = 0; // 0 unlimited
 
     public AmzaTestCluster(File workingDirctory,
         int oddsOfAConnectionFailureWhenAdding,
@@ -112,6 +119,25 @@ public class AmzaTestCluster {
         this.oddsOfAConnectionFailureWhenTaking = oddsOfAConnectionFailureWhenTaking;
     }
 
+    /**
+     * Delays every simulated round trip between nodes by the given latency, plus the time needed to push streamed rows through the given
+     * bandwidth.
+     */
+    public void setNetworkConditions(long wireLatencyMillis, long wireBytesPerSecond) {
+        this.wireLatencyMillis = wireLatencyMillis;
+        this.wireBytesPerSecond = wireBytesPerSecond;
+    }
+
+    private void overTheNetwork(long bytes) throws InterruptedException {
+        long delayMillis = wireLatencyMillis;
+        if (wireBytesPerSecond > 0) {
+            delayMillis += bytes * 1_000 / wireBytesPerSecond;
+        }
+        if (delayMillis > 0) {
+            Thread.sleep(delayMillis);
+        }
+    }
+
     public Collection<AmzaNode> getAllNodes() {
         return cluster.values();
     }
@@ -125,6 +151,14 @@ public class AmzaTestCluster {
     }
 
     public AmzaNode newNode(final RingMember localRingMember, final RingHost localRingHost) throws Exception {
+        return newNode(localRingMember, localRingHost, config -> {
+        });
+    }
+
+    /**
+     * Adds a node whose config is adjusted by the given callback before the service is initialized.
+     */
+    public AmzaNode newNode(final RingMember localRingMember, final RingHost localRingHost, Consumer<AmzaServiceConfig> configure) throws Exception {
 
         AmzaNode service = cluster.get(localRingMember);
         if (service != null) {
@@ -143,6 +177,7 @@ public class AmzaTestCluster {
 
         config.updatesBetweenLeaps = 10;
         config.useMemMap = true;
+        configure.accept(config);
 
         SnowflakeIdPacker idPacker = new SnowflakeIdPacker();
         OrderIdProviderImpl orderIdProvider = new OrderIdProviderImpl(new ConstantWriterIdProvider(localRingHost.getPort()), idPacker,
@@ -190,6 +225,7 @@ public class AmzaTestCluster {
                 long remoteTxId,
                 long localLeadershipToken,
                 long limit,
+                Throttle throttle,
                 RowStream rowStream) {
 
                 AmzaNode amzaNode = cluster.get(remoteRingMember);
@@ -204,7 +240,33 @@ public class AmzaTestCluster {
                         localLeadershipToken,
                         limit,
                         rowStream);
-                    HashMap<RingMember, Long> otherHighwaterMarks = consumed.isOnline ? new HashMap<>() : null;
+                    Map<RingMember, Long> otherHighwaterMarks = (consumed.streamedToEnd && consumed.isOnline) ? consumed.neighborsHighwaterMarks : null;
+                    return new StreamingRowsResult(null, null, consumed.leadershipToken, consumed.partitionVersion, otherHighwaterMarks);
+                }
+            }
+
+            @Override
+            public RowsTaker.StreamingRowsResult snapshotStream(RingMember localRingMember,
+                RingMember remoteRingMember,
+                RingHost remoteRingHost,
+                VersionedPartitionName remoteVersionedPartitionName,
+                long takeSessionId,
+                long takeSharedKey,
+                long localLeadershipToken,
+                Throttle throttle,
+                RowStream rowStream) {
+
+                AmzaNode amzaNode = cluster.get(remoteRingMember);
+                if (amzaNode == null) {
+                    throw new IllegalStateException("Service doesn't exist for " + localRingMember);
+                } else {
+                    StreamingTakesConsumer.StreamingTakeConsumed consumed = amzaNode.snapshotStream(localRingMember,
+                        remoteVersionedPartitionName,
+                        takeSessionId,
+                        takeSharedKey,
+                        localLeadershipToken,
+                        rowStream);
+                    Map<RingMember, Long> otherHighwaterMarks = (consumed.streamedToEnd && consumed.isOnline) ? consumed.neighborsHighwaterMarks : null;
                     return new StreamingRowsResult(null, null, consumed.leadershipToken, consumed.partitionVersion, otherHighwaterMarks);
                 }
             }
@@ -223,6 +285,7 @@ public class AmzaTestCluster {
                     throw new IllegalStateException("Service doesn't exists for " + localRingMember);
                 } else {
                     try {
+                        overTheNetwork(0);
                         amzaNode.remoteMemberTookToTxId(localRingMember,
                             takeSessionId,
                             takeSharedKey,
@@ -247,6 +310,7 @@ public class AmzaTestCluster {
                     throw new IllegalStateException("Service doesn't exists for " + localRingMember);
                 } else {
                     try {
+                        overTheNetwork(0);
                         amzaNode.remoteMemberPong(localRingMember, takeSessionId, takeSharedKey);
                         return true;
                     } catch (Exception x) {
@@ -309,6 +373,7 @@ public class AmzaTestCluster {
             sickThreads,
             sickPartitions,
             primaryRowMarshaller,
+            null,
             highwaterRowMarshaller,
             localRingMember,
             localRingHost,
@@ -469,6 +534,13 @@ public class AmzaTestCluster {
 
         }
 
+        public void bulkLoad(Consistency consistency, PartitionName partitionName, byte[] p, ClientUpdates updates) throws Exception {
+            if (off) {
+                throw new RuntimeException("Service is off:" + ringMember);
+            }
+            amzaService.getPartition(partitionName).bulkLoad(consistency, p, updates, 10_000);
+        }
+
         public byte[] get(Consistency consistency, PartitionName partitionName, byte[] prefix, byte[] key) throws Exception {
             if (off) {
                 throw new RuntimeException("Service is off:" + ringMember);
@@ -483,6 +555,17 @@ public class AmzaTestCluster {
             return got.get(0);
         }
 
+        public void scan(PartitionName partitionName, KeyValueStream stream) throws Exception {
+            if (off) {
+                throw new RuntimeException("Service is off:" + ringMember);
+            }
+            amzaService.getPartition(partitionName).scan(rangeStream -> rangeStream.stream(null, null, null, null), true, true, stream);
+        }
+
+        public long snapshotTakes() {
+            return amzaService.amzaStats.snapshotTakes.longValue();
+        }
+
         public TakeCursors takeFromTransactionId(PartitionName partitionName, long transactionId, TxKeyValueStream stream) throws Exception {
             if (off) {
                 throw new RuntimeException("Service is off:" + ringMember);
@@ -502,6 +585,10 @@ public class AmzaTestCluster {
             );
         }
 
+        public void watch(PartitionName partitionName, RowChanges rowChanges) throws Exception {
+            amzaService.watch(partitionName, rowChanges);
+        }
+
         void remoteMemberTookToTxId(RingMember remoteRingMember,
             long takeSessionId,
             long takeSharedKey,
@@ -530,22 +617,48 @@ public class AmzaTestCluster {
                 throw new RuntimeException("Random take failure:" + ringMember);
             }
 
+            return overTheWire(dos -> amzaService.rowsStream(dos,
+                remoteRingMember,
+                localVersionedPartitionName,
+                takeSessionId,
+                takeSharedKey,
+                localTxId,
+                leadershipToken,
+                limit), rowStream);
+        }
+
+        StreamingTakeConsumed snapshotStream(RingMember remoteRingMember,
+            VersionedPartitionName localVersionedPartitionName,
+            long takeSessionId,
+            long takeSharedKey,
+            long leadershipToken,
+            RowStream rowStream) {
+            if (off) {
+                throw new RuntimeException("Service is off:" + ringMember);
+            }
+            if (random.nextInt(100) > (100 - oddsOfAConnectionFailureWhenTaking)) {
+                throw new RuntimeException("Random take failure:" + ringMember);
+            }
+
+            return overTheWire(dos -> amzaService.snapshotStream(dos,
+                remoteRingMember,
+                localVersionedPartitionName,
+                takeSessionId,
+                takeSharedKey,
+                leadershipToken), rowStream);
+        }
+
+        private StreamingTakeConsumed overTheWire(WireWriter wireWriter, RowStream rowStream) {
             try {
                 ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
                 Future<Object> submit = asIfOverTheWire.submit(() -> {
                     DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new SnappyOutputStream(bytesOut), 8192));
-                    amzaService.rowsStream(dos,
-                        remoteRingMember,
-                        localVersionedPartitionName,
-                        takeSessionId,
-                        takeSharedKey,
-                        localTxId,
-                        leadershipToken,
-                        limit);
+                    wireWriter.write(dos);
                     dos.flush();
                     return null;
                 });
                 submit.get();
+                overTheNetwork(bytesOut.size());
 
                 StreamingTakesConsumer streamingTakesConsumer = new StreamingTakesConsumer(amzaInterner);
                 // this is some sick joke
@@ -791,4 +904,9 @@ public class AmzaTestCluster {
             amzaService.expunge();
         }
     }
+
+    private interface WireWriter {
+
+        void write(DataOutputStream dos) throws Exception;
+    }
 }
@@ -0,0 +1,105 @@
+package com.jivesoftware.os.amza.service;
+
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import com.jivesoftware.os.amza.api.stream.ClientUpdates;
+import com.jivesoftware.os.amza.api.stream.KeyValueStream;
+import com.jivesoftware.os.amza.api.stream.PrefixedKeyRanges;
+import com.jivesoftware.os.amza.api.stream.TxKeyValueStream;
+import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
+import com.jivesoftware.os.amza.api.take.Highwaters;
+import com.jivesoftware.os.amza.api.take.TakeResult;
+import com.jivesoftware.os.amza.api.wal.KeyUtil;
+import com.jivesoftware.os.amza.api.wal.WALKey;
+import com.jivesoftware.os.amza.service.storage.sketch.PartitionSketches;
+import com.jivesoftware.os.aquarium.LivelyEndState;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A partition over an in memory sorted map, for tests which exercise the layers above partition storage.
+ */
+public class MapPartition implements Partition {
+
+    final ConcurrentSkipListMap<byte[], byte[]> map = new ConcurrentSkipListMap<>(KeyUtil.lexicographicalComparator());
+
+    @Override
+    public void commit(Consistency consistency, byte[] prefix, ClientUpdates updates, long timeoutInMillis) throws Exception {
+        updates.updates((key, value, valueTimestamp, valueTombstoned) -> {
+            map.put(WALKey.compose(prefix, key), value);
+            return true;
+        });
+    }
+
+    @Override
+    public void bulkLoad(Consistency consistency, byte[] prefix, ClientUpdates updates, long timeoutInMillis) throws Exception {
+        commit(consistency, prefix, updates, timeoutInMillis);
+    }
+
+    @Override
+    public boolean get(Consistency consistency,
+        byte[] prefix,
+        boolean requiresOnline,
+        UnprefixedWALKeys keys,
+        KeyValueStream stream) throws Exception {
+        return keys.consume(key -> stream.stream(prefix, key, map.get(WALKey.compose(prefix, key)), 1, false, 1));
+    }
+
+    @Override
+    public boolean scan(PrefixedKeyRanges ranges, boolean hydrateValues, boolean requiresOnline, KeyValueStream stream) throws Exception {
+        return ranges.consume((fromPrefix, fromKey, toPrefix, toKey) -> {
+            NavigableMap<byte[], byte[]> range = map;
+            if (fromKey != null) {
+                range = range.tailMap(WALKey.compose(fromPrefix, fromKey), true);
+            }
+            if (toKey != null) {
+                range = range.headMap(WALKey.compose(toPrefix, toKey), false);
+            }
+            for (Entry<byte[], byte[]> entry : range.entrySet()) {
+                if (!stream.stream(WALKey.rawKeyPrefix(entry.getKey()), WALKey.rawKeyKey(entry.getKey()), entry.getValue(), 1, false, 1)) {
+                    return false;
+                }
+            }
+            return true;
+        });
+    }
+
+    @Override
+    public TakeResult takeFromTransactionId(long txId, boolean requiresOnline, Highwaters highwaters, TxKeyValueStream stream) {
+        throw new UnsupportedOperationException("Not supported.");
+    }
+
+    @Override
+    public TakeResult takePrefixFromTransactionId(byte[] prefix,
+        long txId,
+        boolean requiresOnline,
+        Highwaters highwaters,
+        TxKeyValueStream stream) {
+        throw new UnsupportedOperationException("Not supported.");
+    }
+
+    @Override
+    public long count() {
+        return map.size();
+    }
+
+    @Override
+    public long approximateCount() {
+        return map.size();
+    }
+
+    @Override
+    public PartitionSketches sketches() {
+        return new PartitionSketches();
+    }
+
+    @Override
+    public long highestTxId() {
+        return -1;
+    }
+
+    @Override
+    public LivelyEndState livelyEndState() {
+        throw new UnsupportedOperationException("Not supported.");
+    }
+}
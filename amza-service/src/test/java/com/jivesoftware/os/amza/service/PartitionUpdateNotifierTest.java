@@ -0,0 +1,43 @@
+package com.jivesoftware.os.amza.service;
+
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class PartitionUpdateNotifierTest {
+
+    private final PartitionName partitionName = new PartitionName(false, "ring".getBytes(), "partition".getBytes());
+    private final PartitionName otherPartitionName = new PartitionName(false, "ring".getBytes(), "other".getBytes());
+
+    @Test
+    public void testAwait() throws Exception {
+        PartitionUpdateNotifier notifier = new PartitionUpdateNotifier();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (PartitionUpdateNotifier.Listener listener = notifier.listen(partitionName)) {
+            long updates = listener.updates();
+            Assert.assertFalse(listener.await(updates, 10));
+
+            notifier.updated(new VersionedPartitionName(otherPartitionName, 1L), 1L);
+            Assert.assertFalse(listener.await(updates, 10));
+
+            Future<Boolean> awaited = executor.submit(() -> listener.await(updates, 10_000));
+            notifier.updated(new VersionedPartitionName(partitionName, 1L), 2L);
+            Assert.assertTrue(awaited.get(10, TimeUnit.SECONDS));
+
+            // an update that lands between reading the partition and waiting is not lost
+            long before = listener.updates();
+            notifier.updated(new VersionedPartitionName(partitionName, 1L), 3L);
+            Assert.assertTrue(listener.await(before, 0));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
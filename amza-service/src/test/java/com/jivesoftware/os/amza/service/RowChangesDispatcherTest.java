@@ -0,0 +1,88 @@
+package com.jivesoftware.os.amza.service;
+
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.api.scan.RowChanges;
+import com.jivesoftware.os.amza.api.scan.RowsChanged;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.api.wal.KeyedTimestampId;
+import com.jivesoftware.os.amza.api.wal.WALKey;
+import com.jivesoftware.os.amza.api.wal.WALValue;
+import com.jivesoftware.os.amza.service.stats.AmzaStats;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class RowChangesDispatcherTest {
+
+    private final VersionedPartitionName partitionA = new VersionedPartitionName(
+        new PartitionName(false, "ring".getBytes(), "a".getBytes()), 1L);
+    private final VersionedPartitionName partitionB = new VersionedPartitionName(
+        new PartitionName(false, "ring".getBytes(), "b".getBytes()), 1L);
+
+    @Test
+    public void testCoalesce() throws Exception {
+        RowsChanged earlier = changes(partitionA, 1, "k1", "k2");
+        RowsChanged later = changes(partitionA, 2, "k2", "k3");
+        RowsChanged coalesced = RowChangesDispatcher.coalesce(earlier, later);
+        Assert.assertEquals(coalesced.getApply().size(), 3);
+        Assert.assertEquals(coalesced.getApply().get(new WALKey(null, "k2".getBytes())).getTimestampId(), 2L);
+        Assert.assertEquals(coalesced.getSmallestCommittedTxId(), 1L);
+        Assert.assertEquals(coalesced.getLargestCommittedTxId(), 2L);
+    }
+
+    @Test
+    public void testDispatchCoalescesBehindSlowListener() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AmzaStats amzaStats = new AmzaStats();
+            RowChangesDispatcher dispatcher = new RowChangesDispatcher(amzaStats, executor, 1_000);
+            CountDownLatch blocked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            List<String> dispatched = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch done = new CountDownLatch(3);
+            RowChanges listener = dispatcher.async("test", changes -> {
+                dispatched.add(new String(changes.getVersionedPartitionName().getPartitionName().getName())
+                    + ":" + changes.getSmallestCommittedTxId() + "-" + changes.getLargestCommittedTxId());
+                blocked.countDown();
+                release.await();
+                done.countDown();
+            });
+
+            listener.changes(changes(partitionA, 1, "k1"));
+            Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+            listener.changes(changes(partitionA, 2, "k1"));
+            listener.changes(changes(partitionB, 3, "k1"));
+            listener.changes(changes(partitionA, 4, "k2"));
+            release.countDown();
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+            Assert.assertEquals(dispatched, Arrays.asList("a:1-1", "a:2-4", "b:3-3"));
+            Assert.assertEquals(amzaStats.watcherCoalesced.longValue(), 1L);
+            Assert.assertEquals(amzaStats.watcherQueuedRows.longValue(), 0L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private RowsChanged changes(VersionedPartitionName versionedPartitionName, long txId, String... keys) {
+        Map<WALKey, WALValue> apply = new LinkedHashMap<>();
+        for (String key : keys) {
+            apply.put(new WALKey(null, key.getBytes()), new WALValue(RowType.primary, key.getBytes(), txId, false, txId));
+        }
+        return new RowsChanged(versionedPartitionName, apply, Collections.<KeyedTimestampId>emptyList(), Collections.<KeyedTimestampId>emptyList(),
+            txId, txId, -1);
+    }
+}
@@ -0,0 +1,64 @@
+package com.jivesoftware.os.amza.service;
+
+import com.google.common.io.Files;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class SpooledClientUpdatesTest {
+
+    @Test
+    public void testBatchesAreBoundedAndReplayable() throws Exception {
+        File directory = Files.createTempDir();
+        try (SpooledClientUpdates spooled = new SpooledClientUpdates(directory, stream -> {
+            for (int i = 0; i < 25; i++) {
+                if (!stream.commit(UIO.intBytes(i), i % 5 == 0 ? null : UIO.intBytes(-i), 1000 + i, i % 5 == 0)) {
+                    return false;
+                }
+            }
+            return true;
+        })) {
+            Assert.assertEquals(directory.listFiles().length, 1);
+
+            List<Integer> batchSizes = new ArrayList<>();
+            List<Integer> keys = new ArrayList<>();
+            Assert.assertTrue(spooled.batches(10, (index, batch) -> {
+                Assert.assertEquals(index, batchSizes.size());
+                List<Integer> batchKeys = new ArrayList<>();
+                batch.updates((key, value, valueTimestamp, valueTombstoned) -> {
+                    int k = UIO.bytesInt(key);
+                    Assert.assertEquals(valueTimestamp, 1000 + k);
+                    Assert.assertEquals(valueTombstoned, k % 5 == 0);
+                    Assert.assertEquals(value, k % 5 == 0 ? null : UIO.intBytes(-k));
+                    batchKeys.add(k);
+                    return true;
+                });
+                // a batch can be replayed, as a commit retry would
+                List<Integer> replayedKeys = new ArrayList<>();
+                batch.updates((key, value, valueTimestamp, valueTombstoned) -> replayedKeys.add(UIO.bytesInt(key)));
+                Assert.assertEquals(replayedKeys, batchKeys);
+
+                batchSizes.add(batchKeys.size());
+                keys.addAll(batchKeys);
+                return true;
+            }));
+            Assert.assertEquals(batchSizes, Arrays.asList(10, 10, 5));
+            for (int i = 0; i < 25; i++) {
+                Assert.assertEquals(keys.get(i).intValue(), i);
+            }
+
+            // stopping partway stops the remaining batches
+            int[] batches = { 0 };
+            Assert.assertFalse(spooled.batches(10, (index, batch) -> ++batches[0] < 2));
+            Assert.assertEquals(batches[0], 2);
+        }
+        Assert.assertEquals(directory.listFiles().length, 0);
+    }
+}
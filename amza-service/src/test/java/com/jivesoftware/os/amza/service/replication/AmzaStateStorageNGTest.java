@@ -67,6 +67,10 @@ public class AmzaStateStorageNGTest {
         AmzaStats amzaStats = new AmzaStats();
         IndexedWALStorageProvider indexedWALStorageProvider = new IndexedWALStorageProvider(amzaStats,
             workingDirectories,
+            new File[] { Files.createTempDir() },
+            64 * 1024,
+            64 * 1024 * 1024,
+            8,
             workingDirectories.length,
             walIndexProviderRegistry,
             primaryRowMarshaller,
@@ -82,7 +86,9 @@ public class AmzaStateStorageNGTest {
             orderIdProvider,
             indexedWALStorageProvider,
             4,
-            Executors.newCachedThreadPool());
+            Executors.newCachedThreadPool(),
+            0,
+            0);
 
         AsyncStripeFlusher systemFlusher = new AsyncStripeFlusher(-1,
             1_000,
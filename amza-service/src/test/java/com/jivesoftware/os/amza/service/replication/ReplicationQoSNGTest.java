@@ -0,0 +1,44 @@
+package com.jivesoftware.os.amza.service.replication;
+
+import com.jivesoftware.os.amza.service.replication.ReplicationQoS.Pacer;
+import com.jivesoftware.os.amza.service.stats.AmzaStats;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class ReplicationQoSNGTest {
+
+    @Test
+    public void testPacerBurstThenWait() throws Exception {
+        Pacer pacer = new Pacer();
+        long now = TimeUnit.SECONDS.toNanos(100);
+        // a full second of burst is available after idling
+        Assert.assertTrue(pacer.reserve(now, 1_000, 1_000d) <= 0);
+        long waitNanos = pacer.reserve(now, 1_000, 1_000d);
+        Assert.assertEquals(waitNanos, TimeUnit.SECONDS.toNanos(1));
+        Assert.assertEquals(pacer.reserve(now, 1_000_000, 0d), 0);
+    }
+
+    @Test
+    public void testPacerDebtIsBounded() throws Exception {
+        Pacer pacer = new Pacer();
+        long now = TimeUnit.SECONDS.toNanos(100);
+        long waitNanos = pacer.reserve(now, 1_000_000, 1_000d);
+        Assert.assertEquals(waitNanos, TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testBulkFactor() throws Exception {
+        AmzaStats amzaStats = new AmzaStats();
+        ReplicationQoS replicationQoS = new ReplicationQoS(amzaStats, 0, 0, 0.1d);
+        Assert.assertEquals(replicationQoS.bulkFactor(), 1d);
+        amzaStats.deltaStripeLoad(0, 10, 0.5d);
+        amzaStats.deltaStripeLoad(1, 10, 1.5d);
+        Assert.assertEquals(replicationQoS.bulkFactor(), 0.5d, 0.0001d);
+        amzaStats.deltaStripeLoad(1, 10, 3d);
+        Assert.assertEquals(replicationQoS.bulkFactor(), 0.1d, 0.0001d);
+    }
+}
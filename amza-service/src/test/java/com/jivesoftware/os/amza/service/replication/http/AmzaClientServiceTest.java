@@ -0,0 +1,201 @@
+package com.jivesoftware.os.amza.service.replication.http;
+
+import com.jivesoftware.os.amza.api.PartitionClient.KeyValueFilter;
+import com.jivesoftware.os.amza.api.filer.HeapFiler;
+import com.jivesoftware.os.amza.api.partition.Consistency;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.amza.api.ring.RingMember;
+import com.jivesoftware.os.amza.api.stream.KeyValueStream;
+import com.jivesoftware.os.amza.service.MapPartition;
+import com.jivesoftware.os.amza.service.Partition;
+import com.jivesoftware.os.amza.service.Partition.ScanRange;
+import com.jivesoftware.os.amza.service.PartitionProvider;
+import com.jivesoftware.os.amza.service.PartitionUpdateNotifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class AmzaClientServiceTest {
+
+    @Test
+    public void testParallelScanMatchesSequentialScan() throws Exception {
+        MapPartition partition = partition();
+        List<ScanRange> ranges = ranges();
+
+        PartitionName partitionName = new PartitionName(false, "ring".getBytes(), "partition".getBytes());
+        PartitionProvider partitionProvider = new SinglePartitionProvider(partition);
+        ExecutorService scanExecutor = Executors.newFixedThreadPool(4);
+        try {
+            AmzaClientService sequential = new AmzaClientService(null, null, partitionProvider);
+            // a tiny buffer forces every range past its share, so each range finishes streaming straight to the response
+            AmzaClientService bounded = new AmzaClientService(null, null, partitionProvider, scanExecutor, 4, 4 * 256, 1);
+            AmzaClientService unbounded = new AmzaClientService(null, null, partitionProvider, scanExecutor, 4, 64 * 1024 * 1024, 1);
+            for (boolean frontCoded : new boolean[] { false, true }) {
+                String expected = scan(sequential, partitionName, ranges, frontCoded);
+                Assert.assertEquals(scan(bounded, partitionName, ranges, frontCoded), expected, "frontCoded:" + frontCoded);
+                Assert.assertEquals(scan(unbounded, partitionName, ranges, frontCoded), expected, "frontCoded:" + frontCoded);
+            }
+        } finally {
+            scanExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelScanFiltersEachRangeOnItsOwn() throws Exception {
+        MapPartition partition = partition();
+        List<ScanRange> ranges = ranges();
+
+        PartitionName partitionName = new PartitionName(false, "ring".getBytes(), "partition".getBytes());
+        PartitionProvider partitionProvider = new SinglePartitionProvider(partition);
+        ExecutorService scanExecutor = Executors.newFixedThreadPool(4);
+        try {
+            AmzaClientService sequential = new AmzaClientService(null, null, partitionProvider);
+            AmzaClientService bounded = new AmzaClientService(null, null, partitionProvider, scanExecutor, 4, 4 * 256, 1);
+
+            // every range is filtered by a copy of its own, which only ever sees the keys of that range
+            RangeTrackingFilter.crossedRanges.set(false);
+            scan(bounded, partitionName, ranges, new RangeTrackingFilter(-1), false);
+            Assert.assertFalse(RangeTrackingFilter.crossedRanges.get());
+
+            // a filter which stops part way through an overflowed range stops the ranges after it, as a sequential scan does
+            String expected = scan(sequential, partitionName, ranges, new RangeTrackingFilter(450), false);
+            Assert.assertEquals(scan(bounded, partitionName, ranges, new RangeTrackingFilter(450), false), expected);
+        } finally {
+            scanExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSubscribersAreLimited() throws Exception {
+        AmzaClientService client = new AmzaClientService(null, null, new SinglePartitionProvider(partition()), null, 1, 0, 2);
+        Assert.assertTrue(client.acquireSubscriber());
+        Assert.assertTrue(client.acquireSubscriber());
+        Assert.assertFalse(client.acquireSubscriber());
+
+        // a subscriber which goes away makes room for the next one
+        client.releaseSubscriber();
+        Assert.assertTrue(client.acquireSubscriber());
+        Assert.assertFalse(client.acquireSubscriber());
+    }
+
+    private static MapPartition partition() throws Exception {
+        MapPartition partition = new MapPartition();
+        partition.commit(Consistency.none, null, stream -> {
+            for (int i = 0; i < 1_000; i++) {
+                if (!stream.commit(String.format("key-%04d", i).getBytes(), ("value-" + i).getBytes(), i, false)) {
+                    return false;
+                }
+            }
+            return true;
+        }, 1_000);
+        return partition;
+    }
+
+    private static List<ScanRange> ranges() {
+        List<ScanRange> ranges = new ArrayList<>();
+        for (int i = 0; i < 1_000; i += 100) {
+            ranges.add(new ScanRange(null, String.format("key-%04d", i).getBytes(), null, String.format("key-%04d", i + 100).getBytes()));
+        }
+        return ranges;
+    }
+
+    private static String scan(AmzaClientService service,
+        PartitionName partitionName,
+        List<ScanRange> ranges,
+        boolean frontCoded) throws Exception {
+        return scan(service, partitionName, ranges, null, frontCoded);
+    }
+
+    private static String scan(AmzaClientService service,
+        PartitionName partitionName,
+        List<ScanRange> ranges,
+        KeyValueFilter filter,
+        boolean frontCoded) throws Exception {
+        HeapFiler out = new HeapFiler(1024);
+        service.scan(partitionName, ranges, true, filter, out, true, frontCoded);
+        return Arrays.toString(out.copyUsedBytes());
+    }
+
+    /**
+     * Remembers the first range it was handed a key from, and stops the stream at stopAt.
+     */
+    private static class RangeTrackingFilter implements KeyValueFilter {
+
+        private static final AtomicBoolean crossedRanges = new AtomicBoolean();
+
+        private final int stopAt;
+        private int range = -1;
+
+        private RangeTrackingFilter(int stopAt) {
+            this.stopAt = stopAt;
+        }
+
+        @Override
+        public boolean filter(byte[] prefix,
+            byte[] key,
+            byte[] value,
+            long timestamp,
+            boolean tombstoned,
+            long version,
+            KeyValueStream stream) throws Exception {
+            int index = Integer.parseInt(new String(key).substring("key-".length()));
+            if (range == -1) {
+                range = index / 100;
+            } else if (range != index / 100) {
+                crossedRanges.set(true);
+            }
+            return index != stopAt && stream.stream(prefix, key, value, timestamp, tombstoned, version);
+        }
+    }
+
+    private static class SinglePartitionProvider implements PartitionProvider {
+
+        private final Partition partition;
+
+        private SinglePartitionProvider(Partition partition) {
+            this.partition = partition;
+        }
+
+        @Override
+        public boolean createPartitionIfAbsent(PartitionName partitionName, PartitionProperties partitionProperties) throws Exception {
+            return false;
+        }
+
+        @Override
+        public Partition getPartition(PartitionName partitionName) throws Exception {
+            return partition;
+        }
+
+        @Override
+        public PartitionProperties getProperties(PartitionName partitionName) throws Exception {
+            return null;
+        }
+
+        @Override
+        public void updateProperties(PartitionName partitionName, PartitionProperties partitionProperties) throws Exception {
+        }
+
+        @Override
+        public RingMember awaitLeader(PartitionName partitionName, long waitForLeaderElection) throws Exception {
+            return null;
+        }
+
+        @Override
+        public void awaitOnline(PartitionName partitionName, long timeoutMillis) throws Exception {
+        }
+
+        @Override
+        public PartitionUpdateNotifier.Listener listenForUpdates(PartitionName partitionName) {
+            return null;
+        }
+    }
+}
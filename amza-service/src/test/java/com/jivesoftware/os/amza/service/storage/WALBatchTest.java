@@ -0,0 +1,43 @@
+package com.jivesoftware.os.amza.service.storage;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class WALBatchTest {
+
+    @Test
+    public void testRetainsCapacityUntilBatchesStaySmall() throws Exception {
+        WALBatch batch = WALBatch.acquire();
+        fill(batch, 100_000);
+        int grown = batch.capacity();
+        Assert.assertTrue(grown >= 100_000, "capacity:" + grown);
+        batch.release();
+        Assert.assertEquals(batch.capacity(), grown);
+
+        // an occasional small batch between large ones keeps the capacity
+        for (int i = 0; i < WALBatch.SHRINK_AFTER_SMALL_BATCHES * 2; i++) {
+            batch = WALBatch.acquire();
+            fill(batch, i % 100 == 0 ? 100_000 : 10);
+            batch.release();
+        }
+        Assert.assertEquals(batch.capacity(), grown);
+
+        // a run of small batches shrinks to what they needed
+        for (int i = 0; i < WALBatch.SHRINK_AFTER_SMALL_BATCHES; i++) {
+            batch = WALBatch.acquire();
+            fill(batch, i == 0 ? 1_000 : 10);
+            batch.release();
+        }
+        Assert.assertEquals(batch.capacity(), 1_024);
+        Assert.assertNull(batch.keys[0]);
+    }
+
+    private static void fill(WALBatch batch, int count) {
+        for (int i = 0; i < count; i++) {
+            batch.add(new byte[] { 1 }, new byte[] { 2 }, i, false, i);
+        }
+    }
+}
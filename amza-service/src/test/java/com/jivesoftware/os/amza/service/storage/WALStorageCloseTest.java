@@ -0,0 +1,137 @@
+package com.jivesoftware.os.amza.service.storage;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.jivesoftware.os.amza.api.AmzaInterner;
+import com.jivesoftware.os.amza.api.IoStats;
+import com.jivesoftware.os.amza.api.TimestampedValue;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.api.wal.MemoryWALIndex;
+import com.jivesoftware.os.amza.api.wal.MemoryWALIndexProvider;
+import com.jivesoftware.os.amza.api.wal.MemoryWALUpdates;
+import com.jivesoftware.os.amza.api.wal.WALRow;
+import com.jivesoftware.os.amza.service.SickPartitions;
+import com.jivesoftware.os.amza.service.stats.AmzaStats;
+import com.jivesoftware.os.amza.service.storage.archive.WALArchive;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshaller;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshaller;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryRowIOProvider;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryWALTx;
+import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class WALStorageCloseTest {
+
+    private final BinaryPrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller();
+    private final BinaryHighwaterRowMarshaller highwaterRowMarshaller = new BinaryHighwaterRowMarshaller(new AmzaInterner());
+    private final VersionedPartitionName versionedPartitionName = new VersionedPartitionName(
+        new PartitionName(false, "ring".getBytes(), "cold".getBytes()), VersionedPartitionName.STATIC_VERSION);
+
+    @Test
+    public void testCloseAndReopen() throws Exception {
+        IoStats ioStats = new IoStats();
+        File baseKey = Files.createTempDir();
+
+        WALStorage<MemoryWALIndex> walStorage = open(ioStats, baseKey, -1, false);
+        update(ioStats, walStorage, "a", "1", 10);
+        update(ioStats, walStorage, "b", "2", 11);
+        long highestTxId = walStorage.highestTxId();
+
+        walStorage.close(ioStats);
+        Assert.assertTrue(walStorage.isClosed());
+        // whoever still holds the closed storage reopens it on their next read
+        Assert.assertEquals(new String(walStorage.getTimestampedValue(null, "a".getBytes()).getValue()), "1");
+        Assert.assertFalse(walStorage.isClosed());
+        Assert.assertEquals(walStorage.highestTxId(), highestTxId);
+        walStorage.close(ioStats);
+
+        // rows written without a merge are only kept by a startup truncation if closing marked them
+        WALStorage<MemoryWALIndex> reopened = open(ioStats, baseKey, 1, true);
+        Assert.assertEquals(reopened.highestTxId(), highestTxId);
+        Assert.assertEquals(reopened.mergedTxId(), highestTxId);
+        TimestampedValue a = reopened.getTimestampedValue(null, "a".getBytes());
+        Assert.assertEquals(new String(a.getValue()), "1");
+        TimestampedValue b = reopened.getTimestampedValue(null, "b".getBytes());
+        Assert.assertEquals(new String(b.getValue()), "2");
+        Assert.assertEquals(b.getTimestampId(), 11);
+    }
+
+    @Test
+    public void testGetsRaceClose() throws Exception {
+        IoStats ioStats = new IoStats();
+        File baseKey = Files.createTempDir();
+
+        WALStorage<MemoryWALIndex> walStorage = open(ioStats, baseKey, -1, false);
+        for (int i = 0; i < 100; i++) {
+            update(ioStats, walStorage, "key-" + i, "value-" + i, i + 1);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Future<Integer>> readers = Lists.newArrayList();
+        try {
+            for (int t = 0; t < 4; t++) {
+                readers.add(executor.submit(() -> {
+                    int reads = 0;
+                    while (running.get()) {
+                        int i = reads % 100;
+                        TimestampedValue value = walStorage.getTimestampedValue(null, ("key-" + i).getBytes());
+                        Assert.assertNotNull(value, "key-" + i);
+                        Assert.assertEquals(new String(value.getValue()), "value-" + i);
+                        reads++;
+                    }
+                    return reads;
+                }));
+            }
+            // the sweep closes the partition out from under the readers over and over
+            for (int i = 0; i < 200; i++) {
+                walStorage.close(ioStats);
+                Thread.sleep(1);
+            }
+        } finally {
+            running.set(false);
+            executor.shutdown();
+        }
+        for (Future<Integer> reader : readers) {
+            Assert.assertTrue(reader.get() > 0);
+        }
+        Assert.assertFalse(walStorage.isSick());
+    }
+
+    private WALStorage<MemoryWALIndex> open(IoStats ioStats, File baseKey, long deltaWALId, boolean truncateToEndOfMergeMarker) throws Exception {
+        BinaryWALTx binaryWALTx = new BinaryWALTx("cold", new BinaryRowIOProvider(4096, 64, false), primaryRowMarshaller, 4096, 64);
+        WALStorage<MemoryWALIndex> walStorage = new WALStorage<>(
+            new AmzaStats(),
+            versionedPartitionName,
+            new OrderIdProviderImpl(new ConstantWriterIdProvider(1)),
+            primaryRowMarshaller,
+            highwaterRowMarshaller,
+            binaryWALTx,
+            new WALArchive(Files.createTempDir(), 64 * 1024, 64 * 1024 * 1024, 8),
+            new MemoryWALIndexProvider("memory"),
+            new SickPartitions(),
+            false,
+            2);
+        walStorage.load(ioStats, baseKey, deltaWALId, -1, true, truncateToEndOfMergeMarker, -1, 0);
+        return walStorage;
+    }
+
+    private void update(IoStats ioStats, WALStorage<MemoryWALIndex> walStorage, String key, String value, long timestamp) throws Exception {
+        List<WALRow> updates = Lists.newArrayList();
+        updates.add(new WALRow(RowType.primary, null, key.getBytes(), value.getBytes(), timestamp, false, timestamp));
+        walStorage.update(ioStats, true, RowType.primary, -1, false, null, new MemoryWALUpdates(updates, null));
+    }
+}
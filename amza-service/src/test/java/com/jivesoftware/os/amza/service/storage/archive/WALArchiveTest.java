@@ -0,0 +1,287 @@
+package com.jivesoftware.os.amza.service.storage.archive;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.jivesoftware.os.amza.api.AmzaInterner;
+import com.jivesoftware.os.amza.api.IoStats;
+import com.jivesoftware.os.amza.api.TimestampedValue;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.api.wal.MemoryWALIndex;
+import com.jivesoftware.os.amza.api.wal.MemoryWALIndexProvider;
+import com.jivesoftware.os.amza.api.wal.MemoryWALUpdates;
+import com.jivesoftware.os.amza.api.wal.WALKey;
+import com.jivesoftware.os.amza.api.wal.WALRow;
+import com.jivesoftware.os.amza.service.SickPartitions;
+import com.jivesoftware.os.amza.service.stats.AmzaStats;
+import com.jivesoftware.os.amza.service.stats.AmzaStats.CompactionStats;
+import com.jivesoftware.os.amza.service.storage.WALStorage;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshaller;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshaller;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryRowIOProvider;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryWALTx;
+import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class WALArchiveTest {
+
+    private final BinaryPrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller();
+    private final BinaryHighwaterRowMarshaller highwaterRowMarshaller = new BinaryHighwaterRowMarshaller(new AmzaInterner());
+
+    @Test
+    public void testSegmentsAndMerge() throws Exception {
+        File directory = Files.createTempDir();
+        // tiny blocks and spills so the sparse index and multiple segments are exercised
+        WALArchive archive = new WALArchive(directory, 256, 16 * 1024, 2);
+
+        WALArchive.Writer writer = archive.writer();
+        for (int i = 0; i < 1_000; i++) {
+            archive(writer, i, i, false);
+        }
+        // rewrite every tenth key with a newer timestamp, and tombstone every hundredth
+        for (int i = 0; i < 1_000; i += 10) {
+            archive(writer, i, 10_000 + i, i % 100 == 0);
+        }
+        writer.flush();
+        Assert.assertTrue(archive.segmentCount() > 2, "segments:" + archive.segmentCount());
+
+        assertArchive(archive);
+
+        // a reopened archive finds the same segments
+        archive.close();
+        archive = new WALArchive(directory, 256, 16 * 1024, 2);
+        assertArchive(archive);
+
+        long maxTxId = archive.maxTxId();
+        WALArchive.Merge merge = archive.merge(20_000, 0, 0, 0);
+        Assert.assertNotNull(merge);
+        merge.commit();
+        Assert.assertEquals(archive.segmentCount(), 1);
+        Assert.assertEquals(archive.maxTxId(), maxTxId);
+
+        // the expired tombstones are gone and everything else survived
+        Assert.assertNull(archive.get(null, key(0)));
+        Assert.assertEquals(archive.rowCount(), 990);
+        Assert.assertEquals(archive.get(null, key(10)).valueTimestamp, 10_010);
+        Assert.assertEquals(archive.get(null, key(11)).valueTimestamp, 11);
+        Assert.assertNull(archive.merge(20_000, 0, 0, 0));
+    }
+
+    private void assertArchive(WALArchive archive) throws Exception {
+        for (int i = 0; i < 1_000; i++) {
+            ArchivedRow row = archive.get(null, key(i));
+            Assert.assertNotNull(row, "key:" + i);
+            Assert.assertEquals(row.valueTimestamp, i % 10 == 0 ? 10_000 + i : i);
+            Assert.assertEquals(row.valueTombstoned, i % 100 == 0);
+            if (!row.valueTombstoned) {
+                Assert.assertEquals(new String(primaryRowMarshaller.valueFromRow(row.rowType, row.row, 0)), "value-" + row.valueTimestamp);
+            }
+        }
+        Assert.assertNull(archive.get(null, "missing".getBytes()));
+
+        WALArchive.Cursor cursor = archive.cursor(WALKey.compose(null, key(100)), WALKey.compose(null, key(200)));
+        List<ArchivedRow> rows = new ArrayList<>();
+        ArchivedRow row;
+        while ((row = cursor.next()) != null) {
+            rows.add(row);
+        }
+        Assert.assertEquals(rows.size(), 100);
+        for (int i = 0; i < rows.size(); i++) {
+            Assert.assertEquals(rows.get(i).key(), key(100 + i));
+        }
+
+        // descending from inclusive down to exclusive
+        cursor = archive.reverseCursor(WALKey.compose(null, key(199)), WALKey.compose(null, key(99)));
+        rows.clear();
+        while ((row = cursor.next()) != null) {
+            rows.add(row);
+        }
+        Assert.assertEquals(rows.size(), 100);
+        for (int i = 0; i < rows.size(); i++) {
+            Assert.assertEquals(rows.get(i).key(), key(199 - i));
+            Assert.assertEquals(rows.get(i).valueTimestamp, (199 - i) % 10 == 0 ? 10_000 + 199 - i : 199 - i);
+        }
+    }
+
+    @Test
+    public void testCompactionArchivesColdRows() throws Exception {
+        IoStats ioStats = new IoStats();
+        File baseKey = Files.createTempDir();
+        WALArchive archive = new WALArchive(Files.createTempDir(), 1024, 64 * 1024 * 1024, 8);
+        WALStorage<MemoryWALIndex> walStorage = new WALStorage<>(
+            new AmzaStats(),
+            new VersionedPartitionName(new PartitionName(false, "ring".getBytes(), "tiered".getBytes()), VersionedPartitionName.STATIC_VERSION),
+            new OrderIdProviderImpl(new ConstantWriterIdProvider(1)),
+            primaryRowMarshaller,
+            highwaterRowMarshaller,
+            new BinaryWALTx("tiered", new BinaryRowIOProvider(4096, 64, false), primaryRowMarshaller, 4096, 64),
+            archive,
+            new MemoryWALIndexProvider("memory"),
+            new SickPartitions(),
+            false,
+            2);
+        walStorage.load(ioStats, baseKey, -1, -1, false, false, -1, 0);
+
+        for (int i = 0; i < 100; i++) {
+            update(ioStats, walStorage, i, 1 + i, false);
+        }
+        update(ioStats, walStorage, 7, 1_000, false);
+        update(ioStats, walStorage, 8, 1_001, true);
+
+        Assert.assertTrue(walStorage.compactableTombstone(0, 0, 0, 0, -1, 500));
+        AmzaStats amzaStats = new AmzaStats();
+        CompactionStats compactionStats = amzaStats.beginCompaction(AmzaStats.CompactionFamily.tombstone, "tiered");
+        walStorage.compactTombstone(ioStats, compactionStats, baseKey, baseKey, RowType.primary, 0, 0, 0, 0, -1, 500, -1, 0, false,
+            (transitionToCompacted) -> transitionToCompacted.tx(() -> null));
+        compactionStats.finished();
+
+        // only the two rows newer than the archive timestamp stay hot
+        Assert.assertEquals(walStorage.keyCount(), 2);
+        Assert.assertEquals(archive.rowCount(), 98);
+
+        TimestampedValue cold = walStorage.getTimestampedValue(null, key(3));
+        Assert.assertEquals(cold.getTimestampId(), 4);
+        Assert.assertEquals(new String(cold.getValue()), "value-4");
+        Assert.assertEquals(walStorage.getTimestampedValue(null, key(7)).getTimestampId(), 1_000);
+        Assert.assertNull(walStorage.getTimestampedValue(null, key(8)));
+
+        // an older write for an archived key loses to the archived row
+        update(ioStats, walStorage, 3, 2, false);
+        Assert.assertEquals(walStorage.getTimestampedValue(null, key(3)).getTimestampId(), 4);
+
+        List<String> scanned = new ArrayList<>();
+        walStorage.rowScan((prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+            if (!valueTombstoned) {
+                scanned.add(new String(key));
+            }
+            return true;
+        }, true);
+        Assert.assertEquals(scanned.size(), 99);
+        for (int i = 1; i < scanned.size(); i++) {
+            Assert.assertTrue(scanned.get(i - 1).compareTo(scanned.get(i)) < 0);
+        }
+
+        long[] taken = new long[1];
+        walStorage.takeRowUpdatesSince(ioStats, -1, (rowFP, rowTxId, rowType, row) -> {
+            if (rowType.isPrimary()) {
+                taken[0]++;
+            }
+            return true;
+        });
+        Assert.assertTrue(taken[0] >= 100, "taken:" + taken[0]);
+
+        // a newer write makes key 3 both hot and archived, and it is only counted once
+        update(ioStats, walStorage, 3, 2_000, false);
+        Assert.assertEquals(walStorage.getTimestampedValue(null, key(3)).getTimestampId(), 2_000);
+        Assert.assertEquals(walStorage.count(stream -> true), walStorage.keyCount() + 97);
+        Assert.assertEquals(walStorage.approximateCount(), walStorage.keyCount() + 98);
+    }
+
+    @Test
+    public void testExpiredTombstoneShadowsArchive() throws Exception {
+        IoStats ioStats = new IoStats();
+        File baseKey = Files.createTempDir();
+        // compactions merge the archive once it has more than two segments
+        WALArchive archive = new WALArchive(Files.createTempDir(), 1024, 64 * 1024 * 1024, 2);
+        WALStorage<MemoryWALIndex> walStorage = open(ioStats, baseKey, archive);
+
+        update(ioStats, walStorage, 1, 1, false);
+        update(ioStats, walStorage, 2, 2, false);
+        compact(ioStats, walStorage, baseKey, 0, 500);
+        Assert.assertEquals(archive.rowCount(), 2);
+
+        update(ioStats, walStorage, 1, 600, true);
+        // the tombstone has expired but is still newer than the archive age, and must not be dropped while the archive holds the key
+        compact(ioStats, walStorage, baseKey, 1_000, 500);
+        Assert.assertEquals(archive.segmentCount(), 2);
+        Assert.assertNull(walStorage.getTimestampedValue(null, key(1)));
+        Assert.assertEquals(walStorage.getTimestampedValue(null, key(2)).getTimestampId(), 2);
+        Assert.assertEquals(walStorage.count(stream -> true), 1);
+
+        // with archiving turned off the tombstone still goes to the archive, whose merge then folds the tombstones and what they shadow away
+        update(ioStats, walStorage, 2, 700, true);
+        compact(ioStats, walStorage, baseKey, 1_000, 0);
+        Assert.assertEquals(archive.segmentCount(), 1);
+        Assert.assertEquals(archive.rowCount(), 0);
+        Assert.assertNull(walStorage.getTimestampedValue(null, key(1)));
+        Assert.assertNull(walStorage.getTimestampedValue(null, key(2)));
+        Assert.assertEquals(walStorage.count(stream -> true), 0);
+    }
+
+    @Test
+    public void testDescendingScanMergesArchive() throws Exception {
+        IoStats ioStats = new IoStats();
+        File baseKey = Files.createTempDir();
+        WALArchive archive = new WALArchive(Files.createTempDir(), 1024, 64 * 1024 * 1024, 8);
+        WALStorage<MemoryWALIndex> walStorage = open(ioStats, baseKey, archive);
+
+        for (int i = 0; i < 10; i++) {
+            update(ioStats, walStorage, i, 1 + i, false);
+        }
+        compact(ioStats, walStorage, baseKey, 0, 6);
+        Assert.assertEquals(archive.rowCount(), 5);
+
+        List<String> scanned = new ArrayList<>();
+        walStorage.rangeScan(null, key(8), null, key(1), (prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+            scanned.add(new String(key));
+            return true;
+        }, true);
+        List<String> expected = new ArrayList<>();
+        for (int i = 8; i > 1; i--) {
+            expected.add(new String(key(i)));
+        }
+        Assert.assertEquals(scanned, expected);
+    }
+
+    private WALStorage<MemoryWALIndex> open(IoStats ioStats, File baseKey, WALArchive archive) throws Exception {
+        WALStorage<MemoryWALIndex> walStorage = new WALStorage<>(
+            new AmzaStats(),
+            new VersionedPartitionName(new PartitionName(false, "ring".getBytes(), "tiered".getBytes()), VersionedPartitionName.STATIC_VERSION),
+            new OrderIdProviderImpl(new ConstantWriterIdProvider(1)),
+            primaryRowMarshaller,
+            highwaterRowMarshaller,
+            new BinaryWALTx("tiered", new BinaryRowIOProvider(4096, 64, false), primaryRowMarshaller, 4096, 64),
+            archive,
+            new MemoryWALIndexProvider("memory"),
+            new SickPartitions(),
+            false,
+            2);
+        walStorage.load(ioStats, baseKey, -1, -1, false, false, -1, 0);
+        return walStorage;
+    }
+
+    private void compact(IoStats ioStats, WALStorage<MemoryWALIndex> walStorage, File baseKey, long tombstoneTimestampId, long archiveTimestampId)
+        throws Exception {
+        AmzaStats amzaStats = new AmzaStats();
+        CompactionStats compactionStats = amzaStats.beginCompaction(AmzaStats.CompactionFamily.tombstone, "tiered");
+        walStorage.compactTombstone(ioStats, compactionStats, baseKey, baseKey, RowType.primary, tombstoneTimestampId, 0, 0, 0, -1, archiveTimestampId,
+            -1, 0, false, (transitionToCompacted) -> transitionToCompacted.tx(() -> null));
+        compactionStats.finished();
+    }
+
+    private void archive(WALArchive.Writer writer, int i, long timestamp, boolean tombstoned) throws Exception {
+        byte[] value = tombstoned ? null : ("value-" + timestamp).getBytes();
+        byte[] row = primaryRowMarshaller.toRow(RowType.primary, WALKey.compose(null, key(i)), value, timestamp, tombstoned, timestamp);
+        writer.archive(timestamp, RowType.primary, null, key(i), timestamp, tombstoned, timestamp, row);
+    }
+
+    private void update(IoStats ioStats, WALStorage<MemoryWALIndex> walStorage, int i, long timestamp, boolean tombstoned) throws Exception {
+        List<WALRow> updates = Lists.newArrayList();
+        byte[] value = tombstoned ? null : ("value-" + timestamp).getBytes();
+        updates.add(new WALRow(RowType.primary, null, key(i), value, timestamp, tombstoned, timestamp));
+        walStorage.update(ioStats, true, RowType.primary, -1, false, null, new MemoryWALUpdates(updates, null));
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key-%05d", i).getBytes();
+    }
+}
@@ -0,0 +1,31 @@
+package com.jivesoftware.os.amza.service.storage.binary;
+
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.api.wal.WALKey;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class BinaryPrimaryRowMarshallerTest {
+
+    private final PartitionName partitionName = new PartitionName(false, "ring".getBytes(), "partition".getBytes());
+
+    @Test
+    public void testPrefixedToRowMatchesComposed() throws Exception {
+        BinaryPrimaryRowMarshaller marshaller = new BinaryPrimaryRowMarshaller();
+        byte[][] prefixes = { null, "prefix".getBytes() };
+        byte[][] values = { null, new byte[0], "value".getBytes() };
+        for (RowType rowType : new RowType[] { RowType.primary, RowType.dictionary_primary }) {
+            for (byte[] prefix : prefixes) {
+                for (byte[] value : values) {
+                    byte[] composed = marshaller.toRow(partitionName, rowType, WALKey.compose(prefix, "key".getBytes()), value, 1L, true, 2L);
+                    byte[] direct = marshaller.toRow(partitionName, rowType, prefix, "key".getBytes(), value, 1L, true, 2L);
+                    Assert.assertEquals(direct, composed);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.jivesoftware.os.amza.service.storage.binary;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class RowCompressionDictionariesTest {
+
+    private final PartitionName partitionName = new PartitionName(false, "ring".getBytes(), "partition".getBytes());
+    // trains on the writing thread, so the write after the one which filled the samples is deflated
+    private final ExecutorService trainer = MoreExecutors.sameThreadExecutor();
+
+    @Test
+    public void testRawWithoutStore() throws Exception {
+        RowCompressionDictionaries dictionaries = new RowCompressionDictionaries(null, 16, 64 * 1024, 16 * 1024, 1024 * 1024, 16, trainer);
+        for (int i = 0; i < 100; i++) {
+            byte[] value = value(i);
+            byte[] compressed = dictionaries.compress(partitionName, value);
+            Assert.assertEquals(compressed.length, value.length + 1);
+            Assert.assertEquals(dictionaries.uncompress(compressed), value);
+        }
+        Assert.assertNull(dictionaries.compress(partitionName, null));
+        Assert.assertNull(dictionaries.uncompress(null));
+    }
+
+    @Test
+    public void testTrainedDictionaryRoundTrip() throws Exception {
+        InMemoryStore store = new InMemoryStore();
+        RowCompressionDictionaries dictionaries = trained(store);
+        Assert.assertEquals(store.current.size(), 1);
+
+        int raw = 0;
+        int deflated = 0;
+        for (int i = 0; i < 100; i++) {
+            byte[] value = value(20_000 + i);
+            raw += value.length;
+            deflated += dictionaries.compress(partitionName, value).length;
+        }
+        Assert.assertTrue(deflated < raw / 2, "raw:" + raw + " deflated:" + deflated);
+
+        // a replica with the same store can decode rows it did not write
+        RowCompressionDictionaries replica = new RowCompressionDictionaries(store, 64, 64 * 1024, 16 * 1024, 1024 * 1024, 16, null);
+        Assert.assertEquals(replica.uncompress(dictionaries.compress(partitionName, value(30_000))), value(30_000));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testUnknownDictionary() throws Exception {
+        byte[] value = new byte[1 + 8 + 4 + 2];
+        value[0] = RowCompressionDictionaries.DEFLATED;
+        value[1 + 8 + 3] = 1;
+        new RowCompressionDictionaries(new InMemoryStore(), 64, 64 * 1024, 16 * 1024, 1024 * 1024, 16, trainer).uncompress(value);
+    }
+
+    @Test
+    public void testReplicaLearnsStreamedDictionary() throws Exception {
+        RowCompressionDictionaries dictionaries = trained(new InMemoryStore());
+        BinaryPrimaryRowMarshaller marshaller = new BinaryPrimaryRowMarshaller(dictionaries);
+        byte[] row = marshaller.toRow(partitionName, RowType.dictionary_primary, "key".getBytes(), value(30_000), 1, false, 1);
+        long dictionaryId = marshaller.valueDictionaryId(RowType.dictionary_primary, row);
+        Assert.assertTrue(dictionaryId != -1);
+        Assert.assertEquals(marshaller.valueDictionaryId(RowType.primary, row), -1L);
+
+        // the dictionary's system row has not replicated, so the replica's store is empty
+        BinaryPrimaryRowMarshaller replica = new BinaryPrimaryRowMarshaller(
+            new RowCompressionDictionaries(new InMemoryStore(), 64, 64 * 1024, 16 * 1024, 1024 * 1024, 16, null));
+        replica.getDictionaries().learn(dictionaryId, dictionaries.dictionary(dictionaryId));
+        Assert.assertEquals(replica.valueFromRow(RowType.dictionary_primary, row, 0), value(30_000));
+
+        // without a trainer the replica writes raw rows even though it can read deflated ones
+        byte[] replicaRow = replica.toRow(partitionName, RowType.dictionary_primary, "key".getBytes(), value(30_000), 1, false, 1);
+        Assert.assertEquals(replica.valueDictionaryId(RowType.dictionary_primary, replicaRow), -1L);
+    }
+
+    private RowCompressionDictionaries trained(InMemoryStore store) throws Exception {
+        RowCompressionDictionaries dictionaries = new RowCompressionDictionaries(store, 64, 64 * 1024, 16 * 1024, 1024 * 1024, 16, trainer);
+        // every write is sampled, the first also looks for a stored dictionary and the 64th trains one, so the 65th is deflated
+        for (int i = 0; i < 64; i++) {
+            byte[] value = value(i);
+            byte[] compressed = dictionaries.compress(partitionName, value);
+            Assert.assertEquals(compressed[0], RowCompressionDictionaries.RAW);
+            Assert.assertEquals(dictionaries.uncompress(compressed), value);
+        }
+        byte[] compressed = dictionaries.compress(partitionName, value(64));
+        Assert.assertEquals(compressed[0], RowCompressionDictionaries.DEFLATED);
+        Assert.assertEquals(dictionaries.uncompress(compressed), value(64));
+        return dictionaries;
+    }
+
+    private static byte[] value(int i) {
+        return ("{\"id\":" + i + ",\"type\":\"activity\",\"tenant\":\"tenant-" + (i % 7) + "\",\"verb\":\"created\","
+            + "\"objectType\":\"document\",\"visibility\":\"public\",\"timestamp\":" + (1_450_000_000_000L + i) + "}").getBytes();
+    }
+
+    private static class InMemoryStore implements RowCompressionDictionaries.DictionaryStore {
+
+        private final Map<Long, byte[]> dictionaries = new ConcurrentHashMap<>();
+        private final Map<PartitionName, Long> current = new ConcurrentHashMap<>();
+
+        @Override
+        public byte[] load(long dictionaryId) throws Exception {
+            return dictionaries.get(dictionaryId);
+        }
+
+        @Override
+        public long currentDictionaryId(PartitionName partitionName) throws Exception {
+            Long id = current.get(partitionName);
+            return id == null ? -1 : id;
+        }
+
+        @Override
+        public void save(PartitionName partitionName, long dictionaryId, byte[] dictionary) throws Exception {
+            dictionaries.put(dictionaryId, dictionary);
+            current.put(partitionName, dictionaryId);
+        }
+    }
+}
@@ -20,6 +20,7 @@ import com.jivesoftware.os.amza.service.stats.AmzaStats;
 import com.jivesoftware.os.amza.service.stats.AmzaStats.CompactionStats;
 import com.jivesoftware.os.amza.api.IoStats;
 import com.jivesoftware.os.amza.service.storage.WALStorage;
+import com.jivesoftware.os.amza.service.storage.archive.WALArchive;
 import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
 import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
 import java.io.File;
@@ -61,6 +62,7 @@ public class RowPartitionNGTest {
             primaryRowMarshaller,
             highwaterRowMarshaller,
             binaryWALTx,
+            new WALArchive(Files.createTempDir(), 64 * 1024, 64 * 1024 * 1024, 8),
             indexProvider,
             new SickPartitions(),
             false,
@@ -74,7 +76,8 @@ public class RowPartitionNGTest {
         compact.scheduleAtFixedRate(() -> {
             CompactionStats compactionStats = amzaStats.beginCompaction(AmzaStats.CompactionFamily.tombstone, walDir.getName());
             try {
-                indexedWAL.compactTombstone(ioStats, compactionStats, walDir, walDir, RowType.primary, 0, 0, Long.MAX_VALUE, Long.MAX_VALUE, -1, -1, 0, false,
+                indexedWAL.compactTombstone(ioStats, compactionStats, walDir, walDir, RowType.primary, 0, 0, Long.MAX_VALUE, Long.MAX_VALUE, -1, -1, -1, 0,
+                    false,
                     (transitionToCompacted) -> transitionToCompacted.tx(() -> {
                         return null;
                     }));
@@ -179,6 +182,7 @@ public class RowPartitionNGTest {
             primaryRowMarshaller,
             highwaterRowMarshaller,
             binaryWALTx,
+            new WALArchive(Files.createTempDir(), 64 * 1024, 64 * 1024 * 1024, 8),
             walIndexProvider,
             new SickPartitions(),
             false,
@@ -15,6 +15,7 @@ import com.jivesoftware.os.amza.api.partition.StorageVersion;
 import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.api.scan.RowChanges;
+import com.jivesoftware.os.amza.api.scan.RowsChanged;
 import com.jivesoftware.os.amza.api.stream.Commitable;
 import com.jivesoftware.os.amza.api.stream.KeyContainedStream;
 import com.jivesoftware.os.amza.api.stream.RowType;
@@ -132,6 +133,10 @@ public class DeltaStripeWALStorageNGTest {
         amzaStats = new AmzaStats();
         indexedWALStorageProvider = new IndexedWALStorageProvider(amzaStats,
             workingDirectories,
+            new File[] { Files.createTempDir() },
+            64 * 1024,
+            64 * 1024 * 1024,
+            8,
             workingDirectories.length,
             walIndexProviderRegistry,
             primaryRowMarshaller,
@@ -148,7 +153,9 @@ public class DeltaStripeWALStorageNGTest {
             orderIdProvider,
             indexedWALStorageProvider,
             4,
-            Executors.newCachedThreadPool());
+            Executors.newCachedThreadPool(),
+            0,
+            0);
 
         currentVersionProvider = new CurrentVersionProvider() {
             @Override
@@ -336,14 +343,14 @@ public class DeltaStripeWALStorageNGTest {
         File baseKey = indexedWALStorageProvider.baseKey(versionedPartitionName1, 0);
         CompactionStats compactionStats = amzaStats.beginCompaction(AmzaStats.CompactionFamily.tombstone, "foo");
 
-        storage1.compactTombstone(ioStats, compactionStats, baseKey, baseKey, testRowType1, 10, 10, Long.MAX_VALUE, Long.MAX_VALUE, -1, -1, 0, true,
+        storage1.compactTombstone(ioStats, compactionStats, baseKey, baseKey, testRowType1, 10, 10, Long.MAX_VALUE, Long.MAX_VALUE, -1, -1, -1, 0, true,
             (transitionToCompacted) -> transitionToCompacted.tx(() -> {
                 return null;
             }));
         compactionStats.finished();
 
         compactionStats = amzaStats.beginCompaction(AmzaStats.CompactionFamily.tombstone, "bar");
-        storage1.compactTombstone(ioStats, compactionStats, baseKey, baseKey, testRowType1, 10, 10, Long.MAX_VALUE, Long.MAX_VALUE, -1, -1, 0, true,
+        storage1.compactTombstone(ioStats, compactionStats, baseKey, baseKey, testRowType1, 10, 10, Long.MAX_VALUE, Long.MAX_VALUE, -1, -1, -1, 0, true,
             (transitionToCompacted) -> transitionToCompacted.tx(() -> {
                 return null;
             })); // Bla
@@ -370,7 +377,7 @@ public class DeltaStripeWALStorageNGTest {
 
         deltaStripeWALStorage.hackTruncation(4);
 
-        partitionIndex = new PartitionIndex(amzaSystemStats, amzaStats, orderIdProvider, indexedWALStorageProvider, 4, Executors.newCachedThreadPool());
+        partitionIndex = new PartitionIndex(amzaSystemStats, amzaStats, orderIdProvider, indexedWALStorageProvider, 4, Executors.newCachedThreadPool(), 0, 0);
         partitionCreator = new PartitionCreator(orderIdProvider, partitionPropertyMarshaller, partitionIndex, systemWALStorage, updated, rowChanges,
             amzaInterner);
         partitionCreator.init((partitionName) -> 0);
@@ -553,6 +560,70 @@ public class DeltaStripeWALStorageNGTest {
         Assert.assertEquals(index[0], 4);
     }
 
+    @Test
+    public void testBulkLoadSurvivesRestart() throws Exception {
+        IoStats ioStats = new IoStats();
+        byte[] prefix = UIO.intBytes(-1);
+
+        RowsChanged loaded = deltaStripeWALStorage.bulkLoad(versionedPartitionName1, partitionStore1, prefix,
+            (highwaters, txKeyValueStream) -> {
+                for (int i = 1; i <= 10; i++) {
+                    if (!txKeyValueStream.row(-1, UIO.intBytes(i), UIO.intBytes(i), 4, false, 4)) {
+                        return false;
+                    }
+                }
+                return true;
+            },
+            updated);
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(loaded.getApply().size(), 10);
+        // the next batch of the same load also goes straight to storage, and a row older than what is stored is not reported as changed
+        loaded = deltaStripeWALStorage.bulkLoad(versionedPartitionName1, partitionStore1, prefix,
+            (highwaters, txKeyValueStream) -> {
+                for (int i = 13; i <= 15; i++) {
+                    if (!txKeyValueStream.row(-1, UIO.intBytes(i), UIO.intBytes(i), 4, false, 4)) {
+                        return false;
+                    }
+                }
+                return txKeyValueStream.row(-1, UIO.intBytes(1), UIO.intBytes(-1), 3, false, 3);
+            },
+            updated);
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(loaded.getApply().size(), 3);
+        Assert.assertFalse(loaded.getApply().containsKey(key(prefix, 1)));
+        // later writes go through the delta as usual
+        deltaStripeWALStorage.update(ioStats, true, testRowType1, highwaterStorage, versionedPartitionName1, partitionStore1, prefix,
+            new IntUpdate(testRowType1, 11, 11, 5, false),
+            updated);
+        // and a second bulk load must fall back while they are unmerged
+        Assert.assertNull(deltaStripeWALStorage.bulkLoad(versionedPartitionName1, partitionStore1, prefix,
+            new IntUpdate(testRowType1, 12, 12, 5, false),
+            updated));
+
+        partitionIndex = new PartitionIndex(amzaSystemStats, amzaStats, orderIdProvider, indexedWALStorageProvider, 4, Executors.newCachedThreadPool(), 0, 0);
+        partitionCreator = new PartitionCreator(orderIdProvider, partitionPropertyMarshaller, partitionIndex, systemWALStorage, updated, rowChanges,
+            amzaInterner);
+        partitionCreator.init((partitionName) -> 0);
+        deltaStripeWALStorage = loadDeltaStripe(ioStats);
+
+        WALStorage storage = partitionCreator.get("test", versionedPartitionName1, 0).getWalStorage();
+        for (int i = 1; i <= 10; i++) {
+            WALKey walKey = key(prefix, i);
+            Assert.assertEquals(storage.getTimestampedValue(walKey.prefix, walKey.key), new TimestampedValue(4, 4, UIO.intBytes(i)));
+            Assert.assertEquals(deltaStripeWALStorage.get(amzaStats.getIoStats, versionedPartitionName1, storage, walKey.prefix, walKey.key),
+                new WALValue(null, UIO.intBytes(i), 4, false, 4));
+        }
+        for (int i = 13; i <= 15; i++) {
+            WALKey walKey = key(prefix, i);
+            Assert.assertEquals(storage.getTimestampedValue(walKey.prefix, walKey.key), new TimestampedValue(4, 4, UIO.intBytes(i)));
+        }
+        WALKey walKey = key(prefix, 11);
+        Assert.assertEquals(deltaStripeWALStorage.get(amzaStats.getIoStats, versionedPartitionName1, storage, walKey.prefix, walKey.key),
+            new WALValue(null, UIO.intBytes(11), 5, false, 5));
+        walKey = key(prefix, 12);
+        Assert.assertNull(deltaStripeWALStorage.get(amzaStats.getIoStats, versionedPartitionName1, storage, walKey.prefix, walKey.key));
+    }
+
     @Test(enabled = false)
     public void testCorrectness() throws Exception {
         WALStorage storage1 = partitionStore1.getWalStorage();
@@ -569,7 +640,7 @@ public class DeltaStripeWALStorageNGTest {
 
         deltaStripeWALStorage.merge(ioStats, partitionIndex, partitionCreator, currentVersionProvider, true);
 
-        partitionIndex = new PartitionIndex(amzaSystemStats, amzaStats, orderIdProvider, indexedWALStorageProvider, 4, Executors.newCachedThreadPool());
+        partitionIndex = new PartitionIndex(amzaSystemStats, amzaStats, orderIdProvider, indexedWALStorageProvider, 4, Executors.newCachedThreadPool(), 0, 0);
         partitionCreator = new PartitionCreator(orderIdProvider, partitionPropertyMarshaller, partitionIndex, systemWALStorage, updated, rowChanges,
             amzaInterner);
         partitionCreator.init((partitionName) -> 0);
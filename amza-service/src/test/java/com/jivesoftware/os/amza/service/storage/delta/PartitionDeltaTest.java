@@ -0,0 +1,158 @@
+package com.jivesoftware.os.amza.service.storage.delta;
+
+import com.google.common.io.Files;
+import com.jivesoftware.os.amza.api.AmzaInterner;
+import com.jivesoftware.os.amza.api.IoStats;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.PerformanceProfile;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.api.wal.WALValue;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshaller;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshaller;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryRowIOProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class PartitionDeltaTest {
+
+    private final VersionedPartitionName versionedPartitionName = new VersionedPartitionName(
+        new PartitionName(false, "ring".getBytes(), "delta".getBytes()), VersionedPartitionName.STATIC_VERSION);
+
+    @Test
+    public void testLazyOrderedMatchesSkipList() throws Exception {
+        DeltaWALFactory deltaWALFactory = new DeltaWALFactory(new OrderIdProviderImpl(new ConstantWriterIdProvider(1)),
+            Files.createTempDir(),
+            new BinaryRowIOProvider(4096, 64, false),
+            new BinaryPrimaryRowMarshaller(),
+            new BinaryHighwaterRowMarshaller(new AmzaInterner()),
+            100);
+        DeltaWAL mergingWAL = deltaWALFactory.create(new IoStats(), -1);
+        DeltaWAL currentWAL = deltaWALFactory.create(new IoStats(), mergingWAL.getId());
+
+        // both layouts take the same writes, first into a delta which is then merging and then into the current delta
+        PerformanceProfile profile = PerformanceProfile.standard;
+        PartitionDelta orderedMerging = new PartitionDelta(versionedPartitionName, mergingWAL, Integer.MAX_VALUE, false, profile, null);
+        PartitionDelta lazyMerging = new PartitionDelta(versionedPartitionName, mergingWAL, Integer.MAX_VALUE, true, profile, null);
+        Random random = new Random(1234);
+        long timestamp = 0;
+        for (int i = 0; i < 500; i++) {
+            int key = random.nextInt(200);
+            timestamp++;
+            put(orderedMerging, key, timestamp);
+            put(lazyMerging, key, timestamp);
+        }
+
+        PartitionDelta ordered = new PartitionDelta(versionedPartitionName, currentWAL, Integer.MAX_VALUE, false, profile, orderedMerging);
+        PartitionDelta lazy = new PartitionDelta(versionedPartitionName, currentWAL, Integer.MAX_VALUE, true, profile, lazyMerging);
+        Assert.assertFalse(ordered.isLazyOrdered());
+        Assert.assertTrue(lazy.isLazyOrdered());
+        for (int i = 0; i < 300; i++) {
+            int key = random.nextInt(400);
+            timestamp++;
+            put(ordered, key, timestamp);
+            put(lazy, key, timestamp);
+
+            if (i % 50 == 0) {
+                // a scan between writes must see the keys added since the last sort
+                assertSame(scan(ordered.rowScanIterator(true)), scan(lazy.rowScanIterator(true)));
+            }
+        }
+
+        List<String> all = scan(lazy.rowScanIterator(true));
+        assertSame(scan(ordered.rowScanIterator(true)), all);
+        for (int i = 1; i < all.size(); i++) {
+            Assert.assertTrue(all.get(i - 1).compareTo(all.get(i)) < 0);
+        }
+
+        assertSame(scan(ordered.rangeScanIterator(null, key(100), null, key(250), true)),
+            scan(lazy.rangeScanIterator(null, key(100), null, key(250), true)));
+        assertSame(scan(ordered.rangeScanIterator(null, key(350), null, null, true)),
+            scan(lazy.rangeScanIterator(null, key(350), null, null, true)));
+        assertSame(scan(ordered.rangeScanIterator(null, null, null, key(20), true)),
+            scan(lazy.rangeScanIterator(null, null, null, key(20), true)));
+        Assert.assertEquals(lazy.size(), ordered.size());
+    }
+
+    @Test
+    public void testLazyOrderedScansRaceWrites() throws Exception {
+        DeltaWALFactory deltaWALFactory = new DeltaWALFactory(new OrderIdProviderImpl(new ConstantWriterIdProvider(1)),
+            Files.createTempDir(),
+            new BinaryRowIOProvider(4096, 64, false),
+            new BinaryPrimaryRowMarshaller(),
+            new BinaryHighwaterRowMarshaller(new AmzaInterner()),
+            100);
+        DeltaWAL wal = deltaWALFactory.create(new IoStats(), -1);
+        PartitionDelta lazy = new PartitionDelta(versionedPartitionName, wal, Integer.MAX_VALUE, true, PerformanceProfile.standard, null);
+
+        // scans keep sorting while the writer adds keys, and must always see an ordered prefix of what was written
+        int keyCount = 2_000;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            Thread reader = new Thread(() -> {
+                int lastSize = 0;
+                while (writing.get() && failure.get() == null) {
+                    List<String> scanned = scan(lazy.rowScanIterator(true));
+                    for (int i = 1; i < scanned.size(); i++) {
+                        if (scanned.get(i - 1).compareTo(scanned.get(i)) >= 0) {
+                            failure.compareAndSet(null, "out of order at " + i + ": " + scanned.get(i - 1) + " " + scanned.get(i));
+                        }
+                    }
+                    if (scanned.size() < lastSize) {
+                        failure.compareAndSet(null, "scan shrank from " + lastSize + " to " + scanned.size());
+                    }
+                    lastSize = scanned.size();
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        try {
+            for (int i = 0; i < keyCount; i++) {
+                put(lazy, keyCount - i, i + 1);
+            }
+        } finally {
+            writing.set(false);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+        Assert.assertNull(failure.get(), failure.get());
+        Assert.assertEquals(scan(lazy.rowScanIterator(true)).size(), keyCount);
+    }
+
+    private static void put(PartitionDelta delta, int key, long timestamp) throws Exception {
+        delta.put(timestamp, null, key(key), ("value-" + timestamp).getBytes(), timestamp, false, timestamp);
+    }
+
+    private static void assertSame(List<String> expected, List<String> actual) {
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(actual, expected);
+    }
+
+    private static List<String> scan(Iterator<Map.Entry<byte[], WALValue>> iterator) {
+        List<String> scanned = new ArrayList<>();
+        while (iterator.hasNext()) {
+            Map.Entry<byte[], WALValue> entry = iterator.next();
+            scanned.add(new String(entry.getKey()) + "=" + new String(entry.getValue().getValue()));
+        }
+        return scanned;
+    }
+
+    private static byte[] key(int i) {
+        return String.format("key-%05d", i).getBytes();
+    }
+}
@@ -0,0 +1,128 @@
+package com.jivesoftware.os.amza.service.storage.sketch;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.jivesoftware.os.amza.api.AmzaInterner;
+import com.jivesoftware.os.amza.api.IoStats;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.PartitionStatistics;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.api.stream.RowType;
+import com.jivesoftware.os.amza.api.wal.MemoryWALIndex;
+import com.jivesoftware.os.amza.api.wal.MemoryWALIndexProvider;
+import com.jivesoftware.os.amza.api.wal.MemoryWALUpdates;
+import com.jivesoftware.os.amza.api.wal.WALRow;
+import com.jivesoftware.os.amza.service.SickPartitions;
+import com.jivesoftware.os.amza.service.stats.AmzaStats;
+import com.jivesoftware.os.amza.service.storage.WALStorage;
+import com.jivesoftware.os.amza.service.storage.archive.WALArchive;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryHighwaterRowMarshaller;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryPrimaryRowMarshaller;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryRowIOProvider;
+import com.jivesoftware.os.amza.service.storage.binary.BinaryWALTx;
+import com.jivesoftware.os.jive.utils.ordered.id.ConstantWriterIdProvider;
+import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class PartitionSketchesTest {
+
+    private final BinaryPrimaryRowMarshaller primaryRowMarshaller = new BinaryPrimaryRowMarshaller();
+    private final BinaryHighwaterRowMarshaller highwaterRowMarshaller = new BinaryHighwaterRowMarshaller(new AmzaInterner());
+
+    @Test
+    public void testSketches() throws Exception {
+        Random random = new Random(1234);
+        PartitionSketches even = new PartitionSketches();
+        PartitionSketches odd = new PartitionSketches();
+        for (int i = 0; i < 100_000; i++) {
+            PartitionSketches sketches = (i % 2 == 0) ? even : odd;
+            // one prefix in ten writes to "hot", the rest spread over 5,000 prefixes
+            byte[] prefix = (random.nextInt(10) == 0) ? "hot".getBytes() : ("prefix-" + random.nextInt(5_000)).getBytes();
+            sketches.prefix(prefix, 1);
+            sketches.row(new byte[i % 100], new byte[i % 1_000], i, false);
+        }
+
+        PartitionSketches merged = PartitionSketches.fromLongs(even.toLongs(), 0);
+        merged.merge(odd);
+        PartitionStatistics statistics = merged.statistics();
+
+        Assert.assertEquals(statistics.rows, 100_000);
+        Assert.assertEquals(statistics.distinctPrefixes, 5_001, 5_001 * 0.1);
+        Assert.assertEquals(Arrays.toString(statistics.quantiles), "[0.5, 0.9, 0.99, 1.0]");
+        Assert.assertEquals(statistics.keySizes[0], 50, 5);
+        Assert.assertEquals(statistics.keySizes[3], 99);
+        Assert.assertEquals(statistics.valueSizes[1], 900, 50);
+        Assert.assertEquals(statistics.newestTimestamp, 99_999);
+        Assert.assertEquals(statistics.rowAges[0], 50_000, 5_000);
+        Assert.assertEquals(statistics.rowAges[3], 99_999);
+        Assert.assertEquals(new String(statistics.hotPrefixes.get(0).prefix), "hot");
+        Assert.assertTrue(statistics.hotPrefixes.get(0).writes >= 10_000 * 0.9, "writes:" + statistics.hotPrefixes.get(0).writes);
+
+        long hotWrites = statistics.hotPrefixes.get(0).writes;
+        merged.decay();
+        Assert.assertEquals(merged.statistics().hotPrefixes.get(0).writes, hotWrites / 2);
+
+        // a marker without sketches, or from another version, starts over
+        Assert.assertEquals(PartitionSketches.fromLongs(new long[0], 0).statistics().rows, 0);
+        Assert.assertEquals(PartitionSketches.fromLongs(new long[] { -1 }, 0).statistics().rows, 0);
+    }
+
+    @Test
+    public void testSketchesSurviveReload() throws Exception {
+        IoStats ioStats = new IoStats();
+        File baseKey = Files.createTempDir();
+
+        WALStorage<MemoryWALIndex> walStorage = open(ioStats, baseKey);
+        for (int i = 0; i < 100; i++) {
+            update(ioStats, walStorage, "a".getBytes(), i, 1 + i);
+        }
+        walStorage.endOfMergeMarker(ioStats, 1, walStorage.highestTxId());
+        // rows after the marker are replayed into the sketches on load
+        update(ioStats, walStorage, "b".getBytes(), 1_000, 1_000);
+        PartitionStatistics before = walStorage.sketches().statistics();
+        Assert.assertEquals(before.rows, 101);
+        Assert.assertEquals(before.distinctPrefixes, 2);
+        walStorage.close(ioStats);
+
+        PartitionStatistics after = open(ioStats, baseKey).sketches().statistics();
+        Assert.assertEquals(after.rows, before.rows);
+        Assert.assertEquals(after.distinctPrefixes, before.distinctPrefixes);
+        Assert.assertEquals(Arrays.toString(after.keySizes), Arrays.toString(before.keySizes));
+        Assert.assertEquals(Arrays.toString(after.valueSizes), Arrays.toString(before.valueSizes));
+        Assert.assertEquals(Arrays.toString(after.rowAges), Arrays.toString(before.rowAges));
+        Assert.assertEquals(after.hotPrefixes.size(), 2);
+        Assert.assertEquals(new String(after.hotPrefixes.get(0).prefix), "a");
+        Assert.assertEquals(after.hotPrefixes.get(0).writes, 100);
+    }
+
+    private WALStorage<MemoryWALIndex> open(IoStats ioStats, File baseKey) throws Exception {
+        WALStorage<MemoryWALIndex> walStorage = new WALStorage<>(
+            new AmzaStats(),
+            new VersionedPartitionName(new PartitionName(false, "ring".getBytes(), "sketched".getBytes()), VersionedPartitionName.STATIC_VERSION),
+            new OrderIdProviderImpl(new ConstantWriterIdProvider(1)),
+            primaryRowMarshaller,
+            highwaterRowMarshaller,
+            new BinaryWALTx("sketched", new BinaryRowIOProvider(4096, 64, false), primaryRowMarshaller, 4096, 64),
+            new WALArchive(Files.createTempDir(), 64 * 1024, 64 * 1024 * 1024, 8),
+            new MemoryWALIndexProvider("memory"),
+            new SickPartitions(),
+            false,
+            2);
+        walStorage.load(ioStats, baseKey, -1, -1, false, false, -1, 0);
+        return walStorage;
+    }
+
+    private void update(IoStats ioStats, WALStorage<MemoryWALIndex> walStorage, byte[] prefix, int i, long timestamp) throws Exception {
+        List<WALRow> updates = Lists.newArrayList();
+        updates.add(new WALRow(RowType.primary, prefix, String.format("key-%05d", i).getBytes(), ("value-" + i).getBytes(), timestamp, false, timestamp));
+        walStorage.update(ioStats, true, RowType.primary, -1, false, prefix, new MemoryWALUpdates(updates, null));
+    }
+}
@@ -0,0 +1,101 @@
+package com.jivesoftware.os.amza.service.take;
+
+import com.google.common.collect.Sets;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import java.util.Set;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ *
+ */
+public class AvailableRowsScheduleTest {
+
+    private static final long FULL_SWEEP_INTERVAL_MILLIS = 60_000L;
+
+    @Test
+    public void testDirtyPartitionIsOfferedImmediately() throws Exception {
+        AvailableRowsSchedule schedule = swept(1_000L, 0);
+        VersionedPartitionName a = partition("a");
+
+        assertTrue(schedule.drainDirty().isEmpty());
+        schedule.dirty(a);
+        assertFalse(schedule.isSweepDue(1_001L, 0));
+        Set<VersionedPartitionName> drained = schedule.drainDirty();
+        assertEquals(drained, Sets.newHashSet(a));
+        assertTrue(schedule.drainDirty().isEmpty());
+    }
+
+    @Test
+    public void testRevisitFiresAfterAckTimeout() throws Exception {
+        AvailableRowsSchedule schedule = swept(1_000L, 0);
+        VersionedPartitionName a = partition("a");
+        VersionedPartitionName b = partition("b");
+
+        long ackTimeoutMillis = 5_000L;
+        schedule.revisit(a, 1_000L + ackTimeoutMillis);
+        // a later revisit does not push back the earlier one, a sooner one replaces it
+        schedule.revisit(a, 1_000L + ackTimeoutMillis * 2);
+        schedule.revisit(b, 1_000L + ackTimeoutMillis * 2);
+        schedule.revisit(b, 1_000L + ackTimeoutMillis);
+        assertEquals(schedule.pendingRevisits(), 2);
+        assertEquals(schedule.untilNextRevisit(1_000L), ackTimeoutMillis);
+
+        Set<VersionedPartitionName> into = Sets.newHashSet();
+        assertEquals(schedule.drainRevisits(1_000L + ackTimeoutMillis - 1, into), 0);
+        assertTrue(into.isEmpty());
+
+        assertEquals(schedule.drainRevisits(1_000L + ackTimeoutMillis, into), 2);
+        assertEquals(into, Sets.newHashSet(a, b));
+        assertEquals(schedule.pendingRevisits(), 0);
+        assertEquals(schedule.untilNextRevisit(1_000L + ackTimeoutMillis), Long.MAX_VALUE);
+
+        // the stale entries left behind by the replaced revisits never fire
+        into.clear();
+        assertEquals(schedule.drainRevisits(1_000L + ackTimeoutMillis * 3, into), 0);
+        assertTrue(into.isEmpty());
+    }
+
+    @Test
+    public void testFullSweepPicksUpMissedPartition() throws Exception {
+        AvailableRowsSchedule schedule = new AvailableRowsSchedule(FULL_SWEEP_INTERVAL_MILLIS);
+        assertTrue(schedule.isSweepDue(1_000L, 0));
+
+        schedule = swept(1_000L, 0);
+        VersionedPartitionName a = partition("a");
+        schedule.revisit(a, 2_000L);
+        schedule.dirty(a);
+
+        // a partition which was never dirtied or whose dirty was missed is only found by the next sweep
+        assertFalse(schedule.isSweepDue(1_000L + FULL_SWEEP_INTERVAL_MILLIS - 1, 0));
+        assertTrue(schedule.isSweepDue(1_000L + FULL_SWEEP_INTERVAL_MILLIS, 0));
+        // as is anything whose sweep generation moved
+        assertTrue(schedule.isSweepDue(1_001L, 1));
+
+        // the sweep looks at everything so it forgets what was dirtied or scheduled before it
+        schedule.sweeping(1);
+        schedule.swept(1_000L + FULL_SWEEP_INTERVAL_MILLIS);
+        assertTrue(schedule.drainDirty().isEmpty());
+        assertEquals(schedule.pendingRevisits(), 0);
+        assertFalse(schedule.isSweepDue(1_000L + FULL_SWEEP_INTERVAL_MILLIS + 1, 1));
+
+        // a reconnecting remote is swept straight away
+        schedule.restart();
+        assertTrue(schedule.isSweepDue(1_000L + FULL_SWEEP_INTERVAL_MILLIS + 1, 1));
+    }
+
+    private static AvailableRowsSchedule swept(long nowMillis, long generation) {
+        AvailableRowsSchedule schedule = new AvailableRowsSchedule(FULL_SWEEP_INTERVAL_MILLIS);
+        schedule.sweeping(generation);
+        schedule.swept(nowMillis);
+        return schedule;
+    }
+
+    private static VersionedPartitionName partition(String name) {
+        return new VersionedPartitionName(new PartitionName(false, "ring".getBytes(), name.getBytes()), VersionedPartitionName.STATIC_VERSION);
+    }
+}
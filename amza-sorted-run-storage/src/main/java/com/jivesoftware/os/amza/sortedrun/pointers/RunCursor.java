@@ -0,0 +1,139 @@
+package com.jivesoftware.os.amza.sortedrun.pointers;
+
+import com.jivesoftware.os.amza.api.wal.KeyUtil;
+import com.jivesoftware.os.amza.api.wal.WALPointer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+
+/**
+ * Forward only cursor over composed keys in {@link KeyUtil} order. Prefix cursors have a null pointer.
+ */
+interface RunCursor {
+
+    boolean next();
+
+    byte[] key();
+
+    WALPointer pointer();
+
+    static RunCursor of(NavigableMap<byte[], WALPointer> map) {
+        Iterator<Entry<byte[], WALPointer>> iterator = map.entrySet().iterator();
+        return new RunCursor() {
+            private Entry<byte[], WALPointer> entry;
+
+            @Override
+            public boolean next() {
+                entry = iterator.hasNext() ? iterator.next() : null;
+                return entry != null;
+            }
+
+            @Override
+            public byte[] key() {
+                return entry.getKey();
+            }
+
+            @Override
+            public WALPointer pointer() {
+                return entry.getValue();
+            }
+        };
+    }
+
+    static RunCursor of(NavigableSet<byte[]> set) {
+        Iterator<byte[]> iterator = set.iterator();
+        return new RunCursor() {
+            private byte[] key;
+
+            @Override
+            public boolean next() {
+                key = iterator.hasNext() ? iterator.next() : null;
+                return key != null;
+            }
+
+            @Override
+            public byte[] key() {
+                return key;
+            }
+
+            @Override
+            public WALPointer pointer() {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * K-way merge of cursors ordered newest first. When several cursors hold the same key only the newest entry is returned.
+     */
+    static RunCursor merge(List<RunCursor> newestFirst) {
+        if (newestFirst.size() == 1) {
+            return newestFirst.get(0);
+        }
+        return new MergedRunCursor(newestFirst);
+    }
+
+    class MergedRunCursor implements RunCursor {
+
+        private final PriorityQueue<Head> heads;
+        private byte[] key;
+        private WALPointer pointer;
+
+        private MergedRunCursor(List<RunCursor> newestFirst) {
+            this.heads = new PriorityQueue<>(Math.max(1, newestFirst.size()), (a, b) -> {
+                int c = KeyUtil.compare(a.cursor.key(), b.cursor.key());
+                return c != 0 ? c : Integer.compare(a.age, b.age);
+            });
+            for (int i = 0; i < newestFirst.size(); i++) {
+                advance(new Head(i, newestFirst.get(i)));
+            }
+        }
+
+        @Override
+        public boolean next() {
+            Head head = heads.poll();
+            if (head == null) {
+                key = null;
+                pointer = null;
+                return false;
+            }
+            key = head.cursor.key();
+            pointer = head.cursor.pointer();
+            advance(head);
+            while (!heads.isEmpty() && KeyUtil.compare(heads.peek().cursor.key(), key) == 0) {
+                advance(heads.poll());
+            }
+            return true;
+        }
+
+        private void advance(Head head) {
+            if (head.cursor.next()) {
+                heads.add(head);
+            }
+        }
+
+        @Override
+        public byte[] key() {
+            return key;
+        }
+
+        @Override
+        public WALPointer pointer() {
+            return pointer;
+        }
+
+        private static class Head {
+
+            private final int age;
+            private final RunCursor cursor;
+
+            private Head(int age, RunCursor cursor) {
+                this.age = age;
+                this.cursor = cursor;
+            }
+        }
+    }
+}
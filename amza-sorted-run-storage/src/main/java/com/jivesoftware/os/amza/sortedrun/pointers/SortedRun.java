@@ -0,0 +1,487 @@
+package com.jivesoftware.os.amza.sortedrun.pointers;
+
+import com.google.common.io.CountingOutputStream;
+import com.jivesoftware.os.amza.api.filer.DirectBufferCleaner;
+import com.jivesoftware.os.amza.api.wal.KeyUtil;
+import com.jivesoftware.os.amza.api.wal.WALPointer;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable, memory mapped file of pointers sorted by composed key, followed by the prefix/txId/fp keys used for
+ * {@code takePrefixUpdatesSince}. Every {@code entriesPerBlock}th key of each section is kept on heap as a sparse block index.
+ * <pre>
+ * header:  int magic, int version
+ * section: pointer entries (int keyLength, key, long fp, long timestamp, long version, byte flags, [int valueLength, value])
+ * section: prefix entries (int keyLength, key)
+ * index:   pointer blocks (int count, (int keyLength, key, long offset)*)
+ * index:   prefix blocks (int count, (int keyLength, key, long offset)*)
+ * trailer: long prefixStart, long pointerIndexStart, long prefixIndexStart, long pointerCount, long prefixCount, int magic
+ * </pre>
+ * The file is mapped in chunks so a run is not limited to 2GB, and entries are free to straddle chunks.
+ */
+class SortedRun {
+
+    private static final int MAGIC = 0x534f5254;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int TRAILER_SIZE = 44;
+    static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+    private static final byte TOMBSTONED = 1;
+    private static final byte HAS_VALUE = 1 << 1;
+    private static final byte VALUE_NOT_NULL = 1 << 2;
+
+    private static final String SUFFIX = ".run";
+
+    private final File file;
+    private final long generation;
+    private final MappedChunks chunks;
+    private final long prefixStart;
+    private final long prefixEnd;
+    private final long pointerCount;
+    private final long prefixCount;
+    private final BlockIndex pointerBlocks;
+    private final BlockIndex prefixBlocks;
+
+    private SortedRun(File file, long generation, int chunkSize) throws IOException {
+        this.file = file;
+        this.generation = generation;
+        this.chunks = MappedChunks.map(file, chunkSize);
+        try {
+            long size = chunks.size;
+            if (size < HEADER_SIZE + TRAILER_SIZE || chunks.getInt(0) != MAGIC) {
+                throw new IOException("Invalid sorted run header for " + file);
+            }
+            int version = chunks.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Invalid sorted run version " + version + " for " + file);
+            }
+            long trailer = size - TRAILER_SIZE;
+            if (chunks.getInt(trailer + 40) != MAGIC) {
+                throw new IOException("Invalid sorted run trailer for " + file);
+            }
+            this.prefixStart = chunks.getLong(trailer);
+            this.prefixEnd = chunks.getLong(trailer + 8);
+            long prefixIndexStart = chunks.getLong(trailer + 16);
+            this.pointerCount = chunks.getLong(trailer + 24);
+            this.prefixCount = chunks.getLong(trailer + 32);
+            this.pointerBlocks = BlockIndex.read(chunks, prefixEnd);
+            this.prefixBlocks = BlockIndex.read(chunks, prefixIndexStart);
+        } catch (IOException | RuntimeException x) {
+            chunks.unmap();
+            throw x;
+        }
+    }
+
+    static SortedRun open(File file) throws IOException {
+        return open(file, DEFAULT_CHUNK_SIZE);
+    }
+
+    static SortedRun open(File file, int chunkSize) throws IOException {
+        return new SortedRun(file, generation(file.getName()), chunkSize);
+    }
+
+    static String fileName(long generation) {
+        return generation + SUFFIX;
+    }
+
+    /**
+     * @return the generation encoded in a run file name, or -1 if the name is not a run
+     */
+    static long generation(String fileName) {
+        if (!fileName.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(0, fileName.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Writes both cursors to a temporary file which is atomically moved into place, so a partially written run is never opened.
+     */
+    static SortedRun write(File directory,
+        long generation,
+        RunCursor pointers,
+        RunCursor prefixes,
+        int entriesPerBlock,
+        boolean fsync) throws IOException {
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to mkdirs for " + directory);
+        }
+        File file = new File(directory, fileName(generation));
+        File tmp = new File(directory, fileName(generation) + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            // DataOutputStream counts in an int, so positions come from a counter underneath it
+            CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+            DataOutputStream out = new DataOutputStream(counter);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            BlockIndex.Builder pointerIndex = new BlockIndex.Builder();
+            long pointerCount = 0;
+            while (pointers.next()) {
+                byte[] key = pointers.key();
+                if (pointerCount % entriesPerBlock == 0) {
+                    pointerIndex.add(key, counter.getCount());
+                }
+                WALPointer pointer = pointers.pointer();
+                byte[] value = pointer.getValue();
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeLong(pointer.getFp());
+                out.writeLong(pointer.getTimestampId());
+                out.writeLong(pointer.getVersion());
+                out.writeByte((pointer.getTombstoned() ? TOMBSTONED : 0)
+                    | (pointer.getHasValue() ? HAS_VALUE : 0)
+                    | (value != null ? VALUE_NOT_NULL : 0));
+                if (value != null) {
+                    out.writeInt(value.length);
+                    out.write(value);
+                }
+                pointerCount++;
+            }
+
+            long prefixStart = counter.getCount();
+            BlockIndex.Builder prefixIndex = new BlockIndex.Builder();
+            long prefixCount = 0;
+            while (prefixes.next()) {
+                byte[] key = prefixes.key();
+                if (prefixCount % entriesPerBlock == 0) {
+                    prefixIndex.add(key, counter.getCount());
+                }
+                out.writeInt(key.length);
+                out.write(key);
+                prefixCount++;
+            }
+
+            long pointerIndexStart = counter.getCount();
+            pointerIndex.write(out);
+            long prefixIndexStart = counter.getCount();
+            prefixIndex.write(out);
+
+            out.writeLong(prefixStart);
+            out.writeLong(pointerIndexStart);
+            out.writeLong(prefixIndexStart);
+            out.writeLong(pointerCount);
+            out.writeLong(prefixCount);
+            out.writeInt(MAGIC);
+            out.flush();
+            if (fsync) {
+                fos.getFD().sync();
+            }
+        } catch (IOException x) {
+            Files.deleteIfExists(tmp.toPath());
+            throw x;
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new SortedRun(file, generation, DEFAULT_CHUNK_SIZE);
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    long getPointerCount() {
+        return pointerCount;
+    }
+
+    long getPrefixCount() {
+        return prefixCount;
+    }
+
+    WALPointer get(byte[] pk) {
+        int block = pointerBlocks.floor(pk);
+        if (block < 0) {
+            return null;
+        }
+        Cursor cursor = new Cursor(pointerBlocks.offsets[block], prefixStart, true, pk);
+        if (cursor.next() && KeyUtil.compare(cursor.key(), pk) == 0) {
+            return cursor.pointer();
+        }
+        return null;
+    }
+
+    /**
+     * @param fromInclusive nullable, otherwise the cursor starts at the first pointer whose key is not less than it
+     */
+    RunCursor pointers(byte[] fromInclusive) {
+        return cursor(pointerBlocks, HEADER_SIZE, prefixStart, true, fromInclusive);
+    }
+
+    /**
+     * @param fromInclusive nullable, otherwise the cursor starts at the first prefix key which is not less than it
+     */
+    RunCursor prefixes(byte[] fromInclusive) {
+        return cursor(prefixBlocks, prefixStart, prefixEnd, false, fromInclusive);
+    }
+
+    private RunCursor cursor(BlockIndex blocks, long start, long end, boolean pointers, byte[] fromInclusive) {
+        if (fromInclusive != null) {
+            int block = blocks.floor(fromInclusive);
+            if (block >= 0) {
+                start = blocks.offsets[block];
+            }
+        }
+        return new Cursor(start, end, pointers, fromInclusive);
+    }
+
+    long sizeInBytes() {
+        return chunks.size;
+    }
+
+    /**
+     * Unmaps the run. Callers must guarantee no cursor over the run is still in use.
+     */
+    void close() {
+        chunks.unmap();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Override
+    public String toString() {
+        return "SortedRun{"
+            + "file=" + file
+            + ", pointerCount=" + pointerCount
+            + ", prefixCount=" + prefixCount
+            + '}';
+    }
+
+    /**
+     * Reads from its own position in the mapped chunks. Pointers are only decoded when asked for.
+     */
+    private class Cursor implements RunCursor {
+
+        private final long end;
+        private final boolean pointers;
+        private byte[] fromInclusive;
+
+        private long position;
+        private byte[] key;
+        private long pointerOffset;
+        private WALPointer pointer;
+
+        private Cursor(long start, long end, boolean pointers, byte[] fromInclusive) {
+            this.position = start;
+            this.end = end;
+            this.pointers = pointers;
+            this.fromInclusive = fromInclusive;
+        }
+
+        @Override
+        public boolean next() {
+            while (position < end) {
+                key = new byte[chunks.getInt(position)];
+                chunks.get(position + 4, key);
+                position += 4 + key.length;
+                pointer = null;
+                if (pointers) {
+                    pointerOffset = position;
+                    byte flags = chunks.get(pointerOffset + 24);
+                    position += 25;
+                    if ((flags & VALUE_NOT_NULL) != 0) {
+                        position += 4 + chunks.getInt(position);
+                    }
+                }
+                if (fromInclusive != null) {
+                    if (KeyUtil.compare(key, fromInclusive) < 0) {
+                        continue;
+                    }
+                    fromInclusive = null;
+                }
+                return true;
+            }
+            key = null;
+            pointer = null;
+            return false;
+        }
+
+        @Override
+        public byte[] key() {
+            return key;
+        }
+
+        @Override
+        public WALPointer pointer() {
+            if (pointers && pointer == null && key != null) {
+                long fp = chunks.getLong(pointerOffset);
+                long timestamp = chunks.getLong(pointerOffset + 8);
+                long version = chunks.getLong(pointerOffset + 16);
+                byte flags = chunks.get(pointerOffset + 24);
+                byte[] value = null;
+                if ((flags & VALUE_NOT_NULL) != 0) {
+                    value = new byte[chunks.getInt(pointerOffset + 25)];
+                    chunks.get(pointerOffset + 29, value);
+                }
+                pointer = new WALPointer(fp, timestamp, (flags & TOMBSTONED) != 0, version, (flags & HAS_VALUE) != 0, value);
+            }
+            return pointer;
+        }
+    }
+
+    /**
+     * A file mapped as a series of read only buffers of at most chunkSize bytes each. Reads which straddle two chunks are assembled a
+     * byte at a time.
+     */
+    private static class MappedChunks {
+
+        private final MappedByteBuffer[] buffers;
+        private final int chunkSize;
+        private final long size;
+
+        private MappedChunks(MappedByteBuffer[] buffers, int chunkSize, long size) {
+            this.buffers = buffers;
+            this.chunkSize = chunkSize;
+            this.size = size;
+        }
+
+        private static MappedChunks map(File file, int chunkSize) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+                long size = channel.size();
+                MappedByteBuffer[] buffers = new MappedByteBuffer[(int) ((size + chunkSize - 1) / chunkSize)];
+                for (int i = 0; i < buffers.length; i++) {
+                    long start = (long) i * chunkSize;
+                    buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkSize, size - start));
+                }
+                return new MappedChunks(buffers, chunkSize, size);
+            }
+        }
+
+        private byte get(long position) {
+            return buffers[(int) (position / chunkSize)].get((int) (position % chunkSize));
+        }
+
+        private int getInt(long position) {
+            MappedByteBuffer buffer = buffers[(int) (position / chunkSize)];
+            int offset = (int) (position % chunkSize);
+            if (offset + 4 <= buffer.capacity()) {
+                return buffer.getInt(offset);
+            }
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (get(position + i) & 0xFF);
+            }
+            return value;
+        }
+
+        private long getLong(long position) {
+            MappedByteBuffer buffer = buffers[(int) (position / chunkSize)];
+            int offset = (int) (position % chunkSize);
+            if (offset + 8 <= buffer.capacity()) {
+                return buffer.getLong(offset);
+            }
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (get(position + i) & 0xFF);
+            }
+            return value;
+        }
+
+        private void get(long position, byte[] destination) {
+            int copied = 0;
+            while (copied < destination.length) {
+                long at = position + copied;
+                ByteBuffer view = buffers[(int) (at / chunkSize)].duplicate();
+                view.position((int) (at % chunkSize));
+                int length = Math.min(view.remaining(), destination.length - copied);
+                view.get(destination, copied, length);
+                copied += length;
+            }
+        }
+
+        private void unmap() {
+            for (int i = 0; i < buffers.length; i++) {
+                if (buffers[i] != null) {
+                    DirectBufferCleaner.clean(buffers[i]);
+                    buffers[i] = null;
+                }
+            }
+        }
+    }
+
+    private static class BlockIndex {
+
+        private final byte[][] keys;
+        private final long[] offsets;
+
+        private BlockIndex(byte[][] keys, long[] offsets) {
+            this.keys = keys;
+            this.offsets = offsets;
+        }
+
+        /**
+         * @return the last block whose first key is not greater than the given key, or -1
+         */
+        private int floor(byte[] key) {
+            int low = 0;
+            int high = keys.length - 1;
+            int floor = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (KeyUtil.compare(keys[mid], key) <= 0) {
+                    floor = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return floor;
+        }
+
+        private static BlockIndex read(MappedChunks chunks, long start) {
+            long position = start;
+            int count = chunks.getInt(position);
+            position += 4;
+            byte[][] keys = new byte[count][];
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = new byte[chunks.getInt(position)];
+                chunks.get(position + 4, keys[i]);
+                position += 4 + keys[i].length;
+                offsets[i] = chunks.getLong(position);
+                position += 8;
+            }
+            return new BlockIndex(keys, offsets);
+        }
+
+        private static class Builder {
+
+            private final List<byte[]> keys = new ArrayList<>();
+            private final List<Long> offsets = new ArrayList<>();
+
+            private void add(byte[] key, long offset) {
+                keys.add(key);
+                offsets.add(offset);
+            }
+
+            private void write(DataOutputStream out) throws IOException {
+                out.writeInt(keys.size());
+                for (int i = 0; i < keys.size(); i++) {
+                    byte[] key = keys.get(i);
+                    out.writeInt(key.length);
+                    out.write(key);
+                    out.writeLong(offsets.get(i));
+                }
+            }
+        }
+    }
+}
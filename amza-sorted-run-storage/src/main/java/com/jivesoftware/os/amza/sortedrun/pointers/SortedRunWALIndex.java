@@ -0,0 +1,774 @@
+package com.jivesoftware.os.amza.sortedrun.pointers;
+
+import com.jivesoftware.os.amza.api.CompareTimestampVersions;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.api.scan.CompactionWALIndex;
+import com.jivesoftware.os.amza.api.stream.KeyContainedStream;
+import com.jivesoftware.os.amza.api.stream.KeyValuePointerStream;
+import com.jivesoftware.os.amza.api.stream.KeyValues;
+import com.jivesoftware.os.amza.api.stream.MergeTxKeyPointerStream;
+import com.jivesoftware.os.amza.api.stream.TxFpStream;
+import com.jivesoftware.os.amza.api.stream.TxKeyPointers;
+import com.jivesoftware.os.amza.api.stream.UnprefixedWALKeys;
+import com.jivesoftware.os.amza.api.stream.WALKeyPointerStream;
+import com.jivesoftware.os.amza.api.stream.WALKeyPointers;
+import com.jivesoftware.os.amza.api.stream.WALMergeKeyPointerStream;
+import com.jivesoftware.os.amza.api.wal.KeyUtil;
+import com.jivesoftware.os.amza.api.wal.WALIndex;
+import com.jivesoftware.os.amza.api.wal.WALKey;
+import com.jivesoftware.os.amza.api.wal.WALPointer;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pointer index made of an on heap memtable plus immutable sorted runs. Merges land in the memtable, each commit writes the memtable
+ * out as a new run, and lookups consult the memtable and then the runs newest first. Since a merge only ever writes a pointer which
+ * beats everything older, the newest occurrence of a key is always the winner.
+ */
+public class SortedRunWALIndex implements WALIndex {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
+    private static final int numPermits = 1024;
+    private static final int POINTER_OVERHEAD_IN_BYTES = 64;
+
+    public enum Type {
+
+        active,
+        compacting,
+        compacted,
+        backup;
+    }
+
+    private final String providerName;
+    private final int maxValueSizeInIndex;
+    private final VersionedPartitionName versionedPartitionName;
+    private final File[] stripeDirectories;
+    private final int modulo;
+    private final Type type;
+    private final SortedRunWALIndexConfig config;
+    private volatile int currentStripe;
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final Semaphore lock = new Semaphore(numPermits, true);
+    private final Object runLock = new Object();
+    private final AtomicReference<SortedRunWALIndex> compactingTo = new AtomicReference<>();
+
+    private volatile ConcurrentSkipListMap<byte[], WALPointer> memtable = new ConcurrentSkipListMap<>(KeyUtil.lexicographicalComparator());
+    private volatile ConcurrentSkipListSet<byte[]> prefixMemtable = new ConcurrentSkipListSet<>(KeyUtil.lexicographicalComparator());
+    private final AtomicLong memtableBytes = new AtomicLong();
+    private volatile ConcurrentSkipListMap<byte[], WALPointer> flushing;
+    private volatile ConcurrentSkipListSet<byte[]> prefixFlushing;
+    private volatile List<SortedRun> runs;
+    private long nextGeneration;
+
+    public SortedRunWALIndex(String providerName,
+        int maxValueSizeInIndex,
+        VersionedPartitionName versionedPartitionName,
+        File[] stripeDirectories,
+        int currentStripe,
+        int modulo,
+        Type type,
+        SortedRunWALIndexConfig config) {
+        this.providerName = providerName;
+        this.maxValueSizeInIndex = maxValueSizeInIndex;
+        this.versionedPartitionName = versionedPartitionName;
+        this.stripeDirectories = stripeDirectories;
+        this.currentStripe = currentStripe;
+        this.modulo = modulo;
+        this.type = type;
+        this.config = config;
+    }
+
+    static File directory(File stripeDirectory, int modulo, Type type, VersionedPartitionName versionedPartitionName) {
+        return new File(new File(stripeDirectory, String.valueOf(modulo)), type.name() + "-" + versionedPartitionName.getPartitionVersion());
+    }
+
+    private File directory(int stripe, Type type) {
+        return directory(stripeDirectories[stripe], modulo, type, versionedPartitionName);
+    }
+
+    private void init() throws Exception {
+        if (runs != null) {
+            return;
+        }
+        synchronized (runLock) {
+            if (runs != null) {
+                return;
+            }
+            if (closed.get()) {
+                throw new IllegalStateException("Index has been closed: " + this);
+            }
+            runs = openRuns(directory(currentStripe, type));
+        }
+    }
+
+    private List<SortedRun> openRuns(File directory) throws IOException {
+        List<SortedRun> opened = new ArrayList<>();
+        long maxGeneration = -1;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (SortedRun.generation(file.getName()) != -1) {
+                    SortedRun run = SortedRun.open(file);
+                    opened.add(run);
+                    maxGeneration = Math.max(maxGeneration, run.getGeneration());
+                } else if (file.getName().endsWith(".tmp")) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+        }
+        opened.sort((a, b) -> Long.compare(b.getGeneration(), a.getGeneration()));
+        nextGeneration = maxGeneration + 1;
+        return Collections.unmodifiableList(opened);
+    }
+
+    @Override
+    public int getStripe() {
+        return currentStripe;
+    }
+
+    @Override
+    public String getProviderName() {
+        return providerName;
+    }
+
+    public VersionedPartitionName getVersionedPartitionName() {
+        return versionedPartitionName;
+    }
+
+    public int getRunCount() throws Exception {
+        init();
+        return runs.size();
+    }
+
+    @Override
+    public boolean merge(TxKeyPointers pointers, MergeTxKeyPointerStream stream) throws Exception {
+        init();
+        lock.acquire();
+        try {
+            return pointers.consume((txId, prefix, key, value, timestamp, tombstoned, version, fp) -> {
+                byte[] mode = new byte[1];
+                WALPointer p = mergePointer(txId, prefix, key, value, timestamp, tombstoned, version, fp, mode);
+                if (stream != null) {
+                    return stream.stream(mode[0], txId, prefix, key, p.getTimestampId(), p.getTombstoned(), p.getVersion(), p.getFp());
+                } else {
+                    return true;
+                }
+            });
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Merges on behalf of compaction, which has this index to itself until it is committed, so the memtable is spilled out as a run
+     * whenever it grows past compactionMemtableBytes rather than holding a whole partition of pointers on heap.
+     */
+    private boolean compactionMerge(TxKeyPointers pointers) throws Exception {
+        init();
+        long maxMemtableBytes = config.getCompactionMemtableBytes();
+        return pointers.consume((txId, prefix, key, value, timestamp, tombstoned, version, fp) -> {
+            mergePointer(txId, prefix, key, value, timestamp, tombstoned, version, fp, new byte[1]);
+            if (maxMemtableBytes > 0 && memtableBytes.get() >= maxMemtableBytes) {
+                synchronized (runLock) {
+                    flushMemtable(true);
+                }
+                LOG.inc("sortedRun>compaction>spilled");
+            }
+            return true;
+        });
+    }
+
+    private WALPointer mergePointer(long txId,
+        byte[] prefix,
+        byte[] key,
+        byte[] value,
+        long timestamp,
+        boolean tombstoned,
+        long version,
+        long fp,
+        byte[] mode) {
+        byte[] pk = WALKey.compose(prefix, key);
+        WALPointer[] merged = new WALPointer[1];
+        memtable.compute(pk, (existingKey, memtablePointer) -> {
+            WALPointer existing = memtablePointer != null ? memtablePointer : getPersisted(existingKey);
+            if (existing == null
+                || CompareTimestampVersions.compare(timestamp, version, existing.getTimestampId(), existing.getVersion()) > 0) {
+                mode[0] = (existing == null) ? WALMergeKeyPointerStream.added : WALMergeKeyPointerStream.clobbered;
+                boolean pointerHasValue = false;
+                byte[] pointerValue = null;
+                int valueLength = (value == null) ? 0 : value.length;
+                if (maxValueSizeInIndex >= 0 && maxValueSizeInIndex >= valueLength) {
+                    pointerHasValue = true;
+                    pointerValue = value;
+                }
+                if (memtablePointer == null) {
+                    memtableBytes.addAndGet(pk.length + (pointerValue != null ? pointerValue.length : 0) + POINTER_OVERHEAD_IN_BYTES);
+                }
+                merged[0] = new WALPointer(fp, timestamp, tombstoned, version, pointerHasValue, pointerValue);
+                return merged[0];
+            } else {
+                mode[0] = WALMergeKeyPointerStream.ignored;
+                merged[0] = existing;
+                return memtablePointer;
+            }
+        });
+        if (prefix != null) {
+            byte[] prefixKey = prefixKey(prefix, txId, fp);
+            if (prefixMemtable.add(prefixKey)) {
+                memtableBytes.addAndGet(prefixKey.length + POINTER_OVERHEAD_IN_BYTES);
+            }
+        }
+        return merged[0];
+    }
+
+    private static byte[] prefixKey(byte[] prefix, long txId, long fp) {
+        byte[] txFp = new byte[16];
+        UIO.longBytes(txId, txFp, 0);
+        UIO.longBytes(fp, txFp, 8);
+        return WALKey.compose(prefix, txFp);
+    }
+
+    private WALPointer getInternal(byte[] pk) {
+        WALPointer got = memtable.get(pk);
+        return got != null ? got : getPersisted(pk);
+    }
+
+    private WALPointer getPersisted(byte[] pk) {
+        ConcurrentSkipListMap<byte[], WALPointer> frozen = flushing;
+        if (frozen != null) {
+            WALPointer got = frozen.get(pk);
+            if (got != null) {
+                return got;
+            }
+        }
+        for (SortedRun run : runs) {
+            WALPointer got = run.get(pk);
+            if (got != null) {
+                return got;
+            }
+        }
+        return null;
+    }
+
+    private RunCursor pointerCursor(byte[] fromPk, byte[] toPk) {
+        List<RunCursor> cursors = new ArrayList<>(runs.size() + 2);
+        cursors.add(RunCursor.of(subMap(memtable, fromPk, toPk)));
+        ConcurrentSkipListMap<byte[], WALPointer> frozen = flushing;
+        if (frozen != null) {
+            cursors.add(RunCursor.of(subMap(frozen, fromPk, toPk)));
+        }
+        for (SortedRun run : runs) {
+            cursors.add(run.pointers(fromPk));
+        }
+        return RunCursor.merge(cursors);
+    }
+
+    private static NavigableMap<byte[], WALPointer> subMap(ConcurrentSkipListMap<byte[], WALPointer> map, byte[] from, byte[] to) {
+        if (from != null && to != null) {
+            if (KeyUtil.compare(from, to) > 0) {
+                return Collections.emptyNavigableMap();
+            }
+            return map.subMap(from, true, to, false);
+        } else if (from != null) {
+            return map.tailMap(from, true);
+        } else if (to != null) {
+            return map.headMap(to, false);
+        } else {
+            return map;
+        }
+    }
+
+    @Override
+    public boolean takePrefixUpdatesSince(byte[] prefix, long sinceTransactionId, TxFpStream txFpStream) throws Exception {
+        if (sinceTransactionId == Long.MAX_VALUE) {
+            return true;
+        }
+        init();
+        lock.acquire();
+        try {
+            byte[] from = prefixKey(prefix, Math.max(0, sinceTransactionId + 1), 0);
+            byte[] upperTxFp = new byte[17];
+            Arrays.fill(upperTxFp, (byte) 0xFF);
+            byte[] to = WALKey.compose(prefix, upperTxFp);
+
+            List<RunCursor> cursors = new ArrayList<>(runs.size() + 2);
+            cursors.add(RunCursor.of(prefixMemtable.subSet(from, true, to, false)));
+            ConcurrentSkipListSet<byte[]> frozen = prefixFlushing;
+            if (frozen != null) {
+                cursors.add(RunCursor.of(frozen.subSet(from, true, to, false)));
+            }
+            for (SortedRun run : runs) {
+                cursors.add(run.prefixes(from));
+            }
+            RunCursor cursor = RunCursor.merge(cursors);
+            while (cursor.next()) {
+                byte[] rawKey = cursor.key();
+                if (KeyUtil.compare(rawKey, to) >= 0) {
+                    break;
+                }
+                byte[] txFp = WALKey.rawKeyKey(rawKey);
+                if (!txFpStream.stream(UIO.bytesLong(txFp, 0), UIO.bytesLong(txFp, 8), false, null)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public boolean getPointer(byte[] prefix, byte[] key, WALKeyPointerStream stream) throws Exception {
+        init();
+        lock.acquire();
+        try {
+            return stream(prefix, key, getInternal(WALKey.compose(prefix, key)), stream);
+        } finally {
+            lock.release();
+        }
+    }
+
+    private static boolean stream(byte[] prefix, byte[] key, WALPointer pointer, WALKeyPointerStream stream) throws Exception {
+        if (pointer == null) {
+            return stream.stream(prefix, key, -1, false, -1, -1, false, null);
+        } else {
+            return stream.stream(prefix, key, pointer.getTimestampId(), pointer.getTombstoned(), pointer.getVersion(), pointer.getFp(),
+                pointer.getHasValue(), pointer.getValue());
+        }
+    }
+
+    @Override
+    public boolean getPointers(byte[] prefix, UnprefixedWALKeys keys, WALKeyPointerStream stream) throws Exception {
+        init();
+        lock.acquire();
+        try {
+            return keys.consume((key) -> stream(prefix, key, getInternal(WALKey.compose(prefix, key)), stream));
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public boolean getPointers(KeyValues keyValues, KeyValuePointerStream stream) throws Exception {
+        init();
+        lock.acquire();
+        try {
+            return keyValues.consume((prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
+                WALPointer pointer = getInternal(WALKey.compose(prefix, key));
+                if (pointer == null) {
+                    return stream.stream(prefix, key, value, valueTimestamp, valueTombstoned, valueVersion, -1, false, -1, -1, false, null);
+                } else {
+                    return stream.stream(prefix, key, value, valueTimestamp, valueTombstoned, valueVersion,
+                        pointer.getTimestampId(), pointer.getTombstoned(), pointer.getVersion(), pointer.getFp(), pointer.getHasValue(),
+                        pointer.getValue());
+                }
+            });
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public boolean containsKeys(byte[] prefix, UnprefixedWALKeys keys, KeyContainedStream stream) throws Exception {
+        init();
+        lock.acquire();
+        try {
+            return keys.consume((key) -> {
+                WALPointer got = getInternal(WALKey.compose(prefix, key));
+                boolean contained = got != null && !got.getTombstoned();
+                long timestamp = got == null ? -1 : got.getTimestampId();
+                long version = got == null ? -1 : got.getVersion();
+                return stream.stream(prefix, key, contained, timestamp, version);
+            });
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public boolean exists() throws Exception {
+        init();
+        lock.acquire();
+        try {
+            return !runs.isEmpty();
+        } finally {
+            lock.release();
+        }
+    }
+
+    @Override
+    public long deltaCount(WALKeyPointers keyPointers) throws Exception {
+        init();
+        lock.acquire();
+        try {
+            long[] delta = new long[1];
+            boolean completed = keyPointers.consume((prefix, key, requestTimestamp, requestTombstoned, requestVersion, fp, hasValue, value) -> {
+                WALPointer got = getInternal(WALKey.compose(prefix, key));
+                long indexFp = got != null ? got.getFp() : -1;
+                boolean indexTombstoned = got != null && got.getTombstoned();
+                boolean indexHasValue = got != null && got.getHasValue();
+
+                // see MemoryWALIndex.deltaCount
+                boolean backingHasValue = (indexFp != -1 || indexHasValue);
+                if (!requestTombstoned && (!backingHasValue && !indexTombstoned || backingHasValue && indexTombstoned)) {
+                    delta[0]++;
+                } else if (backingHasValue && !indexTombstoned && requestTombstoned) {
+                    delta[0]--;
+                }
+                return true;
+            });
+            if (!completed) {
+                return -1;
+            }
+            return delta[0];
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Writes everything merged since the last commit out as a new sorted run. Merges are free to continue into a fresh memtable while
+     * the run is written.
+     */
+    @Override
+    public void commit(boolean fsync) throws Exception {
+        init();
+        synchronized (runLock) {
+            flushMemtable(fsync);
+        }
+    }
+
+    private void flushMemtable(boolean fsync) throws Exception {
+        ConcurrentSkipListMap<byte[], WALPointer> frozen;
+        ConcurrentSkipListSet<byte[]> frozenPrefixes;
+        long frozenBytes;
+        lock.acquire(numPermits);
+        try {
+            if (closed.get() || memtable.isEmpty() && prefixMemtable.isEmpty()) {
+                return;
+            }
+            frozen = memtable;
+            frozenPrefixes = prefixMemtable;
+            flushing = frozen;
+            prefixFlushing = frozenPrefixes;
+            memtable = new ConcurrentSkipListMap<>(KeyUtil.lexicographicalComparator());
+            prefixMemtable = new ConcurrentSkipListSet<>(KeyUtil.lexicographicalComparator());
+            frozenBytes = memtableBytes.getAndSet(0);
+        } finally {
+            lock.release(numPermits);
+        }
+
+        SortedRun run;
+        try {
+            run = SortedRun.write(directory(currentStripe, type),
+                nextGeneration,
+                RunCursor.of(frozen),
+                RunCursor.of(frozenPrefixes),
+                config.getEntriesPerBlock(),
+                fsync);
+            nextGeneration++;
+        } catch (Exception x) {
+            // put the frozen entries back underneath anything merged since, newer pointers win
+            lock.acquire(numPermits);
+            try {
+                frozen.forEach(memtable::putIfAbsent);
+                prefixMemtable.addAll(frozenPrefixes);
+                memtableBytes.addAndGet(frozenBytes);
+                flushing = null;
+                prefixFlushing = null;
+            } finally {
+                lock.release(numPermits);
+            }
+            throw x;
+        }
+
+        lock.acquire(numPermits);
+        try {
+            List<SortedRun> updated = new ArrayList<>(runs.size() + 1);
+            updated.add(run);
+            updated.addAll(runs);
+            runs = Collections.unmodifiableList(updated);
+            flushing = null;
+            prefixFlushing = null;
+        } finally {
+            lock.release(numPermits);
+        }
+        LOG.inc("sortedRun>flushed");
+        LOG.inc("sortedRun>flushed>pointers", run.getPointerCount());
+    }
+
+    /**
+     * Merges all runs into a single run once there are more than maxRuns. Readers are only blocked while the run list is swapped, and
+     * the inputs are only unmapped once no reader can still be using them.
+     *
+     * @return true if runs were merged
+     */
+    public boolean mergeRuns(boolean fsync, int maxRuns) throws Exception {
+        init();
+        synchronized (runLock) {
+            List<SortedRun> inputs = runs;
+            if (closed.get() || inputs.size() <= maxRuns || inputs.size() < 2) {
+                return false;
+            }
+            List<RunCursor> pointerCursors = new ArrayList<>(inputs.size());
+            List<RunCursor> prefixCursors = new ArrayList<>(inputs.size());
+            for (SortedRun input : inputs) {
+                pointerCursors.add(input.pointers(null));
+                prefixCursors.add(input.prefixes(null));
+            }
+            SortedRun merged = SortedRun.write(directory(currentStripe, type),
+                nextGeneration,
+                RunCursor.merge(pointerCursors),
+                RunCursor.merge(prefixCursors),
+                config.getEntriesPerBlock(),
+                fsync);
+            nextGeneration++;
+
+            lock.acquire(numPermits);
+            try {
+                runs = Collections.singletonList(merged);
+            } finally {
+                lock.release(numPermits);
+            }
+            for (SortedRun input : inputs) {
+                input.delete();
+            }
+            LOG.inc("sortedRun>merged");
+            LOG.inc("sortedRun>merged>runs", inputs.size());
+            return true;
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        close(true);
+    }
+
+    private void close(boolean flush) throws Exception {
+        synchronized (runLock) {
+            if (flush && runs != null) {
+                flushMemtable(true);
+            }
+            lock.acquire(numPermits);
+            try {
+                closed.set(true);
+                memtable.clear();
+                prefixMemtable.clear();
+                memtableBytes.set(0);
+                if (runs != null) {
+                    for (SortedRun run : runs) {
+                        run.close();
+                    }
+                }
+                runs = Collections.emptyList();
+            } finally {
+                lock.release(numPermits);
+            }
+        }
+    }
+
+    @Override
+    public void delete() throws Exception {
+        close(false);
+        synchronized (compactingTo) {
+            SortedRunWALIndex compacting = compactingTo.get();
+            if (compacting != null) {
+                compacting.close(false);
+            }
+            for (Type t : Type.values()) {
+                removeDirectory(currentStripe, t);
+            }
+        }
+    }
+
+    @Override
+    public boolean rowScan(WALKeyPointerStream stream, boolean hydrateValues) throws Exception {
+        return rangeScan(null, null, null, null, stream, hydrateValues);
+    }
+
+    @Override
+    public boolean rangeScan(byte[] fromPrefix,
+        byte[] fromKey,
+        byte[] toPrefix,
+        byte[] toKey,
+        WALKeyPointerStream stream,
+        boolean hydrateValues) throws Exception {
+
+        init();
+        lock.acquire();
+        try {
+            byte[] fromPk = fromKey != null ? WALKey.compose(fromPrefix, fromKey) : null;
+            byte[] toPk = toKey != null ? WALKey.compose(toPrefix, toKey) : null;
+            RunCursor cursor = pointerCursor(fromPk, toPk);
+            while (cursor.next()) {
+                byte[] rawKey = cursor.key();
+                if (toPk != null && KeyUtil.compare(rawKey, toPk) >= 0) {
+                    break;
+                }
+                if (!stream(WALKey.rawKeyPrefix(rawKey), WALKey.rawKeyKey(rawKey), cursor.pointer(), stream)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Compaction rewrites every fp, so the compacted pointers go to a fresh index whose runs are swapped in for all of the current runs.
+     * The fresh index spills to runs as it goes and is merged down on commit the same way flush merges runs, so neither the compaction
+     * memtable nor any single run has to hold the whole partition.
+     */
+    @Override
+    public CompactionWALIndex startCompaction(boolean hasActive, int compactionStripe) throws Exception {
+        init();
+        synchronized (compactingTo) {
+            if (compactingTo.get() != null) {
+                throw new IllegalStateException("Tried to compact while another compaction is already underway: " + versionedPartitionName);
+            }
+            if (closed.get()) {
+                throw new IllegalStateException("Tried to compact a index that has been expunged: " + versionedPartitionName);
+            }
+
+            removeDirectory(compactionStripe, Type.compacting);
+            removeDirectory(compactionStripe, Type.compacted);
+            removeDirectory(currentStripe, Type.backup);
+
+            SortedRunWALIndex compactingWALIndex = new SortedRunWALIndex(providerName,
+                maxValueSizeInIndex,
+                versionedPartitionName,
+                stripeDirectories,
+                compactionStripe,
+                modulo,
+                Type.compacting,
+                config);
+            compactingTo.set(compactingWALIndex);
+
+            return new CompactionWALIndex() {
+
+                @Override
+                public boolean merge(TxKeyPointers pointers) throws Exception {
+                    return compactingWALIndex.compactionMerge(pointers);
+                }
+
+                @Override
+                public void commit(boolean fsync, Callable<Void> commit) throws Exception {
+                    compactingWALIndex.commit(fsync);
+                    compactingWALIndex.mergeRuns(fsync, config.getMaxRunsBeforeMerge());
+                    compactingWALIndex.close(false);
+                    if (!compactingTo.compareAndSet(compactingWALIndex, null)) {
+                        throw new IllegalStateException("Tried to commit a stale compaction index");
+                    }
+
+                    synchronized (runLock) {
+                        lock.acquire(numPermits);
+                        try {
+                            if (closed.get()) {
+                                LOG.warn("Was not commited because index has been closed.");
+                                return;
+                            }
+                            LOG.debug("Committing before swap: {}", versionedPartitionName);
+
+                            boolean compactedNonEmpty = rename(compactionStripe, Type.compacting, Type.compacted, false);
+                            for (SortedRun run : runs) {
+                                run.close();
+                            }
+                            runs = Collections.emptyList();
+                            if (hasActive) {
+                                rename(currentStripe, Type.active, Type.backup, compactedNonEmpty);
+                            } else {
+                                removeDirectory(currentStripe, Type.active);
+                            }
+
+                            if (commit != null) {
+                                commit.call();
+                            }
+
+                            if (compactedNonEmpty) {
+                                rename(compactionStripe, Type.compacted, Type.active, true);
+                            }
+                            removeDirectory(currentStripe, Type.backup);
+
+                            memtable.clear();
+                            prefixMemtable.clear();
+                            memtableBytes.set(0);
+                            currentStripe = compactionStripe;
+                            runs = openRuns(directory(compactionStripe, Type.active));
+                            LOG.debug("Committing after swap: {}", versionedPartitionName);
+                        } finally {
+                            lock.release(numPermits);
+                        }
+                    }
+                }
+
+                @Override
+                public void abort() throws Exception {
+                    compactingWALIndex.close(false);
+                    if (compactingTo.compareAndSet(compactingWALIndex, null)) {
+                        removeDirectory(compactionStripe, Type.compacting);
+                    }
+                }
+            };
+        }
+    }
+
+    private boolean rename(int stripe, Type fromType, Type toType, boolean required) throws IOException {
+        File from = directory(stripe, fromType);
+        File to = directory(stripe, toType);
+        boolean renamed = from.exists() && from.renameTo(to);
+        if (!renamed && required) {
+            throw new IOException("Failed to rename from:" + from + " to:" + to);
+        }
+        return renamed;
+    }
+
+    private void removeDirectory(int stripe, Type type) throws IOException {
+        removeDirectory(directory(stripe, type));
+    }
+
+    static void removeDirectory(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(directory.toPath());
+    }
+
+    @Override
+    public void updatedProperties(Map<String, String> properties) {
+    }
+
+    @Override
+    public String toString() {
+        return "SortedRunWALIndex{"
+            + "versionedPartitionName=" + versionedPartitionName
+            + ", type=" + type
+            + ", currentStripe=" + currentStripe
+            + ", runs=" + runs
+            + ", memtable=" + memtable.size()
+            + ", compactingTo=" + compactingTo
+            + '}';
+    }
+}
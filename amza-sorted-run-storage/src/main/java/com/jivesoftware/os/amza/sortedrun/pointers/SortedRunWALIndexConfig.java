@@ -0,0 +1,33 @@
+package com.jivesoftware.os.amza.sortedrun.pointers;
+
+import org.merlin.config.Config;
+import org.merlin.config.defaults.IntDefault;
+import org.merlin.config.defaults.LongDefault;
+
+public interface SortedRunWALIndexConfig extends Config {
+
+    /**
+     * Number of entries between sparse block index keys. Point lookups scan at most this many entries in the mapped run.
+     */
+    @IntDefault(64)
+    int getEntriesPerBlock();
+
+    void setEntriesPerBlock(int entriesPerBlock);
+
+    /**
+     * Runs are merged into a single run by the provider flush, and by compaction, once an index accumulates more than this many.
+     */
+    @IntDefault(8)
+    int getMaxRunsBeforeMerge();
+
+    void setMaxRunsBeforeMerge(int maxRunsBeforeMerge);
+
+    /**
+     * Compaction spills its pointers out as a run whenever its memtable holds roughly this many bytes.
+     */
+    @LongDefault(64 * 1024 * 1024)
+    long getCompactionMemtableBytes();
+
+    void setCompactionMemtableBytes(long compactionMemtableBytes);
+
+}
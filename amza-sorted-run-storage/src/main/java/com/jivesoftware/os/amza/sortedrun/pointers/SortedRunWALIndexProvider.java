@@ -0,0 +1,100 @@
+package com.jivesoftware.os.amza.sortedrun.pointers;
+
+import com.jivesoftware.os.amza.api.AmzaVersionConstants;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.api.wal.WALIndexProvider;
+import com.jivesoftware.os.amza.sortedrun.pointers.SortedRunWALIndex.Type;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
+import java.io.File;
+
+/**
+ * Pointer index built from immutable sorted runs, written by each delta merge and merged back down by flush and compaction.
+ */
+public class SortedRunWALIndexProvider implements WALIndexProvider<SortedRunWALIndex> {
+
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+    public static final String INDEX_CLASS_NAME = "sortedrun";
+
+    private final String name;
+    private final SortedRunWALIndexConfig config;
+    private final File[] stripeDirectories;
+
+    public SortedRunWALIndexProvider(String name, SortedRunWALIndexConfig config, int numberOfStripes, File[] baseDirs) {
+        this.name = name;
+        this.config = config;
+        this.stripeDirectories = new File[numberOfStripes];
+        for (int i = 0; i < numberOfStripes; i++) {
+            File active = new File(
+                new File(
+                    new File(baseDirs[i % baseDirs.length], AmzaVersionConstants.LATEST_VERSION),
+                    INDEX_CLASS_NAME),
+                String.valueOf(i));
+            if (!active.exists() && !active.mkdirs()) {
+                throw new RuntimeException("Failed while trying to mkdirs for " + active);
+            }
+            this.stripeDirectories[i] = active;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public SortedRunWALIndex createIndex(VersionedPartitionName versionedPartitionName, int maxValueSizeInIndex, int stripe) throws Exception {
+        return new SortedRunWALIndex(name,
+            maxValueSizeInIndex,
+            versionedPartitionName,
+            stripeDirectories,
+            stripe,
+            modulo(versionedPartitionName),
+            Type.active,
+            config);
+    }
+
+    @Override
+    public void deleteIndex(VersionedPartitionName versionedPartitionName, int stripe) throws Exception {
+        int modulo = modulo(versionedPartitionName);
+        for (Type type : Type.values()) {
+            File directory = SortedRunWALIndex.directory(stripeDirectories[stripe], modulo, type, versionedPartitionName);
+            SortedRunWALIndex.removeDirectory(directory);
+            LOG.info("Removed sorted runs: {}", directory);
+        }
+    }
+
+    @Override
+    public void flush(Iterable<SortedRunWALIndex> indexes, boolean fsync) throws Exception {
+        int maxRuns = config.getMaxRunsBeforeMerge();
+        for (SortedRunWALIndex index : indexes) {
+            index.mergeRuns(fsync, maxRuns);
+        }
+    }
+
+    private static int modulo(VersionedPartitionName versionedPartitionName) {
+        return (int) (hash(versionedPartitionName.getPartitionVersion()) % 1024);
+    }
+
+    private final static long randMult = 0x5DEECE66DL;
+    private final static long randAdd = 0xBL;
+    private final static long randMask = (1L << 48) - 1;
+
+    private static long hash(long partitionVersion) {
+        long x = (partitionVersion * randMult + randAdd) & randMask;
+        long h = Math.abs(x >>> (16));
+        if (h >= 0) {
+            return h;
+        } else {
+            return Long.MAX_VALUE;
+        }
+    }
+}
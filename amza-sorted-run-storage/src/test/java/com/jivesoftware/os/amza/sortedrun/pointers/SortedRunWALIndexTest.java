@@ -0,0 +1,273 @@
+package com.jivesoftware.os.amza.sortedrun.pointers;
+
+import com.google.common.io.Files;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import com.jivesoftware.os.amza.api.partition.PartitionName;
+import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
+import com.jivesoftware.os.amza.api.scan.CompactionWALIndex;
+import com.jivesoftware.os.amza.api.stream.TxKeyPointerStream;
+import com.jivesoftware.os.amza.api.wal.KeyUtil;
+import com.jivesoftware.os.amza.api.wal.WALKey;
+import com.jivesoftware.os.amza.api.wal.WALPointer;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import org.merlin.config.BindInterfaceToConfiguration;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ *
+ */
+public class SortedRunWALIndexTest {
+
+    private final VersionedPartitionName versionedPartitionName = new VersionedPartitionName(
+        new PartitionName(false, "r1".getBytes(), "t1".getBytes()),
+        VersionedPartitionName.STATIC_VERSION);
+
+    @Test
+    public void testNewestRunWins() throws Exception {
+        File dir = Files.createTempDir();
+        SortedRunWALIndex index = getIndex(dir);
+        Assert.assertFalse(index.exists());
+
+        // each commit writes a run, later runs clobber every third key
+        for (int pass = 0; pass < 3; pass++) {
+            long base = pass * 1_000L;
+            index.merge((TxKeyPointerStream stream) -> {
+                for (long i = 0; i < 200; i++) {
+                    if (base == 0 || i % 3 == 0) {
+                        if (!stream.stream(base + i, UIO.longBytes(i % 4), UIO.longBytes(i), null, base + i, false, base + i, base + i)) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }, null);
+            index.commit(true);
+        }
+        Assert.assertTrue(index.exists());
+        Assert.assertEquals(index.getRunCount(), 3);
+
+        // an older timestamp is ignored even though it lands in the newest memtable
+        index.merge(stream -> stream.stream(5_000L, UIO.longBytes(0), UIO.longBytes(0), null, 1L, true, 1L, 5_000L), null);
+
+        assertPointers(index);
+        index.close();
+
+        index = getIndex(dir);
+        assertPointers(index);
+        Assert.assertTrue(index.mergeRuns(true, 1));
+        Assert.assertEquals(index.getRunCount(), 1);
+        assertPointers(index);
+    }
+
+    private void assertPointers(SortedRunWALIndex index) throws Exception {
+        for (long i = 0; i < 200; i++) {
+            long expected = (i % 3 == 0) ? 2_000L + i : i;
+            index.getPointer(UIO.longBytes(i % 4), UIO.longBytes(i), (prefix, key, timestamp, tombstoned, version, fp, hasValue, value) -> {
+                assertEquals(fp, expected);
+                Assert.assertFalse(tombstoned);
+                return true;
+            });
+        }
+
+        long[] lastKey = { -1 };
+        int[] count = { 0 };
+        index.rowScan((prefix, key, timestamp, tombstoned, version, fp, hasValue, value) -> {
+            long k = UIO.bytesLong(key);
+            assertEquals(UIO.bytesLong(prefix), k % 4);
+            assertEquals(fp, (k % 3 == 0) ? 2_000L + k : k);
+            count[0]++;
+            return true;
+        }, true);
+        assertEquals(count[0], 200);
+
+        count[0] = 0;
+        index.rangeScan(UIO.longBytes(1), UIO.longBytes(0), UIO.longBytes(1), UIO.longBytes(100),
+            (prefix, key, timestamp, tombstoned, version, fp, hasValue, value) -> {
+                long k = UIO.bytesLong(key);
+                Assert.assertTrue(k > lastKey[0]);
+                Assert.assertTrue(k < 100);
+                assertEquals(k % 4, 1);
+                lastKey[0] = k;
+                count[0]++;
+                return true;
+            }, true);
+        assertEquals(count[0], 25);
+
+        // prefix 0 saw 50 rows in the first pass and every third of them (17) in each of the two later passes
+        long[] lastTxId = { -1 };
+        count[0] = 0;
+        index.takePrefixUpdatesSince(UIO.longBytes(0), -1, (txId, fp, hasValue, value) -> {
+            Assert.assertTrue(txId > lastTxId[0]);
+            lastTxId[0] = txId;
+            count[0]++;
+            return true;
+        });
+        assertEquals(count[0], 50 + 17 + 17 + 1);
+
+        count[0] = 0;
+        index.takePrefixUpdatesSince(UIO.longBytes(0), 1_999L, (txId, fp, hasValue, value) -> {
+            Assert.assertTrue(txId > 1_999L);
+            count[0]++;
+            return true;
+        });
+        assertEquals(count[0], 17 + 1);
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        File dir = Files.createTempDir();
+        SortedRunWALIndex index = getIndex(dir);
+        for (int pass = 0; pass < 4; pass++) {
+            long base = pass * 50L;
+            index.merge((TxKeyPointerStream stream) -> {
+                for (long i = base; i < base + 50; i++) {
+                    if (!stream.stream(i, UIO.longBytes(-i), UIO.longBytes(i), null, System.currentTimeMillis(), false, Long.MAX_VALUE, i)) {
+                        return false;
+                    }
+                }
+                return true;
+            }, null);
+            index.commit(false);
+        }
+        Assert.assertEquals(index.getRunCount(), 4);
+
+        CompactionWALIndex compactionWALIndex = index.startCompaction(true, 0);
+        compactionWALIndex.merge((stream) -> {
+            for (long i = 100; i < 200; i++) {
+                if (!stream.stream(i, UIO.longBytes(-i), UIO.longBytes(i), null, System.currentTimeMillis(), false, Long.MAX_VALUE, i * 10)) {
+                    return false;
+                }
+            }
+            return true;
+        });
+        compactionWALIndex.commit(true, null);
+        Assert.assertEquals(index.getRunCount(), 1);
+
+        for (long i = 0; i < 200; i++) {
+            long expected = i < 100 ? -1 : i * 10;
+            index.getPointer(UIO.longBytes(-i), UIO.longBytes(i), (prefix, key, timestamp, tombstoned, version, fp, hasValue, value) -> {
+                assertEquals(fp, expected);
+                return true;
+            });
+        }
+        index.close();
+
+        index = getIndex(dir);
+        Assert.assertEquals(index.getRunCount(), 1);
+        index.getPointer(UIO.longBytes(-150), UIO.longBytes(150), (prefix, key, timestamp, tombstoned, version, fp, hasValue, value) -> {
+            assertEquals(fp, 1_500L);
+            return true;
+        });
+    }
+
+    @Test
+    public void testCompactionSpillsRuns() throws Exception {
+        File dir = Files.createTempDir();
+        SortedRunWALIndexConfig config = BindInterfaceToConfiguration.bindDefault(SortedRunWALIndexConfig.class);
+        config.setEntriesPerBlock(4);
+        config.setCompactionMemtableBytes(4 * 1024);
+        config.setMaxRunsBeforeMerge(1_000);
+        SortedRunWALIndex index = getIndex(dir, config);
+
+        CompactionWALIndex compactionWALIndex = index.startCompaction(false, 0);
+        compactionWALIndex.merge((stream) -> {
+            for (long i = 0; i < 1_000; i++) {
+                if (!stream.stream(i, UIO.longBytes(i % 4), UIO.longBytes(i), null, i, false, i, i * 10)) {
+                    return false;
+                }
+            }
+            return true;
+        });
+        compactionWALIndex.commit(false, null);
+        int runCount = index.getRunCount();
+        Assert.assertTrue(runCount > 1, "runCount:" + runCount);
+
+        assertCompacted(index);
+        index.close();
+
+        index = getIndex(dir, config);
+        Assert.assertEquals(index.getRunCount(), runCount);
+        assertCompacted(index);
+    }
+
+    private void assertCompacted(SortedRunWALIndex index) throws Exception {
+        for (long i = 0; i < 1_000; i++) {
+            long expected = i * 10;
+            index.getPointer(UIO.longBytes(i % 4), UIO.longBytes(i), (prefix, key, timestamp, tombstoned, version, fp, hasValue, value) -> {
+                assertEquals(fp, expected);
+                return true;
+            });
+        }
+        int[] count = { 0 };
+        index.rowScan((prefix, key, timestamp, tombstoned, version, fp, hasValue, value) -> {
+            count[0]++;
+            return true;
+        }, true);
+        assertEquals(count[0], 1_000);
+        count[0] = 0;
+        index.takePrefixUpdatesSince(UIO.longBytes(3), -1, (txId, fp, hasValue, value) -> {
+            count[0]++;
+            return true;
+        });
+        assertEquals(count[0], 250);
+    }
+
+    @Test
+    public void testChunkedRun() throws Exception {
+        File dir = Files.createTempDir();
+        ConcurrentSkipListMap<byte[], WALPointer> pointers = new ConcurrentSkipListMap<>(KeyUtil.lexicographicalComparator());
+        ConcurrentSkipListSet<byte[]> prefixes = new ConcurrentSkipListSet<>(KeyUtil.lexicographicalComparator());
+        for (long i = 0; i < 500; i++) {
+            byte[] value = (i % 2 == 0) ? ("value-" + i).getBytes() : null;
+            pointers.put(WALKey.compose(UIO.longBytes(i % 3), UIO.longBytes(i)), new WALPointer(i, i, i % 5 == 0, i, value != null, value));
+            prefixes.add(WALKey.compose(UIO.longBytes(i % 3), UIO.longBytes(i)));
+        }
+        SortedRun written = SortedRun.write(dir, 0, RunCursor.of(pointers), RunCursor.of(prefixes), 4, false);
+        File file = new File(dir, SortedRun.fileName(0));
+        written.close();
+
+        // odd sized chunks leave ints, longs, keys and values straddling chunk boundaries throughout the run
+        for (int chunkSize : new int[] { 7, 64, 1_021, SortedRun.DEFAULT_CHUNK_SIZE }) {
+            SortedRun run = SortedRun.open(file, chunkSize);
+            Assert.assertEquals(run.getPointerCount(), 500);
+            Assert.assertEquals(run.getPrefixCount(), 500);
+            for (Entry<byte[], WALPointer> entry : pointers.entrySet()) {
+                WALPointer got = run.get(entry.getKey());
+                Assert.assertNotNull(got, "chunkSize:" + chunkSize);
+                assertEquals(got.getFp(), entry.getValue().getFp());
+                assertEquals(got.getTombstoned(), entry.getValue().getTombstoned());
+                assertEquals(Arrays.toString(got.getValue()), Arrays.toString(entry.getValue().getValue()));
+            }
+            RunCursor cursor = run.pointers(null);
+            for (byte[] key : pointers.keySet()) {
+                Assert.assertTrue(cursor.next());
+                assertEquals(Arrays.toString(cursor.key()), Arrays.toString(key));
+            }
+            Assert.assertFalse(cursor.next());
+            cursor = run.prefixes(null);
+            for (byte[] key : prefixes) {
+                Assert.assertTrue(cursor.next());
+                assertEquals(Arrays.toString(cursor.key()), Arrays.toString(key));
+            }
+            Assert.assertFalse(cursor.next());
+            run.close();
+        }
+    }
+
+    private SortedRunWALIndex getIndex(File dir) throws Exception {
+        SortedRunWALIndexConfig config = BindInterfaceToConfiguration.bindDefault(SortedRunWALIndexConfig.class);
+        config.setEntriesPerBlock(4);
+        return getIndex(dir, config);
+    }
+
+    private SortedRunWALIndex getIndex(File dir, SortedRunWALIndexConfig config) throws Exception {
+        return new SortedRunWALIndexProvider("sortedrun", config, 1, new File[] { dir }).createIndex(versionedPartitionName, -1, 0);
+    }
+}
@@ -3,6 +3,9 @@ package com.jivesoftware.os.amza.sync.api;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Created by jonathan.colt on 12/22/16.
@@ -15,18 +18,32 @@ public class AmzaSyncPartitionConfig {
     public final long startVersion;
     public final long stopVersion;
     public final long timeShiftMillis;
+    public final List<byte[]> prefixes;
 
+    public AmzaSyncPartitionConfig(long startTimestamp,
+        long stopTimestamp,
+        long startVersion,
+        long stopVersion,
+        long timeShiftMillis) {
+        this(startTimestamp, stopTimestamp, startVersion, stopVersion, timeShiftMillis, null);
+    }
+
+    /**
+     * @param prefixes nullable allowlist, when present only rows whose prefix (or key for unprefixed rows) starts with one of these are synced
+     */
     @JsonCreator
     public AmzaSyncPartitionConfig(@JsonProperty("startTimestamp") long startTimestamp,
         @JsonProperty("stopTimestamp") long stopTimestamp,
         @JsonProperty("startVersion") long startVersion,
         @JsonProperty("stopVersion") long stopVersion,
-        @JsonProperty("timeShiftMillis") long timeShiftMillis) {
+        @JsonProperty("timeShiftMillis") long timeShiftMillis,
+        @JsonProperty("prefixes") List<byte[]> prefixes) {
         this.startTimestamp = startTimestamp;
         this.stopTimestamp = stopTimestamp;
         this.startVersion = startVersion;
         this.stopVersion = stopVersion;
         this.timeShiftMillis = timeShiftMillis;
+        this.prefixes = prefixes == null ? Collections.emptyList() : prefixes;
     }
 
     @Override
@@ -52,7 +69,18 @@ public class AmzaSyncPartitionConfig {
         if (stopVersion != that.stopVersion) {
             return false;
         }
-        return timeShiftMillis == that.timeShiftMillis;
+        if (timeShiftMillis != that.timeShiftMillis) {
+            return false;
+        }
+        if (prefixes.size() != that.prefixes.size()) {
+            return false;
+        }
+        for (int i = 0; i < prefixes.size(); i++) {
+            if (!Arrays.equals(prefixes.get(i), that.prefixes.get(i))) {
+                return false;
+            }
+        }
+        return true;
 
     }
 
@@ -63,6 +91,9 @@ public class AmzaSyncPartitionConfig {
         result = 31 * result + (int) (startVersion ^ (startVersion >>> 32));
         result = 31 * result + (int) (stopVersion ^ (stopVersion >>> 32));
         result = 31 * result + (int) (timeShiftMillis ^ (timeShiftMillis >>> 32));
+        for (byte[] prefix : prefixes) {
+            result = 31 * result + Arrays.hashCode(prefix);
+        }
         return result;
     }
 }
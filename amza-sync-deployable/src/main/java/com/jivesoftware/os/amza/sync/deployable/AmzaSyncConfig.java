@@ -28,6 +28,15 @@ public interface AmzaSyncConfig extends Config {
     @IntDefault(128)
     int getSyncSenderRingStripes();
 
+    @IntDefault(8)
+    int getSyncSenderMaxInFlightPartitions();
+
+    @BooleanDefault(false)
+    boolean getSyncSenderBootstrapWithScan();
+
+    @LongDefault(1_000)
+    long getSyncSenderFlushCursorsAfterNMillis();
+
     @IntDefault(16)
     int getAmzaCallerThreadPoolSize();
 
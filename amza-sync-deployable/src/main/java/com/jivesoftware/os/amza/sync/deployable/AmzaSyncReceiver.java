@@ -15,6 +15,7 @@ import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -41,7 +42,15 @@ public class AmzaSyncReceiver implements AmzaSyncClient {
 
     @Override
     public void commitRows(PartitionName partitionName, List<Row> rows) throws Exception {
-        LOG.info("Received from partition:{} rows:{}", partitionName, rows.size());
+        commitRows(partitionName, rows.iterator());
+    }
+
+    /**
+     * Commits rows as they are pulled from the iterator, one commit per run of rows sharing a prefix.
+     *
+     * @return the number of rows committed
+     */
+    public int commitRows(PartitionName partitionName, Iterator<Row> rows) throws Exception {
         PartitionClient client = partitionClientProvider.getPartition(partitionName);
 
         Consistency consistency = consistencyCache.computeIfAbsent(partitionName, partitionName1 -> {
@@ -58,9 +67,10 @@ public class AmzaSyncReceiver implements AmzaSyncClient {
             throw new RuntimeException("Missing consistency for partition: " + partitionName);
         }
 
-        PeekingIterator<Row> iter = Iterators.peekingIterator(rows.iterator());
+        PeekingIterator<Row> iter = Iterators.peekingIterator(rows);
         Optional<List<String>> solutionLog = useSolutionLog ? Optional.of(Collections.synchronizedList(Lists.newArrayList())) : Optional.empty();
         int[] batch = { 0 };
+        int[] count = { 0 };
         try {
             while (iter.hasNext()) {
                 batch[0]++;
@@ -73,6 +83,7 @@ public class AmzaSyncReceiver implements AmzaSyncClient {
                             if ((prefix == null && peek == null) || (prefix != null && peek != null && Arrays.equals(prefix, peek))) {
                                 Row row = iter.next();
                                 commitKeyValueStream.commit(row.key, row.value, row.valueTimestamp, row.valueTombstoned);
+                                count[0]++;
                             } else {
                                 break;
                             }
@@ -89,6 +100,8 @@ public class AmzaSyncReceiver implements AmzaSyncClient {
             }
             throw e;
         }
+        LOG.info("Received from partition:{} rows:{}", partitionName, count[0]);
+        return count[0];
     }
 
     @Override
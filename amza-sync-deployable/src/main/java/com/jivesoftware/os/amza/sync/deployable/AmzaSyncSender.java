@@ -5,6 +5,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jivesoftware.os.amza.api.AmzaInterner;
 import com.jivesoftware.os.amza.api.PartitionClient;
 import com.jivesoftware.os.amza.api.PartitionClientProvider;
@@ -17,6 +18,7 @@ import com.jivesoftware.os.amza.api.partition.PartitionProperties;
 import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.api.stream.RowType;
 import com.jivesoftware.os.amza.api.stream.TxKeyValueStream.TxResult;
+import com.jivesoftware.os.amza.api.take.TakeFilter;
 import com.jivesoftware.os.amza.api.take.TakeResult;
 import com.jivesoftware.os.amza.api.wal.WALHighwater;
 import com.jivesoftware.os.amza.api.wal.WALKey;
@@ -29,10 +31,15 @@ import com.jivesoftware.os.aquarium.State;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -57,7 +64,12 @@ public class AmzaSyncSender {
     private final AmzaSyncSenderConfig config;
     private final AmzaClientAquariumProvider amzaClientAquariumProvider;
     private final int syncRingStripes;
+    private final int maxInFlightPartitions;
+    private final boolean bootstrapWithScan;
+    private final long flushCursorsAfterNMillis;
     private final ScheduledExecutorService executorService;
+    private final ExecutorService partitionExecutor;
+    private final ExecutorService commitExecutor;
     private final ScheduledFuture[] syncFutures;
     private final PartitionClientProvider partitionClientProvider;
     private final AmzaSyncClient toSyncClient;
@@ -66,6 +78,9 @@ public class AmzaSyncSender {
 
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final SetMultimap<PartitionName, PartitionName> ensuredPartitions = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+    private final Map<AmzaSyncPartitionTuple, Cursor> pendingCursors = Maps.newConcurrentMap();
+    private final Object flushCursorsLock = new Object();
+    private final AtomicLong lastCursorFlush = new AtomicLong();
 
     private final long additionalSolverAfterNMillis = 10_000; //TODO expose to conf?
     private final long abandonLeaderSolutionAfterNMillis = 30_000; //TODO expose to conf?
@@ -75,6 +90,9 @@ public class AmzaSyncSender {
         AmzaSyncSenderConfig config,
         AmzaClientAquariumProvider amzaClientAquariumProvider,
         int syncRingStripes,
+        int maxInFlightPartitions,
+        boolean bootstrapWithScan,
+        long flushCursorsAfterNMillis,
         ScheduledExecutorService executorService,
         PartitionClientProvider partitionClientProvider,
         AmzaSyncClient toSyncClient,
@@ -85,7 +103,15 @@ public class AmzaSyncSender {
         this.config = config;
         this.amzaClientAquariumProvider = amzaClientAquariumProvider;
         this.syncRingStripes = syncRingStripes;
+        this.maxInFlightPartitions = maxInFlightPartitions;
+        this.bootstrapWithScan = bootstrapWithScan;
+        this.flushCursorsAfterNMillis = flushCursorsAfterNMillis;
         this.executorService = executorService;
+        // bounds concurrent partition syncs, and so in-flight commits, against this sender's destination
+        this.partitionExecutor = Executors.newFixedThreadPool(maxInFlightPartitions,
+            new ThreadFactoryBuilder().setNameFormat("sync-" + config.name + "-partition-%d").build());
+        this.commitExecutor = Executors.newFixedThreadPool(maxInFlightPartitions,
+            new ThreadFactoryBuilder().setNameFormat("sync-" + config.name + "-commit-%d").build());
         this.syncFutures = new ScheduledFuture[syncRingStripes];
         this.partitionClientProvider = partitionClientProvider;
         this.toSyncClient = toSyncClient;
@@ -131,6 +157,8 @@ public class AmzaSyncSender {
             for (int i = 0; i < syncRingStripes; i++) {
                 syncFutures[i].cancel(true);
             }
+            partitionExecutor.shutdownNow();
+            commitExecutor.shutdownNow();
         }
     }
 
@@ -163,6 +191,7 @@ public class AmzaSyncSender {
 
     public boolean resetCursors(PartitionName partitionName) throws Exception {
         ensuredPartitions.removeAll(partitionName);
+        pendingCursors.keySet().removeIf(tuple -> tuple.from.equals(partitionName));
 
         PartitionClient cursorClient = cursorClient();
         byte[] fromCursorKey = cursorKey(partitionName, null);
@@ -234,28 +263,39 @@ public class AmzaSyncSender {
                 partitions.put(new AmzaSyncPartitionTuple(partitionName, partitionName), new AmzaSyncPartitionConfig(-1, -1, -1, -1, 0)); //TODO
             }
         }
+        List<Future<Integer>> futures = Lists.newArrayList();
         for (Entry<AmzaSyncPartitionTuple, AmzaSyncPartitionConfig> entry : partitions.entrySet()) {
-            if (!isElected(stripe)) {
-                break;
-            }
             PartitionName fromPartitionName = entry.getKey().from;
-            PartitionName toPartitionName = entry.getKey().to;
             int partitionStripe = Math.abs(fromPartitionName.hashCode() % syncRingStripes);
             if (partitionStripe == stripe) {
-                if (!ensurePartition(fromPartitionName, toPartitionName)) {
-                    continue;
-                }
-                if (!isElected(stripe)) {
-                    break;
-                }
                 partitionCount++;
-
-                int synced = syncPartition(entry.getKey(), entry.getValue(), stripe);
-                if (synced > 0) {
-                    LOG.info("Synced stripe:{} tenantId:{} rows:{}", stripe, fromPartitionName, synced);
+                futures.add(partitionExecutor.submit(() -> {
+                    if (!isElected(stripe) || !ensurePartition(fromPartitionName, entry.getKey().to) || !isElected(stripe)) {
+                        return 0;
+                    }
+                    int synced = syncPartition(entry.getKey(), entry.getValue(), stripe);
+                    if (synced > 0) {
+                        LOG.info("Synced stripe:{} tenantId:{} rows:{}", stripe, fromPartitionName, synced);
+                    }
+                    return synced;
+                }));
+            }
+        }
+        try {
+            for (Future<Integer> future : futures) {
+                try {
+                    rowCount += future.get();
+                } catch (ExecutionException e) {
+                    LOG.error("Failure syncing partition in stripe {}", new Object[] { stripe }, e.getCause());
                 }
-                rowCount += synced;
             }
+        } catch (InterruptedException e) {
+            for (Future<Integer> future : futures) {
+                future.cancel(true);
+            }
+            throw e;
+        } finally {
+            flushCursors();
         }
         LOG.info("Synced stripe:{} partitions:{} rows:{}", stripe, partitionCount, rowCount);
     }
@@ -293,7 +333,8 @@ public class AmzaSyncSender {
 
     private int syncPartition(AmzaSyncPartitionTuple partitionTuple, AmzaSyncPartitionConfig toPartitionConfig, int stripe) throws Exception {
         PartitionName toPartitionName = partitionTuple.to;
-        Cursor existingCursor = getPartitionCursor(partitionTuple.from, toPartitionName, DEFAULT_CURSOR);
+        Cursor pendingCursor = pendingCursors.get(partitionTuple);
+        Cursor existingCursor = pendingCursor != null ? pendingCursor : getPartitionCursor(partitionTuple.from, toPartitionName, null);
 
         PartitionClient fromClient = partitionClientProvider.getPartition(partitionTuple.from);
         if (!isElected(stripe)) {
@@ -306,17 +347,45 @@ public class AmzaSyncSender {
         long takeMinVersion = toPartitionConfig.startVersion <= 0 ? -1 : toPartitionConfig.startVersion;
         long takeMaxVersion = toPartitionConfig.stopVersion <= 0 ? -1 : toPartitionConfig.stopVersion;
 
+        // evaluated by the source so rows outside the window never cross the wire
+        TakeFilter takeFilter = new TakeFilter(takeMinTimestamp, takeMaxTimestamp, takeMinVersion, takeMaxVersion, toPartitionConfig.prefixes);
         long timeShiftMillis = toPartitionConfig.timeShiftMillis;
 
         String readableFromTo = PartitionName.toHumanReadableString(partitionTuple.from) + '/' + PartitionName.toHumanReadableString(partitionTuple.to);
         String statsBytes = "sender/sync/" + readableFromTo + "/bytes";
         String statsCount = "sender/sync/" + readableFromTo + "/count";
+        String statsFiltered = "sender/sync/" + readableFromTo + "/filtered";
+        String statsLag = "sender/sync/" + readableFromTo;
+
+        int synced = 0;
+        // only a pair with no cursor at all, since any cursor means the destination may already hold rows a scan cannot delete
+        if (bootstrapWithScan && existingCursor == null) {
+            MutableLong bootstrapped = new MutableLong();
+            Cursor bootstrapCursor = bootstrapPartition(partitionTuple, fromClient, stripe, bootstrapped, takeFilter, timeShiftMillis,
+                statsBytes, statsCount, statsFiltered);
+            if (!isElected(stripe)) {
+                return bootstrapped.intValue();
+            }
+            if (bootstrapCursor != null) {
+                // saved straight away so a failure in the log phase never repeats the snapshot
+                savePartitionCursor(partitionTuple.from, toPartitionName, bootstrapCursor);
+                existingCursor = bootstrapCursor;
+                synced += bootstrapped.intValue();
+            }
+        }
+        if (existingCursor == null) {
+            existingCursor = DEFAULT_CURSOR;
+        }
 
         Map<RingMember, Long> cursorMemberTxIds = Maps.newHashMap(existingCursor.memberTxIds);
         AtomicLong cursorMaxTimestamp = new AtomicLong(existingCursor.maxTimestamp);
         AtomicLong cursorMaxVersion = new AtomicLong(existingCursor.maxVersion);
 
-        int synced = 0;
+        // the previous batch commits while the next one is taken; its cursor is only saved once the commit lands
+        Future<?> inFlightCommit = null;
+        Cursor inFlightCursor = null;
+        int inFlightRows = 0;
+
         boolean taking = true;
         while (taking) {
             MutableLong bytesCount = new MutableLong();
@@ -325,6 +394,7 @@ public class AmzaSyncSender {
             TakeResult takeResult = fromClient.takeFromTransactionId(null,
                 cursorMemberTxIds,
                 config.batchSize,
+                takeFilter,
                 highwater -> {
                     if (highwater != null) {
                         for (WALHighwater.RingMemberHighwater memberHighwater : highwater.ringMemberHighwater) {
@@ -335,12 +405,7 @@ public class AmzaSyncSender {
                 (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> {
                     cursorMaxTimestamp.set(Math.max(cursorMaxTimestamp.get(), valueTimestamp));
                     cursorMaxVersion.set(Math.max(cursorMaxVersion.get(), valueVersion));
-                    if ((takeMinTimestamp == -1 || valueTimestamp > takeMinTimestamp)
-                        && (takeMaxTimestamp == -1 || takeMaxTimestamp > valueTimestamp)
-                        && (takeMinVersion == -1 || valueVersion > takeMinVersion)
-                        && (takeMaxVersion == -1 || takeMaxVersion > valueVersion)) {
-                        rows.add(new Row(prefix, key, value, valueTimestamp + timeShiftMillis, valueTombstoned));
-                    }
+                    rows.add(new Row(prefix, key, value, valueTimestamp + timeShiftMillis, valueTombstoned));
                     bytesCount.add((key == null ? 0 : key.length) + (value == null ? 0 : value.length));
                     return TxResult.MORE;
                 },
@@ -348,28 +413,35 @@ public class AmzaSyncSender {
                 abandonSolutionAfterNMillis,
                 Optional.empty());
 
+            if (inFlightCommit != null) {
+                // batches must land in take order
+                inFlightCommit.get();
+                synced += inFlightRows;
+                if (!existingCursor.equals(inFlightCursor)) {
+                    saveCursorLater(partitionTuple, inFlightCursor);
+                    existingCursor = inFlightCursor;
+                }
+                inFlightCommit = null;
+                inFlightRows = 0;
+            }
+
             if (!isElected(stripe)) {
                 return synced;
             }
+            long ingressLatency = System.currentTimeMillis() - start;
+            if (takeResult.filtered > 0) {
+                stats.filtered("sender/sync/filtered", takeResult.filtered);
+                stats.filtered(statsFiltered, takeResult.filtered);
+            }
             if (rows.isEmpty()) {
                 //TODO we would prefer to check tookToEnd, but api limitation means an empty partition is indistinguishable from a partial take
-                taking = false;
+                // a batch the source filtered away entirely still made progress
+                taking = takeResult.filtered > 0;
             } else {
-                long ingressLatency = System.currentTimeMillis() - start;
                 stats.ingressed("sender/sync/bytes", bytesCount.longValue(), 0);
                 stats.ingressed(statsBytes, bytesCount.longValue(), ingressLatency);
                 stats.ingressed("sender/sync/count", rows.size(), 0);
                 stats.ingressed(statsCount, rows.size(), ingressLatency);
-                start = System.currentTimeMillis();
-
-                toSyncClient.commitRows(toPartitionName, rows);
-                synced += rows.size();
-
-                long egressLatency = System.currentTimeMillis() - start;
-                stats.egressed("sender/sync/bytes", bytesCount.longValue(), 0);
-                stats.egressed(statsBytes, bytesCount.longValue(), egressLatency);
-                stats.egressed("sender/sync/count", rows.size(), 0);
-                stats.egressed(statsCount, rows.size(), egressLatency);
             }
 
             cursorMemberTxIds.merge(takeResult.tookFrom, takeResult.lastTxId, Math::max);
@@ -380,16 +452,235 @@ public class AmzaSyncSender {
                 taking = false;
             }
 
-            Cursor cursor = new Cursor(true, taking, cursorMaxTimestamp.get(), cursorMaxVersion.get(), cursorMemberTxIds);
-            if (!existingCursor.equals(cursor)) {
-                savePartitionCursor(partitionTuple.from, toPartitionName, cursor);
-                existingCursor = cursor;
+            Cursor cursor = new Cursor(true, taking, cursorMaxTimestamp.get(), cursorMaxVersion.get(), Maps.newHashMap(cursorMemberTxIds));
+            if (rows.isEmpty()) {
+                if (!existingCursor.equals(cursor)) {
+                    saveCursorLater(partitionTuple, cursor);
+                    existingCursor = cursor;
+                }
+            } else {
+                long bytes = bytesCount.longValue();
+                inFlightCommit = commitExecutor.submit(() -> {
+                    long commitStart = System.currentTimeMillis();
+                    toSyncClient.commitRows(toPartitionName, rows);
+
+                    long egressLatency = System.currentTimeMillis() - commitStart;
+                    stats.egressed("sender/sync/bytes", bytes, 0);
+                    stats.egressed(statsBytes, bytes, egressLatency);
+                    stats.egressed("sender/sync/count", rows.size(), 0);
+                    stats.egressed(statsCount, rows.size(), egressLatency);
+                    return null;
+                });
+                inFlightCursor = cursor;
+                inFlightRows = rows.size();
+            }
+            stats.lag(statsLag, !taking, cursorMaxTimestamp.get(), inFlightRows);
+        }
+
+        if (inFlightCommit != null) {
+            inFlightCommit.get();
+            synced += inFlightRows;
+            if (!existingCursor.equals(inFlightCursor)) {
+                saveCursorLater(partitionTuple, inFlightCursor);
             }
+            stats.lag(statsLag, true, cursorMaxTimestamp.get(), 0);
         }
 
         return synced;
     }
 
+    /**
+     * Copies the current state of a partition which has never been synced by scanning it rather than replaying its whole transaction log.
+     * The highwaters are captured before the scan starts, so every write the scan might miss is at or after the returned cursor, and
+     * replaying a write the scan already copied is harmless because rows keep their timestamps.
+     * <p>
+     * A scan does not return tombstones, so keys removed before the highwaters were captured are simply absent. That is only equivalent to
+     * replaying the log when the destination has never been synced; removals after the highwaters are replayed from the log as usual.
+     *
+     * @return a cursor positioned at the captured highwaters, or null if the partition should be synced from its transaction log instead
+     */
+    private Cursor bootstrapPartition(AmzaSyncPartitionTuple partitionTuple,
+        PartitionClient fromClient,
+        int stripe,
+        MutableLong bootstrapped,
+        TakeFilter takeFilter,
+        long timeShiftMillis,
+        String statsBytes,
+        String statsCount,
+        String statsFiltered) throws Exception {
+
+        RingPartitionProperties properties = partitionClientProvider.getProperties(partitionTuple.from);
+        if (properties == null || properties.partitionProperties == null) {
+            return null;
+        }
+
+        Map<RingMember, Long> memberTxIds = captureHighwaters(fromClient);
+        if (memberTxIds == null) {
+            LOG.info("Failed to capture highwaters, falling back to the transaction log for fromPartitionName:{}", partitionTuple.from);
+            return null;
+        }
+
+        LOG.info("Bootstrapping fromPartitionName:{} toPartitionName:{} from:{}", partitionTuple.from, partitionTuple.to, memberTxIds);
+        long start = System.currentTimeMillis();
+        AtomicLong cursorMaxTimestamp = new AtomicLong(-1);
+        AtomicLong cursorMaxVersion = new AtomicLong(-1);
+        // snapshot rows are distinct keys, so batches may land in any order
+        List<Future<?>> inFlightCommits = Lists.newArrayList();
+        List<Row> rows = Lists.newArrayListWithExpectedSize(config.batchSize);
+        MutableLong bytesCount = new MutableLong();
+        MutableLong filtered = new MutableLong();
+        boolean[] abandoned = { false };
+        fromClient.scan(properties.partitionProperties.consistency, true,
+            prefixedKeyRangeStream -> prefixedKeyRangeStream.stream(null, null, null, null),
+            (prefix, key, value, timestamp, version) -> {
+                cursorMaxTimestamp.set(Math.max(cursorMaxTimestamp.get(), timestamp));
+                cursorMaxVersion.set(Math.max(cursorMaxVersion.get(), version));
+                if (takeFilter.accept(prefix, key, timestamp, version)) {
+                    rows.add(new Row(prefix, key, value, timestamp + timeShiftMillis, false));
+                    bytesCount.add((key == null ? 0 : key.length) + (value == null ? 0 : value.length));
+                } else {
+                    filtered.increment();
+                }
+                if (rows.size() >= config.batchSize) {
+                    if (!isElected(stripe)) {
+                        abandoned[0] = true;
+                        return false;
+                    }
+                    bootstrapped.add(rows.size());
+                    commitBootstrapBatch(partitionTuple.to, Lists.newArrayList(rows), bytesCount.longValue(), start, statsBytes, statsCount,
+                        inFlightCommits);
+                    rows.clear();
+                    bytesCount.setValue(0);
+                }
+                return true;
+            },
+            additionalSolverAfterNMillis,
+            abandonLeaderSolutionAfterNMillis,
+            abandonSolutionAfterNMillis,
+            Optional.empty());
+
+        if (!abandoned[0] && !rows.isEmpty()) {
+            bootstrapped.add(rows.size());
+            commitBootstrapBatch(partitionTuple.to, rows, bytesCount.longValue(), start, statsBytes, statsCount, inFlightCommits);
+        }
+        for (Future<?> inFlightCommit : inFlightCommits) {
+            inFlightCommit.get();
+        }
+        if (filtered.longValue() > 0) {
+            stats.filtered("sender/sync/filtered", filtered.longValue());
+            stats.filtered(statsFiltered, filtered.longValue());
+        }
+        if (abandoned[0]) {
+            return null;
+        }
+
+        LOG.info("Bootstrapped fromPartitionName:{} toPartitionName:{} rows:{} in {} millis",
+            partitionTuple.from, partitionTuple.to, bootstrapped.longValue(), System.currentTimeMillis() - start);
+        return new Cursor(true, true, cursorMaxTimestamp.get(), cursorMaxVersion.get(), memberTxIds);
+    }
+
+    private void commitBootstrapBatch(PartitionName toPartitionName,
+        List<Row> rows,
+        long bytes,
+        long start,
+        String statsBytes,
+        String statsCount,
+        List<Future<?>> inFlightCommits) throws Exception {
+
+        while (inFlightCommits.size() >= maxInFlightPartitions) {
+            inFlightCommits.remove(0).get();
+        }
+        long ingressLatency = System.currentTimeMillis() - start;
+        stats.ingressed("sender/sync/bytes", bytes, 0);
+        stats.ingressed(statsBytes, bytes, ingressLatency);
+        stats.ingressed("sender/sync/count", rows.size(), 0);
+        stats.ingressed(statsCount, rows.size(), ingressLatency);
+        inFlightCommits.add(commitExecutor.submit(() -> {
+            long commitStart = System.currentTimeMillis();
+            toSyncClient.commitRows(toPartitionName, rows);
+
+            long egressLatency = System.currentTimeMillis() - commitStart;
+            stats.egressed("sender/sync/bytes", bytes, 0);
+            stats.egressed(statsBytes, bytes, egressLatency);
+            stats.egressed("sender/sync/count", rows.size(), 0);
+            stats.egressed(statsCount, rows.size(), egressLatency);
+            return null;
+        }));
+    }
+
+    /**
+     * Asks one replica for the highwaters at the end of its transaction log without streaming any of it.
+     *
+     * @return the highwaters for every member, or null if they could not be captured from a single replica
+     */
+    private Map<RingMember, Long> captureHighwaters(PartitionClient fromClient) throws Exception {
+        TakeResult probe = fromClient.takeFromTransactionId(null,
+            Collections.emptyMap(),
+            1,
+            highwater -> {
+            },
+            (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> TxResult.ACCEPT_AND_STOP,
+            additionalSolverAfterNMillis,
+            abandonSolutionAfterNMillis,
+            Optional.empty());
+
+        RingMember ringMember = probe.tookFrom;
+        TakeResult tail = fromClient.takeFromTransactionId(Collections.singletonList(ringMember),
+            Collections.singletonMap(ringMember, Long.MAX_VALUE),
+            1,
+            highwater -> {
+            },
+            (rowTxId, prefix, key, value, valueTimestamp, valueTombstoned, valueVersion) -> TxResult.ACCEPT_AND_STOP,
+            additionalSolverAfterNMillis,
+            abandonSolutionAfterNMillis,
+            Optional.empty());
+
+        if (!ringMember.equals(tail.tookFrom) || tail.tookToEnd == null) {
+            return null;
+        }
+        Map<RingMember, Long> memberTxIds = Maps.newHashMap();
+        for (WALHighwater.RingMemberHighwater memberHighwater : tail.tookToEnd.ringMemberHighwater) {
+            memberTxIds.merge(memberHighwater.ringMember, memberHighwater.transactionId, Math::max);
+        }
+        // the replica's own highwater is flushed lazily, without it the log phase would replay its whole history
+        return memberTxIds.containsKey(ringMember) ? memberTxIds : null;
+    }
+
+    private void saveCursorLater(AmzaSyncPartitionTuple partitionTuple, Cursor cursor) throws Exception {
+        pendingCursors.put(partitionTuple, cursor);
+        if (System.currentTimeMillis() - lastCursorFlush.get() > flushCursorsAfterNMillis) {
+            flushCursors();
+        }
+    }
+
+    private void flushCursors() throws Exception {
+        synchronized (flushCursorsLock) {
+            if (pendingCursors.isEmpty()) {
+                return;
+            }
+            Map<AmzaSyncPartitionTuple, Cursor> flushing = Maps.newHashMap(pendingCursors);
+            PartitionClient cursorClient = cursorClient();
+            cursorClient.commit(Consistency.leader_quorum, null,
+                commitKeyValueStream -> {
+                    for (Entry<AmzaSyncPartitionTuple, Cursor> entry : flushing.entrySet()) {
+                        byte[] cursorKey = cursorKey(entry.getKey().from, entry.getKey().to);
+                        if (!commitKeyValueStream.commit(cursorKey, valueFromCursor(entry.getValue()), -1, false)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                },
+                additionalSolverAfterNMillis,
+                abandonSolutionAfterNMillis,
+                Optional.empty());
+            for (Entry<AmzaSyncPartitionTuple, Cursor> entry : flushing.entrySet()) {
+                // leaves any cursor that advanced during the commit for the next flush
+                pendingCursors.remove(entry.getKey(), entry.getValue());
+            }
+            lastCursorFlush.set(System.currentTimeMillis());
+        }
+    }
+
     private Cursor getPartitionCursor(PartitionName fromPartitionName, PartitionName toPartitionName, Cursor defaultCursor) throws Exception {
         PartitionClient cursorClient = cursorClient();
         byte[] cursorKey = cursorKey(fromPartitionName, toPartitionName);
@@ -108,6 +108,9 @@ public class AmzaSyncSenders {
                                     senderConfig,
                                     clientAquariumProvider,
                                     syncConfig.getSyncSenderRingStripes(),
+                                    syncConfig.getSyncSenderMaxInFlightPartitions(),
+                                    syncConfig.getSyncSenderBootstrapWithScan(),
+                                    syncConfig.getSyncSenderFlushCursorsAfterNMillis(),
                                     executorService,
                                     partitionClientProvider,
                                     amzaSyncClient(senderConfig),
@@ -192,6 +195,7 @@ public class AmzaSyncSenders {
 
             return new HttpAmzaSyncClient(httpClient,
                 mapper,
+                "/api/sync/v1/commit/stream",
                 "/api/sync/v1/commit/rows",
                 "/api/sync/v1/ensure/partition");
         }
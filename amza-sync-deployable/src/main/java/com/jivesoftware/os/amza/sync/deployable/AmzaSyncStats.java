@@ -12,6 +12,8 @@ public class AmzaSyncStats {
 
     private final Map<String, Stat> egressedMap = Maps.newConcurrentMap();
     private final Map<String, Stat> ingressedMap = Maps.newConcurrentMap();
+    private final Map<String, Stat> filteredMap = Maps.newConcurrentMap();
+    private final Map<String, Lag> lagMap = Maps.newConcurrentMap();
 
     public Map<String, Stat> ingressedMap() {
         return ingressedMap;
@@ -45,6 +47,41 @@ public class AmzaSyncStats {
         got.update(count, latency);
     }
 
+    /**
+     * Rows the source dropped on the sender's behalf, as opposed to the rows it shipped which are counted as ingressed.
+     */
+    public Map<String, Stat> filteredMap() {
+        return filteredMap;
+    }
+
+    public void filtered(String path, long count) {
+        Stat got = filteredMap.get(path);
+        if (got == null) {
+            got = new Stat();
+            Stat had = filteredMap.putIfAbsent(path, got);
+            if (had != null) {
+                got = had;
+            }
+        }
+        got.update(count, 0);
+    }
+
+    public Map<String, Lag> lagMap() {
+        return lagMap;
+    }
+
+    public void lag(String path, boolean caughtUp, long maxTimestamp, long inFlightRows) {
+        Lag got = lagMap.get(path);
+        if (got == null) {
+            got = new Lag();
+            Lag had = lagMap.putIfAbsent(path, got);
+            if (had != null) {
+                got = had;
+            }
+        }
+        got.update(caughtUp, maxTimestamp, inFlightRows);
+    }
+
     public static class Stat {
 
         public final AtomicLong count;
@@ -64,4 +101,43 @@ public class AmzaSyncStats {
         }
 
     }
+
+    /**
+     * How far a destination partition trails its source. Lag is the wall clock time since the sender last took a partition to the end
+     * with nothing left in flight.
+     */
+    public static class Lag {
+
+        public final AtomicLong caughtUpTimestamp;
+        public final AtomicLong maxTimestamp;
+        public final AtomicLong inFlightRows;
+        public final AtomicLong timestamp;
+        private volatile boolean caughtUp;
+
+        Lag() {
+            this.caughtUpTimestamp = new AtomicLong(-1);
+            this.maxTimestamp = new AtomicLong(-1);
+            this.inFlightRows = new AtomicLong();
+            this.timestamp = new AtomicLong(System.currentTimeMillis());
+        }
+
+        public void update(boolean caughtUp, long maxTimestamp, long inFlightRows) {
+            long now = System.currentTimeMillis();
+            this.caughtUp = caughtUp && inFlightRows == 0;
+            if (this.caughtUp) {
+                caughtUpTimestamp.set(now);
+            }
+            this.maxTimestamp.set(maxTimestamp);
+            this.inFlightRows.set(inFlightRows);
+            timestamp.set(now);
+        }
+
+        public long lagMillis() {
+            if (caughtUp) {
+                return 0;
+            }
+            long caughtUpAt = caughtUpTimestamp.get();
+            return caughtUpAt == -1 ? -1 : System.currentTimeMillis() - caughtUpAt;
+        }
+    }
 }
@@ -0,0 +1,55 @@
+package com.jivesoftware.os.amza.sync.deployable;
+
+import com.google.common.collect.AbstractIterator;
+import com.jivesoftware.os.amza.api.filer.IAppendOnly;
+import com.jivesoftware.os.amza.api.filer.IReadable;
+import com.jivesoftware.os.amza.api.filer.UIO;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Length prefixed row stream for commitRows. Each row is preceded by an end of stream flag so the receiver can decode and commit rows
+ * while the sender is still writing them.
+ */
+public class BinaryRows {
+
+    private BinaryRows() {
+    }
+
+    public static void write(IAppendOnly out, Row row, byte[] lengthBuffer) throws IOException {
+        UIO.writeByte(out, (byte) 0, "eos");
+        UIO.writeByteArray(out, row.prefix, "prefix", lengthBuffer);
+        UIO.writeByteArray(out, row.key, "key", lengthBuffer);
+        UIO.writeByteArray(out, row.value, "value", lengthBuffer);
+        UIO.writeLong(out, row.valueTimestamp, "valueTimestamp", lengthBuffer);
+        UIO.writeByte(out, row.valueTombstoned ? (byte) 1 : (byte) 0, "valueTombstoned");
+    }
+
+    public static void writeEnd(IAppendOnly out) throws IOException {
+        UIO.writeByte(out, (byte) 1, "eos");
+    }
+
+    /**
+     * Lazily decodes rows, throwing {@link IllegalStateException} if the stream is truncated.
+     */
+    public static Iterator<Row> iterator(IReadable in) {
+        byte[] lengthBuffer = new byte[8];
+        return new AbstractIterator<Row>() {
+            @Override
+            protected Row computeNext() {
+                try {
+                    if (UIO.readBoolean(in, "eos")) {
+                        return endOfData();
+                    }
+                    return new Row(UIO.readByteArray(in, "prefix", lengthBuffer),
+                        UIO.readByteArray(in, "key", lengthBuffer),
+                        UIO.readByteArray(in, "value", lengthBuffer),
+                        UIO.readLong(in, "valueTimestamp", lengthBuffer),
+                        UIO.readBoolean(in, "valueTombstoned"));
+                } catch (IOException x) {
+                    throw new IllegalStateException("Failed to read row", x);
+                }
+            }
+        };
+    }
+}
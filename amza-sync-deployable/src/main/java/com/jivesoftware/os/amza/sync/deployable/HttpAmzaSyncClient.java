@@ -1,40 +1,81 @@
 package com.jivesoftware.os.amza.sync.deployable;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jivesoftware.os.amza.api.filer.FilerOutputStream;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.mlogger.core.MetricLogger;
+import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 import com.jivesoftware.os.routing.bird.http.client.HttpClient;
 import com.jivesoftware.os.routing.bird.http.client.HttpResponse;
 import java.util.List;
 import org.xerial.snappy.Snappy;
+import org.xerial.snappy.SnappyOutputStream;
 
 /**
  *
  */
 public class HttpAmzaSyncClient implements AmzaSyncClient {
 
+    private static final MetricLogger LOG = MetricLoggerFactory.getLogger();
+
     private final HttpClient httpClient;
     private final ObjectMapper mapper;
-    private final String commitPath;
+    private final String commitStreamPath;
+    private final String commitRowsPath;
     private final String ensurePartitionPath;
 
-    public HttpAmzaSyncClient(HttpClient httpClient, ObjectMapper mapper, String commitPath, String ensurePartitionPath) {
+    private volatile boolean streamUnsupported;
+
+    public HttpAmzaSyncClient(HttpClient httpClient, ObjectMapper mapper, String commitStreamPath, String commitRowsPath, String ensurePartitionPath) {
         this.httpClient = httpClient;
         this.mapper = mapper;
-        this.commitPath = commitPath;
+        this.commitStreamPath = commitStreamPath;
+        this.commitRowsPath = commitRowsPath;
         this.ensurePartitionPath = ensurePartitionPath;
     }
 
     @Override
     public void commitRows(PartitionName toPartitionName, List<Row> rows) throws Exception {
+        if (!streamUnsupported) {
+            int statusCode = commitStream(toPartitionName, rows);
+            if (statusCode != 404) {
+                if (!isSuccessStatusCode(statusCode)) {
+                    throw new SyncClientException("Empty response from sync receiver");
+                }
+                return;
+            }
+            // receivers which predate the stream endpoint only understand json rows
+            LOG.info("Sync receiver does not support {}, falling back to {}", commitStreamPath, commitRowsPath);
+            streamUnsupported = true;
+        }
+
         byte[] bytes = Snappy.compress(mapper.writeValueAsBytes(rows));
-        String endpoint = commitPath + '/' + toPartitionName.toBase64();
+        String endpoint = commitRowsPath + '/' + toPartitionName.toBase64();
         HttpResponse httpResponse = httpClient.postBytes(endpoint, bytes, null);
         if (!isSuccessStatusCode(httpResponse.getStatusCode())) {
             throw new SyncClientException("Empty response from sync receiver");
         }
     }
 
+    private int commitStream(PartitionName toPartitionName, List<Row> rows) throws Exception {
+        String endpoint = commitStreamPath + '/' + toPartitionName.toBase64();
+        HttpResponse httpResponse = httpClient.postStreamableRequest(endpoint,
+            (out) -> {
+                try (SnappyOutputStream snappy = new SnappyOutputStream(out)) {
+                    FilerOutputStream fos = new FilerOutputStream(snappy);
+                    byte[] lengthBuffer = new byte[8];
+                    for (Row row : rows) {
+                        BinaryRows.write(fos, row, lengthBuffer);
+                    }
+                    BinaryRows.writeEnd(fos);
+                } catch (Exception x) {
+                    throw new RuntimeException("Failed while streaming rows.", x);
+                }
+            }, null);
+        return httpResponse.getStatusCode();
+    }
+
     @Override
     public void ensurePartition(PartitionName toPartitionName, PartitionProperties properties, int ringSize) throws Exception {
         String endpoint = ensurePartitionPath + '/' + toPartitionName.toBase64() + '/' + ringSize;
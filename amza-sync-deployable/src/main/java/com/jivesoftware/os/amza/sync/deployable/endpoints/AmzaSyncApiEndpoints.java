@@ -17,9 +17,11 @@ package com.jivesoftware.os.amza.sync.deployable.endpoints;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jivesoftware.os.amza.api.AmzaInterner;
+import com.jivesoftware.os.amza.api.filer.FilerInputStream;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
 import com.jivesoftware.os.amza.sync.deployable.AmzaSyncReceiver;
+import com.jivesoftware.os.amza.sync.deployable.BinaryRows;
 import com.jivesoftware.os.amza.sync.deployable.Rows;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
@@ -60,6 +62,7 @@ public class AmzaSyncApiEndpoints {
         this.amzaInterner = amzaInterner;
     }
 
+    // json rows from senders which predate commit/stream
     @POST
     @Path("/commit/rows/{partitionNameBase64}")
     @Consumes(MediaType.APPLICATION_OCTET_STREAM)
@@ -85,6 +88,24 @@ public class AmzaSyncApiEndpoints {
         }
     }
 
+    @POST
+    @Path("/commit/stream/{partitionNameBase64}")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response commitStream(@PathParam("partitionNameBase64") String partitionNameBase64,
+        InputStream inputStream) throws Exception {
+        try {
+            PartitionName partitionName = amzaInterner.internPartitionNameBase64(partitionNameBase64);
+            FilerInputStream fis = new FilerInputStream(new SnappyInputStream(inputStream));
+            syncReceiver.commitRows(partitionName, BinaryRows.iterator(fis));
+            return responseHelper.jsonResponse("ok");
+        } catch (Exception x) {
+            LOG.error("Failed calling commitStream({})",
+                new Object[]{partitionNameBase64}, x);
+            return responseHelper.errorResponse("Server error", x);
+        }
+    }
+
     @POST
     @Path("/ensure/partition/{partitionNameBase64}/{ringSize}")
     @Consumes(MediaType.APPLICATION_JSON)
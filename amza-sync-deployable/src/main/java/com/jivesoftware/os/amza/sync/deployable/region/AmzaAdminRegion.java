@@ -82,6 +82,7 @@ public class AmzaAdminRegion implements PageRegion<Void> {
 
         ingressed(data);
         egressed(data);
+        lagged(data);
 
         return renderer.render(template, data);
     }
@@ -176,6 +177,47 @@ public class AmzaAdminRegion implements PageRegion<Void> {
         data.put("egressedStatus", rows);
     }
 
+    private void lagged(Map<String, Object> data) {
+        List<Map<String, String>> rows = new ArrayList<>();
+        Map<String, AmzaSyncStats.Lag> map = stats.lagMap();
+        List<Map.Entry<String, AmzaSyncStats.Lag>> sortedEntries = new ArrayList<>();
+        Map<String, Long> lagMillis = new HashMap<>();
+        for (Map.Entry<String, AmzaSyncStats.Lag> e : map.entrySet()) {
+            sortedEntries.add(e);
+            lagMillis.put(e.getKey(), e.getValue().lagMillis());
+        }
+
+        // never caught up (-1) sorts ahead of everything else
+        Collections.sort(sortedEntries, (o1, o2) -> {
+            long l1 = lagMillis.get(o1.getKey());
+            long l2 = lagMillis.get(o2.getKey());
+            return Long.compare(l2 == -1 ? Long.MAX_VALUE : l2, l1 == -1 ? Long.MAX_VALUE : l1);
+        });
+
+        long worstLag = 0;
+        boolean neverCaughtUp = false;
+        for (Map.Entry<String, AmzaSyncStats.Lag> e : sortedEntries) {
+            Map<String, String> status = new HashMap<>();
+            AmzaSyncStats.Lag value = e.getValue();
+            long lag = lagMillis.get(e.getKey());
+            long maxTimestamp = value.maxTimestamp.get();
+            status.put("context", e.getKey());
+            status.put("lag", lag == -1 ? "unknown" : humanReadableLatency(lag));
+            status.put("maxTimestamp", maxTimestamp == -1 ? "" : String.valueOf(maxTimestamp));
+            status.put("inFlightRows", String.valueOf(value.inFlightRows.get()));
+            status.put("recency", humanReadableUptime(System.currentTimeMillis() - value.timestamp.get()));
+            rows.add(status);
+            if (lag == -1) {
+                neverCaughtUp = true;
+            } else if (lag > worstLag) {
+                worstLag = lag;
+            }
+        }
+
+        data.put("worstLag", neverCaughtUp ? "unknown" : humanReadableLatency(worstLag));
+        data.put("lagStatus", rows);
+    }
+
     @Override
     public String getTitle() {
         return "Sync";
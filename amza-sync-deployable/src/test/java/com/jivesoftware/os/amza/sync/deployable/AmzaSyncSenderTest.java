@@ -1,6 +1,8 @@
 package com.jivesoftware.os.amza.sync.deployable;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.jivesoftware.os.amza.api.AmzaInterner;
@@ -29,6 +31,7 @@ import com.jivesoftware.os.jive.utils.ordered.id.OrderIdProviderImpl;
 import com.jivesoftware.os.jive.utils.ordered.id.SnowflakeIdPacker;
 import com.jivesoftware.os.jive.utils.ordered.id.TimestampedOrderIdProvider;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -57,24 +60,7 @@ public class AmzaSyncSenderTest {
 
         PartitionClient partition = partitionClientProvider.getPartition(partitionName);
 
-        AmzaClientAquariumProvider amzaClientAquariumProvider = new AmzaClientAquariumProvider(new AquariumStats(),
-            "test",
-            partitionClientProvider,
-            orderIdProvider,
-            ringMember.asAquariumMember(),
-            count -> count == 1,
-            () -> Sets.newHashSet(ringMember.asAquariumMember()),
-            128,
-            128,
-            5_000L,
-            100L,
-            60_000L,
-            10_000L,
-            Executors.newSingleThreadExecutor(),
-            100L,
-            1_000L,
-            10_000L,
-            false);
+        AmzaClientAquariumProvider amzaClientAquariumProvider = aquariumProvider(partitionClientProvider, orderIdProvider, ringMember);
 
         int[] rowCount = new int[1];
         AmzaSyncClient syncClient = new AmzaSyncClient() {
@@ -89,28 +75,8 @@ public class AmzaSyncSenderTest {
             }
         };
 
-        AmzaSyncSender syncSender = new AmzaSyncSender(
-            new AmzaSyncStats(),
-            new AmzaSyncSenderConfig("default",
-                true,
-                100L,
-                1_000,
-                false,
-                "",
-                "",
-                -1,
-                "",
-                "",
-                "",
-                true),
-            amzaClientAquariumProvider,
-            1,
-            Executors.newScheduledThreadPool(1),
-            partitionClientProvider,
-            syncClient,
-            (name) -> ImmutableMap.of(new AmzaSyncPartitionTuple(partitionName, partitionName),
-                new AmzaSyncPartitionConfig(0, 0, 0, 0, 0)),
-            new AmzaInterner());
+        AmzaSyncSender syncSender = syncSender(partitionClientProvider, amzaClientAquariumProvider, syncClient, partitionName, new AmzaSyncStats(),
+            1_000, false, 1_000);
 
         amzaClientAquariumProvider.start();
         syncSender.start();
@@ -149,6 +115,252 @@ public class AmzaSyncSenderTest {
         Assert.assertEquals(rowCount[0], 10);
     }
 
+    @Test
+    public void testBootstrapWithScan() throws Exception {
+        byte[] partitionBytes = "partition1".getBytes(StandardCharsets.UTF_8);
+        PartitionName partitionName = new PartitionName(false, partitionBytes, partitionBytes);
+        RingMember ringMember = new RingMember("member1");
+
+        TimestampedOrderIdProvider orderIdProvider = new OrderIdProviderImpl(new ConstantWriterIdProvider(1),
+            new SnowflakeIdPacker(),
+            new JiveEpochTimestampProvider());
+        PartitionClientProvider partitionClientProvider = new InMemoryPartitionClientProvider(orderIdProvider, ringMember);
+
+        PartitionClient partition = partitionClientProvider.getPartition(partitionName);
+
+        AmzaClientAquariumProvider amzaClientAquariumProvider = aquariumProvider(partitionClientProvider, orderIdProvider, ringMember);
+
+        // 20 puts, 10 overwrites and 5 removes leave 15 live keys behind 35 transactions
+        long initialTimeMillis = System.currentTimeMillis();
+        AtomicInteger keyProvider = new AtomicInteger();
+        AtomicLong valueProvider = new AtomicLong();
+        advancePartition(partition, 20, initialTimeMillis, keyProvider, valueProvider);
+        partition.commit(Consistency.none,
+            null,
+            commitKeyValueStream -> {
+                for (int i = 1; i <= 10; i++) {
+                    commitKeyValueStream.commit(UIO.intBytes(i), UIO.longBytes(-i), initialTimeMillis + 1, false);
+                }
+                for (int i = 11; i <= 15; i++) {
+                    commitKeyValueStream.commit(UIO.intBytes(i), null, initialTimeMillis + 1, true);
+                }
+                return true;
+            },
+            1_000L,
+            10_000L,
+            Optional.empty());
+
+        AtomicInteger rowCount = new AtomicInteger();
+        Map<Integer, Row> committed = Maps.newConcurrentMap();
+        AmzaSyncClient syncClient = new AmzaSyncClient() {
+
+            @Override
+            public void commitRows(PartitionName toPartitionName, List<Row> rows) throws Exception {
+                rowCount.addAndGet(rows.size());
+                for (Row row : rows) {
+                    committed.put(UIO.bytesInt(row.key), row);
+                }
+            }
+
+            @Override
+            public void ensurePartition(PartitionName toPartitionName, PartitionProperties properties, int ringSize) throws Exception {
+            }
+        };
+
+        AmzaSyncSender syncSender = syncSender(partitionClientProvider, amzaClientAquariumProvider, syncClient, partitionName, new AmzaSyncStats(),
+            4, true, 1_000);
+
+        amzaClientAquariumProvider.start();
+        syncSender.start();
+
+        long failAfter = System.currentTimeMillis() + 60_000L;
+        Cursor cursor = awaitCursor(partitionName, syncSender, ringMember, 35L, failAfter);
+        Assert.assertEquals(cursor.memberTxIds.get(ringMember).longValue(), 35L);
+        Assert.assertEquals(cursor.maxTimestamp, initialTimeMillis + 1);
+
+        // the scan ships each live key once, and never the removed ones
+        Assert.assertEquals(rowCount.get(), 15);
+        Assert.assertEquals(committed.size(), 15);
+        for (int i = 1; i <= 10; i++) {
+            Row row = committed.get(i);
+            Assert.assertNotNull(row);
+            Assert.assertFalse(row.valueTombstoned);
+            Assert.assertEquals(UIO.bytesLong(row.value), -i);
+        }
+        for (int i = 11; i <= 15; i++) {
+            Assert.assertFalse(committed.containsKey(i), "Removed key " + i + " was bootstrapped");
+        }
+        for (int i = 16; i <= 20; i++) {
+            Assert.assertTrue(committed.containsKey(i), "Live key " + i + " was not bootstrapped");
+        }
+
+        // writes after the scan are picked up from the transaction log
+        long largestTxId = advancePartition(partition, 5, initialTimeMillis + 2, keyProvider, valueProvider);
+        Assert.assertEquals(largestTxId, 40L);
+        cursor = awaitCursor(partitionName, syncSender, ringMember, largestTxId, failAfter);
+        Assert.assertFalse(cursor.taking);
+        Assert.assertEquals(cursor.maxTimestamp, initialTimeMillis + 2);
+        Assert.assertEquals(rowCount.get(), 20);
+        for (int i = 21; i <= 25; i++) {
+            Assert.assertTrue(committed.containsKey(i), "Logged key " + i + " was not synced");
+        }
+    }
+
+    @Test
+    public void testPipelinedBatches() throws Exception {
+        byte[] partitionBytes = "partition1".getBytes(StandardCharsets.UTF_8);
+        PartitionName partitionName = new PartitionName(false, partitionBytes, partitionBytes);
+        RingMember ringMember = new RingMember("member1");
+
+        TimestampedOrderIdProvider orderIdProvider = new OrderIdProviderImpl(new ConstantWriterIdProvider(1),
+            new SnowflakeIdPacker(),
+            new JiveEpochTimestampProvider());
+        PartitionClientProvider partitionClientProvider = new InMemoryPartitionClientProvider(orderIdProvider, ringMember);
+
+        PartitionClient partition = partitionClientProvider.getPartition(partitionName);
+
+        AmzaClientAquariumProvider amzaClientAquariumProvider = aquariumProvider(partitionClientProvider, orderIdProvider, ringMember);
+
+        int batchSize = 8;
+        int rows = 50;
+        AtomicInteger keyProvider = new AtomicInteger();
+        AtomicLong valueProvider = new AtomicLong();
+        long largestTxId = advancePartition(partition, rows, System.currentTimeMillis(), keyProvider, valueProvider);
+        Assert.assertEquals(largestTxId, (long) rows);
+
+        // the sender is only known once built, and the commits need it to read back the persisted cursor
+        AmzaSyncSender[] sender = new AmzaSyncSender[1];
+        List<Integer> committedKeys = Collections.synchronizedList(Lists.newArrayList());
+        List<Integer> batchSizes = Collections.synchronizedList(Lists.newArrayList());
+        List<Long> cursorAtCommit = Collections.synchronizedList(Lists.newArrayList());
+        AtomicInteger committing = new AtomicInteger();
+        AtomicInteger overlappingCommits = new AtomicInteger();
+        AmzaSyncClient syncClient = new AmzaSyncClient() {
+
+            @Override
+            public void commitRows(PartitionName toPartitionName, List<Row> batch) throws Exception {
+                if (committing.incrementAndGet() > 1) {
+                    overlappingCommits.incrementAndGet();
+                }
+                try {
+                    long[] cursorTxId = { 0L };
+                    sender[0].streamCursors(partitionName, partitionName, (fromPartitionName, toPartitionName1, timestamp, cursor) -> {
+                        cursorTxId[0] = cursor.memberTxIds.getOrDefault(ringMember, 0L);
+                        return true;
+                    });
+                    cursorAtCommit.add(cursorTxId[0]);
+                    batchSizes.add(batch.size());
+                    for (Row row : batch) {
+                        committedKeys.add(UIO.bytesInt(row.key));
+                    }
+                } finally {
+                    committing.decrementAndGet();
+                }
+            }
+
+            @Override
+            public void ensurePartition(PartitionName toPartitionName, PartitionProperties properties, int ringSize) throws Exception {
+            }
+        };
+
+        AmzaSyncStats stats = new AmzaSyncStats();
+        // flushes every cursor as soon as its batch lands
+        sender[0] = syncSender(partitionClientProvider, amzaClientAquariumProvider, syncClient, partitionName, stats, batchSize, false, -1);
+
+        amzaClientAquariumProvider.start();
+        sender[0].start();
+
+        long failAfter = System.currentTimeMillis() + 60_000L;
+        Cursor cursor = awaitCursor(partitionName, sender[0], ringMember, largestTxId, failAfter);
+        Assert.assertFalse(cursor.taking);
+        Assert.assertEquals(cursor.memberTxIds.get(ringMember).longValue(), largestTxId);
+
+        Assert.assertEquals(overlappingCommits.get(), 0);
+        Assert.assertEquals(committedKeys.size(), rows);
+        for (int i = 0; i < rows; i++) {
+            Assert.assertEquals(committedKeys.get(i).intValue(), i + 1);
+        }
+
+        int batches = (rows + batchSize - 1) / batchSize;
+        Assert.assertEquals(batchSizes.size(), batches);
+        Assert.assertEquals(cursorAtCommit.size(), batches);
+        for (int i = 0; i < batches; i++) {
+            Assert.assertEquals(batchSizes.get(i).intValue(), Math.min(batchSize, rows - i * batchSize));
+            // each batch is taken while the previous one commits, but its commit only starts once the previous cursor is saved
+            Assert.assertEquals(cursorAtCommit.get(i).longValue(), (long) i * batchSize);
+        }
+
+        while (true) {
+            AmzaSyncStats.Lag lag = Iterables.getOnlyElement(stats.lagMap().values(), null);
+            if (lag != null && lag.lagMillis() == 0) {
+                Assert.assertEquals(lag.inFlightRows.get(), 0L);
+                break;
+            }
+            if (System.currentTimeMillis() > failAfter) {
+                Assert.fail("Timed out awaiting lag");
+            }
+            Thread.sleep(100L);
+        }
+    }
+
+    private AmzaClientAquariumProvider aquariumProvider(PartitionClientProvider partitionClientProvider,
+        TimestampedOrderIdProvider orderIdProvider,
+        RingMember ringMember) {
+        return new AmzaClientAquariumProvider(new AquariumStats(),
+            "test",
+            partitionClientProvider,
+            orderIdProvider,
+            ringMember.asAquariumMember(),
+            count -> count == 1,
+            () -> Sets.newHashSet(ringMember.asAquariumMember()),
+            128,
+            128,
+            5_000L,
+            100L,
+            60_000L,
+            10_000L,
+            Executors.newSingleThreadExecutor(),
+            100L,
+            1_000L,
+            10_000L,
+            false);
+    }
+
+    private AmzaSyncSender syncSender(PartitionClientProvider partitionClientProvider,
+        AmzaClientAquariumProvider amzaClientAquariumProvider,
+        AmzaSyncClient syncClient,
+        PartitionName partitionName,
+        AmzaSyncStats stats,
+        int batchSize,
+        boolean bootstrapWithScan,
+        long flushCursorsAfterNMillis) {
+        return new AmzaSyncSender(
+            stats,
+            new AmzaSyncSenderConfig("default",
+                true,
+                100L,
+                batchSize,
+                false,
+                "",
+                "",
+                -1,
+                "",
+                "",
+                "",
+                true),
+            amzaClientAquariumProvider,
+            1,
+            2,
+            bootstrapWithScan,
+            flushCursorsAfterNMillis,
+            Executors.newScheduledThreadPool(1),
+            partitionClientProvider,
+            syncClient,
+            (name) -> ImmutableMap.of(new AmzaSyncPartitionTuple(partitionName, partitionName),
+                new AmzaSyncPartitionConfig(0, 0, 0, 0, 0)),
+            new AmzaInterner());
+    }
+
     private long advancePartition(PartitionClient partition,
         int rows,
         long currentTimeMillis,
@@ -0,0 +1,50 @@
+package com.jivesoftware.os.amza.sync.deployable;
+
+import com.jivesoftware.os.amza.api.filer.HeapFiler;
+import java.util.Iterator;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ */
+public class BinaryRowsTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Row[] rows = {
+            new Row(null, "key1".getBytes(), "value1".getBytes(), 1_000L, false),
+            new Row("prefix".getBytes(), "key2".getBytes(), null, 2_000L, true),
+            new Row("prefix".getBytes(), new byte[0], new byte[0], -1L, false)
+        };
+
+        HeapFiler filer = new HeapFiler(1024);
+        byte[] lengthBuffer = new byte[8];
+        for (Row row : rows) {
+            BinaryRows.write(filer, row, lengthBuffer);
+        }
+        BinaryRows.writeEnd(filer);
+
+        Iterator<Row> iterator = BinaryRows.iterator(HeapFiler.fromBytes(filer.copyUsedBytes(), (int) filer.length()));
+        for (Row expected : rows) {
+            Assert.assertTrue(iterator.hasNext());
+            Row row = iterator.next();
+            Assert.assertEquals(row.prefix, expected.prefix);
+            Assert.assertEquals(row.key, expected.key);
+            Assert.assertEquals(row.value, expected.value);
+            Assert.assertEquals(row.valueTimestamp, expected.valueTimestamp);
+            Assert.assertEquals(row.valueTombstoned, expected.valueTombstoned);
+        }
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testTruncatedStream() throws Exception {
+        HeapFiler filer = new HeapFiler(1024);
+        BinaryRows.write(filer, new Row(null, "key".getBytes(), "value".getBytes(), 1L, false), new byte[8]);
+
+        Iterator<Row> iterator = BinaryRows.iterator(HeapFiler.fromBytes(filer.copyUsedBytes(), (int) filer.length()));
+        iterator.next();
+        iterator.hasNext();
+    }
+}
@@ -33,7 +33,7 @@ public class AmzaChatterPluginEndpoints {
     @GET
     @Produces(MediaType.TEXT_HTML)
     public Response chatter() {
-        String rendered = soyService.renderPlugin(pluginRegion, new ChatterPluginRegionInput(false, false, false));
+        String rendered = soyService.renderPlugin(pluginRegion, new ChatterPluginRegionInput(false, false, false, "", "", ""));
         return Response.ok(rendered).build();
     }
 
@@ -41,8 +41,12 @@ public class AmzaChatterPluginEndpoints {
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
     public Response action(@FormParam("unhealthy") @DefaultValue("false") boolean unhealthy,
         @FormParam("active") @DefaultValue("false") boolean active,
-        @FormParam("system") @DefaultValue("false") boolean system) {
-        String rendered = soyService.renderPlugin(pluginRegion, new ChatterPluginRegionInput(unhealthy, active, system));
+        @FormParam("system") @DefaultValue("false") boolean system,
+        @FormParam("action") @DefaultValue("") String action,
+        @FormParam("nodeBytesPerSecond") @DefaultValue("") String nodeBytesPerSecond,
+        @FormParam("peerBytesPerSecond") @DefaultValue("") String peerBytesPerSecond) {
+        String rendered = soyService.renderPlugin(pluginRegion,
+            new ChatterPluginRegionInput(unhealthy, active, system, action, nodeBytesPerSecond, peerBytesPerSecond));
         return Response.ok(rendered).build();
     }
 }
@@ -7,6 +7,7 @@ import com.jivesoftware.os.amza.api.ring.RingHost;
 import com.jivesoftware.os.amza.api.ring.RingMember;
 import com.jivesoftware.os.amza.service.AmzaService;
 import com.jivesoftware.os.amza.service.Partition;
+import com.jivesoftware.os.amza.service.replication.ReplicationQoS;
 import com.jivesoftware.os.amza.service.stats.AmzaStats;
 import com.jivesoftware.os.amza.service.take.TakeCoordinator;
 import com.jivesoftware.os.amza.ui.soy.SoyRenderer;
@@ -71,11 +72,22 @@ public class AmzaChatterPluginRegion implements PageRegion<AmzaChatterPluginRegi
         public final boolean unhealthy;
         public final boolean active;
         public final boolean system;
-
-        public ChatterPluginRegionInput(boolean unhealthy, boolean active, boolean system) {
+        public final String action;
+        public final String nodeBytesPerSecond;
+        public final String peerBytesPerSecond;
+
+        public ChatterPluginRegionInput(boolean unhealthy,
+            boolean active,
+            boolean system,
+            String action,
+            String nodeBytesPerSecond,
+            String peerBytesPerSecond) {
             this.unhealthy = unhealthy;
             this.active = active;
             this.system = system;
+            this.action = action;
+            this.nodeBytesPerSecond = nodeBytesPerSecond;
+            this.peerBytesPerSecond = peerBytesPerSecond;
         }
 
     }
@@ -86,6 +98,29 @@ public class AmzaChatterPluginRegion implements PageRegion<AmzaChatterPluginRegi
 
         try {
 
+            ReplicationQoS replicationQoS = amzaService.getReplicationQoS();
+            if (input.action.equals("replicationQoS")) {
+                // a blank field leaves its limit as it was
+                if (!input.nodeBytesPerSecond.trim().isEmpty()) {
+                    replicationQoS.setNodeBytesPerSecond(Long.parseLong(input.nodeBytesPerSecond.trim()));
+                }
+                if (!input.peerBytesPerSecond.trim().isEmpty()) {
+                    replicationQoS.setPeerBytesPerSecond(Long.parseLong(input.peerBytesPerSecond.trim()));
+                }
+            }
+            List<Map<String, String>> qosPriorities = new ArrayList<>();
+            for (ReplicationQoS.Priority priority : ReplicationQoS.Priority.values()) {
+                Map<String, String> qosPriority = new HashMap<>();
+                qosPriority.put("name", priority.name());
+                qosPriority.put("bytes", numberFormat.format(replicationQoS.getBytes(priority)));
+                qosPriority.put("throttled", getDurationBreakdown(replicationQoS.getThrottledMillis(priority)));
+                qosPriorities.add(qosPriority);
+            }
+            data.put("qosNodeBytesPerSecond", String.valueOf(replicationQoS.getNodeBytesPerSecond()));
+            data.put("qosPeerBytesPerSecond", String.valueOf(replicationQoS.getPeerBytesPerSecond()));
+            data.put("qosBulkFactor", String.format("%.2f", replicationQoS.bulkFactor()));
+            data.put("qosPriorities", qosPriorities);
+
             TreeMap<RingMember, RingHost> nodes = new TreeMap<>();
             amzaService.getRingReader().streamRingMembersAndHosts((ringMemberAndHost) -> {
                 nodes.put(ringMemberAndHost.ringMember, ringMemberAndHost.ringHost);
@@ -3,11 +3,13 @@ package com.jivesoftware.os.amza.ui.region;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.html.HtmlEscapers;
 import com.google.common.primitives.UnsignedBytes;
 import com.jivesoftware.os.amza.api.partition.Consistency;
 import com.jivesoftware.os.amza.api.partition.Durability;
 import com.jivesoftware.os.amza.api.partition.PartitionName;
 import com.jivesoftware.os.amza.api.partition.PartitionProperties;
+import com.jivesoftware.os.amza.api.partition.PartitionStatistics;
 import com.jivesoftware.os.amza.api.partition.VersionedPartitionName;
 import com.jivesoftware.os.amza.api.ring.RingMemberAndHost;
 import com.jivesoftware.os.amza.api.stream.RowType;
@@ -24,7 +26,9 @@ import com.jivesoftware.os.amza.ui.soy.SoyRenderer;
 import com.jivesoftware.os.mlogger.core.MetricLogger;
 import com.jivesoftware.os.mlogger.core.MetricLoggerFactory;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -347,6 +351,12 @@ public class AmzaPartitionsPluginRegion implements PageRegion<AmzaPartitionsPlug
                             row.put("highwaters", "partition-disposed");
                         }
 
+                        try {
+                            row.put("statistics", renderStatistics(amzaService.getPartition(partitionName).sketches().statistics()));
+                        } catch (PartitionIsDisposedException | PropertiesNotPresentException e) {
+                            row.put("statistics", "partition-disposed");
+                        }
+
                         rows.add(row);
                     } else {
                         missed.incrementAndGet();
@@ -381,6 +391,22 @@ public class AmzaPartitionsPluginRegion implements PageRegion<AmzaPartitionsPlug
         return sb.toString();
     }
 
+    private String renderStatistics(PartitionStatistics statistics) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<p>rows=").append(statistics.rows).append(" distinctPrefixes=").append(statistics.distinctPrefixes).append("</p>");
+        sb.append("<p>quantiles=").append(Arrays.toString(statistics.quantiles)).append("</p>");
+        sb.append("<p>keySizes=").append(Arrays.toString(statistics.keySizes)).append("</p>");
+        sb.append("<p>valueSizes=").append(Arrays.toString(statistics.valueSizes)).append("</p>");
+        sb.append("<p>rowAges=").append(Arrays.toString(statistics.rowAges)).append("</p>");
+        for (PartitionStatistics.HotPrefix hotPrefix : statistics.hotPrefixes) {
+            sb.append("<p>");
+            sb.append(HtmlEscapers.htmlEscaper().escape(new String(hotPrefix.prefix, StandardCharsets.UTF_8)))
+                .append("=").append(hotPrefix.writes).append(" (&plusmn;").append(hotPrefix.error).append(")");
+            sb.append("</p>");
+        }
+        return sb.toString();
+    }
+
     @Override
     public String getTitle() {
         return "Amza Partitions";